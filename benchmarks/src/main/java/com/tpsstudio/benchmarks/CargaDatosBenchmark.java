@@ -0,0 +1,61 @@
+package com.tpsstudio.benchmarks;
+
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.service.DatosVariablesManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carga de la fuente de datos con {@link DatosVariablesManager} desde CSV y XLSX
+ * de 100, 10 000 y 100 000 registros.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class CargaDatosBenchmark {
+
+    @Param({ "100", "10000", "100000" })
+    public int filas;
+
+    @Param({ "csv", "xlsx" })
+    public String formato;
+
+    private Path raiz;
+    private String ruta;
+    private final DatosVariablesManager manager = new DatosVariablesManager();
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        // El log de cada carga no debe contar en la medida
+        Logger.getLogger(DatosVariablesManager.class.getName()).setLevel(Level.WARNING);
+
+        raiz = Files.createTempDirectory("tps-bench-datos");
+        FuenteDatos datos = DatosSinteticos.fuente(filas);
+        File archivo = raiz.resolve("datos." + formato).toFile();
+        if ("csv".equals(formato)) {
+            DatosSinteticos.escribirCsv(datos, archivo);
+        } else {
+            DatosSinteticos.escribirXlsx(datos, archivo);
+        }
+        ruta = archivo.getAbsolutePath();
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws Exception {
+        DatosSinteticos.borrar(raiz);
+    }
+
+    @Benchmark
+    public FuenteDatos cargar() {
+        return manager.cargar(ruta).orElseThrow();
+    }
+}
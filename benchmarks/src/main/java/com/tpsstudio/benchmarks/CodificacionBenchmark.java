@@ -0,0 +1,53 @@
+package com.tpsstudio.benchmarks;
+
+import com.tpsstudio.model.enums.CodecImagen;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.service.CodificadorPagina;
+import com.tpsstudio.service.RenderizadorTarjeta;
+import com.tpsstudio.view.managers.EditorCanvasManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compresión de una página ya renderizada (400 DPI con sangre) con cada
+ * {@link CodecImagen}, tal como la hace el pool de codificación del pipeline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodificacionBenchmark {
+
+    private static final double ESCALA_400_DPI =
+            (EditorCanvasManager.CR80_WIDTH_MM / 25.4 * 400) / EditorCanvasManager.CARD_WIDTH;
+
+    @Param({ "SIN_PERDIDA", "FLATE", "JPEG" })
+    public CodecImagen codec;
+
+    private Path raiz;
+    private BufferedImage pagina;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        raiz = Files.createTempDirectory("tps-bench-codec");
+        Proyecto proyecto = DatosSinteticos.proyecto(raiz);
+        pagina = new RenderizadorTarjeta(proyecto)
+                .renderizar(true, false, DatosSinteticos.fuente(1), 0, ESCALA_400_DPI);
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws Exception {
+        DatosSinteticos.borrar(raiz);
+    }
+
+    @Benchmark
+    public CodificadorPagina.PaginaCodificada codificar() throws Exception {
+        return CodificadorPagina.codificar(pagina, codec, 0.92f);
+    }
+}
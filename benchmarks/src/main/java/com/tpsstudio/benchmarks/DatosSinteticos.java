@@ -0,0 +1,199 @@
+package com.tpsstudio.benchmarks;
+
+import com.tpsstudio.model.elements.FormaElemento;
+import com.tpsstudio.model.elements.ImagenElemento;
+import com.tpsstudio.model.elements.TextoElemento;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.model.project.ProyectoMetadata;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Proyectos y fuentes de datos sintéticos para los benchmarks.
+ *
+ * <p>El diseño imita una acreditación típica: fondo liso, banda y logotipo fijos,
+ * nombre y cargo variables (el cargo con varias líneas de word-wrap), foto variable
+ * y código en el dorso. Los datos se generan con semilla fija, así que dos
+ * ejecuciones trabajan exactamente con los mismos registros.</p>
+ */
+final class DatosSinteticos {
+
+    static final List<String> COLUMNAS = List.of("NOMBRE", "APELLIDOS", "CARGO", "DEPARTAMENTO", "FOTO", "CODIGO");
+
+    // Fotos distintas en la carpeta Fotos/: los registros las reutilizan en ciclo
+    static final int FOTOS_DISTINTAS = 50;
+
+    private static final String[] NOMBRES = { "Lucía", "Hugo", "Martina", "Mateo", "Sofía", "Leo", "Julia",
+            "Daniel", "Paula", "Álvaro", "Valeria", "Pablo", "Emma", "Manuel", "Carmen", "Alejandro" };
+    private static final String[] APELLIDOS = { "García Martínez", "Rodríguez López", "Fernández Sánchez",
+            "González Pérez", "Gómez Romero", "Díaz Navarro", "Ruiz Torres", "Hernández Ortega" };
+    private static final String[] CARGOS = { "Técnico", "Responsable de Preimpresión y Control de Calidad",
+            "Coordinadora General de Acreditaciones y Seguridad del Evento", "Dirección", "Voluntario" };
+    private static final String[] DEPARTAMENTOS = { "Producción", "Logística", "Prensa", "Organización" };
+
+    private DatosSinteticos() {}
+
+    /**
+     * Crea la carpeta de un proyecto sintético ({@code TPS_Benchmark/} con su
+     * {@code Fotos/}) y devuelve el proyecto ya enlazado a ella.
+     */
+    static Proyecto proyecto(Path raiz) throws IOException {
+        Path carpeta = Files.createDirectories(raiz.resolve("TPS_Benchmark"));
+        Path fotos = Files.createDirectories(carpeta.resolve("Fotos"));
+        generarFotos(fotos.toFile());
+
+        Proyecto proyecto = new Proyecto("Benchmark");
+        ProyectoMetadata metadata = new ProyectoMetadata();
+        metadata.setNombre("Benchmark");
+        metadata.setRutaTPS(carpeta.resolve("Benchmark.tps").toString());
+        metadata.setRutaFotos(fotos.toString());
+        proyecto.setMetadata(metadata);
+
+        FormaElemento banda = new FormaElemento("Banda", 0, 0, 343, 48, FormaElemento.TipoForma.RECTANGULO);
+        banda.setColorRelleno("#1a1a2e");
+        FormaElemento logo = new FormaElemento("Logo", 280, 8, 32, 32, FormaElemento.TipoForma.ELIPSE);
+        logo.setColorRelleno("#e94560");
+        TextoElemento titulo = texto("Título", 12, 12, 250, "ACREDITACIÓN 2026", 18, null);
+        titulo.setColor("#ffffff");
+        titulo.setNegrita(true);
+
+        ImagenElemento foto = new ImagenElemento("Foto", 12, 60, null, null);
+        foto.setWidth(98);
+        foto.setHeight(121);
+        foto.setColumnaVinculada("FOTO");
+
+        proyecto.getElementosFrente().addAll(List.of(banda, logo, titulo, foto,
+                texto("Nombre", 122, 64, 208, "Nombre", 16, "NOMBRE"),
+                texto("Apellidos", 122, 88, 208, "Apellidos", 13, "APELLIDOS"),
+                texto("Cargo", 122, 120, 208, "Cargo", 11, "CARGO"),
+                texto("Departamento", 122, 170, 208, "Departamento", 11, "DEPARTAMENTO")));
+
+        FormaElemento linea = new FormaElemento("Línea", 20, 150, 300, 4, FormaElemento.TipoForma.LINEA);
+        proyecto.getElementosDorso().addAll(List.of(linea,
+                texto("Normas", 20, 20, 300, "Esta acreditación es personal e intransferible. Debe llevarse en "
+                        + "lugar visible durante todo el evento y presentarse cuando lo solicite el personal "
+                        + "de seguridad.", 10, null),
+                texto("Código", 20, 165, 300, "Código", 12, "CODIGO")));
+        return proyecto;
+    }
+
+    /** Fuente de datos en memoria con {@code filas} registros. */
+    static FuenteDatos fuente(int filas) {
+        Random rnd = new Random(filas);
+        List<Map<String, String>> registros = new ArrayList<>(filas);
+        for (int i = 0; i < filas; i++) {
+            Map<String, String> r = new LinkedHashMap<>();
+            r.put("NOMBRE", NOMBRES[rnd.nextInt(NOMBRES.length)]);
+            r.put("APELLIDOS", APELLIDOS[rnd.nextInt(APELLIDOS.length)]);
+            r.put("CARGO", CARGOS[rnd.nextInt(CARGOS.length)]);
+            r.put("DEPARTAMENTO", DEPARTAMENTOS[rnd.nextInt(DEPARTAMENTOS.length)]);
+            r.put("FOTO", nombreFoto(i % FOTOS_DISTINTAS));
+            r.put("CODIGO", String.format("ACR-%06d", i + 1));
+            registros.add(r);
+        }
+        return new FuenteDatos("sintetico_" + filas, COLUMNAS, registros);
+    }
+
+    /** Escribe la fuente como CSV separado por ';' (el formato que exporta Excel en español). */
+    static File escribirCsv(FuenteDatos datos, File destino) throws IOException {
+        try (PrintWriter out = new PrintWriter(destino, StandardCharsets.UTF_8)) {
+            out.println(String.join(";", COLUMNAS));
+            for (int f = 0; f < datos.getTotalRegistros(); f++) {
+                StringBuilder linea = new StringBuilder();
+                for (int c = 0; c < COLUMNAS.size(); c++) {
+                    if (c > 0) linea.append(';');
+                    linea.append(datos.getValor(f, c));
+                }
+                out.println(linea);
+            }
+        }
+        return destino;
+    }
+
+    /** Escribe la fuente como .xlsx (en streaming: 100 000 filas no caben cómodas en XSSF). */
+    static File escribirXlsx(FuenteDatos datos, File destino) throws IOException {
+        try (SXSSFWorkbook wb = new SXSSFWorkbook(500);
+             OutputStream out = new FileOutputStream(destino)) {
+            Sheet hoja = wb.createSheet("Datos");
+            Row cabecera = hoja.createRow(0);
+            for (int c = 0; c < COLUMNAS.size(); c++) cabecera.createCell(c).setCellValue(COLUMNAS.get(c));
+            for (int f = 0; f < datos.getTotalRegistros(); f++) {
+                Row fila = hoja.createRow(f + 1);
+                for (int c = 0; c < COLUMNAS.size(); c++) fila.createCell(c).setCellValue(datos.getValor(f, c));
+            }
+            wb.write(out);
+            wb.dispose();
+        }
+        return destino;
+    }
+
+    /** Borra un directorio temporal de benchmark con todo su contenido. */
+    static void borrar(Path raiz) throws IOException {
+        if (raiz == null || !Files.exists(raiz)) return;
+        try (Stream<Path> rutas = Files.walk(raiz)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    private static TextoElemento texto(String nombre, double x, double y, double ancho, String contenido,
+                                       double tamaño, String columna) {
+        TextoElemento t = new TextoElemento(nombre, x, y);
+        t.setWidth(ancho);
+        t.setContenido(contenido);
+        t.setFontSize(tamaño);
+        t.setFontFamily("SansSerif");
+        t.setColumnaVinculada(columna);
+        return t;
+    }
+
+    /** Fotos tipo carnet de 600×800 px, similares en tamaño a las de una cámara de estudio. */
+    private static void generarFotos(File carpeta) throws IOException {
+        Random rnd = new Random(42);
+        for (int i = 0; i < FOTOS_DISTINTAS; i++) {
+            File archivo = new File(carpeta, nombreFoto(i));
+            if (archivo.isFile()) continue;
+            BufferedImage img = new BufferedImage(600, 800, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = img.createGraphics();
+            try {
+                g.setPaint(new GradientPaint(0, 0, new Color(rnd.nextInt(0xFFFFFF)),
+                        600, 800, new Color(rnd.nextInt(0xFFFFFF))));
+                g.fillRect(0, 0, 600, 800);
+                g.setColor(new Color(rnd.nextInt(0xFFFFFF)));
+                g.fillOval(150, 120, 300, 380);
+                g.fillRect(80, 520, 440, 280);
+            } finally {
+                g.dispose();
+            }
+            ImageIO.write(img, "jpg", archivo);
+        }
+    }
+
+    private static String nombreFoto(int i) {
+        return String.format("foto_%03d.jpg", i);
+    }
+}
@@ -0,0 +1,81 @@
+package com.tpsstudio.benchmarks;
+
+import com.tpsstudio.model.enums.CodecImagen;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.service.PDFExportService;
+import com.tpsstudio.view.dialogs.ExportDialog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Exportación completa del PDF de registros (anverso + reverso) con
+ * {@link PDFExportService}: render, codificación, ensamblado y escritura a disco.
+ *
+ * <p>Cada invocación es una exportación entera ({@code SingleShotTime}); el
+ * rendimiento en registros por segundo es {@code filas / tiempo}. Con 100 000
+ * registros cada medida tarda varios minutos, por eso no entra en la ejecución
+ * por defecto: se pide con {@code -p filas=100000}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "-Djava.awt.headless=true" })
+public class ExportacionBenchmark {
+
+    @Param({ "100", "10000" })
+    public int filas;
+
+    @Param({ "SIN_PERDIDA", "JPEG" })
+    public CodecImagen codec;
+
+    @Param({ "400" })
+    public int dpi;
+
+    private Path raiz;
+    private PDFExportService servicio;
+    private ExportDialog.ExportConfig config;
+    private List<Integer> seleccion;
+    private File destino;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        Logger.getLogger("com.tpsstudio").setLevel(Level.WARNING);
+
+        raiz = Files.createTempDirectory("tps-bench-export");
+        Proyecto proyecto = DatosSinteticos.proyecto(raiz);
+        FuenteDatos datos = DatosSinteticos.fuente(filas);
+        servicio = new PDFExportService(proyecto, datos);
+        seleccion = IntStream.range(0, filas).boxed().toList();
+        destino = raiz.resolve("exportacion.pdf").toFile();
+        config = new ExportDialog.ExportConfig(true, "TODOS", true, false, null, false,
+                0, false, ExportDialog.ExportConfig.PAGINAS_EN_MEMORIA_DEFECTO, codec,
+                ExportDialog.ExportConfig.CALIDAD_JPEG_DEFECTO, 0, false, false, null, null, dpi);
+    }
+
+    @TearDown(Level.Iteration)
+    public void borrarPdf() {
+        destino.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws Exception {
+        DatosSinteticos.borrar(raiz);
+    }
+
+    @Benchmark
+    public long exportar() throws Exception {
+        servicio.exportar(config, seleccion, destino);
+        return destino.length();
+    }
+}
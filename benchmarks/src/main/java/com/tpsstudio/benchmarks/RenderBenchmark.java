@@ -0,0 +1,63 @@
+package com.tpsstudio.benchmarks;
+
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.service.RenderizadorTarjeta;
+import com.tpsstudio.view.managers.EditorCanvasManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render de una tarjeta con {@link RenderizadorTarjeta}: capa estática ya construida
+ * y solo los elementos variables (nombre, cargo con word-wrap y foto) por registro.
+ *
+ * <p>Recorre los registros en ciclo, así que mide el caso estable de una exportación
+ * larga: fotos ya en la caché del proyecto tras la primera vuelta.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({ "400", "600" })
+    public int dpi;
+
+    private Path raiz;
+    private RenderizadorTarjeta renderizador;
+    private FuenteDatos datos;
+    private double escala;
+    private int fila;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        raiz = Files.createTempDirectory("tps-bench-render");
+        Proyecto proyecto = DatosSinteticos.proyecto(raiz);
+        renderizador = new RenderizadorTarjeta(proyecto);
+        datos = DatosSinteticos.fuente(100);
+        escala = (EditorCanvasManager.CR80_WIDTH_MM / 25.4 * dpi) / EditorCanvasManager.CARD_WIDTH;
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws Exception {
+        DatosSinteticos.borrar(raiz);
+    }
+
+    @Benchmark
+    public BufferedImage anverso() {
+        fila = (fila + 1) % datos.getTotalRegistros();
+        return renderizador.renderizar(true, false, datos, fila, escala);
+    }
+
+    @Benchmark
+    public BufferedImage dorso() {
+        fila = (fila + 1) % datos.getTotalRegistros();
+        return renderizador.renderizar(false, false, datos, fila, escala);
+    }
+}
@@ -0,0 +1,49 @@
+package com.tpsstudio.benchmarks;
+
+import com.tpsstudio.util.MotorTexto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Word-wrap de {@link MotorTexto} (sustituye al antiguo {@code computeLines} del
+ * renderizador y del editor).
+ *
+ * <p>{@code conCache} mide el caso de una exportación, donde los mismos cargos se
+ * repiten en muchos registros; {@code sinCache} vacía la caché de líneas en cada
+ * llamada y mide el coste real de partir el texto con la tabla de avances.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapBenchmark {
+
+    private static final String CORTO = "Técnico de sala";
+    private static final String LARGO = "Coordinadora General de Acreditaciones, Seguridad y Atención a Medios "
+            + "del Congreso Internacional de Tarjetas Plásticas e Identificación Segura";
+
+    @Param({ "corto", "largo" })
+    public String texto;
+
+    private String contenido;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        contenido = "corto".equals(texto) ? CORTO : LARGO;
+    }
+
+    @Benchmark
+    public List<String> conCache() {
+        return MotorTexto.lineas(contenido, true, "SansSerif", false, false, 11, 208);
+    }
+
+    @Benchmark
+    public List<String> sinCache() {
+        MotorTexto.limpiarCache();
+        return MotorTexto.lineas(contenido, true, "SansSerif", false, false, 11, 208);
+    }
+}
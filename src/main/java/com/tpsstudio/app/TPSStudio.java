@@ -1,5 +1,6 @@
 package com.tpsstudio.app;
 
+import com.tpsstudio.service.ColaImpresion;
 import com.tpsstudio.util.ImageUtils;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -56,6 +57,8 @@ public class TPSStudio extends Application {
     @Override
     public void stop() throws Exception {
         ImageUtils.limpiarCache();
+        // Lo que se esté renderizando vuelve a la cola guardada para la próxima sesión
+        ColaImpresion.cerrarInstancia();
         super.stop();
     }
 }
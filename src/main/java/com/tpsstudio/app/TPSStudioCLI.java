@@ -0,0 +1,400 @@
+package com.tpsstudio.app;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.tpsstudio.model.enums.CodecImagen;
+import com.tpsstudio.model.enums.FormatoSecuencia;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.service.CarpetasVigiladas;
+import com.tpsstudio.service.DatosVariablesManager;
+import com.tpsstudio.service.PDFExportService;
+import com.tpsstudio.service.ProyectoFileManager;
+import com.tpsstudio.service.ServidorRender;
+import com.tpsstudio.service.TrabajoExportacion;
+import com.tpsstudio.view.dialogs.ExportDialog;
+import com.tpsstudio.view.dialogs.PruebaConfigDialog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/* Punto de entrada sin interfaz de TPS Studio: exportación por lotes desde la
+ * línea de comandos, para servidores de render sin pantalla.
+ *
+ * Carga el .tps con ProyectoFileManager (sin imágenes JavaFX) y la base de datos con
+ * DatosVariablesManager, y genera exactamente las mismas salidas que el diálogo de
+ * exportación (PDFExportService.exportarSalidas). No arranca el toolkit de JavaFX:
+ * todo el render es Java2D en modo headless, con un hilo de render por núcleo salvo
+ * que se indique --hilos.
+ *
+ * Con --vigilar funciona como "carpeta caliente" (CarpetasVigiladas): exporta cada
+ * archivo de datos que aparece en las carpetas configuradas, hasta que se detiene.
+ * Con --servir arranca el servicio HTTP local de render (ServidorRender).
+ *
+ * Códigos de salida: 0 = correcto, 1 = error, 2 = argumentos inválidos, 130 = cancelado. */
+
+public class TPSStudioCLI {
+
+    private static final int OK = 0;
+    private static final int ERROR = 1;
+    private static final int USO_INCORRECTO = 2;
+    private static final int CANCELADO = 130;
+
+    // Opciones que no llevan valor
+    private static final Set<String> INTERRUPTORES = Set.of("--sin-sangre", "--solo-anverso", "--vectorial",
+            "--reanudable", "--reutilizar", "--prueba", "--imprenta", "--sin-registros", "--ayuda");
+
+    private static final String USO = """
+            Uso: TPSStudioCLI --proyecto <archivo.tps> --salida <nombre.pdf> [opciones]
+                 TPSStudioCLI --vigilar <carpetas.json> [--simultaneas <n>] [--cola <n>]
+                 TPSStudioCLI --servir <puerto> --proyectos <carpeta> [--trabajos <carpeta>]
+                              [--simultaneas <n>] [--cola <n>]
+
+              --datos <archivo>        CSV/XLS/XLSX (por defecto, la BBDD del proyecto)
+              --filas <rango>          TODOS, "1-500", "1, 3, 7-9" (por defecto TODOS)
+              --solo-anverso           no exportar el reverso
+              --sin-sangre             recortar al CR80 final
+              --dpi <n>                resolución en modo imagen, 72–1200 (por defecto 400)
+              --vectorial              PDF con texto y formas vectoriales
+              --formato <png|tiff>     una imagen por tarjeta y cara en <nombre>_tarjetas/
+              --columna-nombre <col>   nombre de archivo de cada tarjeta (con --formato)
+              --codec <SIN_PERDIDA|FLATE|JPEG>
+              --calidad <50-100>       calidad JPEG en % (por defecto 92)
+              --hilos <n>              hilos de render (0 = uno por núcleo)
+              --memoria-pdf <MB>       RAM para el PDF, el resto a disco (0 = todo en memoria)
+              --por-archivo <n>        registros por PDF (lotes + manifiesto)
+              --reanudable             exportación por partes, continuable tras un corte
+              --reutilizar             reutilizar páginas sin cambios de la caché del proyecto
+              --prueba                 generar también <nombre>_prueba.pdf (A4 para el cliente)
+              --imprenta               generar también <nombre>_imprenta.pdf
+              --sin-registros          no exportar registros (solo prueba y/o imprenta)
+
+            Carpetas vigiladas (carpetas.json):
+              [ { "entrada": "/srv/recepcion/socios", "proyecto": "/srv/tps/Socios/Socios.tps",
+                  "salida": "/srv/salidas/socios", "opciones": ["--solo-anverso", "--dpi", "600"] } ]
+              --simultaneas <n>        exportaciones a la vez (por defecto, una por carpeta, máx. 4)
+              --cola <n>               archivos listos en espera de turno (por defecto 4)
+
+            Servicio HTTP (solo en 127.0.0.1):
+              --proyectos <carpeta>    carpeta con los proyectos .tps (id = nombre del .tps)
+              --trabajos <carpeta>     resultados de los lotes (por defecto, temporal del sistema)
+              --simultaneas <n>        lotes exportándose a la vez (por defecto 1)
+              --cola <n>               lotes en espera antes de responder 503 (por defecto 4)
+            """;
+
+    // Carpetas vigiladas: máximo de exportaciones simultáneas por defecto y cola de espera
+    private static final int SIMULTANEAS_MAXIMO_DEFECTO = 4;
+    private static final int COLA_DEFECTO = 4;
+
+    /* Entrada del archivo de configuración de carpetas vigiladas */
+    private record CarpetaJson(String entrada, String proyecto, String salida, List<String> opciones) {}
+
+    public static void main(String[] args) {
+        // Antes de tocar AWT: sin pantalla no debe intentarse abrir ningún display
+        System.setProperty("java.awt.headless", "true");
+        System.exit(ejecutar(args));
+    }
+
+    static int ejecutar(String[] args) {
+        Map<String, String> opciones;
+        try {
+            opciones = leerOpciones(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USO);
+            return USO_INCORRECTO;
+        }
+        if (opciones.containsKey("--ayuda")) {
+            System.out.print(USO);
+            return OK;
+        }
+        if (opciones.containsKey("--vigilar")) {
+            return vigilar(opciones);
+        }
+        if (opciones.containsKey("--servir")) {
+            return servir(opciones);
+        }
+        if (!opciones.containsKey("--proyecto") || !opciones.containsKey("--salida")) {
+            System.err.print(USO);
+            return USO_INCORRECTO;
+        }
+
+        // 1. Proyecto y datos
+        File archivoTps = new File(opciones.get("--proyecto"));
+        if (!archivoTps.isFile()) {
+            System.err.println("No existe el proyecto: " + archivoTps);
+            return ERROR;
+        }
+        Proyecto proyecto = new ProyectoFileManager(false).cargarProyecto(archivoTps);
+        if (proyecto == null) {
+            System.err.println("No se pudo leer el proyecto: " + archivoTps);
+            return ERROR;
+        }
+
+        String rutaDatos = opciones.getOrDefault("--datos",
+                proyecto.getMetadata() != null ? proyecto.getMetadata().getRutaBBDD() : null);
+        FuenteDatos datos = new DatosVariablesManager().cargar(rutaDatos).orElse(null);
+        if (rutaDatos != null && datos == null) {
+            System.err.println("No se pudo cargar la fuente de datos: " + rutaDatos);
+            return ERROR;
+        }
+
+        // 2. Configuración equivalente a la del diálogo
+        ExportDialog.ExportConfig config;
+        List<Integer> filas;
+        try {
+            config = configuracion(opciones, 0);
+            int total = datos != null ? datos.getTotalRegistros() : 1;
+            filas = ExportDialog.parseRangoFilas(config.rangoFilas(), total);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return USO_INCORRECTO;
+        }
+        if (config.exportarRegistros() && filas.isEmpty()) {
+            System.err.println("Ningún registro válido seleccionado");
+            return USO_INCORRECTO;
+        }
+
+        // 3. Exportación, con progreso por consola y cancelación con Ctrl+C
+        TrabajoExportacion trabajo = new TrabajoExportacion();
+        trabajo.setAlProgresar(TPSStudioCLI::mostrarProgreso);
+        CountDownLatch terminado = new CountDownLatch(1);
+        Thread alCancelar = new Thread(() -> {
+            trabajo.cancelar();
+            // Dar tiempo a que se borre el PDF a medias (o se cierre la parte en curso)
+            try {
+                terminado.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {}
+        });
+        Runtime.getRuntime().addShutdownHook(alCancelar);
+
+        try {
+            List<File> generados = new PDFExportService(proyecto, datos)
+                    .exportarSalidas(config, filas, new File(opciones.get("--salida")), trabajo);
+            System.err.println();
+            if (config.exportarRegistros()) System.out.println(trabajo.getResumen());
+            for (File f : generados) System.out.println(f.getAbsolutePath());
+            return OK;
+        } catch (CancellationException e) {
+            System.err.println();
+            System.err.println("Exportación cancelada");
+            return CANCELADO;
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("Error al exportar: " + e.getMessage());
+            e.printStackTrace();
+            return ERROR;
+        } finally {
+            terminado.countDown();
+            try {
+                Runtime.getRuntime().removeShutdownHook(alCancelar);
+            } catch (IllegalStateException ignored) {
+                // La JVM ya se está cerrando (Ctrl+C): el gancho está en marcha
+            }
+        }
+    }
+
+    /* Modo carpeta caliente: vigila hasta que se detiene el proceso (Ctrl+C o señal) */
+
+    private static int vigilar(Map<String, String> opciones) {
+        List<CarpetaJson> carpetas;
+        try {
+            String json = Files.readString(Path.of(opciones.get("--vigilar")));
+            carpetas = List.of(new Gson().fromJson(json, CarpetaJson[].class));
+        } catch (IOException | JsonParseException e) {
+            System.err.println("No se pudo leer la configuración de carpetas: " + e.getMessage());
+            return ERROR;
+        }
+        if (carpetas.isEmpty()) {
+            System.err.println("No hay carpetas configuradas");
+            return USO_INCORRECTO;
+        }
+
+        List<CarpetasVigiladas.Regla> reglas = new ArrayList<>();
+        int simultaneas;
+        int cola;
+        try {
+            simultaneas = entero(opciones, "--simultaneas", Math.min(carpetas.size(), SIMULTANEAS_MAXIMO_DEFECTO));
+            cola = entero(opciones, "--cola", COLA_DEFECTO);
+            // Los núcleos se reparten entre las exportaciones simultáneas
+            int hilosPorExportacion = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, simultaneas));
+            for (CarpetaJson c : carpetas) {
+                if (c.entrada() == null || c.proyecto() == null || c.salida() == null) {
+                    throw new IllegalArgumentException("Cada carpeta necesita entrada, proyecto y salida");
+                }
+                File tps = new File(c.proyecto());
+                if (!tps.isFile()) throw new IllegalArgumentException("No existe el proyecto: " + tps);
+                Map<String, String> o = leerOpciones(c.opciones() != null
+                        ? c.opciones().toArray(String[]::new) : new String[0]);
+                reglas.add(new CarpetasVigiladas.Regla(Path.of(c.entrada()), tps, Path.of(c.salida()),
+                        configuracion(o, hilosPorExportacion)));
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return USO_INCORRECTO;
+        }
+
+        final CarpetasVigiladas vigiladas;
+        try {
+            vigiladas = new CarpetasVigiladas(reglas, simultaneas, cola);
+        } catch (IOException e) {
+            System.err.println("No se pudieron vigilar las carpetas: " + e.getMessage());
+            return ERROR;
+        }
+        // Solo se cierra en el gancho de apagado: main termina con System.exit, que siempre lo ejecuta
+        Thread principal = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            vigiladas.close();
+            principal.interrupt();
+        }));
+        System.err.println("Vigilando " + reglas.size() + " carpetas (Ctrl+C para detener)");
+        try {
+            vigiladas.ejecutar();
+        } catch (InterruptedException e) {
+            // Ctrl+C: el gancho ya ha cerrado el vigilante
+        }
+        return OK;
+    }
+
+    /* Servicio HTTP de render: atiende peticiones hasta que se detiene el proceso */
+
+    private static int servir(Map<String, String> opciones) {
+        String proyectos = opciones.get("--proyectos");
+        if (proyectos == null || !new File(proyectos).isDirectory()) {
+            System.err.println("Falta --proyectos <carpeta> (carpeta con los proyectos .tps)");
+            return USO_INCORRECTO;
+        }
+        int puerto;
+        int simultaneas;
+        int cola;
+        try {
+            puerto = entero(opciones, "--servir", 0);
+            simultaneas = entero(opciones, "--simultaneas", 1);
+            cola = entero(opciones, "--cola", COLA_DEFECTO);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return USO_INCORRECTO;
+        }
+        Path trabajos = Path.of(opciones.getOrDefault("--trabajos",
+                Path.of(System.getProperty("java.io.tmpdir"), "tps-servidor").toString()));
+
+        ServidorRender servidor;
+        try {
+            servidor = new ServidorRender(puerto, Path.of(proyectos), trabajos, simultaneas, cola);
+        } catch (IOException e) {
+            System.err.println("No se pudo abrir el puerto " + puerto + ": " + e.getMessage());
+            return ERROR;
+        }
+        CountDownLatch detenido = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.close();
+            detenido.countDown();
+        }));
+        servidor.iniciar();
+        System.err.println("Servidor de render en http://127.0.0.1:" + servidor.getPuerto() + " (Ctrl+C para detener)");
+        try {
+            detenido.await();
+        } catch (InterruptedException ignored) {}
+        return OK;
+    }
+
+    /* Traduce las opciones a un ExportConfig, con los mismos valores por defecto que el diálogo
+     * (hilosDefecto = hilos de render si no se indica --hilos; 0 = uno por núcleo) */
+
+    private static ExportDialog.ExportConfig configuracion(Map<String, String> o, int hilosDefecto) {
+        FormatoSecuencia formato = null;
+        if (o.containsKey("--formato")) {
+            formato = switch (o.get("--formato").toLowerCase(Locale.ROOT)) {
+                case "png" -> FormatoSecuencia.PNG;
+                case "tiff", "tif" -> FormatoSecuencia.TIFF;
+                case "pdf" -> null;
+                default -> throw new IllegalArgumentException("Formato no válido: " + o.get("--formato"));
+            };
+        }
+        CodecImagen codec;
+        try {
+            codec = CodecImagen.valueOf(o.getOrDefault("--codec", CodecImagen.SIN_PERDIDA.name())
+                    .toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Códec no válido: " + o.get("--codec"));
+        }
+        int dpi = entero(o, "--dpi", ExportDialog.ExportConfig.DPI_DEFECTO);
+        if (dpi < ExportDialog.ExportConfig.DPI_MINIMO || dpi > ExportDialog.ExportConfig.DPI_MAXIMO) {
+            throw new IllegalArgumentException("DPI fuera de rango (" + ExportDialog.ExportConfig.DPI_MINIMO + "–"
+                    + ExportDialog.ExportConfig.DPI_MAXIMO + "): " + dpi);
+        }
+        int calidad = entero(o, "--calidad", Math.round(ExportDialog.ExportConfig.CALIDAD_JPEG_DEFECTO * 100));
+        int porArchivo = entero(o, "--por-archivo", 0);
+
+        PruebaConfigDialog.PruebaConfig prueba = o.containsKey("--prueba")
+                ? new PruebaConfigDialog.PruebaConfig("TPS Studio", true, true, true, "") : null;
+
+        return new ExportDialog.ExportConfig(
+                !o.containsKey("--sin-registros"),
+                o.getOrDefault("--filas", "TODOS"),
+                !o.containsKey("--solo-anverso"),
+                o.containsKey("--sin-sangre"),
+                prueba,
+                o.containsKey("--imprenta"),
+                entero(o, "--hilos", hilosDefecto),
+                o.containsKey("--vectorial"),
+                entero(o, "--memoria-pdf", ExportDialog.ExportConfig.MEMORIA_PDF_MB_DEFECTO),
+                codec,
+                Math.max(50, Math.min(100, calidad)) / 100f,
+                porArchivo,
+                // Igual que en el diálogo: reanudable solo con un único PDF, reutilizar solo en modo imagen
+                o.containsKey("--reanudable") && porArchivo == 0,
+                o.containsKey("--reutilizar") && !o.containsKey("--vectorial"),
+                formato,
+                o.get("--columna-nombre"),
+                dpi);
+    }
+
+    private static Map<String, String> leerOpciones(String[] args) {
+        Map<String, String> opciones = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-h") || arg.equals("--help")) arg = "--ayuda";
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Argumento inesperado: " + arg);
+
+            if (INTERRUPTORES.contains(arg)) {
+                opciones.put(arg, "");
+            } else if (i + 1 < args.length) {
+                opciones.put(arg, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Falta el valor de " + arg);
+            }
+        }
+        return opciones;
+    }
+
+    private static int entero(Map<String, String> opciones, String clave, int porDefecto) {
+        String valor = opciones.get(clave);
+        if (valor == null) return porDefecto;
+        try {
+            int n = Integer.parseInt(valor.trim());
+            if (n < 0) throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor no válido para " + clave + ": " + valor);
+        }
+    }
+
+    private static void mostrarProgreso(TrabajoExportacion.Progreso p) {
+        String restante = p.segundosRestantes() < 0 ? "--:--"
+                : String.format("%d:%02d", p.segundosRestantes() / 60, p.segundosRestantes() % 60);
+        System.err.printf(Locale.ROOT, "\r%d/%d páginas (%.0f%%) · %.1f pág/s · quedan %s   ",
+                p.paginasHechas(), p.paginasTotales(), p.fraccion() * 100, p.paginasPorSegundo(), restante);
+    }
+}
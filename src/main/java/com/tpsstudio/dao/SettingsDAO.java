@@ -47,4 +47,19 @@ public interface SettingsDAO {
      * Elimina la configuración del editor externo, restaurando el comportamiento predeterminado.
      */
     void clearExternalEditor();
+
+    /**
+     * Número de trabajos de la cola de impresión que se renderizan a la vez.
+     *
+     * @return Trabajadores de la cola (al menos 1).
+     */
+    int getTrabajadoresImpresion();
+
+    /**
+     * Establece el número de trabajos de impresión que se renderizan a la vez.
+     * Se aplica al volver a abrir la aplicación.
+     *
+     * @param trabajadores Número de trabajadores (mínimo 1).
+     */
+    void setTrabajadoresImpresion(int trabajadores);
 }
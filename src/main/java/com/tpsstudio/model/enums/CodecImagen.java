@@ -0,0 +1,40 @@
+package com.tpsstudio.model.enums;
+
+/**
+ * Codificación de la imagen de cada página en la exportación rasterizada.
+ */
+public enum CodecImagen {
+
+    /**
+     * Flate con predictor PNG: sin pérdida y el archivo más pequeño de los
+     * formatos sin pérdida, a cambio de algo más de CPU por página.
+     */
+    SIN_PERDIDA("Sin pérdida (PNG)"),
+
+    /**
+     * Flate sin predictor y compresión rápida: sin pérdida, codifica más rápido
+     * pero ocupa más.
+     */
+    FLATE("Flate rápido"),
+
+    /**
+     * JPEG (DCT) con calidad configurable: archivos mucho más pequeños en
+     * tarjetas con fotografía; suficiente para impresoras de tarjetas.
+     */
+    JPEG("JPEG");
+
+    private final String descripcion;
+
+    CodecImagen(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    @Override
+    public String toString() {
+        return descripcion;
+    }
+}
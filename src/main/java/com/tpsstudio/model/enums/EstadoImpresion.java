@@ -0,0 +1,46 @@
+package com.tpsstudio.model.enums;
+
+/**
+ * Estado de un trabajo en la cola de impresión. Se guarda en disco con el
+ * trabajo, así que la cola sobrevive a un reinicio de la aplicación.
+ */
+public enum EstadoImpresion {
+
+    /** Esperando turno (o esperando para reintentar con la impresora desconectada). */
+    EN_COLA("En cola"),
+
+    /** Generando el PDF del trabajo. */
+    RENDERIZANDO("Renderizando"),
+
+    /** Enviando el documento al spooler de la impresora. */
+    ENVIANDO("Enviando"),
+
+    /** Entregado a la impresora. */
+    HECHO("Hecho"),
+
+    /** Error definitivo: agotados los reintentos o fallo del propio trabajo. */
+    FALLIDO("Fallido"),
+
+    /** Cancelado por el usuario. */
+    CANCELADO("Cancelado");
+
+    private final String descripcion;
+
+    EstadoImpresion(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    /** true si el trabajo ya no va a cambiar de estado. */
+    public boolean isTerminado() {
+        return this == HECHO || this == FALLIDO || this == CANCELADO;
+    }
+
+    @Override
+    public String toString() {
+        return descripcion;
+    }
+}
@@ -0,0 +1,45 @@
+package com.tpsstudio.model.enums;
+
+/**
+ * Formato de imagen de la salida "una imagen por tarjeta y cara", pensada para
+ * impresoras de tarjetas cuyo driver recibe directamente una imagen por cara.
+ */
+public enum FormatoSecuencia {
+
+    /**
+     * PNG sin pérdida con la resolución (pHYs) incrustada.
+     */
+    PNG("PNG por tarjeta", "png", "png"),
+
+    /**
+     * TIFF con compresión LZW y resolución incrustada.
+     */
+    TIFF("TIFF por tarjeta", "tiff", "tif");
+
+    private final String descripcion;
+    private final String formatoImageIO;
+    private final String extension;
+
+    FormatoSecuencia(String descripcion, String formatoImageIO, String extension) {
+        this.descripcion = descripcion;
+        this.formatoImageIO = formatoImageIO;
+        this.extension = extension;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    public String getFormatoImageIO() {
+        return formatoImageIO;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    @Override
+    public String toString() {
+        return descripcion;
+    }
+}
@@ -0,0 +1,39 @@
+package com.tpsstudio.model.enums;
+
+/**
+ * Prioridad de un trabajo en la cola de impresión. Los trabajos salen por
+ * prioridad y, dentro de la misma, por orden de llegada.
+ */
+public enum PrioridadImpresion {
+
+    /**
+     * Reimpresiones urgentes (tarjeta perdida, error en mostrador): pasan
+     * delante de todo lo que esté esperando.
+     */
+    URGENTE("Urgente"),
+
+    /**
+     * Trabajos normales desde el editor.
+     */
+    NORMAL("Normal"),
+
+    /**
+     * Lotes grandes sin prisa: solo salen cuando no hay nada más en espera.
+     */
+    BAJA("Baja");
+
+    private final String descripcion;
+
+    PrioridadImpresion(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    @Override
+    public String toString() {
+        return descripcion;
+    }
+}
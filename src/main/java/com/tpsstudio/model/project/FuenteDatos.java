@@ -2,6 +2,7 @@ package com.tpsstudio.model.project;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +32,10 @@ public class FuenteDatos {
     private final List<Map<String, String>> filas;
     private int indiceActual;
 
+    // Mismos valores en forma de tabla [fila][columna], para el acceso por índice
+    private final String[][] tabla;
+    private final Map<String, Integer> indicesColumna = new HashMap<>();
+
     // Nombre del archivo de origen (solo informativo, para mostrar en UI)
     private final String nombreArchivo;
 
@@ -39,6 +44,17 @@ public class FuenteDatos {
         this.columnas = Collections.unmodifiableList(new ArrayList<>(columnas));
         this.filas = new ArrayList<>(filas);
         this.indiceActual = filas.isEmpty() ? -1 : 0;
+
+        for (int c = 0; c < this.columnas.size(); c++) {
+            indicesColumna.putIfAbsent(this.columnas.get(c), c);
+        }
+        this.tabla = new String[this.filas.size()][];
+        for (int f = 0; f < tabla.length; f++) {
+            Map<String, String> fila = this.filas.get(f);
+            String[] valores = new String[this.columnas.size()];
+            for (int c = 0; c < valores.length; c++) valores[c] = fila.get(this.columnas.get(c));
+            tabla[f] = valores;
+        }
     }
 
     // ── Acceso al registro actual ──────────────────────────────────────────────
@@ -62,6 +78,36 @@ public class FuenteDatos {
         return val != null ? val : "";
     }
 
+    // ── Acceso directo por índice ──────────────────────────────────────────────
+
+    /**
+     * Devuelve el registro de la posición n (0-based) sin mover el cursor de
+     * navegación, o null si n es inválido. Lo usa la exportación para leer
+     * filas desde cualquier hilo sin interferir con la previsualización.
+     */
+    public Map<String, String> getRegistro(int n) {
+        if (n < 0 || n >= filas.size())
+            return null;
+        return Collections.unmodifiableMap(filas.get(n));
+    }
+
+    /** Posición (0-based) de la columna indicada, o -1 si no existe. */
+    public int indiceColumna(String columna) {
+        Integer indice = indicesColumna.get(columna);
+        return indice != null ? indice : -1;
+    }
+
+    /**
+     * Valor de la celda (fila, columna) por índices, sin crear ninguna vista del
+     * registro. Devuelve null si la fila o la columna no existen o la celda está
+     * vacía. Pensado para el render por lotes, que lo llama miles de veces.
+     */
+    public String getValor(int fila, int columna) {
+        if (fila < 0 || fila >= tabla.length || columna < 0 || columna >= tabla[fila].length)
+            return null;
+        return tabla[fila][columna];
+    }
+
     // ── Navegación ──────────────────────────────────────────────────────────────
 
     /** Avanza al registro siguiente. Devuelve true si hubo movimiento. */
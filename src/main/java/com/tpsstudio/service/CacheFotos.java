@@ -0,0 +1,227 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.project.Proyecto;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Caché en disco de fotos variables ya decodificadas y reducidas al tamaño de su hueco.
+ *
+ * <p>Las mismas fotos de plantilla se exportan muchas veces a lo largo de una
+ * temporada (pruebas, reimpresiones, duplicados por pérdida). Cada entrada guarda los
+ * píxeles listos para dibujar, comprimidos sin pérdida, en
+ * {@code <proyecto>/.tps_cache/fotos/}, junto a la carpeta {@code Fotos/}.</p>
+ *
+ * <p>La clave es el hash SHA-256 del <i>contenido</i> del archivo de origen más el
+ * tamaño en píxeles pedido (que ya incorpora los DPI de salida). Si la foto se
+ * sustituye por otra, el hash cambia y la entrada antigua deja de usarse; si solo
+ * se renombra o se copia, se sigue aprovechando. El hash de cada archivo se
+ * recalcula únicamente cuando cambian su tamaño o su fecha de modificación.</p>
+ *
+ * <p>La carpeta está limitada a {@link #TAMAÑO_MAXIMO} bytes: al superarlo se borran
+ * las entradas usadas hace más tiempo (LRU por fecha de último acceso).</p>
+ *
+ * <p>Todos los métodos son seguros desde varios hilos.</p>
+ */
+class CacheFotos {
+
+    private static final Logger log = Logger.getLogger(CacheFotos.class.getName());
+
+    private static final int MAGIA = 0x54505346; // "TPSF"
+    private static final int VERSION = 1;
+
+    /** Tamaño máximo de la carpeta de caché. */
+    static final long TAMAÑO_MAXIMO = 512L * 1024 * 1024;
+    // Tras una purga se deja la carpeta por debajo de este porcentaje del máximo
+    private static final double OBJETIVO_PURGA = 0.8;
+
+    private final File carpeta;
+    private final AtomicLong tamañoActual = new AtomicLong();
+    private final AtomicInteger aciertos = new AtomicInteger();
+    private final AtomicInteger fallos = new AtomicInteger();
+
+    // Hash de contenido por archivo, válido mientras no cambien su tamaño ni su fecha
+    private record HashArchivo(long longitud, long modificado, String hash) {}
+    private final Map<String, HashArchivo> hashes = new ConcurrentHashMap<>();
+
+    private CacheFotos(File carpeta) {
+        this.carpeta = carpeta;
+    }
+
+    /**
+     * Abre la caché de fotos del proyecto, o devuelve {@code null} si el proyecto no
+     * tiene carpeta propia (p. ej. aún no se ha guardado).
+     */
+    static CacheFotos abrir(Proyecto proyecto) {
+        if (proyecto.getMetadata() == null || proyecto.getMetadata().getCarpetaProyecto() == null) return null;
+
+        File carpeta = new File(proyecto.getMetadata().getCarpetaProyecto(), ".tps_cache/fotos");
+        try {
+            Files.createDirectories(carpeta.toPath());
+        } catch (IOException e) {
+            log.warning("No se pudo crear la caché de fotos: " + e.getMessage());
+            return null;
+        }
+        CacheFotos cache = new CacheFotos(carpeta);
+        File[] entradas = carpeta.listFiles((d, n) -> n.endsWith(".foto"));
+        if (entradas != null) {
+            for (File f : entradas) cache.tamañoActual.addAndGet(f.length());
+        }
+        return cache;
+    }
+
+    /** Foto del archivo ya reducida a {@code ancho}×{@code alto}, o {@code null} si no está en caché. */
+    BufferedImage leer(File origen, int ancho, int alto) {
+        String clave = clave(origen, ancho, alto);
+        File f = clave != null ? archivo(clave) : null;
+        if (f == null || !f.isFile()) {
+            fallos.incrementAndGet();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new FileInputStream(f))))) {
+            if (in.readInt() != MAGIA || in.readInt() != VERSION) throw new IOException("formato desconocido");
+            int w = in.readInt();
+            int h = in.readInt();
+            boolean alfa = in.readBoolean();
+
+            BufferedImage img = new BufferedImage(w, h, alfa ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            int[] pixeles = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+            byte[] bytes = new byte[pixeles.length * 4];
+            in.readFully(bytes);
+            ByteBuffer.wrap(bytes).asIntBuffer().get(pixeles);
+
+            // Fecha de último acceso para el LRU
+            f.setLastModified(System.currentTimeMillis());
+            aciertos.incrementAndGet();
+            return img;
+        } catch (IOException | RuntimeException e) {
+            borrarEntrada(f);
+            fallos.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Guarda una foto ya reducida. Un fallo de escritura no interrumpe la exportación. */
+    void guardar(File origen, int ancho, int alto, BufferedImage img) {
+        if (!(img.getRaster().getDataBuffer() instanceof DataBufferInt buffer)) return;
+        String clave = clave(origen, ancho, alto);
+        if (clave == null) return;
+
+        File destino = archivo(clave);
+        File tmp = new File(carpeta, clave + "." + Thread.currentThread().threadId() + ".tmp");
+        int[] pixeles = buffer.getData();
+        ByteBuffer bytes = ByteBuffer.allocate(pixeles.length * 4);
+        bytes.asIntBuffer().put(pixeles);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new DeflaterOutputStream(new FileOutputStream(tmp), new Deflater(Deflater.BEST_SPEED))))) {
+            out.writeInt(MAGIA);
+            out.writeInt(VERSION);
+            out.writeInt(img.getWidth());
+            out.writeInt(img.getHeight());
+            out.writeBoolean(img.getColorModel().hasAlpha());
+            out.write(bytes.array());
+        } catch (IOException e) {
+            tmp.delete();
+            log.warning("No se pudo guardar la foto en caché: " + e.getMessage());
+            return;
+        }
+        try {
+            long anterior = destino.isFile() ? destino.length() : 0;
+            Files.move(tmp.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            if (tamañoActual.addAndGet(destino.length() - anterior) > TAMAÑO_MAXIMO) purgar();
+        } catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    int getAciertos() {
+        return aciertos.get();
+    }
+
+    int getFallos() {
+        return fallos.get();
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    /** Borra las entradas menos usadas hasta dejar la carpeta por debajo del objetivo. */
+    private synchronized void purgar() {
+        if (tamañoActual.get() <= TAMAÑO_MAXIMO) return;
+        File[] entradas = carpeta.listFiles((d, n) -> n.endsWith(".foto"));
+        if (entradas == null) return;
+
+        Arrays.sort(entradas, Comparator.comparingLong(File::lastModified));
+        long objetivo = (long) (TAMAÑO_MAXIMO * OBJETIVO_PURGA);
+        int borradas = 0;
+        for (File f : entradas) {
+            if (tamañoActual.get() <= objetivo) break;
+            borrarEntrada(f);
+            borradas++;
+        }
+        log.info("Caché de fotos: " + borradas + " entradas antiguas eliminadas");
+    }
+
+    private void borrarEntrada(File f) {
+        long longitud = f.length();
+        if (f.delete()) tamañoActual.addAndGet(-longitud);
+    }
+
+    private String clave(File origen, int ancho, int alto) {
+        String hash = hashContenido(origen);
+        return hash != null ? hash.substring(0, 32) + "_" + ancho + "x" + alto : null;
+    }
+
+    private String hashContenido(File origen) {
+        long longitud = origen.length();
+        long modificado = origen.lastModified();
+        HashArchivo conocido = hashes.get(origen.getAbsolutePath());
+        if (conocido != null && conocido.longitud() == longitud && conocido.modificado() == modificado) {
+            return conocido.hash();
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(origen))) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) md.update(buf, 0, n);
+            String hash = HexFormat.of().formatHex(md.digest());
+            hashes.put(origen.getAbsolutePath(), new HashArchivo(longitud, modificado, hash));
+            return hash;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    private File archivo(String clave) {
+        return new File(carpeta, clave + ".foto");
+    }
+}
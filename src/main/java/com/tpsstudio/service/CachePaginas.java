@@ -0,0 +1,143 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.service.CodificadorPagina.PaginaCodificada;
+import org.apache.pdfbox.cos.COSName;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Caché en disco de páginas ya codificadas, para re-exportaciones incrementales.
+ *
+ * <p>Cada página se guarda con su huella (registro + cara + opciones de salida) en
+ * {@code <proyecto>/.tps_cache/paginas/<huella del diseño>/}. Al re-exportar tras
+ * corregir unas pocas filas del Excel, las páginas cuya huella no ha cambiado se
+ * copian al PDF tal cual, sin renderizar ni codificar.</p>
+ *
+ * <p>Al cambiar el diseño cambia la carpeta; las carpetas de diseños anteriores se
+ * borran al abrir la caché, de modo que solo se conserva la del diseño actual.</p>
+ *
+ * <p>Todos los métodos son seguros desde varios hilos.</p>
+ */
+class CachePaginas {
+
+    private static final Logger log = Logger.getLogger(CachePaginas.class.getName());
+
+    private static final int MAGIA = 0x54505350; // "TPSP"
+    private static final int VERSION = 1;
+
+    private final File carpeta;
+    private final AtomicInteger aciertos = new AtomicInteger();
+    private final AtomicInteger fallos = new AtomicInteger();
+
+    private CachePaginas(File carpeta) {
+        this.carpeta = carpeta;
+    }
+
+    /**
+     * Abre la caché del proyecto para el diseño indicado, o devuelve {@code null}
+     * si el proyecto no tiene carpeta propia (p. ej. aún no se ha guardado).
+     */
+    static CachePaginas abrir(Proyecto proyecto, String huellaDiseño) {
+        if (proyecto.getMetadata() == null || proyecto.getMetadata().getCarpetaProyecto() == null) return null;
+
+        File raiz = new File(proyecto.getMetadata().getCarpetaProyecto(), ".tps_cache/paginas");
+        // Nombre corto: suficiente para distinguir versiones del mismo diseño
+        File carpeta = new File(raiz, huellaDiseño.substring(0, 16));
+
+        File[] anteriores = raiz.listFiles(File::isDirectory);
+        if (anteriores != null) {
+            for (File d : anteriores) {
+                if (!d.equals(carpeta)) borrar(d);
+            }
+        }
+        try {
+            Files.createDirectories(carpeta.toPath());
+        } catch (IOException e) {
+            log.warning("No se pudo crear la caché de páginas: " + e.getMessage());
+            return null;
+        }
+        return new CachePaginas(carpeta);
+    }
+
+    /** Página guardada con esa huella, o {@code null} si no está (o está dañada). */
+    PaginaCodificada leer(String huella) {
+        File f = archivo(huella);
+        if (!f.isFile()) {
+            fallos.incrementAndGet();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readInt() != MAGIA || in.readInt() != VERSION) throw new IOException("formato desconocido");
+            int ancho = in.readInt();
+            int alto = in.readInt();
+            COSName filtro = COSName.getPDFName(in.readUTF());
+            boolean predictor = in.readBoolean();
+            byte[] datos = new byte[in.readInt()];
+            in.readFully(datos);
+            aciertos.incrementAndGet();
+            return new PaginaCodificada(ancho, alto, datos, filtro, predictor);
+        } catch (IOException e) {
+            f.delete();
+            fallos.incrementAndGet();
+            return null;
+        }
+    }
+
+    /** Guarda una página. Un fallo de escritura no interrumpe la exportación. */
+    void guardar(String huella, PaginaCodificada pagina) {
+        File destino = archivo(huella);
+        File tmp = new File(carpeta, huella + "." + Thread.currentThread().threadId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIA);
+            out.writeInt(VERSION);
+            out.writeInt(pagina.ancho());
+            out.writeInt(pagina.alto());
+            out.writeUTF(pagina.filtro().getName());
+            out.writeBoolean(pagina.predictorPng());
+            out.writeInt(pagina.datos().length);
+            out.write(pagina.datos());
+        } catch (IOException e) {
+            tmp.delete();
+            log.warning("No se pudo guardar la página en caché: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+        }
+    }
+
+    int getAciertos() {
+        return aciertos.get();
+    }
+
+    int getFallos() {
+        return fallos.get();
+    }
+
+    private File archivo(String huella) {
+        return new File(carpeta, huella + ".pag");
+    }
+
+    private static void borrar(File dir) {
+        File[] archivos = dir.listFiles();
+        if (archivos != null) {
+            for (File f : archivos) f.delete();
+        }
+        dir.delete();
+    }
+}
@@ -0,0 +1,426 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.view.dialogs.ExportDialog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Modo "carpeta caliente": vigila carpetas de entrada y exporta sin intervención
+ * cada archivo de datos (CSV, XLS, XLSX) que aparece en ellas.
+ *
+ * <p>Cada carpeta está asociada a un proyecto {@code .tps}, una carpeta de salida y
+ * una configuración de exportación ({@link Regla}). Por cada archivo nuevo se carga
+ * con {@link DatosVariablesManager}, se exporta con
+ * {@link PDFExportService#exportarSalidas} y se escribe en la salida el PDF (o los
+ * archivos que pida la configuración) más un {@code .log} con el resultado. El archivo
+ * de datos se mueve después a {@code procesados/} o {@code errores/} dentro de su
+ * carpeta de entrada, así que un reinicio nunca lo exporta dos veces. Si no se puede
+ * mover (bloqueado por Excel o el antivirus, sin permisos), se renombra en su sitio con
+ * la extensión {@code .procesado} o {@code .error}; si tampoco se puede, se ignora
+ * mientras no cambien su tamaño ni su fecha. Esos archivos se apuntan en
+ * {@value #ESTADO_IGNORADOS} dentro de la carpeta de entrada, así que tampoco se
+ * vuelven a exportar tras un reinicio.</p>
+ *
+ * <p>La salida de cada archivo se llama {@code <nombre>_<extensión>_<fecha>.pdf} (y
+ * {@code .log}): {@code socios.csv} y {@code socios.xlsx} recogidos en el mismo segundo
+ * no se pisan.</p>
+ *
+ * <p>El {@link WatchService} solo sirve de aviso: en cada aviso (y cada
+ * {@link #INTERVALO_REVISION_MS} como máximo) se revisan todas las carpetas. Un archivo
+ * se considera completo cuando su tamaño y su fecha no cambian durante
+ * {@link #ESTABILIDAD_MS}, para no leer un CSV que aún se está copiando.</p>
+ *
+ * <p><b>Contrapresión:</b> se ejecutan a la vez como mucho {@code simultaneas}
+ * exportaciones y esperan turno otras {@code colaMaxima}. Si llegan más archivos, se
+ * quedan en la carpeta de entrada sin encolar y se recogen en revisiones posteriores,
+ * a medida que se libera hueco: la memoria no crece con el número de archivos.</p>
+ */
+public class CarpetasVigiladas implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(CarpetasVigiladas.class.getName());
+
+    /** Tiempo que un archivo debe permanecer sin cambios para considerarse completo. */
+    static final long ESTABILIDAD_MS = 2_000;
+    /** Revisión periódica de las carpetas aunque no haya avisos del sistema de archivos. */
+    static final long INTERVALO_REVISION_MS = 5_000;
+
+    private static final String PROCESADOS = "procesados";
+    private static final String ERRORES = "errores";
+    // Estado persistente de los archivos ignorados (oculto: no es candidato a exportar)
+    static final String ESTADO_IGNORADOS = ".tps_ignorados";
+    private static final Set<String> EXTENSIONES = Set.of("csv", "xls", "xlsx");
+    private static final DateTimeFormatter SELLO = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    /**
+     * Una carpeta vigilada.
+     *
+     * @param entrada  carpeta donde se dejan los archivos de datos.
+     * @param proyecto archivo {@code .tps}; se vuelve a leer en cada exportación, así que
+     *                 los cambios del diseño se aplican sin reiniciar.
+     * @param salida   carpeta donde se escriben los PDF y sus registros.
+     * @param config   opciones de exportación, como en el diálogo.
+     */
+    public record Regla(Path entrada, File proyecto, Path salida, ExportDialog.ExportConfig config) {}
+
+    /** Tamaño y fecha vistos de un archivo candidato, y desde cuándo no cambian. */
+    private record Observacion(long tamaño, long modificado, long estableDesde) {}
+
+    private final List<Regla> reglas;
+    private final ExecutorService exportadores;
+    private final Semaphore plazas;
+    private final WatchService vigilante;
+
+    private final Map<Path, Observacion> observados = new ConcurrentHashMap<>();
+    private final Set<Path> enCurso = ConcurrentHashMap.newKeySet();
+    // Ya exportados que no se pudieron mover ni renombrar: tamaño y fecha al terminar
+    private final Map<Path, Observacion> ignorados = new ConcurrentHashMap<>();
+    private final Set<TrabajoExportacion> trabajos = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger exportados = new AtomicInteger();
+    private final AtomicInteger fallidos = new AtomicInteger();
+    private volatile boolean cerrado;
+    // Carpeta por la que empieza cada revisión: ninguna acapara las plazas libres
+    private int turno;
+
+    /**
+     * @param simultaneas exportaciones en paralelo (cada una usa sus propios hilos de render).
+     * @param colaMaxima  archivos listos que pueden esperar turno además de los que se exportan.
+     */
+    public CarpetasVigiladas(List<Regla> reglas, int simultaneas, int colaMaxima) throws IOException {
+        this.reglas = List.copyOf(reglas);
+        int hilos = Math.max(1, simultaneas);
+        AtomicInteger contador = new AtomicInteger();
+        this.exportadores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread t = new Thread(r, "tps-carpeta-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.plazas = new Semaphore(hilos + Math.max(0, colaMaxima));
+        this.vigilante = FileSystems.getDefault().newWatchService();
+
+        for (Regla regla : this.reglas) {
+            Files.createDirectories(regla.entrada());
+            Files.createDirectories(regla.salida());
+            regla.entrada().register(vigilante, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            cargarIgnorados(regla.entrada());
+            log.info("Vigilando " + regla.entrada() + " → " + regla.salida() + " (" + regla.proyecto().getName() + ")");
+        }
+    }
+
+    /**
+     * Vigila las carpetas hasta que se llama a {@link #close()} o se interrumpe el hilo.
+     * Los archivos que ya estuvieran en las carpetas al arrancar también se exportan.
+     */
+    public void ejecutar() throws InterruptedException {
+        while (!cerrado) {
+            revisar();
+            try {
+                WatchKey aviso = vigilante.poll(avisoPendiente() ? ESTABILIDAD_MS : INTERVALO_REVISION_MS,
+                        TimeUnit.MILLISECONDS);
+                // Los eventos concretos no importan (ni el OVERFLOW): la revisión lee la carpeta entera
+                if (aviso != null) {
+                    aviso.pollEvents();
+                    aviso.reset();
+                }
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+    /** Deja de vigilar y cancela las exportaciones en curso (sus archivos quedan en la entrada). */
+    @Override
+    public synchronized void close() {
+        if (cerrado) return;
+        cerrado = true;
+        for (TrabajoExportacion t : trabajos) t.cancelar();
+        exportadores.shutdownNow();
+        try {
+            vigilante.close();
+        } catch (IOException ignored) {}
+        log.info("Carpetas vigiladas: " + exportados.get() + " exportados, " + fallidos.get() + " con error");
+    }
+
+    public int getExportados() {
+        return exportados.get();
+    }
+
+    public int getFallidos() {
+        return fallidos.get();
+    }
+
+    // ──────────────────────────── revisión ────────────────────────────
+
+    /** true si hay archivos a la espera de estabilizarse: conviene revisar pronto. */
+    private boolean avisoPendiente() {
+        return !observados.isEmpty();
+    }
+
+    /** Recorre todas las carpetas y encola los archivos completos mientras haya plaza. */
+    private void revisar() {
+        long ahora = System.currentTimeMillis();
+        Set<Path> vistos = new HashSet<>();
+        Set<Path> leidas = new HashSet<>();
+
+        turno = (turno + 1) % reglas.size();
+        for (int i = 0; i < reglas.size(); i++) {
+            Regla regla = reglas.get((turno + i) % reglas.size());
+            try (DirectoryStream<Path> archivos = Files.newDirectoryStream(regla.entrada(), this::esCandidato)) {
+                for (Path archivo : archivos) {
+                    vistos.add(archivo);
+                    if (enCurso.contains(archivo) || ignorado(archivo) || !estable(archivo, ahora)) continue;
+                    // Sin plaza: el archivo espera en la carpeta hasta la próxima revisión
+                    if (!plazas.tryAcquire()) return;
+                    enCurso.add(archivo);
+                    observados.remove(archivo);
+                    try {
+                        exportadores.execute(() -> procesar(regla, archivo));
+                    } catch (RuntimeException e) {
+                        // Pool cerrado: vigilante detenido
+                        enCurso.remove(archivo);
+                        plazas.release();
+                        return;
+                    }
+                }
+                leidas.add(regla.entrada());
+            } catch (IOException e) {
+                log.warning("No se pudo leer la carpeta " + regla.entrada() + ": " + e.getMessage());
+            }
+        }
+        // Olvidar archivos que han desaparecido antes de completarse
+        observados.keySet().retainAll(vistos);
+        // (de los ignorados, solo en carpetas leídas: un fallo de lectura no borra el estado)
+        if (ignorados.keySet().removeIf(a -> !vistos.contains(a) && leidas.contains(a.getParent()))) {
+            for (Path entrada : leidas) guardarIgnorados(entrada);
+        }
+    }
+
+    /** true si el archivo ya se exportó y sigue igual (no se pudo sacar de la entrada). */
+    private boolean ignorado(Path archivo) {
+        Observacion visto = ignorados.get(archivo);
+        if (visto == null) return false;
+        try {
+            if (Files.size(archivo) == visto.tamaño()
+                    && Files.getLastModifiedTime(archivo).toMillis() == visto.modificado()) {
+                return true;
+            }
+        } catch (IOException e) {
+            return true;
+        }
+        // Es otro archivo con el mismo nombre: se exporta
+        ignorados.remove(archivo);
+        guardarIgnorados(archivo.getParent());
+        return false;
+    }
+
+    private boolean esCandidato(Path archivo) {
+        String nombre = archivo.getFileName().toString();
+        // Ocultos y bloqueos de Office (~$datos.xlsx)
+        if (nombre.startsWith(".") || nombre.startsWith("~$") || !Files.isRegularFile(archivo)) return false;
+        int punto = nombre.lastIndexOf('.');
+        return punto > 0 && EXTENSIONES.contains(nombre.substring(punto + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /** true si el archivo lleva {@link #ESTABILIDAD_MS} sin cambiar de tamaño ni de fecha. */
+    private boolean estable(Path archivo, long ahora) {
+        long tamaño;
+        long modificado;
+        try {
+            tamaño = Files.size(archivo);
+            modificado = Files.getLastModifiedTime(archivo).toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+        Observacion anterior = observados.get(archivo);
+        if (anterior == null || anterior.tamaño() != tamaño || anterior.modificado() != modificado) {
+            observados.put(archivo, new Observacion(tamaño, modificado, ahora));
+            return false;
+        }
+        return tamaño > 0 && ahora - anterior.estableDesde() >= ESTABILIDAD_MS;
+    }
+
+    // ──────────────────────────── exportación ────────────────────────────
+
+    private void procesar(Regla regla, Path archivo) {
+        String nombre = archivo.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        // Con la extensión: socios.csv y socios.xlsx no comparten PDF ni .log
+        String base = nombre.substring(0, punto) + "_" + nombre.substring(punto + 1).toLowerCase(Locale.ROOT)
+                + "_" + LocalDateTime.now().format(SELLO);
+        File destino = regla.salida().resolve(base + ".pdf").toFile();
+        File registro = regla.salida().resolve(base + ".log").toFile();
+
+        TrabajoExportacion trabajo = new TrabajoExportacion();
+        trabajos.add(trabajo);
+        StringBuilder informe = new StringBuilder();
+        informe.append("Archivo:  ").append(archivo).append('\n')
+                .append("Proyecto: ").append(regla.proyecto()).append('\n')
+                .append("Inicio:   ").append(LocalDateTime.now()).append('\n');
+        boolean correcto = false;
+        try {
+            Proyecto proyecto = new ProyectoFileManager(false).cargarProyecto(regla.proyecto());
+            if (proyecto == null) throw new IOException("No se pudo leer el proyecto " + regla.proyecto());
+            FuenteDatos datos = new DatosVariablesManager().cargar(archivo.toString())
+                    .orElseThrow(() -> new IOException("No se pudo leer el archivo de datos"));
+
+            ExportDialog.ExportConfig config = regla.config();
+            List<Integer> filas = ExportDialog.parseRangoFilas(config.rangoFilas(), datos.getTotalRegistros());
+            if (config.exportarRegistros() && filas.isEmpty()) {
+                throw new IllegalArgumentException("El archivo no tiene registros que exportar");
+            }
+            informe.append("Registros: ").append(filas.size()).append('\n');
+
+            List<File> generados = new PDFExportService(proyecto, datos)
+                    .exportarSalidas(config, filas, destino, trabajo);
+            informe.append("Fin:      ").append(LocalDateTime.now()).append('\n');
+            if (config.exportarRegistros()) informe.append(trabajo.getResumen()).append('\n');
+            informe.append("Generados:\n");
+            for (File f : generados) informe.append("  ").append(f.getAbsolutePath()).append('\n');
+            correcto = true;
+        } catch (Exception e) {
+            StringWriter traza = new StringWriter();
+            e.printStackTrace(new PrintWriter(traza));
+            informe.append("ERROR: ").append(e.getMessage()).append('\n').append(traza);
+        } finally {
+            trabajos.remove(trabajo);
+        }
+
+        try {
+            // Cancelada al cerrar: el archivo se queda en la entrada para la próxima vez
+            if (!trabajo.isCancelado()) {
+                try {
+                    Files.writeString(registro.toPath(), informe, StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    log.warning("No se pudo escribir " + registro + ": " + e.getMessage());
+                }
+                retirar(archivo, regla.entrada().resolve(correcto ? PROCESADOS : ERRORES),
+                        correcto ? ".procesado" : ".error");
+                (correcto ? exportados : fallidos).incrementAndGet();
+                if (correcto) {
+                    log.info("Exportado " + archivo + " → " + destino.getName());
+                } else {
+                    log.warning("Error al exportar " + archivo + " (ver " + registro.getName() + ")");
+                }
+            }
+        } finally {
+            enCurso.remove(archivo);
+            plazas.release();
+        }
+    }
+
+    /**
+     * Saca de la entrada un archivo ya exportado para que no se vuelva a recoger: lo mueve
+     * a {@code carpeta}, o si no se puede lo renombra en su sitio con {@code sufijo}, o si
+     * tampoco, lo apunta en {@link #ignorados} (y en {@value #ESTADO_IGNORADOS}) con su
+     * tamaño y fecha actuales.
+     */
+    private void retirar(Path archivo, Path carpeta, String sufijo) {
+        try {
+            mover(archivo, carpeta);
+            return;
+        } catch (IOException e) {
+            log.warning("No se pudo mover " + archivo + " a " + carpeta + ": " + e.getMessage());
+        }
+        try {
+            Files.move(archivo, archivo.resolveSibling(archivo.getFileName() + sufijo));
+            return;
+        } catch (IOException e) {
+            log.warning("No se pudo renombrar " + archivo + "; se ignorará mientras no cambie: " + e.getMessage());
+        }
+        try {
+            ignorados.put(archivo, new Observacion(Files.size(archivo),
+                    Files.getLastModifiedTime(archivo).toMillis(), System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Ya no está en la entrada: nada que ignorar
+            return;
+        }
+        guardarIgnorados(archivo.getParent());
+    }
+
+    // ──────────────────────────── estado ────────────────────────────
+
+    /**
+     * Lee los archivos ignorados de una carpeta de entrada. Una línea por archivo:
+     * {@code tamaño;fecha;nombre} (el nombre al final, puede contener ';').
+     */
+    private void cargarIgnorados(Path entrada) {
+        Path estado = entrada.resolve(ESTADO_IGNORADOS);
+        if (!Files.isRegularFile(estado)) return;
+        try {
+            for (String linea : Files.readAllLines(estado, StandardCharsets.UTF_8)) {
+                String[] campos = linea.split(";", 3);
+                if (campos.length < 3 || campos[2].isBlank()) continue;
+                try {
+                    ignorados.put(entrada.resolve(campos[2]), new Observacion(Long.parseLong(campos[0]),
+                            Long.parseLong(campos[1]), 0));
+                } catch (NumberFormatException e) {
+                    // Línea dañada: ese archivo se volverá a exportar
+                }
+            }
+        } catch (IOException e) {
+            log.warning("No se pudo leer " + estado + ": " + e.getMessage());
+        }
+    }
+
+    /** Reescribe el estado de una carpeta (temporal + renombrado); sin ignorados lo borra. */
+    private synchronized void guardarIgnorados(Path entrada) {
+        Path estado = entrada.resolve(ESTADO_IGNORADOS);
+        StringBuilder sb = new StringBuilder();
+        ignorados.forEach((archivo, visto) -> {
+            if (entrada.equals(archivo.getParent())) {
+                sb.append(visto.tamaño()).append(';').append(visto.modificado()).append(';')
+                        .append(archivo.getFileName()).append('\n');
+            }
+        });
+        try {
+            if (sb.isEmpty()) {
+                Files.deleteIfExists(estado);
+                return;
+            }
+            Path tmp = estado.resolveSibling(ESTADO_IGNORADOS + ".tmp");
+            Files.writeString(tmp, sb, StandardCharsets.UTF_8);
+            Files.move(tmp, estado, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warning("No se pudo guardar " + estado + ": " + e.getMessage());
+        }
+    }
+
+    /** Mueve el archivo a la subcarpeta indicada, con sello de hora si ya existe otro igual. */
+    private static void mover(Path archivo, Path carpeta) throws IOException {
+        Files.createDirectories(carpeta);
+        Path destino = carpeta.resolve(archivo.getFileName());
+        if (Files.exists(destino)) {
+            destino = carpeta.resolve(LocalDateTime.now().format(SELLO) + "_" + archivo.getFileName());
+        }
+        Files.move(archivo, destino, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,237 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.enums.CodecImagen;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Codifica las páginas renderizadas en el flujo comprimido que va dentro del PDF.
+ *
+ * <p>A diferencia de {@code LosslessFactory.createFromImage(pdf, img)}, la
+ * compresión no necesita el {@link PDDocument}: produce un {@link PaginaCodificada}
+ * autónomo que puede generarse en cualquier hilo del pipeline. El documento solo
+ * se toca al final, en {@link #aXObject}, desde el hilo de ensamblado.</p>
+ *
+ * <p>Los códecs Flate leen los píxeles directamente del {@code int[]} del raster que
+ * produce {@link RenderizadorTarjeta} ({@code TYPE_INT_RGB}) y escriben RGB de 8 bits
+ * al compresor fila a fila: sin copias intermedias de la imagen, sin conversión por
+ * {@code ColorModel} y sin canal alfa.</p>
+ *
+ * <p>Formatos disponibles ({@link CodecImagen}):</p>
+ * <ul>
+ *   <li>{@code SIN_PERDIDA} — RGB + Flate con predictor PNG "Up", equivalente en
+ *       tamaño a {@code LosslessFactory}.</li>
+ *   <li>{@code FLATE} — RGB + Flate sin predictor y compresión rápida.</li>
+ *   <li>{@code JPEG} — DCT con la calidad indicada (0.0 – 1.0).</li>
+ * </ul>
+ */
+public final class CodificadorPagina {
+
+    // Predictor PNG en DecodeParms: 15 = el filtro va indicado al inicio de cada fila
+    private static final int PREDICTOR_PNG = 15;
+    private static final int FILTRO_PNG_UP = 2;
+
+    private CodificadorPagina() {}
+
+    /**
+     * Página ya comprimida, lista para incrustarse como image XObject.
+     * {@code predictorPng} indica que las filas llevan filtro PNG (requiere DecodeParms).
+     */
+    public record PaginaCodificada(int ancho, int alto, byte[] datos, COSName filtro, boolean predictorPng) {}
+
+    /** Comprime una imagen RGB con Flate (sin pérdida). Seguro desde cualquier hilo. */
+    public static PaginaCodificada codificar(BufferedImage imagen) throws IOException {
+        return codificar(imagen, CodecImagen.FLATE, 1f);
+    }
+
+    /**
+     * Comprime una imagen RGB con el códec indicado. Seguro desde cualquier hilo.
+     *
+     * @param calidad calidad JPEG entre 0.0 y 1.0; se ignora en los códecs sin pérdida.
+     */
+    public static PaginaCodificada codificar(BufferedImage imagen, CodecImagen codec, float calidad)
+            throws IOException {
+        return switch (codec) {
+            case SIN_PERDIDA -> flate(imagen, Deflater.DEFAULT_COMPRESSION, true);
+            case FLATE -> flate(imagen, Deflater.BEST_SPEED, false);
+            case JPEG -> jpeg(imagen, calidad);
+        };
+    }
+
+    /**
+     * Crea el image XObject a partir del flujo ya comprimido (sin recomprimir).
+     * Debe llamarse desde el hilo que posee el documento.
+     */
+    public static PDImageXObject aXObject(PDDocument pdf, PaginaCodificada pagina) throws IOException {
+        PDImageXObject xo = new PDImageXObject(pdf, new ByteArrayInputStream(pagina.datos()), pagina.filtro(),
+                pagina.ancho(), pagina.alto(), 8, PDDeviceRGB.INSTANCE);
+        if (pagina.predictorPng()) {
+            COSDictionary parametros = new COSDictionary();
+            parametros.setInt(COSName.PREDICTOR, PREDICTOR_PNG);
+            parametros.setInt(COSName.COLORS, 3);
+            parametros.setInt(COSName.BITS_PER_COMPONENT, 8);
+            parametros.setInt(COSName.COLUMNS, pagina.ancho());
+            xo.getCOSObject().setItem(COSName.DECODE_PARMS, parametros);
+        }
+        return xo;
+    }
+
+    // ──────────────────────────── códecs ────────────────────────────
+
+    private static PaginaCodificada flate(BufferedImage imagen, int nivel, boolean predictor) throws IOException {
+        FlujoFlate flujo = new FlujoFlate(imagen.getWidth(), imagen.getHeight(), nivel, predictor);
+        flujo.añadir(imagen);
+        return flujo.terminar();
+    }
+
+    /**
+     * Codificador Flate incremental para páginas renderizadas por franjas: recibe las
+     * franjas horizontales de arriba abajo y las comprime en un único flujo RGB, sin
+     * reunir nunca la página completa en memoria. El predictor "Up" enlaza cada franja
+     * con la última fila de la anterior, así que el resultado es idéntico al de
+     * codificar la página entera de una vez.
+     *
+     * <p>Una instancia por página; no es seguro compartirla entre hilos.</p>
+     */
+    static final class FlujoFlate {
+
+        private final int ancho;
+        private final int alto;
+        private final boolean predictor;
+        private final ByteArrayOutputStream salida;
+        private final Deflater deflater;
+        private final DeflaterOutputStream dos;
+
+        private byte[] rgb;
+        private byte[] anterior;
+        private final byte[] filtrada;
+        private int filasEscritas;
+
+        /** Comprime con el nivel y predictor del códec indicado (solo códecs sin pérdida). */
+        FlujoFlate(int ancho, int alto, CodecImagen codec) {
+            this(ancho, alto, codec == CodecImagen.FLATE ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION,
+                    codec != CodecImagen.FLATE);
+        }
+
+        private FlujoFlate(int ancho, int alto, int nivel, boolean predictor) {
+            this.ancho = ancho;
+            this.alto = alto;
+            this.predictor = predictor;
+            this.salida = new ByteArrayOutputStream(ancho * Math.max(1, alto / 4));
+            this.deflater = new Deflater(nivel);
+            this.dos = new DeflaterOutputStream(salida, deflater, 64 * 1024);
+            this.rgb = new byte[ancho * 3];
+            this.anterior = new byte[ancho * 3];
+            this.filtrada = new byte[ancho * 3 + 1];
+            this.filtrada[0] = FILTRO_PNG_UP;
+        }
+
+        /** Añade la siguiente franja (mismo ancho que la página) debajo de las anteriores. */
+        void añadir(BufferedImage franja) throws IOException {
+            if (franja.getWidth() != ancho || filasEscritas + franja.getHeight() > alto) {
+                throw new IllegalArgumentException("La franja no encaja en la página");
+            }
+            // Acceso directo al buffer de píxeles si es RGB empaquetado en int (el caso del renderizador)
+            PixelesEmpaquetados directo = pixelesEmpaquetados(franja);
+            int[] fila = directo == null ? new int[ancho] : null;
+
+            for (int y = 0; y < franja.getHeight(); y++) {
+                int[] origen;
+                int inicio;
+                if (directo != null) {
+                    origen = directo.datos();
+                    inicio = directo.desplazamiento() + y * directo.paso();
+                } else {
+                    franja.getRGB(0, y, ancho, 1, fila, 0, ancho);
+                    origen = fila;
+                    inicio = 0;
+                }
+                // El byte alto (alfa o relleno) se descarta: el PDF recibe solo RGB
+                for (int x = 0, j = 0; x < ancho; x++) {
+                    int p = origen[inicio + x];
+                    rgb[j++] = (byte) (p >> 16);
+                    rgb[j++] = (byte) (p >> 8);
+                    rgb[j++] = (byte) p;
+                }
+                if (predictor) {
+                    // "Up": cada byte menos el de la fila anterior (las zonas lisas quedan a cero)
+                    for (int j = 0; j < rgb.length; j++) {
+                        filtrada[j + 1] = (byte) (rgb[j] - anterior[j]);
+                    }
+                    dos.write(filtrada);
+                    byte[] t = anterior; anterior = rgb; rgb = t;
+                } else {
+                    dos.write(rgb);
+                }
+            }
+            filasEscritas += franja.getHeight();
+        }
+
+        /** Cierra el flujo y devuelve la página codificada. */
+        PaginaCodificada terminar() throws IOException {
+            try {
+                dos.close();
+            } finally {
+                deflater.end();
+            }
+            if (filasEscritas != alto) throw new IllegalStateException("Faltan filas: " + filasEscritas + "/" + alto);
+            return new PaginaCodificada(ancho, alto, salida.toByteArray(), COSName.FLATE_DECODE, predictor);
+        }
+    }
+
+    /** Vista del {@code int[]} de un raster RGB empaquetado (0x00RRGGBB por píxel). */
+    private record PixelesEmpaquetados(int[] datos, int desplazamiento, int paso) {}
+
+    /**
+     * Devuelve el buffer de píxeles de la imagen si puede leerse sin conversión
+     * ({@code TYPE_INT_RGB} o {@code TYPE_INT_ARGB} no premultiplicado, un único
+     * banco), o null para cualquier otro formato.
+     */
+    private static PixelesEmpaquetados pixelesEmpaquetados(BufferedImage imagen) {
+        int tipo = imagen.getType();
+        if (tipo != BufferedImage.TYPE_INT_RGB && tipo != BufferedImage.TYPE_INT_ARGB) return null;
+        WritableRaster raster = imagen.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt buffer) || buffer.getNumBanks() != 1) return null;
+        if (!(raster.getSampleModel() instanceof SinglePixelPackedSampleModel modelo)) return null;
+
+        // Rasters hijos (getSubimage) empiezan desplazados dentro del buffer del padre
+        int desplazamiento = buffer.getOffset()
+                - raster.getSampleModelTranslateY() * modelo.getScanlineStride()
+                - raster.getSampleModelTranslateX();
+        return new PixelesEmpaquetados(buffer.getData(), desplazamiento, modelo.getScanlineStride());
+    }
+
+    private static PaginaCodificada jpeg(BufferedImage imagen, float calidad) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(imagen.getWidth() * imagen.getHeight() / 4);
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(salida)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(Math.max(0f, Math.min(1f, calidad)));
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(imagen, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return new PaginaCodificada(imagen.getWidth(), imagen.getHeight(), salida.toByteArray(),
+                COSName.DCT_DECODE, false);
+    }
+}
@@ -0,0 +1,100 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.enums.FormatoSecuencia;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+/**
+ * Escribe la imagen de una tarjeta como archivo PNG o TIFF independiente, con la
+ * resolución de exportación incrustada (pHYs en PNG, X/YResolution en TIFF) para
+ * que el driver de la impresora de tarjetas la imprima a tamaño CR80 exacto.
+ *
+ * <p>Sin estado: puede llamarse desde varios hilos a la vez.</p>
+ */
+final class CodificadorSecuencia {
+
+    private CodificadorSecuencia() {}
+
+    /**
+     * Codifica y escribe la imagen. Se escribe primero a un temporal y se renombra,
+     * para no dejar nunca un archivo a medias con el nombre definitivo.
+     */
+    static void escribir(BufferedImage imagen, FormatoSecuencia formato, double dpi, File destino)
+            throws IOException {
+        File tmp = new File(destino.getPath() + ".tmp");
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()))) {
+            escribir(imagen, formato, dpi, salida);
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Codifica la imagen en el flujo indicado (no lo cierra). La caché del flujo va en
+     * memoria: la de disco que ImageIO usa por defecto añade un temporal por imagen.
+     */
+    static void escribir(BufferedImage imagen, FormatoSecuencia formato, double dpi, OutputStream destino)
+            throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formato.getFormatoImageIO());
+        if (!writers.hasNext()) {
+            throw new IOException("No hay codificador " + formato.getFormatoImageIO() + " disponible");
+        }
+        ImageWriter writer = writers.next();
+
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(destino)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (formato == FormatoSecuencia.TIFF && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionType("LZW");
+            }
+
+            IIOMetadata metadata = writer.getDefaultImageMetadata(
+                    ImageTypeSpecifier.createFromRenderedImage(imagen), param);
+            incrustarResolucion(metadata, dpi);
+
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(imagen, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /** Resolución en el formato estándar de ImageIO (milímetros por píxel). */
+    private static void incrustarResolucion(IIOMetadata metadata, double dpi) throws IIOInvalidTreeException {
+        if (metadata == null || !metadata.isStandardMetadataFormatSupported()) return;
+
+        String mmPorPixel = Double.toString(25.4 / dpi);
+        IIOMetadataNode horizontal = new IIOMetadataNode("HorizontalPixelSize");
+        horizontal.setAttribute("value", mmPorPixel);
+        IIOMetadataNode vertical = new IIOMetadataNode("VerticalPixelSize");
+        vertical.setAttribute("value", mmPorPixel);
+
+        IIOMetadataNode dimension = new IIOMetadataNode("Dimension");
+        dimension.appendChild(horizontal);
+        dimension.appendChild(vertical);
+
+        IIOMetadataNode raiz = new IIOMetadataNode(IIOMetadataFormatImpl.standardMetadataFormatName);
+        raiz.appendChild(dimension);
+        metadata.mergeTree(IIOMetadataFormatImpl.standardMetadataFormatName, raiz);
+    }
+}
@@ -0,0 +1,578 @@
+package com.tpsstudio.service;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.tpsstudio.model.enums.EstadoImpresion;
+import com.tpsstudio.model.enums.PrioridadImpresion;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Cola de impresión persistente con prioridades y varios trabajadores.
+ *
+ * <p>Cada {@link TrabajoImpresion} pasa por {@link EstadoImpresion#EN_COLA},
+ * {@code RENDERIZANDO} (generación del PDF con {@link ImpresionService#generarPdf}),
+ * {@code ENVIANDO} (entrega a la {@link SalidaImpresion}) y termina en {@code HECHO},
+ * {@code FALLIDO} o {@code CANCELADO}. Con una impresora física no hay PDF: las tarjetas
+ * se renderizan mientras se envían ({@link ImpresionService#imprimirDirecto}) y el
+ * trabajo pasa directamente a {@code ENVIANDO}. La cola se guarda en disco en cada cambio de
+ * estado, así que los trabajos pendientes continúan al volver a abrir la aplicación.</p>
+ *
+ * <p>Al encolar se guarda una copia del diseño junto a la cola
+ * ({@code cola_impresion_diseños/<id>.tps}) y el trabajo imprime siempre esa copia: los
+ * cambios que se hagan en el editor después de pulsar Imprimir no le afectan, ni en la
+ * misma sesión ni tras un reinicio.</p>
+ *
+ * <ul>
+ *   <li><b>Prioridad:</b> los trabajos salen por {@link PrioridadImpresion} y, dentro
+ *       de la misma, por orden de llegada; una reimpresión urgente adelanta a todo lo
+ *       que espera (no interrumpe lo que ya se está renderizando).</li>
+ *   <li><b>Trabajadores:</b> varios trabajos pueden renderizarse a la vez, pero el envío
+ *       a una misma impresora es de uno en uno para que no se intercalen las tarjetas.
+ *       Un trabajo repartido entre varias impresoras ({@link SalidaGrupoImpresoras})
+ *       las reserva todas mientras dura.</li>
+ *   <li><b>Reintentos:</b> si la impresora no está disponible
+ *       ({@link ImpresoraNoDisponibleException}, antes de que llegue ninguna página) el
+ *       trabajo vuelve a la cola con espera creciente, hasta {@link #MAX_INTENTOS} envíos.</li>
+ * </ul>
+ *
+ * <p>Un trabajo interrumpido durante el envío (cierre de la aplicación) no se reenvía
+ * solo al arrancar: puede que parte de las tarjetas ya se hayan impreso. Queda como
+ * fallido y se puede reintentar a mano con {@link #reintentar(String)}.</p>
+ */
+public class ColaImpresion implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(ColaImpresion.class.getName());
+
+    private static ColaImpresion instance;
+
+    private static final String APP_DIR = ".tpsstudio";
+    private static final String ARCHIVO_COLA = "cola_impresion.json";
+    // Copias del diseño de cada trabajo, junto al archivo de la cola
+    private static final String CARPETA_DISEÑOS = "cola_impresion_diseños";
+
+    // Envíos con la impresora desconectada antes de dar el trabajo por fallido
+    public static final int MAX_INTENTOS = 8;
+    // Espera antes del primer reintento; se duplica en cada uno hasta el máximo
+    private static final long ESPERA_REINTENTO_MS = 15_000;
+    private static final long ESPERA_REINTENTO_MAXIMA_MS = 5 * 60_000;
+
+    // Trabajos terminados que se conservan como historial
+    private static final int HISTORIAL_MAXIMO = 100;
+
+    /** Trabajo en la cola. Los campos {@code transient} solo existen en la sesión actual. */
+    public static final class Entrada {
+        private String id;
+        private TrabajoImpresion trabajo;
+        private String nombreProyecto;
+        private String rutaProyecto;
+        private String rutaDatos;
+        // Copia del diseño en el momento de encolar (null en trabajos de versiones anteriores)
+        private String archivoDiseño;
+        private long secuencia;
+        private long creado;
+        private EstadoImpresion estado;
+        private int intentos;
+        private long reintentarDesde;
+        private String archivoPdf;
+        private String error;
+
+        private transient Proyecto proyecto;
+        private transient FuenteDatos fuenteDatos;
+        // Datos recibidos al encolar en esta sesión (null incluido): no se leen de disco
+        private transient boolean datosEnSesion;
+        private transient TrabajoExportacion control = new TrabajoExportacion();
+        // Distingue la cancelación del usuario de la del cierre de la aplicación
+        private transient boolean canceladoPorUsuario;
+
+        public String getId() {
+            return id;
+        }
+
+        public TrabajoImpresion getTrabajo() {
+            return trabajo;
+        }
+
+        public String getNombreProyecto() {
+            return nombreProyecto;
+        }
+
+        public PrioridadImpresion getPrioridad() {
+            return trabajo.prioridad() != null ? trabajo.prioridad() : PrioridadImpresion.NORMAL;
+        }
+
+        public EstadoImpresion getEstado() {
+            return estado;
+        }
+
+        public int getIntentos() {
+            return intentos;
+        }
+
+        /** Mensaje del último error (también del último reintento), o null. */
+        public String getError() {
+            return error;
+        }
+
+        /** Progreso y cancelación de la generación del PDF. */
+        public TrabajoExportacion getControl() {
+            return control;
+        }
+    }
+
+    // Orden de salida: prioridad y, a igual prioridad, orden de llegada
+    private static final Comparator<Entrada> ORDEN = Comparator
+            .comparing(Entrada::getPrioridad)
+            .thenComparingLong(e -> e.secuencia);
+
+    private final Path archivo;
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final ImpresionService impresion;
+    private final List<Thread> trabajadores = new ArrayList<>();
+    private final Map<String, Object> bloqueosImpresora = new ConcurrentHashMap<>();
+
+    // Todas las entradas (pendientes e historial), en orden de llegada; protegidas por this
+    private final Map<String, Entrada> entradas = new LinkedHashMap<>();
+    private long siguienteSecuencia;
+    private boolean cerrada;
+
+    private volatile Consumer<Entrada> alCambiar;
+
+    /**
+     * Cola de la aplicación (una sola aunque se cierre y abra sesión), guardada en
+     * {@link #archivoPorDefecto()} y con los trabajadores de {@link SettingsManager}.
+     */
+    public static synchronized ColaImpresion getInstance() {
+        if (instance == null) {
+            instance = new ColaImpresion(archivoPorDefecto(), new SettingsManager().getTrabajadoresImpresion());
+        }
+        return instance;
+    }
+
+    /** Cierra la cola de la aplicación si llegó a crearse (al salir). */
+    public static synchronized void cerrarInstancia() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /** Ruta por defecto de la cola, junto al resto de datos locales de la aplicación. */
+    public static Path archivoPorDefecto() {
+        return Paths.get(System.getProperty("user.home"), APP_DIR, ARCHIVO_COLA);
+    }
+
+    /**
+     * Carga la cola guardada. Los trabajos pendientes de la sesión anterior continúan
+     * al llamar a {@link #iniciar()}.
+     *
+     * @param archivo JSON donde se guarda la cola.
+     * @param hilos   trabajos que pueden renderizarse a la vez. Los núcleos se reparten
+     *                entre ellos: con dos trabajadores, cada trabajo usa la mitad.
+     */
+    public ColaImpresion(Path archivo, int hilos) {
+        this.archivo = archivo;
+        this.impresion = new ImpresionService(
+                Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, hilos)));
+        cargar();
+        for (int i = 1; i <= Math.max(1, hilos); i++) {
+            Thread t = new Thread(this::trabajar, "tps-impresion-" + i);
+            t.setDaemon(true);
+            trabajadores.add(t);
+        }
+    }
+
+    /** Arranca los trabajadores (después de registrar {@link #setAlCambiar}). */
+    public synchronized void iniciar() {
+        for (Thread t : trabajadores) {
+            if (t.getState() == Thread.State.NEW) t.start();
+        }
+    }
+
+    /** Callback para cada cambio de estado. Se invoca desde los hilos de la cola. */
+    public void setAlCambiar(Consumer<Entrada> alCambiar) {
+        this.alCambiar = alCambiar;
+    }
+
+    /**
+     * Añade un trabajo a la cola.
+     *
+     * @param proyecto    proyecto a imprimir. Se copia su diseño en este momento, así que
+     *                    hay que llamar desde el hilo que lo edita (el de JavaFX).
+     * @param fuenteDatos datos variables; puede ser {@code null}.
+     * @return la entrada creada, ya en estado {@code EN_COLA}.
+     * @throws IOException si no se puede guardar la copia del diseño.
+     */
+    public synchronized Entrada encolar(TrabajoImpresion trabajo, Proyecto proyecto, FuenteDatos fuenteDatos)
+            throws IOException {
+        if (cerrada) throw new IllegalStateException("La cola de impresión está cerrada");
+        Entrada e = new Entrada();
+        e.id = UUID.randomUUID().toString();
+        Path diseño = archivo.resolveSibling(CARPETA_DISEÑOS).resolve(e.id + ".tps");
+        new ProyectoFileManager(false).guardarInstantanea(proyecto, diseño);
+        e.archivoDiseño = diseño.toString();
+        e.trabajo = trabajo;
+        e.nombreProyecto = proyecto.getNombre();
+        if (proyecto.getMetadata() != null) {
+            e.rutaProyecto = proyecto.getMetadata().getRutaTPS();
+            e.rutaDatos = proyecto.getMetadata().getRutaBBDD();
+        }
+        e.secuencia = siguienteSecuencia++;
+        e.creado = System.currentTimeMillis();
+        e.estado = EstadoImpresion.EN_COLA;
+        e.fuenteDatos = fuenteDatos;
+        e.datosEnSesion = true;
+        entradas.put(e.id, e);
+        guardar();
+        notifyAll();
+        log.info("Trabajo de impresión en cola: " + e.nombreProyecto + " (" + e.getPrioridad() + ")");
+        return e;
+    }
+
+    /**
+     * Cancela un trabajo. Si está en cola no llega a imprimirse; si se está
+     * renderizando se detiene en la siguiente página. Un envío ya en marcha termina.
+     */
+    public void cancelar(String id) {
+        Entrada cancelada = null;
+        synchronized (this) {
+            Entrada e = entradas.get(id);
+            if (e == null || e.estado.isTerminado()) return;
+            e.canceladoPorUsuario = true;
+            e.control.cancelar();
+            if (e.estado == EstadoImpresion.EN_COLA) {
+                e.estado = EstadoImpresion.CANCELADO;
+                borrarPdf(e);
+                guardar();
+                cancelada = e;
+            }
+        }
+        if (cancelada != null) notificar(cancelada);
+    }
+
+    /** Vuelve a poner en cola un trabajo fallido, con los intentos a cero. */
+    public void reintentar(String id) {
+        Entrada reintentada;
+        synchronized (this) {
+            Entrada e = entradas.get(id);
+            if (e == null || e.estado != EstadoImpresion.FALLIDO) return;
+            e.estado = EstadoImpresion.EN_COLA;
+            e.intentos = 0;
+            e.reintentarDesde = 0;
+            e.control = new TrabajoExportacion();
+            guardar();
+            notifyAll();
+            reintentada = e;
+        }
+        notificar(reintentada);
+    }
+
+    /** Copia de las entradas (pendientes primero, en orden de salida; después el historial). */
+    public synchronized List<Entrada> getEntradas() {
+        List<Entrada> lista = new ArrayList<>(entradas.values());
+        lista.sort(Comparator.comparing((Entrada e) -> e.estado.isTerminado()).thenComparing(ORDEN));
+        return lista;
+    }
+
+    /** Trabajos que aún no han terminado. */
+    public synchronized int getPendientes() {
+        return (int) entradas.values().stream().filter(e -> !e.estado.isTerminado()).count();
+    }
+
+    /**
+     * Detiene los trabajadores. Lo que se está renderizando se cancela y vuelve a la
+     * cola en disco para la próxima sesión.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            cerrada = true;
+            for (Entrada e : entradas.values()) {
+                if (e.estado == EstadoImpresion.RENDERIZANDO) e.control.cancelar();
+            }
+            notifyAll();
+        }
+        for (Thread t : trabajadores) {
+            try {
+                t.join(5_000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // ──────────────────────────── trabajadores ────────────────────────────
+
+    private void trabajar() {
+        try {
+            Entrada e;
+            while ((e = siguiente()) != null) {
+                procesar(e);
+            }
+        } catch (InterruptedException ignored) {
+            // Cierre de la aplicación
+        }
+    }
+
+    /**
+     * Espera al siguiente trabajo listo (el de mayor prioridad cuya espera de
+     * reintento haya vencido) y lo marca como {@code RENDERIZANDO}; null al cerrar.
+     */
+    private synchronized Entrada siguiente() throws InterruptedException {
+        while (!cerrada) {
+            long ahora = System.currentTimeMillis();
+            Entrada mejor = null;
+            long proximoReintento = Long.MAX_VALUE;
+            for (Entrada e : entradas.values()) {
+                if (e.estado != EstadoImpresion.EN_COLA) continue;
+                if (e.reintentarDesde > ahora) {
+                    proximoReintento = Math.min(proximoReintento, e.reintentarDesde);
+                } else if (mejor == null || ORDEN.compare(e, mejor) < 0) {
+                    mejor = e;
+                }
+            }
+            if (mejor != null) {
+                mejor.estado = EstadoImpresion.RENDERIZANDO;
+                guardar();
+                return mejor;
+            }
+            wait(proximoReintento == Long.MAX_VALUE ? 0 : Math.max(1, proximoReintento - ahora));
+        }
+        return null;
+    }
+
+    private void procesar(Entrada e) {
+        notificar(e);
+        try {
+            if (e.trabajo.esGrupo()) {
+                // Varias impresoras: cada una renderiza e imprime sus lotes en streaming
+                resolverDatos(e);
+                List<String> grupo = e.trabajo.grupoImpresoras().stream().sorted().toList();
+                conImpresoras(grupo, 0, () -> {
+                    cambiarEstado(e, EstadoImpresion.ENVIANDO);
+                    impresion.imprimirEnGrupo(e.trabajo, e.proyecto, e.fuenteDatos,
+                            new SalidaGrupoImpresoras(grupo), e.control);
+                    return null;
+                });
+                e.error = null;
+                cambiarEstado(e, EstadoImpresion.HECHO);
+                return;
+            }
+            String impresora = e.trabajo.nombreImpresora() != null ? e.trabajo.nombreImpresora() : "";
+            if (!impresora.isEmpty()) {
+                // Impresora física: render y envío a la vez, sin PDF intermedio
+                resolverDatos(e);
+                synchronized (bloqueosImpresora.computeIfAbsent(impresora, k -> new Object())) {
+                    cambiarEstado(e, EstadoImpresion.ENVIANDO);
+                    impresion.imprimirDirecto(e.trabajo, e.proyecto, e.fuenteDatos,
+                            new SalidaImpresoraDirecta(impresora), e.control);
+                }
+                e.error = null;
+                cambiarEstado(e, EstadoImpresion.HECHO);
+                return;
+            }
+
+            // Visor del sistema: en un reintento el PDF ya está generado y solo falta el envío
+            File pdf = e.archivoPdf != null ? new File(e.archivoPdf) : null;
+            if (pdf == null || !pdf.isFile()) {
+                resolverDatos(e);
+                pdf = impresion.generarPdf(e.trabajo, e.proyecto, e.fuenteDatos, e.control);
+                e.archivoPdf = pdf.getPath();
+            }
+
+            cambiarEstado(e, EstadoImpresion.ENVIANDO);
+            synchronized (bloqueosImpresora.computeIfAbsent(impresora, k -> new Object())) {
+                new SalidaPDFSistema().enviar(pdf);
+            }
+            e.archivoPdf = null;
+            e.error = null;
+            cambiarEstado(e, EstadoImpresion.HECHO);
+        } catch (CancellationException ex) {
+            synchronized (this) {
+                // Cancelado por el cierre de la aplicación: sigue pendiente para la próxima sesión
+                if (e.canceladoPorUsuario) {
+                    e.estado = EstadoImpresion.CANCELADO;
+                } else {
+                    e.estado = EstadoImpresion.EN_COLA;
+                    e.control = new TrabajoExportacion();
+                }
+                guardar();
+            }
+            notificar(e);
+        } catch (ImpresoraNoDisponibleException ex) {
+            synchronized (this) {
+                e.intentos++;
+                e.error = ex.getMessage();
+                if (e.intentos >= MAX_INTENTOS) {
+                    e.estado = EstadoImpresion.FALLIDO;
+                    borrarPdf(e);
+                } else {
+                    long espera = Math.min(ESPERA_REINTENTO_MAXIMA_MS, ESPERA_REINTENTO_MS << (e.intentos - 1));
+                    e.reintentarDesde = System.currentTimeMillis() + espera;
+                    e.estado = EstadoImpresion.EN_COLA;
+                    log.info("Impresora no disponible, reintento " + e.intentos + " en " + espera / 1000 + " s: "
+                            + ex.getMessage());
+                }
+                guardar();
+                notifyAll();
+            }
+            notificar(e);
+        } catch (Exception ex) {
+            log.warning("Error en el trabajo de impresión " + e.id + ": " + ex);
+            synchronized (this) {
+                e.error = ex.getMessage() != null ? ex.getMessage() : ex.toString();
+                e.estado = EstadoImpresion.FALLIDO;
+                borrarPdf(e);
+                guardar();
+            }
+            notificar(e);
+        }
+    }
+
+    /**
+     * Ejecuta {@code accion} con todas las impresoras reservadas. Se bloquean siempre en
+     * el mismo orden (lista ordenada) para que dos grupos que comparten impresoras no
+     * se esperen mutuamente.
+     */
+    private void conImpresoras(List<String> impresoras, int desde, Callable<Void> accion) throws Exception {
+        if (desde == impresoras.size()) {
+            accion.call();
+            return;
+        }
+        synchronized (bloqueosImpresora.computeIfAbsent(impresoras.get(desde), k -> new Object())) {
+            conImpresoras(impresoras, desde + 1, accion);
+        }
+    }
+
+    /**
+     * Carga el diseño de la copia guardada al encolar (en trabajos de versiones anteriores,
+     * del {@code .tps}) y, si el trabajo viene de una sesión anterior, los datos.
+     */
+    private static void resolverDatos(Entrada e) throws IOException {
+        if (e.proyecto != null) return;
+        if (e.archivoDiseño != null) {
+            Path copia = Paths.get(e.archivoDiseño);
+            if (!Files.isRegularFile(copia)) {
+                throw new IOException("Falta la copia del diseño del trabajo: " + copia);
+            }
+            e.proyecto = new ProyectoFileManager(false).cargarInstantanea(copia);
+        } else {
+            if (e.rutaProyecto == null || !new File(e.rutaProyecto).isFile()) {
+                throw new IOException("El proyecto no está guardado o ya no existe: " + e.nombreProyecto);
+            }
+            e.proyecto = new ProyectoFileManager(false).cargarProyecto(new File(e.rutaProyecto));
+            if (e.proyecto == null) throw new IOException("No se pudo leer el proyecto " + e.rutaProyecto);
+        }
+        if (!e.datosEnSesion && e.rutaDatos != null) {
+            e.fuenteDatos = new DatosVariablesManager().cargar(e.rutaDatos)
+                    .orElseThrow(() -> new IOException("No se pudo leer la fuente de datos " + e.rutaDatos));
+        }
+    }
+
+    private void cambiarEstado(Entrada e, EstadoImpresion estado) {
+        synchronized (this) {
+            e.estado = estado;
+            guardar();
+        }
+        notificar(e);
+    }
+
+    private void notificar(Entrada e) {
+        Consumer<Entrada> callback = alCambiar;
+        if (callback == null) return;
+        try {
+            callback.accept(e);
+        } catch (RuntimeException ex) {
+            log.warning("Error en el aviso de la cola de impresión: " + ex);
+        }
+    }
+
+    private static void borrarPdf(Entrada e) {
+        if (e.archivoPdf != null) {
+            new File(e.archivoPdf).delete();
+            e.archivoPdf = null;
+        }
+    }
+
+    // ──────────────────────────── persistencia ────────────────────────────
+
+    /** Lee la cola guardada; lo que estaba a medias al cerrarse se recoloca. */
+    private synchronized void cargar() {
+        if (!Files.isRegularFile(archivo)) return;
+        List<Entrada> guardadas;
+        try {
+            guardadas = gson.fromJson(Files.readString(archivo, StandardCharsets.UTF_8),
+                    new TypeToken<List<Entrada>>() {}.getType());
+        } catch (IOException | JsonParseException ex) {
+            log.warning("No se pudo leer la cola de impresión " + archivo + ": " + ex.getMessage());
+            return;
+        }
+        if (guardadas == null) return;
+
+        for (Entrada e : guardadas) {
+            if (e.id == null || e.trabajo == null || e.estado == null) continue;
+            e.control = new TrabajoExportacion();
+            switch (e.estado) {
+                case RENDERIZANDO -> e.estado = EstadoImpresion.EN_COLA;
+                case ENVIANDO -> {
+                    // Puede que parte del trabajo ya esté impreso: no reenviar sin que lo decida el usuario
+                    e.estado = EstadoImpresion.FALLIDO;
+                    e.error = "Interrumpido durante el envío a la impresora; compruebe lo impreso antes de reintentar";
+                }
+                default -> {}
+            }
+            entradas.put(e.id, e);
+            siguienteSecuencia = Math.max(siguienteSecuencia, e.secuencia + 1);
+        }
+        long pendientes = entradas.values().stream().filter(e -> !e.estado.isTerminado()).count();
+        if (pendientes > 0) log.info("Cola de impresión: " + pendientes + " trabajos pendientes de la sesión anterior");
+    }
+
+    /** Guarda la cola (temporal + renombrado: nunca queda un JSON a medias). Llamar con el monitor. */
+    private void guardar() {
+        recortarHistorial();
+        try {
+            Files.createDirectories(archivo.getParent());
+            Path tmp = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+            Files.writeString(tmp, gson.toJson(new ArrayList<>(entradas.values())), StandardCharsets.UTF_8);
+            Files.move(tmp, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warning("No se pudo guardar la cola de impresión: " + ex.getMessage());
+        }
+    }
+
+    private void recortarHistorial() {
+        long terminadas = entradas.values().stream().filter(e -> e.estado.isTerminado()).count();
+        var it = entradas.values().iterator();
+        while (terminadas > HISTORIAL_MAXIMO && it.hasNext()) {
+            Entrada e = it.next();
+            if (e.estado.isTerminado()) {
+                it.remove();
+                if (e.archivoDiseño != null) new File(e.archivoDiseño).delete();
+                terminadas--;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.tpsstudio.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Diario (journal) de una exportación reanudable.
+ *
+ * <p>La exportación se genera por partes en la carpeta {@code <destino>.partes/}.
+ * Cada parte terminada se anota en {@code <destino>.diario}; si el proceso se
+ * interrumpe (corte de luz, disco lleno, foto corrupta...), al relanzar el mismo
+ * trabajo solo se generan las partes que faltan.</p>
+ *
+ * <p>Formato del diario (texto, una entrada por línea):</p>
+ * <pre>
+ * firma;&lt;huella del trabajo&gt;
+ * parte;1
+ * parte;2
+ * </pre>
+ * <p>Si la firma no coincide (otro diseño, otros datos u otras opciones) el diario
+ * y las partes anteriores se descartan.</p>
+ */
+class DiarioExportacion {
+
+    private static final Logger log = Logger.getLogger(DiarioExportacion.class.getName());
+
+    private final File archivoDiario;
+    private final File carpetaPartes;
+    private final Set<Integer> completadas = new HashSet<>();
+
+    private DiarioExportacion(File destino) {
+        this.archivoDiario = new File(destino.getPath() + ".diario");
+        this.carpetaPartes = new File(destino.getPath() + ".partes");
+    }
+
+    /**
+     * Abre el diario del destino indicado. Si existe uno con la misma firma, se
+     * recuperan sus partes terminadas; si no, se empieza uno nuevo.
+     */
+    static DiarioExportacion abrir(File destino, String firma) throws IOException {
+        DiarioExportacion diario = new DiarioExportacion(destino);
+
+        if (diario.archivoDiario.isFile()) {
+            List<String> lineas = Files.readAllLines(diario.archivoDiario.toPath(), StandardCharsets.UTF_8);
+            if (!lineas.isEmpty() && lineas.get(0).equals("firma;" + firma)) {
+                for (String linea : lineas.subList(1, lineas.size())) {
+                    String[] campos = linea.split(";");
+                    // Una línea a medias (corte durante la escritura) se ignora
+                    if (campos.length == 2 && campos[0].equals("parte")) {
+                        try {
+                            int n = Integer.parseInt(campos[1]);
+                            if (diario.archivoParte(n).isFile()) diario.completadas.add(n);
+                        } catch (NumberFormatException ignorada) { }
+                    }
+                }
+                log.info("Reanudando exportación: " + diario.completadas.size() + " partes ya generadas");
+                return diario;
+            }
+            log.info("El diario existente corresponde a otro trabajo; se empieza de cero");
+        }
+
+        diario.descartar();
+        Files.createDirectories(diario.carpetaPartes.toPath());
+        diario.escribir("firma;" + firma + "\n", false);
+        return diario;
+    }
+
+    boolean completada(int parte) {
+        return completadas.contains(parte);
+    }
+
+    /** Archivo definitivo de la parte {@code n} (1-based). */
+    File archivoParte(int n) {
+        return new File(carpetaPartes, String.format("parte_%04d.pdf", n));
+    }
+
+    /** Archivo temporal donde se genera una parte antes de darla por terminada. */
+    File archivoTemporal(int n) {
+        return new File(carpetaPartes, String.format("parte_%04d.pdf.tmp", n));
+    }
+
+    /**
+     * Da por terminada una parte: mueve el temporal a su nombre definitivo y lo anota
+     * en el diario. El orden garantiza que una parte anotada siempre está completa.
+     */
+    void marcarCompletada(int parte) throws IOException {
+        Files.move(archivoTemporal(parte).toPath(), archivoParte(parte).toPath(),
+                java.nio.file.StandardCopyOption.REPLACE_EXISTING,
+                java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+        escribir("parte;" + parte + "\n", true);
+        completadas.add(parte);
+    }
+
+    /** Borra el diario y todas las partes (al terminar el trabajo o al invalidarse). */
+    void descartar() {
+        File[] archivos = carpetaPartes.listFiles();
+        if (archivos != null) {
+            for (File f : archivos) f.delete();
+        }
+        carpetaPartes.delete();
+        archivoDiario.delete();
+    }
+
+    private void escribir(String texto, boolean añadir) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(archivoDiario, añadir)) {
+            out.write(texto.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            // Forzar a disco: el diario debe sobrevivir a un corte de luz
+            out.getFD().sync();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.tpsstudio.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de la etapa de codificación de una exportación: páginas, tiempo
+ * de CPU dedicado a comprimir y bytes resultantes. Los hilos del pool de
+ * codificación registran cada página de forma concurrente.
+ */
+public class EstadisticasCodificacion {
+
+    private final LongAdder paginas = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /** Registra una página codificada. Seguro desde cualquier hilo. */
+    public void registrar(long nanosCodificacion, long bytesPagina) {
+        paginas.increment();
+        nanos.add(nanosCodificacion);
+        bytes.add(bytesPagina);
+    }
+
+    public long getPaginas() {
+        return paginas.sum();
+    }
+
+    public long getBytesTotales() {
+        return bytes.sum();
+    }
+
+    /** Milisegundos de codificación sumados entre todos los hilos. */
+    public double getMsTotales() {
+        return nanos.sum() / 1_000_000.0;
+    }
+
+    public double getMsPorPagina() {
+        long n = getPaginas();
+        return n == 0 ? 0 : getMsTotales() / n;
+    }
+
+    public long getBytesPorPagina() {
+        long n = getPaginas();
+        return n == 0 ? 0 : getBytesTotales() / n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d páginas, %.1f ms/página, %d KB/página (%.1f MB en total)",
+                getPaginas(), getMsPorPagina(), getBytesPorPagina() / 1024,
+                getBytesTotales() / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,406 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.elements.*;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.util.MotorTexto;
+import com.tpsstudio.view.managers.EditorCanvasManager;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.FontMapper;
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.apache.pdfbox.pdmodel.font.FontMapping;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Exportación Mail-Merge en modo vectorial.
+ *
+ * <p>En lugar de rasterizar cada tarjeta a 400 DPI, escribe cada página con
+ * operadores PDF nativos:</p>
+ * <ul>
+ *   <li>{@link TextoElemento} → texto PDF real con la fuente TrueType del sistema
+ *       incrustada como subconjunto (solo los glifos usados).</li>
+ *   <li>{@link FormaElemento} → trazados vectoriales (rectángulo, elipse, línea).</li>
+ *   <li>{@link ImagenFondoElemento} y logos fijos → un único image XObject por
+ *       documento que todas las páginas referencian.</li>
+ *   <li>Fotos variables → el archivo original se incrusta tal cual (un JPEG se
+ *       copia como DCT sin recomprimir) y se comparte si se repite.</li>
+ * </ul>
+ *
+ * <p>El word-wrap y la alineación usan las mismas medidas que el modo imagen
+ * ({@link MotorTexto}), así que los saltos de línea y las posiciones coinciden. Si una
+ * familia no se encuentra como TrueType en el sistema, se usa la Standard 14
+ * equivalente (Helvetica/Times/Courier), ajustada en ancho a esas medidas.</p>
+ *
+ * <p>Se crea una instancia por documento: las cachés de fuentes e imágenes
+ * pertenecen al {@link PDDocument} en curso y no se comparten entre hilos.</p>
+ */
+class ExportadorVectorial {
+
+    private static final Logger log = Logger.getLogger(ExportadorVectorial.class.getName());
+
+    // Puntos PDF por unidad de canvas del editor: 1 unidad = 1/SCALE mm
+    private static final float PT_POR_UNIDAD = (float) (72.0 / 25.4 / EditorCanvasManager.SCALE);
+
+    private final Proyecto proyecto;
+    private final FuenteDatos fuenteDatos;
+    private final RenderizadorTarjeta renderizador;
+    private final PDDocument pdf;
+
+    // Recursos compartidos por todas las páginas del documento
+    private final Map<String, PDFont> fuentes = new HashMap<>();
+    private final Map<String, PDImageXObject> imagenes = new HashMap<>();
+    private final Map<Float, PDExtendedGraphicsState> estadosAlpha = new HashMap<>();
+
+    ExportadorVectorial(Proyecto proyecto, FuenteDatos fuenteDatos, RenderizadorTarjeta renderizador, PDDocument pdf) {
+        this.proyecto = proyecto;
+        this.fuenteDatos = fuenteDatos;
+        this.renderizador = renderizador;
+        this.pdf = pdf;
+    }
+
+    /** Añade al documento una página vectorial por entrada, en orden, informando a {@code trabajo}. */
+    void exportar(List<PDFExportService.EntradaPagina> paginas, boolean recortarSangre,
+                  TrabajoExportacion trabajo) throws IOException {
+        for (PDFExportService.EntradaPagina entrada : paginas) {
+            trabajo.comprobarCancelado();
+            long t0 = System.nanoTime();
+            Map<String, String> registro = (fuenteDatos != null) ? fuenteDatos.getRegistro(entrada.filaIdx()) : null;
+            añadirPagina(entrada.esFrente(), recortarSangre, registro);
+            // En modo vectorial dibujar la página es escribir el documento
+            trabajo.registrarEscritura(System.nanoTime() - t0);
+            trabajo.paginaCompletada();
+        }
+    }
+
+    /** Añade una página con la cara indicada rellenada con los datos del registro. */
+    void añadirPagina(boolean esFrente, boolean recortarSangre, Map<String, String> registro) throws IOException {
+        double origen = recortarSangre ? 0 : EditorCanvasManager.BLEED_MARGIN;
+        double anchoU = EditorCanvasManager.CARD_WIDTH + origen * 2;
+        double altoU  = EditorCanvasManager.CARD_HEIGHT + origen * 2;
+        Pagina p = new Pagina(origen, (float) (altoU * PT_POR_UNIDAD));
+
+        PDPage page = new PDPage(new PDRectangle((float) (anchoU * PT_POR_UNIDAD), p.altoPt));
+        pdf.addPage(page);
+
+        try (PDPageContentStream cs = new PDPageContentStream(pdf, page)) {
+            // Fondo compartido (o blanco: la página PDF ya es blanca por defecto)
+            ImagenFondoElemento fondo = esFrente ? proyecto.getFondoFrente() : proyecto.getFondoDorso();
+            if (fondo != null) {
+                PDImageXObject xo = imagenFija(fondo.getRutaArchivo(), () -> renderizador.imagenFondo(fondo));
+                if (xo != null) {
+                    cs.drawImage(xo, p.x(fondo.getX()), p.y(fondo.getY(), fondo.getHeight()),
+                            p.len(fondo.getWidth()), p.len(fondo.getHeight()));
+                }
+            }
+
+            List<Elemento> elementos = esFrente ? proyecto.getElementosFrente() : proyecto.getElementosDorso();
+            for (Elemento elem : elementos) {
+                if (!elem.isVisible()) continue;
+                if (elem instanceof TextoElemento texto) {
+                    dibujarTexto(cs, p, texto, registro);
+                } else if (elem instanceof ImagenElemento imgElem) {
+                    dibujarImagen(cs, p, imgElem, registro);
+                } else if (elem instanceof FormaElemento forma) {
+                    dibujarForma(cs, p, forma);
+                }
+            }
+        }
+    }
+
+    // ──────────────────────────── texto ────────────────────────────
+
+    private void dibujarTexto(PDPageContentStream cs, Pagina p, TextoElemento texto,
+                              Map<String, String> registro) throws IOException {
+        String contenido = texto.getContenido() != null ? texto.getContenido() : "";
+        if (texto.getColumnaVinculada() != null && registro != null) {
+            String val = registro.get(texto.getColumnaVinculada());
+            if (val != null && !val.isEmpty()) contenido = val;
+        }
+        contenido = contenido.replace("\r", "");
+
+        // Mismos saltos de línea que el editor y el modo imagen (unidades de diseño)
+        List<String> lines = MotorTexto.lineas(contenido, texto.isSaltoLinea(), texto.getFontFamily(),
+                texto.isNegrita(), texto.isCursiva(), texto.getFontSize(), texto.getWidth());
+
+        PDFont font = fuente(texto.getFontFamily(), texto.isNegrita(), texto.isCursiva());
+        float tamañoPt = (float) texto.getFontSize() * PT_POR_UNIDAD;
+        Color color = RenderizadorTarjeta.color(texto.getColor());
+
+        double lineH = texto.getFontSize() * 1.2;
+        double baseY = texto.getY() + texto.getFontSize();
+
+        cs.saveGraphicsState();
+        aplicarAlpha(cs, color.getAlpha() / 255f);
+        cs.setNonStrokingColor(color);
+        for (String line : lines) {
+            String visible = codificable(font, line);
+            if (!visible.isEmpty()) {
+                // Ancho de la línea con las mismas tablas que el word-wrap
+                double tw = MotorTexto.ancho(line, texto.getFontFamily(), texto.isNegrita(),
+                        texto.isCursiva(), texto.getFontSize());
+                double textX = texto.getX();
+                if ("CENTER".equals(texto.getAlineacion())) {
+                    textX = texto.getX() + (texto.getWidth() - tw) / 2;
+                } else if ("RIGHT".equals(texto.getAlineacion())) {
+                    textX = texto.getX() + texto.getWidth() - tw;
+                }
+
+                // Si la fuente PDF es otra (Standard 14, otra variante), se escala en
+                // horizontal para que ocupe el ancho medido y no se desalinee
+                double anchoPdf = font.getStringWidth(visible) / 1000.0 * texto.getFontSize();
+                float escalaH = anchoPdf > 0 ? (float) (tw / anchoPdf * 100) : 100f;
+
+                cs.beginText();
+                cs.setFont(font, tamañoPt);
+                cs.setHorizontalScaling(Math.abs(escalaH - 100f) < 0.5f ? 100f : escalaH);
+                cs.newLineAtOffset(p.x(textX), p.y(baseY, 0));
+                cs.showText(visible);
+                cs.endText();
+            }
+            baseY += lineH;
+        }
+        cs.restoreGraphicsState();
+    }
+
+    /**
+     * Fuente PDF para la familia/estilo indicados, cargada una sola vez por documento.
+     * Se busca el TrueType del sistema por su nombre PostScript y se incrusta como
+     * subconjunto; si no existe, se usa la Standard 14 más parecida.
+     */
+    private PDFont fuente(String familia, boolean negrita, boolean cursiva) throws IOException {
+        String fam = (familia == null || familia.isBlank()) ? "Arial" : familia;
+        String clave = fam + '|' + negrita + '|' + cursiva;
+        PDFont cacheada = fuentes.get(clave);
+        if (cacheada != null) return cacheada;
+
+        PDFont font = null;
+        TrueTypeFont ttf = buscarTrueType(fam, negrita, cursiva);
+        if (ttf != null) {
+            font = PDType0Font.load(pdf, ttf, true);
+        } else {
+            log.info("Fuente '" + fam + "' no encontrada como TrueType; se usa Standard 14");
+            font = standard14(fam, negrita, cursiva);
+        }
+        fuentes.put(clave, font);
+        return font;
+    }
+
+    private static TrueTypeFont buscarTrueType(String familia, boolean negrita, boolean cursiva) {
+        String base = familia.replace(" ", "");
+        String estilo = negrita && cursiva ? "-BoldItalic" : negrita ? "-Bold" : cursiva ? "-Italic" : "";
+
+        // Nombres PostScript habituales: "Arial-BoldMT", "Verdana-Bold", "ArialMT"...
+        String[] candidatos = estilo.isEmpty()
+                ? new String[] { base, base + "MT", base + "-Regular" }
+                : new String[] { base + estilo, base + estilo + "MT", base + "," + estilo.substring(1) };
+
+        FontMapper mapper = FontMappers.instance();
+        for (String nombre : candidatos) {
+            FontMapping<TrueTypeFont> mapping = mapper.getTrueTypeFont(nombre, null);
+            if (mapping != null && mapping.getFont() != null && !mapping.isFallback()) {
+                return mapping.getFont();
+            }
+        }
+        // Sin la variante de estilo: mejor la familia correcta que otra familia
+        if (!estilo.isEmpty()) return buscarTrueType(familia, false, false);
+        return null;
+    }
+
+    private static PDFont standard14(String familia, boolean negrita, boolean cursiva) {
+        String f = familia.toLowerCase();
+        if (f.contains("times") || f.contains("serif") && !f.contains("sans")) {
+            return negrita && cursiva ? PDType1Font.TIMES_BOLD_ITALIC : negrita ? PDType1Font.TIMES_BOLD
+                    : cursiva ? PDType1Font.TIMES_ITALIC : PDType1Font.TIMES_ROMAN;
+        }
+        if (f.contains("courier") || f.contains("mono")) {
+            return negrita && cursiva ? PDType1Font.COURIER_BOLD_OBLIQUE : negrita ? PDType1Font.COURIER_BOLD
+                    : cursiva ? PDType1Font.COURIER_OBLIQUE : PDType1Font.COURIER;
+        }
+        return negrita && cursiva ? PDType1Font.HELVETICA_BOLD_OBLIQUE : negrita ? PDType1Font.HELVETICA_BOLD
+                : cursiva ? PDType1Font.HELVETICA_OBLIQUE : PDType1Font.HELVETICA;
+    }
+
+    /** Sustituye por '?' los caracteres que la fuente no puede codificar. */
+    private static String codificable(PDFont font, String texto) {
+        StringBuilder sb = new StringBuilder(texto.length());
+        for (int i = 0; i < texto.length(); ) {
+            int cp = texto.codePointAt(i);
+            String c = new String(Character.toChars(cp));
+            try {
+                font.encode(c);
+                sb.append(c);
+            } catch (IllegalArgumentException | IOException e) {
+                sb.append('?');
+            }
+            i += Character.charCount(cp);
+        }
+        return sb.toString();
+    }
+
+    // ──────────────────────────── imágenes ────────────────────────────
+
+    private void dibujarImagen(PDPageContentStream cs, Pagina p, ImagenElemento imgElem,
+                               Map<String, String> registro) throws IOException {
+        PDImageXObject xo = null;
+        float alpha = (float) imgElem.getOpacity();
+
+        if (imgElem.getColumnaVinculada() != null && registro != null) {
+            File foto = renderizador.archivoFotoVariable(registro.get(imgElem.getColumnaVinculada()));
+            if (foto != null) xo = imagenArchivo(foto);
+        }
+        if (xo == null) {
+            xo = imagenFija(imgElem.getRutaArchivo(), () -> renderizador.imagen(imgElem));
+        }
+        if (xo == null) {
+            // Sin imagen real: silueta de placeholder con opacidad completa
+            xo = imagenFija("recurso:silueta", RenderizadorTarjeta::silueta);
+            alpha = 1f;
+        }
+        if (xo == null) return;
+
+        cs.saveGraphicsState();
+        aplicarAlpha(cs, alpha);
+        cs.drawImage(xo, p.x(imgElem.getX()), p.y(imgElem.getY(), imgElem.getHeight()),
+                p.len(imgElem.getWidth()), p.len(imgElem.getHeight()));
+        cs.restoreGraphicsState();
+    }
+
+    /**
+     * XObject de una imagen fija del diseño, creado una vez por documento.
+     * Si la ruta apunta a un archivo se incrusta su contenido original; si no,
+     * se codifica sin pérdida la imagen ya decodificada.
+     */
+    private PDImageXObject imagenFija(String ruta, java.util.function.Supplier<BufferedImage> decodificada)
+            throws IOException {
+        String clave = "fija:" + ruta;
+        if (imagenes.containsKey(clave)) return imagenes.get(clave);
+
+        PDImageXObject xo = null;
+        File archivo = ruta != null ? renderizador.resolverArchivo(ruta) : null;
+        if (archivo != null) xo = imagenArchivo(archivo);
+        if (xo == null) {
+            BufferedImage img = decodificada.get();
+            if (img != null) xo = LosslessFactory.createFromImage(pdf, img);
+        }
+        imagenes.put(clave, xo);
+        return xo;
+    }
+
+    /** XObject creado a partir del contenido del archivo (JPEG → DCT sin recomprimir). */
+    private PDImageXObject imagenArchivo(File archivo) {
+        String clave = "archivo:" + archivo.getAbsolutePath();
+        if (imagenes.containsKey(clave)) return imagenes.get(clave);
+
+        PDImageXObject xo;
+        try {
+            xo = PDImageXObject.createFromFileByContent(archivo, pdf);
+        } catch (Exception e) {
+            log.warning("No se pudo incrustar la imagen '" + archivo.getName() + "': " + e.getMessage());
+            xo = null;
+        }
+        imagenes.put(clave, xo);
+        return xo;
+    }
+
+    // ──────────────────────────── formas ────────────────────────────
+
+    private void dibujarForma(PDPageContentStream cs, Pagina p, FormaElemento forma) throws IOException {
+        float x = p.x(forma.getX());
+        float y = p.y(forma.getY(), forma.getHeight());
+        float w = p.len(forma.getWidth());
+        float h = p.len(forma.getHeight());
+
+        Color borde = RenderizadorTarjeta.color(forma.getColorBorde());
+        Color relleno = RenderizadorTarjeta.color(forma.getColorRelleno());
+        boolean rellenar = forma.isConRelleno() && forma.getTipoForma() != FormaElemento.TipoForma.LINEA;
+
+        cs.saveGraphicsState();
+        cs.setLineWidth(p.len(forma.getGrosorBorde()));
+        cs.setLineCapStyle(2);  // cuadrado, como el Canvas JavaFX
+        cs.setLineJoinStyle(0); // inglete
+        cs.setStrokingColor(borde);
+        if (rellenar) cs.setNonStrokingColor(relleno);
+
+        switch (forma.getTipoForma()) {
+            case RECTANGULO -> cs.addRect(x, y, w, h);
+            case ELIPSE -> elipse(cs, x, y, w, h);
+            case LINEA -> {
+                // Centrada verticalmente en el área ocupada por el elemento
+                cs.moveTo(x, y + h / 2);
+                cs.lineTo(x + w, y + h / 2);
+            }
+        }
+        if (rellenar) {
+            cs.fillAndStroke();
+        } else {
+            cs.stroke();
+        }
+        cs.restoreGraphicsState();
+    }
+
+    /** Elipse inscrita en el rectángulo, aproximada con cuatro curvas de Bézier. */
+    private static void elipse(PDPageContentStream cs, float x, float y, float w, float h) throws IOException {
+        final float k = 0.5522848f; // 4/3·(√2−1)
+        float rx = w / 2, ry = h / 2;
+        float cx = x + rx, cy = y + ry;
+        float ox = rx * k, oy = ry * k;
+
+        cs.moveTo(cx - rx, cy);
+        cs.curveTo(cx - rx, cy + oy, cx - ox, cy + ry, cx, cy + ry);
+        cs.curveTo(cx + ox, cy + ry, cx + rx, cy + oy, cx + rx, cy);
+        cs.curveTo(cx + rx, cy - oy, cx + ox, cy - ry, cx, cy - ry);
+        cs.curveTo(cx - ox, cy - ry, cx - rx, cy - oy, cx - rx, cy);
+        cs.closePath();
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    /** Aplica opacidad de relleno/trazo reutilizando un ExtGState por valor. */
+    private void aplicarAlpha(PDPageContentStream cs, float alpha) throws IOException {
+        if (alpha >= 1f) return;
+        PDExtendedGraphicsState gs = estadosAlpha.computeIfAbsent(alpha, a -> {
+            PDExtendedGraphicsState nuevo = new PDExtendedGraphicsState();
+            nuevo.setNonStrokingAlphaConstant(a);
+            nuevo.setStrokingAlphaConstant(a);
+            return nuevo;
+        });
+        cs.setGraphicsStateParameters(gs);
+    }
+
+    /**
+     * Conversión de coordenadas del editor (origen arriba-izquierda, unidades de
+     * canvas) a coordenadas PDF (origen abajo-izquierda, puntos).
+     */
+    private record Pagina(double origen, float altoPt) {
+        float x(double xEditor) {
+            return (float) ((origen + xEditor) * PT_POR_UNIDAD);
+        }
+
+        /** Y PDF de la esquina inferior de un objeto con alto {@code h} situado en {@code yEditor}. */
+        float y(double yEditor, double h) {
+            return altoPt - (float) ((origen + yEditor + h) * PT_POR_UNIDAD);
+        }
+
+        float len(double unidades) {
+            return (float) (unidades * PT_POR_UNIDAD);
+        }
+    }
+}
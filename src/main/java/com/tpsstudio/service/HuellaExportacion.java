@@ -0,0 +1,121 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.elements.*;
+import com.tpsstudio.model.project.Proyecto;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Huellas (SHA-256) de lo que determina el aspecto de una página exportada.
+ *
+ * <p>Dos exportaciones con la misma huella producen las mismas páginas, así que la
+ * huella sirve para saber si un trabajo a medias puede reanudarse o si una página
+ * ya generada puede reutilizarse.</p>
+ *
+ * <p>Las imágenes referenciadas se identifican por ruta, tamaño y fecha de
+ * modificación del archivo (no se lee su contenido).</p>
+ */
+final class HuellaExportacion {
+
+    private HuellaExportacion() {}
+
+    /** Huella del diseño: todas las propiedades de los elementos visibles y los fondos de ambas caras. */
+    static String diseño(Proyecto proyecto, RenderizadorTarjeta renderizador) {
+        MessageDigest md = sha256();
+        añadir(md, "frente");
+        añadirFondo(md, proyecto.getFondoFrente(), renderizador);
+        añadirElementos(md, proyecto.getElementosFrente(), renderizador);
+        añadir(md, "dorso");
+        añadirFondo(md, proyecto.getFondoDorso(), renderizador);
+        añadirElementos(md, proyecto.getElementosDorso(), renderizador);
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * Huella de los datos de un registro: sus valores (en orden de columna) y el
+     * estado de los archivos de foto a los que apuntan las columnas de imagen.
+     */
+    static String registro(Map<String, String> registro, List<String> columnasFoto,
+                           RenderizadorTarjeta renderizador) {
+        MessageDigest md = sha256();
+        if (registro != null) {
+            for (Map.Entry<String, String> e : new TreeMap<>(registro).entrySet()) {
+                añadir(md, e.getKey());
+                añadir(md, e.getValue());
+            }
+            for (String columna : columnasFoto) {
+                añadirArchivo(md, renderizador.archivoFotoVariable(registro.get(columna)));
+            }
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /** Combina varias huellas (o textos) en una sola. */
+    static String combinar(String... partes) {
+        MessageDigest md = sha256();
+        for (String parte : partes) añadir(md, parte);
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    private static void añadirElementos(MessageDigest md, List<Elemento> elementos, RenderizadorTarjeta renderizador) {
+        for (Elemento e : elementos) {
+            if (!e.isVisible()) continue;
+            añadir(md, e.getClass().getSimpleName());
+            añadir(md, e.getX() + "," + e.getY() + "," + e.getWidth() + "," + e.getHeight());
+            if (e instanceof TextoElemento t) {
+                añadir(md, t.getContenido());
+                añadir(md, t.getFontFamily() + "|" + t.getFontSize() + "|" + t.isNegrita() + "|" + t.isCursiva());
+                añadir(md, t.getColor() + "|" + t.getAlineacion() + "|" + t.isSaltoLinea());
+                añadir(md, t.getColumnaVinculada());
+            } else if (e instanceof ImagenElemento i) {
+                añadir(md, i.getRutaArchivo());
+                añadir(md, i.getOpacity() + "|" + i.getColumnaVinculada());
+                añadirArchivo(md, i.getRutaArchivo() != null ? renderizador.resolverArchivo(i.getRutaArchivo()) : null);
+            } else if (e instanceof FormaElemento f) {
+                añadir(md, f.getTipoForma() + "|" + f.getColorRelleno() + "|" + f.getColorBorde()
+                        + "|" + f.getGrosorBorde() + "|" + f.isConRelleno());
+            }
+        }
+    }
+
+    private static void añadirFondo(MessageDigest md, ImagenFondoElemento fondo, RenderizadorTarjeta renderizador) {
+        if (fondo == null) {
+            añadir(md, "sin-fondo");
+            return;
+        }
+        añadir(md, fondo.getRutaArchivo());
+        añadir(md, fondo.getX() + "," + fondo.getY() + "," + fondo.getWidth() + "," + fondo.getHeight());
+        añadirArchivo(md, renderizador.resolverArchivo(fondo.getRutaArchivo()));
+    }
+
+    private static void añadirArchivo(MessageDigest md, File archivo) {
+        if (archivo == null || !archivo.isFile()) {
+            añadir(md, "sin-archivo");
+        } else {
+            añadir(md, archivo.getAbsolutePath() + "|" + archivo.length() + "|" + archivo.lastModified());
+        }
+    }
+
+    /** Añade un texto con separador, para que "ab"+"c" y "a"+"bc" no coincidan. */
+    private static void añadir(MessageDigest md, String s) {
+        if (s != null) md.update(s.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
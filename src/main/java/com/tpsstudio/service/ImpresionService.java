@@ -1,5 +1,6 @@
 package com.tpsstudio.service;
 
+import com.tpsstudio.model.enums.CodecImagen;
 import com.tpsstudio.model.project.FuenteDatos;
 import com.tpsstudio.model.project.Proyecto;
 import com.tpsstudio.view.dialogs.ExportDialog;
@@ -16,7 +17,8 @@ import java.util.List;
  * los parámetros que necesita {@link PDFExportService}, genera el PDF y lo entrega
  * a la estrategia {@link SalidaImpresion} indicada.</p>
  *
- * <p>Este servicio no tiene estado propio y puede instanciarse por trabajo.</p>
+ * <p>Este servicio solo guarda cuántos hilos de render usa cada trabajo y puede
+ * instanciarse por trabajo.</p>
  *
  * <p><b>Limitación Fase 1:</b> {@link PDFExportService#exportar} siempre incluye
  * la cara delantera y opcionalmente la trasera. La opción "solo dorso" queda
@@ -24,6 +26,21 @@ import java.util.List;
  */
 public class ImpresionService {
 
+    private final int hilosRender;
+
+    /** Un hilo de render por núcleo. */
+    public ImpresionService() {
+        this(0);
+    }
+
+    /**
+     * @param hilosRender hilos de render de cada trabajo (0 = uno por núcleo). La cola de
+     *                    impresión reparte los núcleos entre sus trabajadores.
+     */
+    public ImpresionService(int hilosRender) {
+        this.hilosRender = Math.max(0, hilosRender);
+    }
+
     /**
      * Ejecuta el trabajo de impresión completo.
      *
@@ -35,46 +52,144 @@ public class ImpresionService {
      */
     public void ejecutar(TrabajoImpresion trabajo, Proyecto proyecto,
                          FuenteDatos fuenteDatos, SalidaImpresion salida) throws Exception {
+        ejecutar(trabajo, proyecto, fuenteDatos, salida, new TrabajoExportacion());
+    }
 
-        // 1. Resolver lista de filas (índices 0-based)
-        int totalRegistros = (fuenteDatos != null) ? fuenteDatos.getTotalRegistros() : 1;
-        List<Integer> filas = resolverFilas(trabajo, totalRegistros);
+    /**
+     * Igual que {@link #ejecutar(TrabajoImpresion, Proyecto, FuenteDatos, SalidaImpresion)},
+     * informando del progreso de la generación a {@code control}. Si se cancela antes
+     * del envío, no llega nada a la impresora y el PDF temporal se borra.
+     */
+    public void ejecutar(TrabajoImpresion trabajo, Proyecto proyecto, FuenteDatos fuenteDatos,
+                         SalidaImpresion salida, TrabajoExportacion control) throws Exception {
+        if (salida instanceof SalidaImpresoraDirecta directa) {
+            imprimirDirecto(trabajo, proyecto, fuenteDatos, directa, control);
+            return;
+        }
+        if (salida instanceof SalidaGrupoImpresoras grupo) {
+            imprimirEnGrupo(trabajo, proyecto, fuenteDatos, grupo, control);
+            return;
+        }
+        File archivoPdf = generarPdf(trabajo, proyecto, fuenteDatos, control);
 
-        if (filas.isEmpty()) {
-            throw new IllegalStateException("No hay registros válidos para imprimir.");
+        // Enviar al destino (Desktop.print en Fase 1; PrinterJob directo en Fase 2)
+        try {
+            salida.enviar(archivoPdf);
+        } catch (Exception ex) {
+            archivoPdf.delete();
+            throw ex;
         }
+    }
 
-        // 2. Construir ExportConfig compatible con PDFExportService.
-        //    imprimirDorso solo aplica si imprimirFrente también está activo;
-        //    "solo dorso" no está soportado en Fase 1 (limitación del método exportar).
-        boolean dorso = trabajo.imprimirFrente() && trabajo.imprimirDorso();
+    /**
+     * Imprime el trabajo en una impresora física sin PDF intermedio: las tarjetas se
+     * renderizan en paralelo por delante del {@code PrinterJob} y la impresora empieza
+     * con la primera mientras se preparan las siguientes (ver {@link PaginasImpresion}).
+     *
+     * @throws ImpresoraNoDisponibleException si la impresora no está disponible antes
+     *         de recibir ninguna página.
+     * @throws java.util.concurrent.CancellationException si se cancela.
+     */
+    public void imprimirDirecto(TrabajoImpresion trabajo, Proyecto proyecto, FuenteDatos fuenteDatos,
+                                SalidaImpresoraDirecta salida, TrabajoExportacion control) throws Exception {
+        List<Integer> filas = filasOError(trabajo, fuenteDatos);
+        PaginasImpresion paginas = new PDFExportService(proyecto, fuenteDatos)
+                .paginasImpresion(configuracion(trabajo), filas, control);
+        salida.enviar(paginas, "TPS Studio - " + proyecto.getNombre());
+        control.finalizar();
+    }
 
-        ExportDialog.ExportConfig config = new ExportDialog.ExportConfig(
-                true,                       // exportarRegistros
-                resolverRangoTexto(trabajo), // rangoFilas (informativo; las filas ya están resueltas)
-                dorso,                       // imprimirDorso
-                trabajo.recortarSangre(),    // recortarSangre
-                null,                        // configPrueba — no aplica en impresión
-                false                        // exportarImprenta — no aplica
-        );
+    /**
+     * Imprime el trabajo repartiendo sus registros entre las impresoras del grupo
+     * (ver {@link SalidaGrupoImpresoras}). Cada lote se renderiza en streaming como en
+     * {@link #imprimirDirecto}, en el hilo de la impresora que lo recibe.
+     *
+     * @throws ImpresoraNoDisponibleException si ninguna impresora del grupo recibió nada.
+     * @throws java.util.concurrent.CancellationException si se cancela.
+     */
+    public void imprimirEnGrupo(TrabajoImpresion trabajo, Proyecto proyecto, FuenteDatos fuenteDatos,
+                                SalidaGrupoImpresoras salida, TrabajoExportacion control) throws Exception {
+        List<Integer> filas = filasOError(trabajo, fuenteDatos);
+        ExportDialog.ExportConfig config = configuracion(trabajo);
+        control.iniciar(new PDFExportService(proyecto, fuenteDatos).contarPaginas(config, filas));
+        // Un servicio por lote: los hilos de las impresoras no comparten cachés de render
+        salida.imprimir(filas, lote -> new PDFExportService(proyecto, fuenteDatos).paginasLote(config, lote, control),
+                "TPS Studio - " + proyecto.getNombre(), control);
+        control.finalizar();
+    }
+
+    /**
+     * Genera el PDF temporal del trabajo sin enviarlo. Lo usa {@link ColaImpresion},
+     * que separa la generación del envío para poder reintentar solo el envío.
+     *
+     * @return el PDF generado; el llamante se encarga de entregarlo o borrarlo.
+     * @throws java.util.concurrent.CancellationException si se cancela; el PDF se borra.
+     */
+    public File generarPdf(TrabajoImpresion trabajo, Proyecto proyecto, FuenteDatos fuenteDatos,
+                           TrabajoExportacion control) throws Exception {
+
+        // 1. Resolver lista de filas (índices 0-based)
+        List<Integer> filas = filasOError(trabajo, fuenteDatos);
+
+        // 2. Construir ExportConfig compatible con PDFExportService
+        ExportDialog.ExportConfig config = configuracion(trabajo);
 
         // 3. Generar PDF en archivo temporal
         File archivoPdf = crearArchivoTemporal(proyecto.getNombre());
         try {
             PDFExportService pdfService = new PDFExportService(proyecto, fuenteDatos);
-            pdfService.exportar(config, filas, archivoPdf);
+            pdfService.exportar(config, filas, archivoPdf, control);
+            // Última oportunidad de cancelar antes de entregar el trabajo
+            control.comprobarCancelado();
         } catch (Exception ex) {
             // Si el PDF falla, limpiamos el temporal para no dejar basura
             archivoPdf.delete();
             throw ex;
         }
-
-        // 4. Enviar al destino (Desktop.print en Fase 1; PrinterJob directo en Fase 2)
-        salida.enviar(archivoPdf);
+        return archivoPdf;
     }
 
     // ──────────────────────────── helpers ────────────────────────────
 
+    /** Filas del trabajo; error si no queda ninguna válida. */
+    private List<Integer> filasOError(TrabajoImpresion trabajo, FuenteDatos fuenteDatos) {
+        int totalRegistros = (fuenteDatos != null) ? fuenteDatos.getTotalRegistros() : 1;
+        List<Integer> filas = resolverFilas(trabajo, totalRegistros);
+        if (filas.isEmpty()) {
+            throw new IllegalStateException("No hay registros válidos para imprimir.");
+        }
+        return filas;
+    }
+
+    /**
+     * ExportConfig compatible con PDFExportService.
+     * imprimirDorso solo aplica si imprimirFrente también está activo;
+     * "solo dorso" no está soportado en Fase 1 (limitación del método exportar).
+     */
+    private ExportDialog.ExportConfig configuracion(TrabajoImpresion trabajo) {
+        boolean dorso = trabajo.imprimirFrente() && trabajo.imprimirDorso();
+
+        return new ExportDialog.ExportConfig(
+                true,                       // exportarRegistros
+                resolverRangoTexto(trabajo), // rangoFilas (informativo; las filas ya están resueltas)
+                dorso,                       // imprimirDorso
+                trabajo.recortarSangre(),    // recortarSangre
+                null,                        // configPrueba — no aplica en impresión
+                false,                       // exportarImprenta — no aplica
+                hilosRender,                 // hilosRender — repartidos por la cola
+                false,                       // pdfVectorial
+                ExportDialog.ExportConfig.MEMORIA_PDF_MB_DEFECTO,
+                CodecImagen.SIN_PERDIDA,
+                ExportDialog.ExportConfig.CALIDAD_JPEG_DEFECTO,
+                0,                           // registrosPorArchivo — un único PDF
+                false,                       // reanudable
+                false,                       // reutilizarPaginas
+                null,                        // formatoSecuencia — PDF
+                null,                        // columnaNombreArchivo
+                ExportDialog.ExportConfig.DPI_DEFECTO
+        );
+    }
+
     /**
      * Construye la lista de filas (índices 0-based) a partir de las opciones del trabajo.
      * Si no hay fuente de datos, devuelve siempre [0] (el diseño estático).
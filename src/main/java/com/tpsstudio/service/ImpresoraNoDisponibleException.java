@@ -0,0 +1,19 @@
+package com.tpsstudio.service;
+
+/**
+ * La impresora no está disponible (desconectada, apagada o sin spooler). Es un
+ * fallo transitorio: {@link ColaImpresion} reintenta el envío pasado un tiempo
+ * en lugar de dar el trabajo por fallido.
+ */
+public class ImpresoraNoDisponibleException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public ImpresoraNoDisponibleException(String mensaje) {
+        super(mensaje);
+    }
+
+    public ImpresoraNoDisponibleException(String mensaje, Throwable causa) {
+        super(mensaje, causa);
+    }
+}
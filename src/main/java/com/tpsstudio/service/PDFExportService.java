@@ -1,71 +1,94 @@
 package com.tpsstudio.service;
 
 import com.tpsstudio.model.elements.*;
+import com.tpsstudio.model.enums.CodecImagen;
+import com.tpsstudio.model.enums.FormatoSecuencia;
 import com.tpsstudio.model.project.ClienteInfo;
 import com.tpsstudio.model.project.FuenteDatos;
 import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.service.CodificadorPagina.PaginaCodificada;
 import com.tpsstudio.view.dialogs.ExportDialog;
 import com.tpsstudio.view.dialogs.PruebaConfigDialog;
 import com.tpsstudio.view.managers.EditorCanvasManager;
-import javafx.application.Platform;
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.Image;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
-import javafx.scene.text.Font;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * Servicio que genera PDFs de exportación Mail-Merge y pruebas de diseño A4.
- * Utiliza Canvas JavaFX off-screen + PDFBox para máxima calidad.
+ * Renderiza con Java2D ({@link RenderizadorTarjeta}) + PDFBox, sin depender del
+ * hilo JavaFX: puede ejecutarse desde cualquier hilo y en una JVM headless.
  */
 public class PDFExportService {
 
-    // Calidad de exportación: 400 DPI para uso en imprenta profesional
-    private static final double EXPORT_DPI = 400.0;
+    private static final Logger log = Logger.getLogger(PDFExportService.class.getName());
+
+    // Calidad de exportación por defecto: 400 DPI para uso en imprenta profesional
+    // (la de los registros se elige en el diálogo: ExportConfig.dpi())
+    private static final double EXPORT_DPI = ExportDialog.ExportConfig.DPI_DEFECTO;
 
     // Escala derivada automáticamente: píxeles necesarios por unidad de canvas
     // CARD_WIDTH (px en editor) = CR80_WIDTH_MM * 4.0 = 342.4px
     // EXPORT_SCALE = (CR80_WIDTH_MM/25.4 * EXPORT_DPI) / CARD_WIDTH
-    private static final double EXPORT_SCALE =
-            (EditorCanvasManager.CR80_WIDTH_MM / 25.4 * EXPORT_DPI) / EditorCanvasManager.CARD_WIDTH;
+    private static final double EXPORT_SCALE = escala(EXPORT_DPI);
+
+    // Por encima de estos DPI las páginas raster se renderizan y comprimen por franjas
+    // de ALTO_FRANJA filas: a 1200 DPI una página entera son ~45 MB, una franja ~4 MB
+    private static final double DPI_MAXIMO_SIN_FRANJAS = 400.0;
+    private static final int ALTO_FRANJA = 256;
 
     // DPI del documento de prueba A4 (menor que exportación, suficiente para PDF de aprobación)
     private static final double PRUEBA_DPI = 200.0;
 
-    // Imagen de silueta de placeholder (cargada una sola vez desde recursos)
-    private static final Image SILUETA_IMG;
-    static {
-        Image tmp = null;
-        try (var stream = PDFExportService.class.getResourceAsStream("/img/silueta.png")) {
-            if (stream != null) tmp = new Image(stream);
-        } catch (Exception ignored) {}
-        SILUETA_IMG = tmp;
-    }
+    // Exportación reanudable: registros por parte (lo máximo que se repite tras un corte)
+    private static final int REGISTROS_POR_PARTE = 250;
+
+    // Filas de fotos que la precarga puede llevar adelantadas por cada hilo de render
+    private static final int PRECARGA_FILAS_POR_HILO = 4;
+
 
     private final Proyecto proyecto;
     private final FuenteDatos fuenteDatos;
+    private final RenderizadorTarjeta renderizador;
+
+    // Tiempo y tamaño de codificación de la última exportación en modo imagen
+    private EstadisticasCodificacion ultimasEstadisticas;
 
     public PDFExportService(Proyecto proyecto, FuenteDatos fuenteDatos) {
         this.proyecto = proyecto;
         this.fuenteDatos = fuenteDatos;
+        this.renderizador = new RenderizadorTarjeta(proyecto);
     }
 
     /**
@@ -77,383 +100,676 @@ public class PDFExportService {
      * @throws Exception si algo falla en el proceso.
      */
     public void exportar(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas, File destino) throws Exception {
-        // Construir la lista completa de "páginas" a exportar en orden
-        List<EntradaPagina> paginas = new ArrayList<>();
+        exportar(config, filasSeleccionadas, destino, new TrabajoExportacion());
+    }
+
+    /**
+     * Igual que {@link #exportar(ExportDialog.ExportConfig, List, File)}, informando del
+     * progreso a {@code trabajo} y atendiendo a su cancelación.
+     *
+     * @throws java.util.concurrent.CancellationException si se cancela; el PDF parcial se borra.
+     */
+    public void exportar(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas, File destino,
+                         TrabajoExportacion trabajo) throws Exception {
+        // Capas estáticas (fondo + elementos fijos) nuevas para esta exportación:
+        // se pintan una vez por cara y cada registro solo añade sus variables
+        renderizador.invalidarCaches();
+        ultimasEstadisticas = config.pdfVectorial() ? null : new EstadisticasCodificacion();
+
+        trabajo.iniciar(construirPaginas(config, filasSeleccionadas).size());
+        if (config.reanudable()) {
+            // Por partes con diario: si se interrumpe, las partes terminadas se conservan
+            exportarReanudable(config, filasSeleccionadas, destino, trabajo);
+        } else {
+            try {
+                exportarDocumento(config, filasSeleccionadas, destino, config.hilosRender(), ultimasEstadisticas, trabajo);
+            } catch (Exception e) {
+                // No dejar un PDF a medias que parezca válido
+                destino.delete();
+                throw e;
+            }
+        }
+        trabajo.finalizar();
 
-        boolean tieneFrente = !proyecto.getElementosFrente().isEmpty() || proyecto.getFondoFrente() != null;
-        boolean tieneDorso  = !proyecto.getElementosDorso().isEmpty() || proyecto.getFondoDorso() != null;
+        log.info("Exportación: " + trabajo.getResumen());
+        if (ultimasEstadisticas != null) {
+            log.info("Codificación " + config.codec() + ": " + ultimasEstadisticas);
+        }
+    }
 
-        for (int filaIdx : filasSeleccionadas) {
-            // Siempre exportamos el frente
-            paginas.add(new EntradaPagina(filaIdx, true));
-            // Si es Anverso + Reverso Y el proyecto tiene dorso, añadir el dorso
-            if (config.imprimirDorso() && tieneDorso) {
-                paginas.add(new EntradaPagina(filaIdx, false));
+    /**
+     * Genera todas las salidas pedidas en la configuración, con los mismos nombres que
+     * la exportación desde el editor. {@code destino} es el archivo elegido por el
+     * usuario ({@code <nombre>.pdf}); a partir de él se crean:
+     * <ul>
+     *   <li>{@code <nombre>_registros.pdf}, o {@code <nombre>_registros_0001.pdf}… con
+     *       manifiesto si hay lotes, o la carpeta {@code <nombre>_tarjetas/} con una
+     *       imagen por tarjeta y cara;</li>
+     *   <li>{@code <nombre>_prueba.pdf} si hay configuración de prueba A4;</li>
+     *   <li>{@code <nombre>_imprenta.pdf} si se pide el PDF de imprenta.</li>
+     * </ul>
+     *
+     * @return los archivos generados, en orden.
+     */
+    public List<File> exportarSalidas(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas,
+                                      File destino, TrabajoExportacion trabajo) throws Exception {
+        String base = destino.getAbsolutePath().replaceAll("(?i)\\.pdf$", "");
+        List<File> generados = new ArrayList<>();
+
+        // A) PDF Mail-Merge (uno solo o por lotes de N registros + manifiesto),
+        //    o una imagen PNG/TIFF por tarjeta en la carpeta <nombre>_tarjetas
+        if (config.exportarRegistros()) {
+            if (config.formatoSecuencia() != null) {
+                generados.addAll(exportarSecuencia(config, filasSeleccionadas, new File(base + "_tarjetas"), trabajo));
+            } else if (config.registrosPorArchivo() > 0 && filasSeleccionadas.size() > config.registrosPorArchivo()) {
+                generados.addAll(exportarPorLotes(config, filasSeleccionadas, base + "_registros", trabajo));
+            } else {
+                File registros = new File(base + "_registros.pdf");
+                exportar(config, filasSeleccionadas, registros, trabajo);
+                generados.add(registros);
             }
         }
+        trabajo.comprobarCancelado();
 
-        try (PDDocument pdf = new PDDocument()) {
-            for (EntradaPagina entrada : paginas) {
-                // Navegar la fuente de datos a la fila correspondiente
-                if (fuenteDatos != null) {
-                    fuenteDatos.irA(entrada.filaIdx);
-                }
+        // B) Prueba A4
+        if (config.configPrueba() != null) {
+            File prueba = new File(base + "_prueba.pdf");
+            generarPruebaA4(config.configPrueba(), prueba);
+            generados.add(prueba);
+        }
 
-                // Renderizar canvas invisible en alta resolución
-                BufferedImage imagen = renderizarTarjeta(entrada.esFrente, config.recortarSangre());
+        // C) PDF Imprenta
+        if (config.exportarImprenta()) {
+            File imprenta = new File(base + "_imprenta.pdf");
+            exportarImprenta(imprenta);
+            generados.add(imprenta);
+        }
+        return generados;
+    }
 
-                // Crear página PDF con exactamente las dimensiones físicas CR80 (en puntos PDF 72pt/inch)
-                float anchoPoints = (float) imagen.getWidth() * 72f / (float) EXPORT_DPI;
-                float altoPoints  = (float) imagen.getHeight() * 72f / (float) EXPORT_DPI;
-                PDRectangle mediaBox = new PDRectangle(anchoPoints, altoPoints);
-                PDPage page = new PDPage(mediaBox);
-                pdf.addPage(page);
+    /**
+     * Páginas del trabajo para imprimir directamente con un {@code PrinterJob}: cada
+     * tarjeta se renderiza a {@code config.dpi()} cuando la impresora está a punto de
+     * pedirla, sin escribir ni volver a rasterizar un PDF. El llamante cierra el
+     * resultado al terminar la impresión.
+     */
+    PaginasImpresion paginasImpresion(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas,
+                                      TrabajoExportacion trabajo) {
+        PaginasImpresion paginas = paginasLote(config, filasSeleccionadas, trabajo);
+        trabajo.iniciar(paginas.getNumberOfPages());
+        return paginas;
+    }
 
-                PDImageXObject pdImage = LosslessFactory.createFromImage(pdf, imagen);
+    /** Páginas que tendrá la impresión de {@code filasSeleccionadas} (una o dos por registro). */
+    int contarPaginas(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas) {
+        return construirPaginas(config, filasSeleccionadas).size();
+    }
 
-                try (PDPageContentStream cs = new PDPageContentStream(pdf, page)) {
-                    cs.drawImage(pdImage, 0, 0, anchoPoints, altoPoints);
-                }
-            }
+    /**
+     * Como {@link #paginasImpresion}, sin reiniciar el progreso de {@code trabajo}: para
+     * los lotes de un trabajo repartido entre varias impresoras, que suman su progreso
+     * al del trabajo completo.
+     */
+    PaginasImpresion paginasLote(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas,
+                                 TrabajoExportacion trabajo) {
+        renderizador.invalidarCaches();
+        List<EntradaPagina> paginas = construirPaginas(config, filasSeleccionadas);
+        double escala = escala(config.dpi());
+        // Anverso y reverso comparten lienzo: el tamaño de página sale del plan del anverso
+        RenderizadorTarjeta.PlanCara plan = renderizador.planCara(true, config.recortarSangre(), escala);
+        return new PaginasImpresion(paginas.size(), plan.ancho(), plan.alto(), config.dpi(), config.hilosRender(),
+                i -> renderizarPagina(paginas.get(i), config.recortarSangre(), escala, null), trabajo);
+    }
 
-            pdf.save(destino);
+    /**
+     * Salida "una imagen por tarjeta y cara" (PNG o TIFF) para drivers de impresoras
+     * de tarjetas que reciben directamente una imagen por cara. No usa PDFBox: el
+     * pipeline renderiza y escribe los archivos en paralelo, a {@code config.dpi()}.
+     *
+     * <p>Los nombres son deterministas: el valor de {@code config.columnaNombreArchivo()}
+     * (o el número de registro si no hay columna, está vacía o se repite) seguido de
+     * {@code _anverso}/{@code _reverso}.</p>
+     *
+     * @param carpeta carpeta de destino; se crea si no existe.
+     * @return los archivos generados, en orden.
+     */
+    public List<File> exportarSecuencia(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas,
+                                        File carpeta, TrabajoExportacion trabajo) throws Exception {
+        FormatoSecuencia formato = config.formatoSecuencia();
+        java.nio.file.Files.createDirectories(carpeta.toPath());
+
+        // Nombres resueltos antes de empezar: así dos registros nunca escriben el mismo archivo
+        Map<Integer, String> nombres = nombresSecuencia(filasSeleccionadas, config.columnaNombreArchivo());
+        List<TarjetaSecuencia> tarjetas = new ArrayList<>();
+        for (EntradaPagina entrada : construirPaginas(config, filasSeleccionadas)) {
+            String nombre = nombres.get(entrada.filaIdx()) + (entrada.esFrente() ? "_anverso." : "_reverso.")
+                    + formato.getExtension();
+            tarjetas.add(new TarjetaSecuencia(entrada, new File(carpeta, nombre)));
         }
+
+        renderizador.invalidarCaches();
+        ultimasEstadisticas = null;
+        trabajo.iniciar(tarjetas.size());
+
+        List<EntradaPagina> paginas = tarjetas.stream().map(TarjetaSecuencia::pagina).toList();
+        double escala = escala(config.dpi());
+        try (PipelineExportacion pipeline = new PipelineExportacion(config.hilosRender());
+             PrecargaFotos precarga = precargaFotos(paginas, config.hilosRender(), escala, trabajo)) {
+            pipeline.ejecutar(tarjetas,
+                    (TarjetaSecuencia tarjeta) -> {
+                        trabajo.comprobarCancelado();
+                        long t0 = System.nanoTime();
+                        BufferedImage imagen = renderizarPagina(tarjeta.pagina(), config.recortarSangre(), escala,
+                                precarga);
+                        trabajo.registrarRender(System.nanoTime() - t0);
+                        return new TarjetaRenderizada(tarjeta, imagen);
+                    },
+                    (TarjetaRenderizada renderizada) -> {
+                        // Codificar y escribir en el pool: cada archivo es independiente
+                        long t0 = System.nanoTime();
+                        File archivo = renderizada.tarjeta().archivo();
+                        CodificadorSecuencia.escribir(renderizada.imagen(), formato, config.dpi(), archivo);
+                        trabajo.registrarCodificacion(System.nanoTime() - t0);
+                        return archivo;
+                    },
+                    (int indice, File archivo) -> {
+                        trabajo.comprobarCancelado();
+                        trabajo.paginaCompletada();
+                    });
+        } catch (Exception e) {
+            // Una secuencia incompleta no sirve para imprimir: se borra lo escrito
+            for (TarjetaSecuencia t : tarjetas) t.archivo().delete();
+            throw e;
+        }
+        trabajo.finalizar();
+        log.info("Secuencia " + formato + ": " + trabajo.getResumen());
+
+        List<File> archivos = new ArrayList<>(tarjetas.size());
+        for (TarjetaSecuencia t : tarjetas) archivos.add(t.archivo());
+        return archivos;
+    }
+
+    /** Nombre base (sin cara ni extensión) de cada registro en la salida por tarjeta. */
+    private Map<Integer, String> nombresSecuencia(List<Integer> filas, String columna) {
+        Map<Integer, String> nombres = new java.util.HashMap<>();
+        java.util.Set<String> usados = new java.util.HashSet<>();
+        for (int fila : filas) {
+            String valor = null;
+            if (columna != null && fuenteDatos != null) {
+                Map<String, String> registro = fuenteDatos.getRegistro(fila);
+                if (registro != null) valor = registro.get(columna);
+            }
+            String nombre = (valor == null || valor.isBlank())
+                    ? String.format("registro_%04d", fila + 1)
+                    : valor.trim().replaceAll("[^\\p{L}\\p{N}._-]", "_");
+            // Valor repetido: se distingue con el número de registro
+            if (!usados.add(nombre.toLowerCase())) {
+                nombre = nombre + String.format("_%04d", fila + 1);
+                usados.add(nombre.toLowerCase());
+            }
+            nombres.put(fila, nombre);
+        }
+        return nombres;
     }
 
     /**
-     * Genera un PDF para imprenta (2 páginas: Frente + Dorso) solo con fondos.
-     * Sin textos, sin imágenes variables, sin guías. Máxima calidad (400dpi).
+     * Exportación reanudable: genera el PDF en partes de {@link #REGISTROS_POR_PARTE}
+     * registros, anotando cada parte terminada en un {@link DiarioExportacion}. Si el
+     * mismo trabajo (mismo diseño, datos y opciones) se relanza tras una interrupción,
+     * solo se generan las partes que faltan. Al final las partes se unen en
+     * {@code destino} y el diario se borra.
+     *
+     * <p>Ante un error o una cancelación las partes terminadas se conservan a propósito.</p>
      */
-    public void exportarImprenta(File destino) throws Exception {
-        boolean hayDorso = proyecto.getFondoDorso() != null;
+    private void exportarReanudable(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas,
+                                    File destino, TrabajoExportacion trabajo) throws Exception {
+        String firma = HuellaExportacion.combinar(
+                HuellaExportacion.diseño(proyecto, renderizador),
+                huellaDatos(filasSeleccionadas),
+                config.imprimirDorso() + "|" + config.recortarSangre() + "|" + config.pdfVectorial()
+                        + "|" + config.codec() + "|" + config.calidadJpeg() + "|" + config.dpi()
+                        + "|" + REGISTROS_POR_PARTE);
+        DiarioExportacion diario = DiarioExportacion.abrir(destino, firma);
+
+        List<List<Integer>> partes = new ArrayList<>();
+        for (int i = 0; i < filasSeleccionadas.size(); i += REGISTROS_POR_PARTE) {
+            partes.add(filasSeleccionadas.subList(i, Math.min(i + REGISTROS_POR_PARTE, filasSeleccionadas.size())));
+        }
 
-        try (PDDocument pdf = new PDDocument()) {
-            // Página 1: Frente
-            BufferedImage frente = renderizarSoloFondo(true);
-            float anchoPoints = (float) frente.getWidth() * 72f / (float) EXPORT_DPI;
-            float altoPoints  = (float) frente.getHeight() * 72f / (float) EXPORT_DPI;
-            PDPage p1 = new PDPage(new PDRectangle(anchoPoints, altoPoints));
-            pdf.addPage(p1);
-            try (PDPageContentStream cs = new PDPageContentStream(pdf, p1)) {
-                cs.drawImage(LosslessFactory.createFromImage(pdf, frente), 0, 0, anchoPoints, altoPoints);
+        for (int n = 1; n <= partes.size(); n++) {
+            List<Integer> parte = partes.get(n - 1);
+            if (diario.completada(n)) {
+                // Ya generada en una ejecución anterior: fuera del total pendiente
+                trabajo.sumarPaginasTotales(-construirPaginas(config, parte).size());
+                continue;
             }
+            trabajo.comprobarCancelado();
+            exportarDocumento(config, parte, diario.archivoTemporal(n), config.hilosRender(),
+                    ultimasEstadisticas, trabajo);
+            diario.marcarCompletada(n);
+        }
 
-            // Página 2: Dorso (si existe)
-            if (hayDorso) {
-                BufferedImage dorso = renderizarSoloFondo(false);
-                float a2 = (float) dorso.getWidth() * 72f / (float) EXPORT_DPI;
-                float b2 = (float) dorso.getHeight() * 72f / (float) EXPORT_DPI;
-                PDPage p2 = new PDPage(new PDRectangle(a2, b2));
-                pdf.addPage(p2);
-                try (PDPageContentStream cs = new PDPageContentStream(pdf, p2)) {
-                    cs.drawImage(LosslessFactory.createFromImage(pdf, dorso), 0, 0, a2, b2);
-                }
+        // Unir las partes sin cargarlas enteras en memoria, en un temporal que solo se
+        // renombra al destino si la unión termina: nunca queda un PDF truncado con el
+        // nombre final (las partes siguen en el diario para reintentar)
+        long t0 = System.nanoTime();
+        File unido = new File(destino.getAbsolutePath() + ".tmp");
+        try {
+            PDFMergerUtility merger = new PDFMergerUtility();
+            merger.setDestinationFileName(unido.getAbsolutePath());
+            for (int n = 1; n <= partes.size(); n++) {
+                merger.addSource(diario.archivoParte(n));
             }
+            merger.mergeDocuments(MemoryUsageSetting.setupTempFileOnly());
+            Files.move(unido.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            unido.delete();
+            throw e;
+        }
+        trabajo.registrarEscritura(System.nanoTime() - t0);
 
-            pdf.save(destino);
+        diario.descartar();
+    }
+
+    /** Huella de los valores de las filas exportadas (y de sus fotos), en orden. */
+    private String huellaDatos(List<Integer> filas) {
+        if (fuenteDatos == null) return "sin-datos";
+        List<String> columnasFoto = obtenerColumnasFoto();
+        String[] huellas = new String[filas.size() + 1];
+        huellas[0] = fuenteDatos.getNombreArchivo();
+        for (int i = 0; i < filas.size(); i++) {
+            huellas[i + 1] = filas.get(i) + ":" + HuellaExportacion.registro(
+                    fuenteDatos.getRegistro(filas.get(i)), columnasFoto, renderizador);
         }
+        return HuellaExportacion.combinar(huellas);
     }
 
     /**
-     * Renderiza únicamente el fondo de una cara (sin ningún elemento de diseño).
-     * Resultado: canvas limpio con fondo o blanco puro. Sin guías.
+     * Exporta las filas en varios PDF de {@code config.registrosPorArchivo()} registros
+     * cada uno ({@code <base>_0001.pdf}, {@code <base>_0002.pdf}...), generados en
+     * paralelo con un {@link PDDocument} propio por archivo. Junto a ellos se escribe
+     * {@code <base>_manifiesto.csv} con los registros que contiene cada parte.
+     *
+     * <p>Los hilos de render se reparten entre los documentos en curso, de modo que
+     * el total de hilos no supera lo configurado.</p>
+     *
+     * @param base ruta de destino sin extensión (p. ej. {@code .../Proyecto_registros}).
+     * @return los PDF generados, en orden, seguidos del manifiesto.
      */
-    private BufferedImage renderizarSoloFondo(boolean esFrente) throws Exception {
-        double cardW = EditorCanvasManager.CARD_WIDTH  * EXPORT_SCALE;
-        double cardH = EditorCanvasManager.CARD_HEIGHT * EXPORT_SCALE;
-        double bleed = EditorCanvasManager.BLEED_MARGIN * EXPORT_SCALE;
-        double canvasW = cardW + bleed * 2;
-        double canvasH = cardH + bleed * 2;
-
-        ImagenFondoElemento fondo = esFrente ? proyecto.getFondoFrente() : proyecto.getFondoDorso();
+    public List<File> exportarPorLotes(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas,
+                                       String base) throws Exception {
+        return exportarPorLotes(config, filasSeleccionadas, base, new TrabajoExportacion());
+    }
 
-        AtomicReference<BufferedImage> resultRef = new AtomicReference<>();
-        AtomicReference<Exception> errorRef = new AtomicReference<>();
-        CountDownLatch latch = new CountDownLatch(1);
+    /**
+     * Igual que {@link #exportarPorLotes(ExportDialog.ExportConfig, List, String)}, con
+     * progreso y cancelación. Si se cancela o falla, se borran todas las partes.
+     */
+    public List<File> exportarPorLotes(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas,
+                                       String base, TrabajoExportacion trabajo) throws Exception {
+        int tamañoLote = Math.max(1, config.registrosPorArchivo());
+        List<List<Integer>> lotes = new ArrayList<>();
+        for (int i = 0; i < filasSeleccionadas.size(); i += tamañoLote) {
+            lotes.add(filasSeleccionadas.subList(i, Math.min(i + tamañoLote, filasSeleccionadas.size())));
+        }
 
-        final double fCardX = bleed;
-        final double fCardY = bleed;
+        List<File> archivos = new ArrayList<>();
+        for (int i = 0; i < lotes.size(); i++) {
+            archivos.add(new File(base + String.format("_%04d.pdf", i + 1)));
+        }
 
-        Platform.runLater(() -> {
-            try {
-                Canvas c = new Canvas(canvasW, canvasH);
-                GraphicsContext gc = c.getGraphicsContext2D();
-                gc.setFill(Color.WHITE);
-                gc.fillRect(0, 0, canvasW, canvasH);
-
-                if (fondo != null && fondo.getImagen() != null) {
-                    gc.drawImage(fondo.getImagen(),
-                            fCardX + fondo.getX() * EXPORT_SCALE,
-                            fCardY + fondo.getY() * EXPORT_SCALE,
-                            fondo.getWidth() * EXPORT_SCALE,
-                            fondo.getHeight() * EXPORT_SCALE);
+        renderizador.invalidarCaches();
+        ultimasEstadisticas = config.pdfVectorial() ? null : new EstadisticasCodificacion();
+        EstadisticasCodificacion estadisticas = ultimasEstadisticas;
+        trabajo.iniciar(construirPaginas(config, filasSeleccionadas).size());
+
+        // El ensamblado de cada PDF es secuencial: varios documentos a la vez
+        // aprovechan los núcleos que un único ensamblador deja ociosos
+        int hilos = PipelineExportacion.resolverHilos(config.hilosRender());
+        int documentosEnParalelo = Math.min(lotes.size(), Math.max(1, hilos / 2));
+        int hilosPorDocumento = Math.max(1, hilos / documentosEnParalelo);
+
+        ExecutorService poolDocumentos = Executors.newFixedThreadPool(documentosEnParalelo, r -> {
+            Thread t = new Thread(r, "export-lote");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> pendientes = new ArrayList<>();
+            for (int i = 0; i < lotes.size(); i++) {
+                List<Integer> lote = lotes.get(i);
+                File archivo = archivos.get(i);
+                pendientes.add(poolDocumentos.submit(() -> {
+                    exportarDocumento(config, lote, archivo, hilosPorDocumento, estadisticas, trabajo);
+                    return null;
+                }));
+            }
+            for (Future<?> f : pendientes) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    for (Future<?> otro : pendientes) otro.cancel(true);
+                    if (e.getCause() instanceof Exception ex) throw ex;
+                    throw e;
                 }
-
-                WritableImage snap = c.snapshot(null, null);
-                resultRef.set(SwingFXUtils.fromFXImage(snap, null));
-            } catch (Exception e) {
-                errorRef.set(e);
-            } finally {
-                latch.countDown();
             }
-        });
+        } catch (Exception e) {
+            // Parte de los archivos pueden haberse escrito: se descartan todos
+            poolDocumentos.shutdownNow();
+            poolDocumentos.awaitTermination(30, TimeUnit.SECONDS);
+            for (File archivo : archivos) archivo.delete();
+            throw e;
+        } finally {
+            poolDocumentos.shutdownNow();
+        }
+        trabajo.finalizar();
 
-        latch.await();
-        if (errorRef.get() != null) throw errorRef.get();
-        return resultRef.get();
+        File manifiesto = new File(base + "_manifiesto.csv");
+        escribirManifiesto(manifiesto, archivos, lotes);
+        archivos.add(manifiesto);
+
+        log.info("Exportación por lotes (" + lotes.size() + " archivos): " + trabajo.getResumen());
+        if (estadisticas != null) {
+            log.info("Codificación " + config.codec() + ": " + estadisticas);
+        }
+        return archivos;
     }
 
     /**
-     * Renderiza la cara indicada del proyecto en un BufferedImage de alta resolución.
-     * Las guías/handles de selección NUNCA aparecen en el renderizado de exportación.
-     * 
-     * IMPORTANTE: Canvas.snapshot() solo puede ejecutarse en el hilo JavaFX.
-     * Usamos CountDownLatch para sincronizar el hilo de fondo con el hilo FX.
+     * Genera un PDF con las filas indicadas. No invalida las cachés del renderizador,
+     * así que varios documentos pueden generarse a la vez compartiendo las capas estáticas.
      */
-    private BufferedImage renderizarTarjeta(boolean esFrente, boolean recortarSangre) throws Exception {
-
-        // Dimensiones del canvas virtual a 3× escala (para conseguir ~300dpi)
-        double cardW = EditorCanvasManager.CARD_WIDTH  * EXPORT_SCALE;
-        double cardH = EditorCanvasManager.CARD_HEIGHT * EXPORT_SCALE;
-        double bleed = EditorCanvasManager.BLEED_MARGIN * EXPORT_SCALE;
-
-        double canvasW = cardW + bleed * 2;
-        double canvasH = cardH + bleed * 2;
-
-        // Referencias compartidas entre hilos
-        AtomicReference<BufferedImage> resultRef = new AtomicReference<>();
-        AtomicReference<Exception> errorRef = new AtomicReference<>();
-        CountDownLatch latch = new CountDownLatch(1);
-
-        final double fCardX = bleed;
-        final double fCardY = bleed;
-        final double fCardW = cardW;
-        final double fCardH = cardH;
-        final List<Elemento> elementos = esFrente
-                ? proyecto.getElementosFrente()
-                : proyecto.getElementosDorso();
-        final ImagenFondoElemento fondo = esFrente
-                ? proyecto.getFondoFrente()
-                : proyecto.getFondoDorso();
-
-        // El snapshot DEBE ejecutarse en el hilo FX
-        Platform.runLater(() -> {
-            try {
-                Canvas offCanvas = new Canvas(canvasW, canvasH);
-                GraphicsContext gc = offCanvas.getGraphicsContext2D();
-                gc.clearRect(0, 0, canvasW, canvasH);
-
-                // Fondo
-                if (fondo != null && fondo.getImagen() != null) {
-                    double fx = fCardX + (fondo.getX() * EXPORT_SCALE);
-                    double fy = fCardY + (fondo.getY() * EXPORT_SCALE);
-                    double fw = fondo.getWidth()  * EXPORT_SCALE;
-                    double fh = fondo.getHeight() * EXPORT_SCALE;
-                    gc.drawImage(fondo.getImagen(), fx, fy, fw, fh);
-                } else {
-                    gc.setFill(Color.WHITE);
-                    gc.fillRect(fCardX, fCardY, fCardW, fCardH);
-                }
+    private void exportarDocumento(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas, File destino,
+                                   int hilosRender, EstadisticasCodificacion estadisticas,
+                                   TrabajoExportacion trabajo) throws Exception {
+        List<EntradaPagina> paginas = construirPaginas(config, filasSeleccionadas);
+
+        if (config.pdfVectorial()) {
+            // Modo vectorial: sin rasterizar, el coste lo marca PDFBox (un solo hilo)
+            try (PDDocument pdf = new PDDocument(memoria(config))) {
+                new ExportadorVectorial(proyecto, fuenteDatos, renderizador, pdf)
+                        .exportar(paginas, config.recortarSangre(), trabajo);
+                long t0 = System.nanoTime();
+                pdf.save(destino);
+                trabajo.registrarEscritura(System.nanoTime() - t0);
+            }
+            return;
+        }
 
-                // Elementos
-                if (elementos != null) {
-                    for (Elemento elem : elementos) {
-                        if (!elem.isVisible()) continue;
-                        dibujarElemento(gc, elem, fCardX, fCardY, EXPORT_SCALE);
-                    }
-                }
+        // Re-exportación incremental: las páginas cuya huella no cambia salen de la caché
+        CachePaginas cache = config.reutilizarPaginas()
+                ? CachePaginas.abrir(proyecto, HuellaExportacion.diseño(proyecto, renderizador)) : null;
+        List<String> columnasFoto = obtenerColumnasFoto();
+
+        double dpi = config.dpi();
+        double escala = escala(dpi);
+        // En alta resolución cada página se dibuja y comprime por franjas en la etapa de
+        // render: nunca existe el lienzo completo. JPEG pasa a sin pérdida (ver codecFranjas)
+        boolean porFranjas = dpi > DPI_MAXIMO_SIN_FRANJAS;
+        CodecImagen codec = porFranjas ? codecFranjas(config.codec()) : config.codec();
+
+        // Render (N hilos) → codificación (N hilos) → ensamblado en orden (este hilo)
+        // Los flujos de cada página (imagen + contenido) se escriben en un scratch file
+        // cuando se supera el límite: el heap no crece con el número de registros
+        // Las fotos variables se leen y decodifican por delante del render (hilos virtuales)
+        try (PDDocument pdf = new PDDocument(memoria(config));
+             PipelineExportacion pipeline = new PipelineExportacion(hilosRender);
+             PrecargaFotos precarga = precargaFotos(paginas, hilosRender, escala, trabajo)) {
+
+            pipeline.ejecutar(paginas,
+                    (EntradaPagina entrada) -> {
+                        trabajo.comprobarCancelado();
+                        long t0 = System.nanoTime();
+                        String huella = null;
+                        if (cache != null) {
+                            Map<String, String> registro = (fuenteDatos != null)
+                                    ? fuenteDatos.getRegistro(entrada.filaIdx) : null;
+                            huella = HuellaExportacion.combinar(
+                                    HuellaExportacion.registro(registro, columnasFoto, renderizador),
+                                    entrada.esFrente + "|" + config.recortarSangre() + "|" + dpi
+                                            + "|" + codec + "|" + config.calidadJpeg());
+                            PaginaCodificada cacheada = cache.leer(huella);
+                            if (cacheada != null) {
+                                if (precarga != null) precarga.liberar(entrada.filaIdx);
+                                return new PaginaRenderizada(null, cacheada, huella);
+                            }
+                        }
 
-                // Snapshot
-                WritableImage snapshot = offCanvas.snapshot(null, null);
-                BufferedImage buffered = SwingFXUtils.fromFXImage(snapshot, null);
-
-                // Recorte de sangre si aplica
-                if (recortarSangre) {
-                    int px = (int) Math.round(bleed);
-                    int py = (int) Math.round(bleed);
-                    int pw = (int) Math.round(fCardW);
-                    int ph = (int) Math.round(fCardH);
-                    buffered = buffered.getSubimage(px, py,
-                            Math.min(pw, buffered.getWidth() - px),
-                            Math.min(ph, buffered.getHeight() - py));
-                }
+                        if (porFranjas) {
+                            PaginaCodificada codificada = renderizarPorFranjas(entrada, config.recortarSangre(),
+                                    escala, codec, precarga, estadisticas, trabajo, t0);
+                            if (cache != null) cache.guardar(huella, codificada);
+                            return new PaginaRenderizada(null, codificada, huella);
+                        }
 
-                resultRef.set(buffered);
-            } catch (Exception e) {
-                errorRef.set(e);
-            } finally {
-                latch.countDown();
-            }
-        });
+                        // Renderizar en alta resolución con Java2D
+                        BufferedImage imagen = renderizarPagina(entrada, config.recortarSangre(), escala, precarga);
+                        trabajo.registrarRender(System.nanoTime() - t0);
+                        return new PaginaRenderizada(imagen, null, huella);
+                    },
+                    (PaginaRenderizada renderizada) -> {
+                        if (renderizada.codificada() != null) return renderizada.codificada();
+
+                        // Compresión en el pool de codificación, fuera del hilo de ensamblado
+                        long t0 = System.nanoTime();
+                        PaginaCodificada codificada = CodificadorPagina.codificar(renderizada.imagen(), codec, config.calidadJpeg());
+                        long nanos = System.nanoTime() - t0;
+                        estadisticas.registrar(nanos, codificada.datos().length);
+                        trabajo.registrarCodificacion(nanos);
+                        if (cache != null) cache.guardar(renderizada.huella(), codificada);
+                        return codificada;
+                    },
+                    (int indice, PaginaCodificada codificada) -> {
+                        trabajo.comprobarCancelado();
+                        long t0 = System.nanoTime();
+                        // Crear página PDF con exactamente las dimensiones físicas CR80 (en puntos PDF 72pt/inch)
+                        float anchoPoints = (float) codificada.ancho() * 72f / (float) dpi;
+                        float altoPoints  = (float) codificada.alto() * 72f / (float) dpi;
+                        PDPage page = new PDPage(new PDRectangle(anchoPoints, altoPoints));
+                        pdf.addPage(page);
+
+                        PDImageXObject pdImage = CodificadorPagina.aXObject(pdf, codificada);
+                        try (PDPageContentStream cs = new PDPageContentStream(pdf, page)) {
+                            cs.drawImage(pdImage, 0, 0, anchoPoints, altoPoints);
+                        }
+                        trabajo.registrarEscritura(System.nanoTime() - t0);
+                        trabajo.paginaCompletada();
+                    });
 
-        // Esperar a que el hilo FX haya terminado el snapshot
-        latch.await();
+            trabajo.comprobarCancelado();
+            long t0 = System.nanoTime();
+            pdf.save(destino);
+            trabajo.registrarEscritura(System.nanoTime() - t0);
+        }
 
-        if (errorRef.get() != null) throw errorRef.get();
-        return resultRef.get();
+        if (cache != null) {
+            log.info("Caché de páginas: " + cache.getAciertos() + " reutilizadas, "
+                    + cache.getFallos() + " renderizadas");
+        }
     }
 
     /**
-     * Dibuja un único elemento — versión limpia para exportación:
-     * sin handles, sin bordes de selección, sin guías.
+     * Renderiza una página leyendo los valores por índice de su fila (no mueve el
+     * cursor de la previsualización). Con precarga, las fotos salen de su búfer.
      */
-    private void dibujarElemento(GraphicsContext gc, Elemento elem, double cardX, double cardY, double scale) {
-        double ex = cardX + (elem.getX() * scale);
-        double ey = cardY + (elem.getY() * scale);
-        double ew = elem.getWidth()  * scale;
-        double eh = elem.getHeight() * scale;
-
-        if (elem instanceof TextoElemento texto) {
-            gc.setFill(Color.web(texto.getColor()));
-
-            var weight = texto.isNegrita()
-                    ? javafx.scene.text.FontWeight.BOLD
-                    : javafx.scene.text.FontWeight.NORMAL;
-            var posture = texto.isCursiva()
-                    ? javafx.scene.text.FontPosture.ITALIC
-                    : javafx.scene.text.FontPosture.REGULAR;
-
-            gc.setFont(Font.font(texto.getFontFamily(), weight, posture, texto.getFontSize() * scale));
-
-            // Resolver content (variable o fijo)
-            String contenido = texto.getContenido();
-            if (texto.getColumnaVinculada() != null && fuenteDatos != null) {
-                String val = fuenteDatos.getValor(texto.getColumnaVinculada());
-                if (val != null && !val.isEmpty()) contenido = val;
-            }
+    private BufferedImage renderizarPagina(EntradaPagina entrada, boolean recortarSangre, double escala,
+                                           PrecargaFotos precarga) {
+        if (precarga == null) {
+            return renderizador.renderizar(entrada.esFrente(), recortarSangre, fuenteDatos, entrada.filaIdx(),
+                    escala);
+        }
+        try {
+            return renderizador.renderizar(entrada.esFrente(), recortarSangre, fuenteDatos, entrada.filaIdx(),
+                    escala, precarga.fotos(entrada.filaIdx()));
+        } finally {
+            precarga.liberar(entrada.filaIdx());
+        }
+    }
+
+    /**
+     * Renderiza una página por franjas y comprime cada franja en cuanto está dibujada,
+     * de modo que la memoria por hilo queda acotada por {@link #ALTO_FRANJA} y no por
+     * los DPI. Render y compresión van entrelazados en el mismo hilo; sus tiempos se
+     * registran por separado.
+     */
+    private PaginaCodificada renderizarPorFranjas(EntradaPagina entrada, boolean recortarSangre, double escala,
+                                                  CodecImagen codec, PrecargaFotos precarga,
+                                                  EstadisticasCodificacion estadisticas,
+                                                  TrabajoExportacion trabajo, long t0) throws IOException {
+        RenderizadorTarjeta.PlanCara plan = renderizador.planCara(entrada.esFrente(), recortarSangre, escala);
+        CodificadorPagina.FlujoFlate flujo = new CodificadorPagina.FlujoFlate(plan.ancho(), plan.alto(), codec);
+        long[] nanosCodificacion = new long[1];
+        PlanRender.ResolutorFotos fotos = precarga != null
+                ? precarga.fotos(entrada.filaIdx()) : renderizador::resolverImagenVariable;
+        try {
+            renderizador.renderizarPorFranjas(entrada.esFrente(), recortarSangre, fuenteDatos, entrada.filaIdx(),
+                    escala, ALTO_FRANJA, fotos, franja -> {
+                        long t1 = System.nanoTime();
+                        flujo.añadir(franja);
+                        nanosCodificacion[0] += System.nanoTime() - t1;
+                    });
+        } finally {
+            if (precarga != null) precarga.liberar(entrada.filaIdx());
+        }
 
-            // Multi-línea con auto-wrap (mismo algoritmo que EditorCanvasManager)
-            List<String> lines = computeLines(contenido, texto.isSaltoLinea(), gc.getFont(), ew);
+        long t1 = System.nanoTime();
+        PaginaCodificada codificada = flujo.terminar();
+        nanosCodificacion[0] += System.nanoTime() - t1;
 
-            double lineH = texto.getFontSize() * scale * 1.2;
-            double curY  = ey + (texto.getFontSize() * scale);
+        trabajo.registrarRender(System.nanoTime() - t0 - nanosCodificacion[0]);
+        trabajo.registrarCodificacion(nanosCodificacion[0]);
+        estadisticas.registrar(nanosCodificacion[0], codificada.datos().length);
+        return codificada;
+    }
 
-            for (String line : lines) {
-                double textX = ex;
-                javafx.scene.text.Text tmpText = new javafx.scene.text.Text(line);
-                tmpText.setFont(gc.getFont());
-                double tw = tmpText.getLayoutBounds().getWidth();
+    /**
+     * Códec de las páginas renderizadas por franjas. Las franjas se comprimen en un
+     * único flujo Flate continuo; JPEG no admite esa escritura incremental y además
+     * emborrona el microtexto que justifica estos DPI, así que se sustituye por el
+     * códec sin pérdida.
+     */
+    private static CodecImagen codecFranjas(CodecImagen codec) {
+        return codec == CodecImagen.JPEG ? CodecImagen.SIN_PERDIDA : codec;
+    }
 
-                if ("CENTER".equals(texto.getAlineacion())) {
-                    textX = ex + (ew - tw) / 2;
-                } else if ("RIGHT".equals(texto.getAlineacion())) {
-                    textX = ex + ew - tw;
-                }
+    /** Escala de salida (píxeles por unidad de canvas del editor) para los DPI indicados. */
+    static double escala(double dpi) {
+        return (EditorCanvasManager.CR80_WIDTH_MM / 25.4 * dpi) / EditorCanvasManager.CARD_WIDTH;
+    }
+
+    /** Precarga de fotos para las páginas indicadas, o null si el diseño no tiene fotos variables. */
+    private PrecargaFotos precargaFotos(List<EntradaPagina> paginas, int hilosRender, double escala,
+                                        TrabajoExportacion trabajo) {
+        Map<String, java.util.Set<java.awt.Dimension>> tamañosFoto = tamañosFoto(escala);
+        if (fuenteDatos == null || tamañosFoto.isEmpty()) return null;
+        List<Integer> filas = paginas.stream().map(EntradaPagina::filaIdx).toList();
+        return new PrecargaFotos(renderizador, fuenteDatos, filas, tamañosFoto,
+                PipelineExportacion.resolverHilos(hilosRender) * PRECARGA_FILAS_POR_HILO, trabajo);
+    }
 
-                gc.fillText(line, textX, curY);
-                curY += lineH;
+    /**
+     * Tamaños en píxeles de los huecos de cada columna de foto a la escala indicada. Una
+     * columna usada en marcos de distinto tamaño tiene un tamaño por marco.
+     */
+    private Map<String, java.util.Set<java.awt.Dimension>> tamañosFoto(double escala) {
+        Map<String, java.util.Set<java.awt.Dimension>> tamaños = new java.util.LinkedHashMap<>();
+        for (List<Elemento> cara : List.of(proyecto.getElementosFrente(), proyecto.getElementosDorso())) {
+            for (Elemento el : cara) {
+                if (el instanceof ImagenElemento i && i.getColumnaVinculada() != null) {
+                    int ancho = PlanRender.tamañoPx(i.getWidth() * escala);
+                    int alto = PlanRender.tamañoPx(i.getHeight() * escala);
+                    tamaños.computeIfAbsent(i.getColumnaVinculada(), c -> new java.util.LinkedHashSet<>())
+                            .add(new java.awt.Dimension(ancho, alto));
+                }
             }
+        }
+        return tamaños;
+    }
 
-        } else if (elem instanceof ImagenElemento imgElem) {
-            Image img = imgElem.getImagen();
+    /** Lista ordenada de páginas (registro + cara) que genera una exportación. */
+    private List<EntradaPagina> construirPaginas(ExportDialog.ExportConfig config, List<Integer> filasSeleccionadas) {
+        List<EntradaPagina> paginas = new ArrayList<>();
 
-            // Resolver imagen variable
-            if (imgElem.getColumnaVinculada() != null && fuenteDatos != null) {
-                String nombreArchivo = fuenteDatos.getValor(imgElem.getColumnaVinculada());
-                Image imgVariable = resolverImagenVariable(nombreArchivo);
-                if (imgVariable != null) img = imgVariable;
-            }
+        boolean tieneDorso = !proyecto.getElementosDorso().isEmpty() || proyecto.getFondoDorso() != null;
 
-            if (img != null) {
-                gc.setGlobalAlpha(imgElem.getOpacity());
-                gc.drawImage(img, ex, ey, ew, eh);
-                gc.setGlobalAlpha(1.0);
-            } else if (SILUETA_IMG != null) {
-                // Sin imagen real: mostrar silueta de placeholder con opacidad completa
-                gc.drawImage(SILUETA_IMG, ex, ey, ew, eh);
-            } else {
-                // Fallback gris si tampoco hay silueta en recursos
-                gc.setFill(Color.web("#cccccc"));
-                gc.fillRect(ex, ey, ew, eh);
-            }
-        } else if (elem instanceof FormaElemento forma) {
-            double grosor = Math.max(1.0, forma.getGrosorBorde() * scale);
-            gc.setLineWidth(grosor);
-
-            switch (forma.getTipoForma()) {
-                case RECTANGULO -> {
-                    if (forma.isConRelleno()) {
-                        gc.setFill(Color.web(forma.getColorRelleno()));
-                        gc.fillRect(ex, ey, ew, eh);
-                    }
-                    gc.setStroke(Color.web(forma.getColorBorde()));
-                    gc.strokeRect(ex, ey, ew, eh);
-                }
-                case ELIPSE -> {
-                    if (forma.isConRelleno()) {
-                        gc.setFill(Color.web(forma.getColorRelleno()));
-                        gc.fillOval(ex, ey, ew, eh);
-                    }
-                    gc.setStroke(Color.web(forma.getColorBorde()));
-                    gc.strokeOval(ex, ey, ew, eh);
-                }
-                case LINEA -> {
-                    gc.setStroke(Color.web(forma.getColorBorde()));
-                    // Centrada verticalmente en el área ocupada por el elemento
-                    gc.strokeLine(ex, ey + eh / 2, ex + ew, ey + eh / 2);
-                }
+        for (int filaIdx : filasSeleccionadas) {
+            // Siempre exportamos el frente
+            paginas.add(new EntradaPagina(filaIdx, true));
+            // Si es Anverso + Reverso Y el proyecto tiene dorso, añadir el dorso
+            if (config.imprimirDorso() && tieneDorso) {
+                paginas.add(new EntradaPagina(filaIdx, false));
             }
         }
+        return paginas;
     }
 
-    /** Misma lógica de word-wrap que EditorCanvasManager para coherencia visual */
-    private List<String> computeLines(String contenido, boolean saltoLinea, Font font, double maxWidth) {
-        List<String> rawLines = java.util.Arrays.asList(contenido.split("\n", -1));
-        List<String> finalLines = new ArrayList<>();
-
-        if (saltoLinea) {
-            javafx.scene.text.Text helper = new javafx.scene.text.Text();
-            helper.setFont(font);
-            for (String raw : rawLines) {
-                if (raw.isEmpty()) { finalLines.add(""); continue; }
-                String[] words = raw.split(" ", -1);
-                StringBuilder current = new StringBuilder();
-                for (String word : words) {
-                    String test = current.length() == 0 ? word : current + " " + word;
-                    helper.setText(test);
-                    if (helper.getLayoutBounds().getWidth() > maxWidth) {
-                        if (current.length() > 0) { finalLines.add(current.toString()); current = new StringBuilder(); }
-                        helper.setText(word);
-                        if (helper.getLayoutBounds().getWidth() > maxWidth) {
-                            StringBuilder partial = new StringBuilder();
-                            for (char c : word.toCharArray()) {
-                                helper.setText(partial.toString() + c);
-                                if (helper.getLayoutBounds().getWidth() > maxWidth && partial.length() > 0) {
-                                    finalLines.add(partial.toString()); partial = new StringBuilder().append(c);
-                                } else { partial.append(c); }
-                            }
-                            current = partial;
-                        } else { current = new StringBuilder(word); }
-                    } else { current = new StringBuilder(test); }
-                }
-                if (current.length() > 0) finalLines.add(current.toString());
+    /** Escribe el manifiesto de una exportación por lotes: qué registros hay en cada archivo. */
+    private static void escribirManifiesto(File manifiesto, List<File> archivos, List<List<Integer>> lotes)
+            throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(manifiesto.toPath(), StandardCharsets.UTF_8))) {
+            out.println("archivo;registros;primer_registro;ultimo_registro;rango");
+            for (int i = 0; i < archivos.size(); i++) {
+                List<Integer> lote = lotes.get(i);
+                // Números de registro 1-based, como los muestra la aplicación
+                out.println(archivos.get(i).getName() + ";" + lote.size() + ";"
+                        + (lote.get(0) + 1) + ";" + (lote.get(lote.size() - 1) + 1) + ";"
+                        + ExportDialog.formatearRangoFilas(lote));
             }
-        } else {
-            finalLines.addAll(rawLines);
         }
-        return finalLines;
     }
 
-    /** Intenta cargar una imagen desde la columna de datos (nombre de archivo) */
-    private Image resolverImagenVariable(String nombreArchivo) {
-        if (nombreArchivo == null || nombreArchivo.isBlank()) return null;
-        if (proyecto.getMetadata() == null) return null;
+    /**
+     * Estadísticas de codificación (ms y bytes por página) de la última llamada a
+     * {@link #exportar} o {@link #exportarPorLotes} en modo imagen, o {@code null}
+     * si aún no se ha exportado.
+     */
+    public EstadisticasCodificacion getUltimasEstadisticas() {
+        return ultimasEstadisticas;
+    }
 
-        String fotosDir = proyecto.getMetadata().getRutaFotos();
-        if (fotosDir == null) return null;
+    /**
+     * Image XObject sin pérdida (RGB + Flate con predictor) escrito directamente desde
+     * el buffer de píxeles, sin las conversiones de {@code LosslessFactory}.
+     */
+    private static PDImageXObject xObjectSinPerdida(PDDocument pdf, BufferedImage imagen) throws IOException {
+        return CodificadorPagina.aXObject(pdf, CodificadorPagina.codificar(imagen, CodecImagen.SIN_PERDIDA, 1f));
+    }
 
-        File imgFile = Paths.get(fotosDir, nombreArchivo).toFile();
-        if (!imgFile.exists()) return null;
+    /**
+     * Genera un PDF para imprenta (2 páginas: Frente + Dorso) solo con fondos.
+     * Sin textos, sin imágenes variables, sin guías. Máxima calidad (400dpi).
+     */
+    public void exportarImprenta(File destino) throws Exception {
+        boolean hayDorso = proyecto.getFondoDorso() != null;
 
-        try {
-            return new Image(imgFile.toURI().toString());
-        } catch (Exception e) {
-            return null;
+        try (PDDocument pdf = new PDDocument()) {
+            // Página 1: Frente
+            BufferedImage frente = renderizador.renderizarSoloFondo(true, EXPORT_SCALE);
+            float anchoPoints = (float) frente.getWidth() * 72f / (float) EXPORT_DPI;
+            float altoPoints  = (float) frente.getHeight() * 72f / (float) EXPORT_DPI;
+            PDPage p1 = new PDPage(new PDRectangle(anchoPoints, altoPoints));
+            pdf.addPage(p1);
+            try (PDPageContentStream cs = new PDPageContentStream(pdf, p1)) {
+                cs.drawImage(xObjectSinPerdida(pdf, frente), 0, 0, anchoPoints, altoPoints);
+            }
+
+            // Página 2: Dorso (si existe)
+            if (hayDorso) {
+                BufferedImage dorso = renderizador.renderizarSoloFondo(false, EXPORT_SCALE);
+                float a2 = (float) dorso.getWidth() * 72f / (float) EXPORT_DPI;
+                float b2 = (float) dorso.getHeight() * 72f / (float) EXPORT_DPI;
+                PDPage p2 = new PDPage(new PDRectangle(a2, b2));
+                pdf.addPage(p2);
+                try (PDPageContentStream cs = new PDPageContentStream(pdf, p2)) {
+                    cs.drawImage(xObjectSinPerdida(pdf, dorso), 0, 0, a2, b2);
+                }
+            }
+
+            pdf.save(destino);
         }
     }
 
-    /**
-     * Genera un PDF de prueba A4 para aprobación del cliente.
     /**
      * Genera el PDF de Muestra de Diseño A4 con la configuración elegida por el usuario.
      * La firma/aprobación siempre aparece al pie del documento.
@@ -476,225 +792,188 @@ public class PDFExportService {
         final String estudio = (cfg.nombreEstudio() == null || cfg.nombreEstudio().isBlank())
                 ? "TPS Studio" : cfg.nombreEstudio();
 
-        AtomicReference<BufferedImage> resultRef = new AtomicReference<>();
-        AtomicReference<Exception> errorRef = new AtomicReference<>();
-        CountDownLatch latch = new CountDownLatch(1);
+        BufferedImage a4img = new BufferedImage(A4_W_PX, A4_H_PX, BufferedImage.TYPE_INT_RGB);
+        Graphics2D gc = a4img.createGraphics();
+        try {
+            RenderizadorTarjeta.aplicarCalidad(gc);
+            gc.setColor(Color.WHITE);
+            gc.fillRect(0, 0, A4_W_PX, A4_H_PX);
 
-        Platform.runLater(() -> {
-            try {
-                Canvas c = new Canvas(A4_W_PX, A4_H_PX);
-                GraphicsContext gc = c.getGraphicsContext2D();
-                gc.setFill(Color.WHITE);
-                gc.fillRect(0, 0, A4_W_PX, A4_H_PX);
-
-                double margin = A4_W_PX * 0.045;
-
-                boolean hayDorso = !proyecto.getElementosDorso().isEmpty() || proyecto.getFondoDorso() != null;
-
-                if (cfg.formatoA4Completo()) {
-                    // ── CABECERA ────────────────────────────────────────────
-                    double headerH = A4_H_PX * 0.075;
-                    gc.setFill(Color.web("#1a1a2e"));
-                    gc.fillRect(0, 0, A4_W_PX, headerH);
-
-                    gc.setFill(Color.WHITE);
-                    gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.BOLD,
-                            javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.022));
-                    gc.fillText(estudio + "  —  Muestra de Diseño", margin, headerH * 0.67);
-
-                    gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.NORMAL,
-                            javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.015));
-                    String dateText = "Fecha: " + fecha;
-                    javafx.scene.text.Text tmp = new javafx.scene.text.Text(dateText);
-                    tmp.setFont(gc.getFont());
-                    gc.fillText(dateText, A4_W_PX - margin - tmp.getLayoutBounds().getWidth() - 5, headerH * 0.67);
-
-                    double yPos = headerH + margin * 0.8;
-
-                    // Proyecto y cliente
-                    gc.setFill(Color.web("#22223b"));
-                    gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.BOLD,
-                            javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.022));
-                    gc.fillText("Proyecto:  " + nombreProyecto, margin, yPos);
-                    yPos += A4_W_PX * 0.028;
+            double margin = A4_W_PX * 0.045;
 
-                    if (!nombreCliente.isBlank()) {
-                        gc.setFill(Color.web("#555555"));
-                        gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.NORMAL,
-                                javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.017));
-                        gc.fillText("Cliente:  " + nombreCliente, margin, yPos);
-                        yPos += A4_W_PX * 0.028;
-                    }
+            boolean hayDorso = !proyecto.getElementosDorso().isEmpty() || proyecto.getFondoDorso() != null;
 
-                    // Separador
-                    gc.setStroke(Color.web("#cccccc"));
-                    gc.setLineWidth(1.2);
-                    gc.strokeLine(margin, yPos, A4_W_PX - margin, yPos);
-                    yPos += margin * 0.7;
-
-                    // ── ÁREA DE APROBACIÓN (reservada al final de la página) ──
-                    // Calculamos cuánto espacio necesita el bloque inferior para fijarlo al pie
-                    double pieH  = A4_H_PX * 0.005;  // tira de pie
-                    double firmaH = cfg.incluirAprobacion() ? A4_H_PX * 0.115 : 0;
-                    double fraseH = (!cfg.frasePersonalizada().isBlank()) ? A4_H_PX * 0.035 : 0;
-                    double aprobYStart = A4_H_PX - pieH - firmaH - fraseH - margin * 0.5;
-
-                    // ── DISEÑOS (zona central) ──────────────────────────────
-                    double totalCardsW = hayDorso
-                            ? (cardW_px + bleed_px * 2) * 2 + margin
-                            : (cardW_px + bleed_px * 2);
-                    double cardsStartX = (A4_W_PX - totalCardsW) / 2;
-
-                    // Frente
-                    renderTarjetaEnCanvas(gc, proyecto.getElementosFrente(), proyecto.getFondoFrente(),
-                            cardsStartX, yPos, CARD_SCALE_PRUEBA, true);
-                    double labelY = yPos + cardH_px + bleed_px * 2 + A4_W_PX * 0.015;
-
-                    gc.setFill(Color.web("#333333"));
-                    gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.BOLD,
-                            javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.015));
-                    double centroF = cardsStartX + (cardW_px + bleed_px * 2) / 2;
-                    gc.fillText("ANVERSO", centroF - 25, labelY);
-
-                    if (hayDorso) {
-                        double dorsoX = cardsStartX + cardW_px + bleed_px * 2 + margin;
-                        renderTarjetaEnCanvas(gc, proyecto.getElementosDorso(), proyecto.getFondoDorso(),
-                                dorsoX, yPos, CARD_SCALE_PRUEBA, true);
-                        double centroD = dorsoX + (cardW_px + bleed_px * 2) / 2;
-                        gc.fillText("REVERSO", centroD - 25, labelY);
-                    }
-                    yPos = labelY + A4_W_PX * 0.030;
-
-                    // ── CAMPOS VARIABLES (si los hay y están activados) ──────
-                    if (cfg.incluirCamposVariables() && !varCols.isEmpty()) {
-                        gc.setStroke(Color.web("#e0e0e0"));
-                        gc.setLineWidth(1);
-                        gc.strokeLine(margin, yPos, A4_W_PX - margin, yPos);
-                        yPos += margin * 0.5;
-
-                        gc.setFill(Color.web("#22223b"));
-                        gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.BOLD,
-                                javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.016));
-                        gc.fillText("Campos variables del diseño:", margin, yPos);
-                        yPos += A4_W_PX * 0.020;
-
-                        gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.NORMAL,
-                                javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.013));
-                        int ncols = 2;
-                        double colW = (A4_W_PX - margin * 2) / ncols;
-                        for (int i = 0; i < varCols.size(); i++) {
-                            double cx = margin + (i % ncols) * colW;
-                            double cy = yPos + (i / ncols) * (A4_W_PX * 0.028);
-                            gc.setFill(Color.web("#4a4a8a"));
-                            gc.fillText("• " + varCols.get(i) + ":", cx, cy);
-                            gc.setStroke(Color.web("#bbbbbb"));
-                            gc.setLineWidth(0.7);
-                            gc.strokeLine(cx + colW * 0.28, cy + 2, cx + colW * 0.85, cy + 2);
-                        }
-                    }
+            if (cfg.formatoA4Completo()) {
+                // ── CABECERA ────────────────────────────────────────────
+                double headerH = A4_H_PX * 0.075;
+                gc.setColor(RenderizadorTarjeta.color("#1a1a2e"));
+                gc.fill(new Rectangle2D.Double(0, 0, A4_W_PX, headerH));
 
-                    // ── FRASE PERSONALIZADA (antes de firma) ─────────────────
-                    if (!cfg.frasePersonalizada().isBlank()) {
-                        double fraseY = aprobYStart - fraseH + A4_W_PX * 0.020;
-                        gc.setFill(Color.web("#888888"));
-                        gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.NORMAL,
-                                javafx.scene.text.FontPosture.ITALIC, A4_W_PX * 0.013));
-                        gc.fillText("* " + cfg.frasePersonalizada(), margin, fraseY);
-                    }
+                gc.setColor(Color.WHITE);
+                gc.setFont(fuenteArial(true, false, A4_W_PX * 0.022));
+                texto(gc, estudio + "  —  Muestra de Diseño", margin, headerH * 0.67);
 
-                    // ── ÁREA DE APROBACIÓN (FIJA AL PIE) ────────────────────
-                    if (cfg.incluirAprobacion()) {
-                        gc.setStroke(Color.web("#cccccc"));
-                        gc.setLineWidth(1.2);
-                        gc.strokeLine(margin, aprobYStart, A4_W_PX - margin, aprobYStart);
-
-                        double ay = aprobYStart + margin * 0.6;
-                        gc.setFill(Color.web("#22223b"));
-                        gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.BOLD,
-                                javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.015));
-                        gc.fillText("Conformidad del cliente:", margin, ay);
-                        ay += A4_W_PX * 0.022;
-
-                        double boxSz = A4_W_PX * 0.022;
-                        gc.setStroke(Color.web("#333333"));
-                        gc.setLineWidth(1.2);
-                        gc.strokeRect(margin, ay - boxSz * 0.8, boxSz, boxSz);
-                        gc.setFill(Color.web("#2e7d32"));
-                        gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.BOLD,
-                                javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.015));
-                        gc.fillText("APROBADO", margin + boxSz + 10, ay);
-
-                        double colDos = A4_W_PX * 0.38;
-                        gc.setStroke(Color.web("#333333"));
-                        gc.strokeRect(colDos, ay - boxSz * 0.8, boxSz, boxSz);
-                        gc.setFill(Color.web("#c62828"));
-                        gc.fillText("CON CORRECCIONES", colDos + boxSz + 10, ay);
-                        ay += A4_W_PX * 0.042;
-
-                        // Línea de firma
-                        gc.setStroke(Color.web("#555555"));
-                        gc.setLineWidth(0.9);
-                        gc.strokeLine(margin, ay, margin + A4_W_PX * 0.32, ay);
-                        gc.setFill(Color.web("#666666"));
-                        gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.NORMAL,
-                                javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.012));
-                        gc.fillText("Firma del cliente", margin, ay + A4_W_PX * 0.018);
-
-                        double fechaCol = margin + A4_W_PX * 0.40;
-                        gc.strokeLine(fechaCol, ay, fechaCol + A4_W_PX * 0.16, ay);
-                        gc.fillText("Fecha", fechaCol, ay + A4_W_PX * 0.018);
-                    }
+                gc.setFont(fuenteArial(false, false, A4_W_PX * 0.015));
+                String dateText = "Fecha: " + fecha;
+                texto(gc, dateText, A4_W_PX - margin - anchoTexto(gc, dateText) - 5, headerH * 0.67);
 
-                    // ── PIE DE PÁGINA ────────────────────────────────────────
-                    gc.setFill(Color.web("#aaaaaa"));
-                    gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.NORMAL,
-                            javafx.scene.text.FontPosture.ITALIC, A4_W_PX * 0.011));
-                    gc.fillText(estudio + "  ·  Muestra de diseño: " + nombreProyecto + "  ·  " + fecha,
-                            margin, A4_H_PX - margin * 0.5);
-
-                } else {
-                    // ── MODO "Solo diseños" ──────────────────────────────────
-                    boolean hd = !proyecto.getElementosDorso().isEmpty() || proyecto.getFondoDorso() != null;
-                    double totalW = hd ? (cardW_px + bleed_px * 2) * 2 + margin : (cardW_px + bleed_px * 2);
-                    double startX = (A4_W_PX - totalW) / 2;
-                    double startY = (A4_H_PX - cardH_px - bleed_px * 2) / 2 - (hd ? 0 : 0);
-
-                    renderTarjetaEnCanvas(gc, proyecto.getElementosFrente(), proyecto.getFondoFrente(),
-                            startX, startY, CARD_SCALE_PRUEBA, true);
-                    gc.setFill(Color.web("#444444"));
-                    gc.setFont(Font.font("Arial", javafx.scene.text.FontWeight.BOLD,
-                            javafx.scene.text.FontPosture.REGULAR, A4_W_PX * 0.016));
-                    gc.fillText("ANVERSO",
-                            startX + (cardW_px + bleed_px * 2) / 2 - 30,
-                            startY + cardH_px + bleed_px * 2 + A4_W_PX * 0.02);
+                double yPos = headerH + margin * 0.8;
+
+                // Proyecto y cliente
+                gc.setColor(RenderizadorTarjeta.color("#22223b"));
+                gc.setFont(fuenteArial(true, false, A4_W_PX * 0.022));
+                texto(gc, "Proyecto:  " + nombreProyecto, margin, yPos);
+                yPos += A4_W_PX * 0.028;
 
-                    if (hd) {
-                        double dx = startX + cardW_px + bleed_px * 2 + margin;
-                        renderTarjetaEnCanvas(gc, proyecto.getElementosDorso(), proyecto.getFondoDorso(),
-                                dx, startY, CARD_SCALE_PRUEBA, true);
-                        gc.fillText("REVERSO",
-                                dx + (cardW_px + bleed_px * 2) / 2 - 30,
-                                startY + cardH_px + bleed_px * 2 + A4_W_PX * 0.02);
+                if (!nombreCliente.isBlank()) {
+                    gc.setColor(RenderizadorTarjeta.color("#555555"));
+                    gc.setFont(fuenteArial(false, false, A4_W_PX * 0.017));
+                    texto(gc, "Cliente:  " + nombreCliente, margin, yPos);
+                    yPos += A4_W_PX * 0.028;
+                }
+
+                // Separador
+                linea(gc, "#cccccc", 1.2, margin, yPos, A4_W_PX - margin, yPos);
+                yPos += margin * 0.7;
+
+                // ── ÁREA DE APROBACIÓN (reservada al final de la página) ──
+                // Calculamos cuánto espacio necesita el bloque inferior para fijarlo al pie
+                double pieH  = A4_H_PX * 0.005;  // tira de pie
+                double firmaH = cfg.incluirAprobacion() ? A4_H_PX * 0.115 : 0;
+                double fraseH = (!cfg.frasePersonalizada().isBlank()) ? A4_H_PX * 0.035 : 0;
+                double aprobYStart = A4_H_PX - pieH - firmaH - fraseH - margin * 0.5;
+
+                // ── DISEÑOS (zona central) ──────────────────────────────
+                double totalCardsW = hayDorso
+                        ? (cardW_px + bleed_px * 2) * 2 + margin
+                        : (cardW_px + bleed_px * 2);
+                double cardsStartX = (A4_W_PX - totalCardsW) / 2;
+
+                // Frente
+                renderTarjetaEnCanvas(gc, proyecto.getElementosFrente(), proyecto.getFondoFrente(),
+                        cardsStartX, yPos, CARD_SCALE_PRUEBA);
+                double labelY = yPos + cardH_px + bleed_px * 2 + A4_W_PX * 0.015;
+
+                gc.setColor(RenderizadorTarjeta.color("#333333"));
+                gc.setFont(fuenteArial(true, false, A4_W_PX * 0.015));
+                double centroF = cardsStartX + (cardW_px + bleed_px * 2) / 2;
+                texto(gc, "ANVERSO", centroF - 25, labelY);
+
+                if (hayDorso) {
+                    double dorsoX = cardsStartX + cardW_px + bleed_px * 2 + margin;
+                    renderTarjetaEnCanvas(gc, proyecto.getElementosDorso(), proyecto.getFondoDorso(),
+                            dorsoX, yPos, CARD_SCALE_PRUEBA);
+                    gc.setColor(RenderizadorTarjeta.color("#333333"));
+                    gc.setFont(fuenteArial(true, false, A4_W_PX * 0.015));
+                    double centroD = dorsoX + (cardW_px + bleed_px * 2) / 2;
+                    texto(gc, "REVERSO", centroD - 25, labelY);
+                }
+                yPos = labelY + A4_W_PX * 0.030;
+
+                // ── CAMPOS VARIABLES (si los hay y están activados) ──────
+                if (cfg.incluirCamposVariables() && !varCols.isEmpty()) {
+                    linea(gc, "#e0e0e0", 1, margin, yPos, A4_W_PX - margin, yPos);
+                    yPos += margin * 0.5;
+
+                    gc.setColor(RenderizadorTarjeta.color("#22223b"));
+                    gc.setFont(fuenteArial(true, false, A4_W_PX * 0.016));
+                    texto(gc, "Campos variables del diseño:", margin, yPos);
+                    yPos += A4_W_PX * 0.020;
+
+                    gc.setFont(fuenteArial(false, false, A4_W_PX * 0.013));
+                    int ncols = 2;
+                    double colW = (A4_W_PX - margin * 2) / ncols;
+                    for (int i = 0; i < varCols.size(); i++) {
+                        double cx = margin + (i % ncols) * colW;
+                        double cy = yPos + (i / ncols) * (A4_W_PX * 0.028);
+                        gc.setColor(RenderizadorTarjeta.color("#4a4a8a"));
+                        texto(gc, "• " + varCols.get(i) + ":", cx, cy);
+                        linea(gc, "#bbbbbb", 0.7, cx + colW * 0.28, cy + 2, cx + colW * 0.85, cy + 2);
                     }
                 }
 
-                WritableImage snap = c.snapshot(null, null);
-                resultRef.set(SwingFXUtils.fromFXImage(snap, null));
-            } catch (Exception e) {
-                errorRef.set(e);
-            } finally {
-                latch.countDown();
-            }
-        });
+                // ── FRASE PERSONALIZADA (antes de firma) ─────────────────
+                if (!cfg.frasePersonalizada().isBlank()) {
+                    double fraseY = aprobYStart - fraseH + A4_W_PX * 0.020;
+                    gc.setColor(RenderizadorTarjeta.color("#888888"));
+                    gc.setFont(fuenteArial(false, true, A4_W_PX * 0.013));
+                    texto(gc, "* " + cfg.frasePersonalizada(), margin, fraseY);
+                }
 
-        latch.await();
-        if (errorRef.get() != null) throw errorRef.get();
+                // ── ÁREA DE APROBACIÓN (FIJA AL PIE) ────────────────────
+                if (cfg.incluirAprobacion()) {
+                    linea(gc, "#cccccc", 1.2, margin, aprobYStart, A4_W_PX - margin, aprobYStart);
+
+                    double ay = aprobYStart + margin * 0.6;
+                    gc.setColor(RenderizadorTarjeta.color("#22223b"));
+                    gc.setFont(fuenteArial(true, false, A4_W_PX * 0.015));
+                    texto(gc, "Conformidad del cliente:", margin, ay);
+                    ay += A4_W_PX * 0.022;
+
+                    double boxSz = A4_W_PX * 0.022;
+                    rectangulo(gc, "#333333", 1.2, margin, ay - boxSz * 0.8, boxSz, boxSz);
+                    gc.setColor(RenderizadorTarjeta.color("#2e7d32"));
+                    gc.setFont(fuenteArial(true, false, A4_W_PX * 0.015));
+                    texto(gc, "APROBADO", margin + boxSz + 10, ay);
+
+                    double colDos = A4_W_PX * 0.38;
+                    rectangulo(gc, "#333333", 1.2, colDos, ay - boxSz * 0.8, boxSz, boxSz);
+                    gc.setColor(RenderizadorTarjeta.color("#c62828"));
+                    texto(gc, "CON CORRECCIONES", colDos + boxSz + 10, ay);
+                    ay += A4_W_PX * 0.042;
+
+                    // Línea de firma
+                    linea(gc, "#555555", 0.9, margin, ay, margin + A4_W_PX * 0.32, ay);
+                    gc.setColor(RenderizadorTarjeta.color("#666666"));
+                    gc.setFont(fuenteArial(false, false, A4_W_PX * 0.012));
+                    texto(gc, "Firma del cliente", margin, ay + A4_W_PX * 0.018);
+
+                    double fechaCol = margin + A4_W_PX * 0.40;
+                    linea(gc, "#555555", 0.9, fechaCol, ay, fechaCol + A4_W_PX * 0.16, ay);
+                    gc.setColor(RenderizadorTarjeta.color("#666666"));
+                    texto(gc, "Fecha", fechaCol, ay + A4_W_PX * 0.018);
+                }
+
+                // ── PIE DE PÁGINA ────────────────────────────────────────
+                gc.setColor(RenderizadorTarjeta.color("#aaaaaa"));
+                gc.setFont(fuenteArial(false, true, A4_W_PX * 0.011));
+                texto(gc, estudio + "  ·  Muestra de diseño: " + nombreProyecto + "  ·  " + fecha,
+                        margin, A4_H_PX - margin * 0.5);
+
+            } else {
+                // ── MODO "Solo diseños" ──────────────────────────────────
+                boolean hd = hayDorso;
+                double totalW = hd ? (cardW_px + bleed_px * 2) * 2 + margin : (cardW_px + bleed_px * 2);
+                double startX = (A4_W_PX - totalW) / 2;
+                double startY = (A4_H_PX - cardH_px - bleed_px * 2) / 2;
+
+                renderTarjetaEnCanvas(gc, proyecto.getElementosFrente(), proyecto.getFondoFrente(),
+                        startX, startY, CARD_SCALE_PRUEBA);
+                gc.setColor(RenderizadorTarjeta.color("#444444"));
+                gc.setFont(fuenteArial(true, false, A4_W_PX * 0.016));
+                texto(gc, "ANVERSO",
+                        startX + (cardW_px + bleed_px * 2) / 2 - 30,
+                        startY + cardH_px + bleed_px * 2 + A4_W_PX * 0.02);
+
+                if (hd) {
+                    double dx = startX + cardW_px + bleed_px * 2 + margin;
+                    renderTarjetaEnCanvas(gc, proyecto.getElementosDorso(), proyecto.getFondoDorso(),
+                            dx, startY, CARD_SCALE_PRUEBA);
+                    gc.setColor(RenderizadorTarjeta.color("#444444"));
+                    gc.setFont(fuenteArial(true, false, A4_W_PX * 0.016));
+                    texto(gc, "REVERSO",
+                            dx + (cardW_px + bleed_px * 2) / 2 - 30,
+                            startY + cardH_px + bleed_px * 2 + A4_W_PX * 0.02);
+                }
+            }
+        } finally {
+            gc.dispose();
+        }
 
-        BufferedImage a4img = resultRef.get();
         try (PDDocument pdf = new PDDocument()) {
             PDPage page = new PDPage(new PDRectangle(A4_W_PT, A4_H_PT));
             pdf.addPage(page);
-            PDImageXObject pdImage = LosslessFactory.createFromImage(pdf, a4img);
+            PDImageXObject pdImage = xObjectSinPerdida(pdf, a4img);
             try (PDPageContentStream cs = new PDPageContentStream(pdf, page)) {
                 cs.drawImage(pdImage, 0, 0, A4_W_PT, A4_H_PT);
             }
@@ -702,12 +981,10 @@ public class PDFExportService {
         }
     }
 
-
-
-    /** Renderiza los elementos de una cara en un GC ya existente, en modo prueba (sin datos variables). */
-    private void renderTarjetaEnCanvas(GraphicsContext gc, List<? extends Elemento> elementos,
+    /** Renderiza los elementos de una cara en un Graphics2D ya existente, en modo prueba (sin datos variables). */
+    private void renderTarjetaEnCanvas(Graphics2D gc, List<? extends Elemento> elementos,
                                        ImagenFondoElemento fondo, double startX, double startY,
-                                       double scale, boolean modoVista) {
+                                       double scale) {
         double cardW = EditorCanvasManager.CARD_WIDTH  * scale;
         double cardH = EditorCanvasManager.CARD_HEIGHT * scale;
         double bleed = EditorCanvasManager.BLEED_MARGIN * scale;
@@ -715,33 +992,30 @@ public class PDFExportService {
         double cardY = startY + bleed;
 
         // Fondo
-        if (fondo != null && fondo.getImagen() != null) {
-            gc.drawImage(fondo.getImagen(), cardX + fondo.getX() * scale, cardY + fondo.getY() * scale,
+        BufferedImage imgFondo = renderizador.imagenFondo(fondo);
+        if (imgFondo != null) {
+            RenderizadorTarjeta.dibujarImagen(gc, imgFondo, cardX + fondo.getX() * scale, cardY + fondo.getY() * scale,
                     fondo.getWidth() * scale, fondo.getHeight() * scale);
         } else {
-            gc.setFill(Color.WHITE);
-            gc.fillRect(cardX, cardY, cardW, cardH);
+            gc.setColor(Color.WHITE);
+            gc.fill(new Rectangle2D.Double(cardX, cardY, cardW, cardH));
         }
 
         // Guía de sangrado (rojo punteado exterior)
-        gc.setStroke(Color.web("#d48a8a"));
-        gc.setLineWidth(1.2);
-        gc.setLineDashes(5, 5);
-        gc.strokeRect(startX, startY, cardW + bleed * 2, cardH + bleed * 2);
+        gc.setColor(RenderizadorTarjeta.color("#d48a8a"));
+        gc.setStroke(trazo(1.2, 5, 5));
+        gc.draw(new Rectangle2D.Double(startX, startY, cardW + bleed * 2, cardH + bleed * 2));
 
         // Borde tarjeta
-        gc.setStroke(Color.web("#888888"));
-        gc.setLineWidth(1);
-        gc.setLineDashes();
-        gc.strokeRect(cardX, cardY, cardW, cardH);
+        gc.setColor(RenderizadorTarjeta.color("#888888"));
+        gc.setStroke(trazo(1));
+        gc.draw(new Rectangle2D.Double(cardX, cardY, cardW, cardH));
 
         // Guía de seguridad (verde punteado interior)
         double safety = EditorCanvasManager.SAFETY_MARGIN * scale;
-        gc.setStroke(Color.web("#4a9b7c"));
-        gc.setLineWidth(0.8);
-        gc.setLineDashes(3, 3);
-        gc.strokeRect(cardX + safety, cardY + safety, cardW - safety * 2, cardH - safety * 2);
-        gc.setLineDashes();
+        gc.setColor(RenderizadorTarjeta.color("#4a9b7c"));
+        gc.setStroke(trazo(0.8, 3, 3));
+        gc.draw(new Rectangle2D.Double(cardX + safety, cardY + safety, cardW - safety * 2, cardH - safety * 2));
 
         // Elementos (modo prueba: variables → mostrar nombre de columna entre corchetes)
         if (elementos != null) {
@@ -754,27 +1028,63 @@ public class PDFExportService {
                     } else {
                         contenido = texto.getContenido();
                     }
-                    gc.setFill(Color.web(texto.getColor()));
-                    gc.setFont(Font.font(texto.getFontFamily(),
-                            texto.isNegrita()  ? javafx.scene.text.FontWeight.BOLD  : javafx.scene.text.FontWeight.NORMAL,
-                            texto.isCursiva()  ? javafx.scene.text.FontPosture.ITALIC : javafx.scene.text.FontPosture.REGULAR,
+                    gc.setColor(RenderizadorTarjeta.color(texto.getColor()));
+                    gc.setFont(renderizador.fuente(texto.getFontFamily(), texto.isNegrita(), texto.isCursiva(),
                             texto.getFontSize() * scale));
-                    gc.fillText(contenido, cardX + elem.getX() * scale,
+                    texto(gc, contenido, cardX + elem.getX() * scale,
                             cardY + elem.getY() * scale + texto.getFontSize() * scale);
                 } else if (elem instanceof ImagenElemento imgElem) {
-                    Image img = imgElem.getImagen();
-                    if (img == null && SILUETA_IMG != null) img = SILUETA_IMG;
+                    BufferedImage img = renderizador.imagen(imgElem);
+                    if (img == null) img = RenderizadorTarjeta.silueta();
                     if (img != null) {
-                        gc.setGlobalAlpha(imgElem.getOpacity());
-                        gc.drawImage(img, cardX + elem.getX() * scale, cardY + elem.getY() * scale,
+                        Composite anterior = gc.getComposite();
+                        gc.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) imgElem.getOpacity()));
+                        RenderizadorTarjeta.dibujarImagen(gc, img, cardX + elem.getX() * scale, cardY + elem.getY() * scale,
                                 elem.getWidth() * scale, elem.getHeight() * scale);
-                        gc.setGlobalAlpha(1.0);
+                        gc.setComposite(anterior);
                     }
                 }
             }
         }
     }
 
+    // ──────────────────────────── helpers de dibujo A4 ────────────────────────────
+
+    private Font fuenteArial(boolean negrita, boolean cursiva, double tamaño) {
+        return renderizador.fuente("Arial", negrita, cursiva, tamaño);
+    }
+
+    private static void texto(Graphics2D gc, String texto, double x, double y) {
+        if (texto == null || texto.isEmpty()) return;
+        gc.drawString(texto, (float) x, (float) y);
+    }
+
+    private static double anchoTexto(Graphics2D gc, String texto) {
+        return RenderizadorTarjeta.ancho(gc.getFont(), gc.getFontRenderContext(), texto);
+    }
+
+    private static void linea(Graphics2D gc, String color, double grosor,
+                              double x1, double y1, double x2, double y2) {
+        gc.setColor(RenderizadorTarjeta.color(color));
+        gc.setStroke(trazo(grosor));
+        gc.draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    private static void rectangulo(Graphics2D gc, String color, double grosor,
+                                   double x, double y, double w, double h) {
+        gc.setColor(RenderizadorTarjeta.color(color));
+        gc.setStroke(trazo(grosor));
+        gc.draw(new Rectangle2D.Double(x, y, w, h));
+    }
+
+    /** Trazo continuo o punteado (mismo cap/join por defecto que el Canvas JavaFX). */
+    private static BasicStroke trazo(double grosor, float... guiones) {
+        if (guiones.length == 0) {
+            return new BasicStroke((float) grosor, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER);
+        }
+        return new BasicStroke((float) grosor, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER, 10f, guiones, 0f);
+    }
+
     /** Devuelve el nombre del cliente o empresa del proyecto */
     private String obtenerNombreCliente() {
         if (proyecto.getMetadata() == null) return "";
@@ -786,6 +1096,18 @@ public class PDFExportService {
         return contacto;
     }
 
+    /** Columnas vinculadas a imágenes (fotos variables) en cualquiera de las dos caras */
+    private List<String> obtenerColumnasFoto() {
+        List<String> cols = new ArrayList<>();
+        for (List<Elemento> cara : List.of(proyecto.getElementosFrente(), proyecto.getElementosDorso())) {
+            for (Elemento el : cara) {
+                if (el instanceof ImagenElemento i && i.getColumnaVinculada() != null
+                        && !cols.contains(i.getColumnaVinculada())) cols.add(i.getColumnaVinculada());
+            }
+        }
+        return cols;
+    }
+
     /** Devuelve la lista de nombres de columnas vinculadas en el diseño */
     private List<String> obtenerColumnasVariables() {
         List<String> cols = new ArrayList<>();
@@ -805,5 +1127,28 @@ public class PDFExportService {
     }
 
     /** Clase auxiliar para la lista ordenada de páginas a generar */
-    private record EntradaPagina(int filaIdx, boolean esFrente) {}
+    record EntradaPagina(int filaIdx, boolean esFrente) {}
+
+    /**
+     * Salida de la etapa de render: la imagen recién dibujada o, si la página estaba
+     * en la caché incremental o se renderizó por franjas, la página ya codificada
+     * (entonces no hay imagen).
+     */
+    private record PaginaRenderizada(BufferedImage imagen, PaginaCodificada codificada, String huella) {}
+
+    /** Una cara de un registro en la salida por tarjeta, con su archivo de destino ya resuelto. */
+    private record TarjetaSecuencia(EntradaPagina pagina, File archivo) {}
+
+    private record TarjetaRenderizada(TarjetaSecuencia tarjeta, BufferedImage imagen) {}
+
+    /**
+     * Política de memoria del documento: como máximo {@code memoriaPdfMB} de flujos en
+     * RAM, sea cual sea la resolución; lo que no cabe va al archivo temporal.
+     */
+    private static MemoryUsageSetting memoria(ExportDialog.ExportConfig config) {
+        if (config.memoriaPdfMB() <= 0) {
+            return MemoryUsageSetting.setupMainMemoryOnly();
+        }
+        return MemoryUsageSetting.setupMixed(config.memoriaPdfMB() * 1024L * 1024);
+    }
 }
@@ -0,0 +1,211 @@
+package com.tpsstudio.service;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Pageable;
+import java.awt.print.Paper;
+import java.awt.print.Printable;
+import java.awt.print.PrinterAbortException;
+import java.awt.print.PrinterException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Páginas de un trabajo de impresión directa servidas al {@code PrinterJob} a medida
+ * que se renderizan, sin PDF intermedio.
+ *
+ * <p>Antes, la impresión directa esperaba a que {@link PDFExportService} escribiera
+ * el PDF completo, lo volvía a cargar y {@code PDFPageable} lo rasterizaba otra vez:
+ * la impresora no recibía nada hasta tener el lote entero. Aquí el {@code PrinterJob}
+ * pide la página {@code i} y el pool de render ya va por delante con las siguientes
+ * ({@code adelanto} páginas como máximo en memoria); cada tarjeta se renderiza una
+ * sola vez, directamente a la resolución de impresión.</p>
+ *
+ * <p>El {@code PrinterJob} puede llamar a {@link #print} varias veces por página
+ * (bandas, pasadas de pre-escaneo): la imagen se conserva hasta que pide la página
+ * siguiente. Una instancia por trabajo; se cierra al terminar la impresión.</p>
+ */
+final class PaginasImpresion implements Pageable, Printable, AutoCloseable {
+
+    /** Renderiza la página {@code indice} del trabajo (desde cualquier hilo del pool). */
+    @FunctionalInterface
+    interface RenderPagina {
+        BufferedImage renderizar(int indice) throws Exception;
+    }
+
+    private final int total;
+    private final PageFormat formato;
+    private final double anchoPuntos;
+    private final double altoPuntos;
+    private final RenderPagina render;
+    private final TrabajoExportacion trabajo;
+    private final ExecutorService pool;
+    private final int adelanto;
+
+    // Páginas programadas aún no descartadas; solo se toca desde el hilo del PrinterJob
+    private final Map<Integer, Future<BufferedImage>> paginas = new HashMap<>();
+    private int siguienteProgramada;
+    private int ultimaPedida = -1;
+    private final AtomicInteger enviadas = new AtomicInteger();
+    // Fallo del render (no de la impresora): el trabajo no debe reintentarse
+    private volatile Throwable errorRender;
+
+    /**
+     * @param total       páginas del trabajo.
+     * @param anchoPixels ancho de cada página renderizada (todas iguales: tarjeta CR80).
+     * @param altoPixels  alto de cada página renderizada.
+     * @param dpi         resolución del render; fija el tamaño físico de la página.
+     * @param hilos       hilos de render (0 = uno por núcleo).
+     */
+    PaginasImpresion(int total, int anchoPixels, int altoPixels, double dpi, int hilos,
+                     RenderPagina render, TrabajoExportacion trabajo) {
+        this.total = total;
+        this.render = render;
+        this.trabajo = trabajo;
+        this.anchoPuntos = anchoPixels * 72.0 / dpi;
+        this.altoPuntos = altoPixels * 72.0 / dpi;
+        this.formato = formatoTarjeta(anchoPuntos, altoPuntos);
+
+        int n = PipelineExportacion.resolverHilos(hilos);
+        // Unas cuantas páginas listas por hilo: la impresora nunca espera al render,
+        // y la memoria queda acotada aunque el lote tenga miles de tarjetas
+        this.adelanto = n * 2;
+        AtomicInteger contador = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "tps-imprimir-render-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Error del render que abortó la impresión, o null si no lo hubo. */
+    Throwable getErrorRender() {
+        return errorRender;
+    }
+
+    /** Páginas que el {@code PrinterJob} ya ha recibido completas. */
+    int getPaginasEnviadas() {
+        return enviadas.get();
+    }
+
+    @Override
+    public int getNumberOfPages() {
+        return total;
+    }
+
+    @Override
+    public PageFormat getPageFormat(int indice) {
+        return formato;
+    }
+
+    @Override
+    public Printable getPrintable(int indice) {
+        return this;
+    }
+
+    @Override
+    public int print(Graphics graphics, PageFormat pf, int indice) throws PrinterException {
+        if (indice < 0 || indice >= total) return NO_SUCH_PAGE;
+        if (trabajo.isCancelado()) throw new PrinterAbortException("Impresión cancelada por el usuario");
+
+        if (indice != ultimaPedida) {
+            // Pasa a una página nueva: la anterior ya está entregada y su imagen sobra
+            if (indice > ultimaPedida && ultimaPedida >= 0) {
+                trabajo.paginaCompletada();
+                enviadas.incrementAndGet();
+            }
+            paginas.keySet().removeIf(i -> i < indice);
+            ultimaPedida = indice;
+        }
+        programarHasta(Math.min(total, indice + 1 + adelanto));
+
+        BufferedImage imagen = imagen(indice);
+        Graphics2D g = (Graphics2D) graphics;
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        // Escala exacta píxeles → puntos: la tarjeta ocupa la página sin redondeos
+        g.drawImage(imagen, AffineTransform.getScaleInstance(anchoPuntos / imagen.getWidth(),
+                altoPuntos / imagen.getHeight()), null);
+
+        if (indice == total - 1) {
+            // El PrinterJob no pide una página más allá de la última
+            if (enviadas.get() < total) {
+                trabajo.paginaCompletada();
+                enviadas.incrementAndGet();
+            }
+        }
+        return PAGE_EXISTS;
+    }
+
+    /** Detiene el render de las páginas que queden por delante. */
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        paginas.clear();
+    }
+
+    private void programarHasta(int limite) {
+        // Si el PrinterJob vuelve atrás (reintento del driver), se renderiza de nuevo
+        if (!paginas.containsKey(ultimaPedida) && ultimaPedida < siguienteProgramada) {
+            programar(ultimaPedida);
+        }
+        while (siguienteProgramada < limite) {
+            programar(siguienteProgramada++);
+        }
+    }
+
+    private void programar(int indice) {
+        paginas.put(indice, pool.submit(() -> {
+            trabajo.comprobarCancelado();
+            long t0 = System.nanoTime();
+            BufferedImage imagen = render.renderizar(indice);
+            trabajo.registrarRender(System.nanoTime() - t0);
+            return imagen;
+        }));
+    }
+
+    private BufferedImage imagen(int indice) throws PrinterException {
+        try {
+            return paginas.get(indice).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrinterAbortException("Impresión interrumpida");
+        } catch (ExecutionException e) {
+            if (trabajo.isCancelado()) throw new PrinterAbortException("Impresión cancelada por el usuario");
+            errorRender = e.getCause();
+            PrinterException error = new PrinterException("No se pudo renderizar la página " + (indice + 1)
+                    + ": " + e.getCause().getMessage());
+            error.initCause(e.getCause());
+            throw error;
+        }
+    }
+
+    /**
+     * Página del tamaño exacto de la tarjeta, sin márgenes. Las tarjetas apaisadas se
+     * describen como papel vertical girado, que es como lo esperan los drivers.
+     */
+    private static PageFormat formatoTarjeta(double ancho, double alto) {
+        PageFormat pf = new PageFormat();
+        Paper papel = new Paper();
+        if (ancho > alto) {
+            papel.setSize(alto, ancho);
+            papel.setImageableArea(0, 0, alto, ancho);
+            pf.setPaper(papel);
+            pf.setOrientation(PageFormat.LANDSCAPE);
+        } else {
+            papel.setSize(ancho, alto);
+            papel.setImageableArea(0, 0, ancho, alto);
+            pf.setPaper(papel);
+            pf.setOrientation(PageFormat.PORTRAIT);
+        }
+        return pf;
+    }
+}
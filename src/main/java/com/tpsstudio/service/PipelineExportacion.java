@@ -0,0 +1,139 @@
+package com.tpsstudio.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pipeline por etapas para la exportación masiva (mail-merge).
+ *
+ * <p>Separa el trabajo de cada página en tres etapas que se solapan en el tiempo:</p>
+ * <ol>
+ *   <li><b>Render</b> — N hilos dibujan las tarjetas en paralelo.</li>
+ *   <li><b>Codificación</b> — otro grupo de hilos comprime cada imagen en cuanto sale del render.</li>
+ *   <li><b>Ensamblado</b> — el hilo llamante recibe las páginas <i>en el orden original</i>
+ *       y las añade al documento. PDFBox no es thread-safe, así que esta etapa es única.</li>
+ * </ol>
+ *
+ * <p>Las etapas se unen mediante una cola acotada de páginas en vuelo: como mucho
+ * {@code capacidad} páginas están renderizadas o codificadas esperando a ser
+ * ensambladas. Así la memoria no crece con el tamaño del trabajo aunque el render
+ * vaya más rápido que el ensamblado.</p>
+ *
+ * <p>Se crea una instancia por exportación y se cierra al terminar (libera los hilos).</p>
+ */
+public class PipelineExportacion implements AutoCloseable {
+
+    /** Etapa de transformación que puede lanzar excepciones comprobadas. */
+    @FunctionalInterface
+    public interface Etapa<I, O> {
+        O aplicar(I entrada) throws Exception;
+    }
+
+    /** Última etapa: recibe los resultados en orden, uno a uno, en el hilo llamante. */
+    @FunctionalInterface
+    public interface Sumidero<T> {
+        void aceptar(int indice, T resultado) throws Exception;
+    }
+
+    private final ExecutorService poolRender;
+    private final ExecutorService poolCodificacion;
+    private final int capacidad;
+
+    /**
+     * @param hilosRender número de hilos de render; 0 o negativo = uno por núcleo.
+     */
+    public PipelineExportacion(int hilosRender) {
+        int hilos = resolverHilos(hilosRender);
+        this.poolRender = Executors.newFixedThreadPool(hilos, hilos("export-render"));
+        this.poolCodificacion = Executors.newFixedThreadPool(hilos, hilos("export-encode"));
+        // Suficiente para que ninguna etapa se quede sin trabajo, pero acotado
+        this.capacidad = hilos * 2;
+    }
+
+    /** Traduce la preferencia del usuario (0 = automático) a un número de hilos real. */
+    public static int resolverHilos(int hilosRender) {
+        return hilosRender > 0 ? hilosRender : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Procesa todas las entradas a través de las tres etapas.
+     * El sumidero recibe los resultados exactamente en el orden de {@code entradas}.
+     *
+     * @throws Exception la primera excepción lanzada por cualquier etapa; el resto
+     *                   de páginas en vuelo se cancela.
+     */
+    public <E, R, C> void ejecutar(List<E> entradas,
+                                   Etapa<E, R> render,
+                                   Etapa<R, C> codificar,
+                                   Sumidero<C> ensamblar) throws Exception {
+        Deque<CompletableFuture<C>> enVuelo = new ArrayDeque<>(capacidad);
+        int siguiente = 0;
+
+        try {
+            for (int i = 0; i < entradas.size(); i++) {
+                // Rellenar la ventana hasta la capacidad máxima
+                while (siguiente < entradas.size() && enVuelo.size() < capacidad) {
+                    E entrada = entradas.get(siguiente++);
+                    enVuelo.addLast(CompletableFuture
+                            .supplyAsync(() -> sinComprobar(render, entrada), poolRender)
+                            .thenApplyAsync(r -> sinComprobar(codificar, r), poolCodificacion));
+                }
+
+                // La cabeza de la cola es siempre la página i: se ensambla en orden
+                C resultado = esperar(enVuelo.removeFirst());
+                ensamblar.aceptar(i, resultado);
+            }
+        } catch (Exception e) {
+            for (CompletableFuture<C> f : enVuelo) f.cancel(true);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        poolRender.shutdownNow();
+        poolCodificacion.shutdownNow();
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    private static <I, O> O sinComprobar(Etapa<I, O> etapa, I entrada) {
+        try {
+            return etapa.aplicar(entrada);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /** Espera el resultado y relanza la causa original en lugar del envoltorio. */
+    private static <T> T esperar(CompletableFuture<T> futuro) throws Exception {
+        try {
+            return futuro.get();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof CompletionException && causa.getCause() != null) causa = causa.getCause();
+            if (causa instanceof Exception ex) throw ex;
+            if (causa instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    private static ThreadFactory hilos(String prefijo) {
+        AtomicInteger contador = new AtomicInteger(1);
+        return r -> {
+            Thread t = new Thread(r, prefijo + "-" + contador.getAndIncrement());
+            t.setDaemon(true); // No impide que la JVM termine
+            return t;
+        };
+    }
+}
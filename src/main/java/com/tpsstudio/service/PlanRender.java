@@ -0,0 +1,259 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.elements.*;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.util.MotorTexto;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plan de render compilado de una cara del diseño, para una escala y un modo de
+ * sangrado concretos.
+ *
+ * <p>Se compila una sola vez por exportación: los colores ya están parseados, las
+ * fuentes resueltas a la escala de salida, la geometría precalculada y las imágenes
+ * fijas decodificadas. Cada elemento queda como un {@link Paso} inmutable; los que
+ * dependen del registro llevan un <i>hueco</i> enlazado por índice a una columna de
+ * datos. Por registro solo hay que rellenar los huecos ({@link #valores}) y ejecutar
+ * los pasos, sin volver a recorrer el modelo.</p>
+ *
+ * <p>Inmutable y seguro desde varios hilos.</p>
+ */
+final class PlanRender {
+
+    private static final Color GRIS_SIN_IMAGEN = RenderizadorTarjeta.color("#cccccc");
+
+    private static final int IZQUIERDA = 0;
+    private static final int CENTRO = 1;
+    private static final int DERECHA = 2;
+
+    /** Un elemento ya resuelto. {@code hueco} es el índice en {@link #columnas}, o -1 si es fijo. */
+    sealed interface Paso permits PasoTexto, PasoImagen, PasoForma {}
+
+    record PasoTexto(int hueco, String contenidoFijo, Font fuente, Color color, int alineacion,
+                     double ex, double ey, double ew, double escala,
+                     String familia, boolean negrita, boolean cursiva, double tamaño, boolean saltoLinea)
+            implements Paso {}
+
+    record PasoImagen(int hueco, BufferedImage fija, AlphaComposite opacidad,
+                      double ex, double ey, double ew, double eh) implements Paso {}
+
+    record PasoForma(Shape forma, Color relleno, Color borde, BasicStroke trazo) implements Paso {}
+
+    /** Resuelve una foto variable (nombre de archivo de la columna) al tamaño en píxeles indicado. */
+    @FunctionalInterface
+    interface ResolutorFotos {
+        BufferedImage foto(String nombreArchivo, int ancho, int alto);
+    }
+
+    private final RenderizadorTarjeta renderizador;
+    private final List<Paso> pasos;
+    private final List<String> columnas;
+
+    // Último enlace columnas de la fuente → huecos (casi siempre es la misma fuente)
+    private volatile Enlace enlace;
+
+    private record Enlace(List<String> columnasFuente, int[] indices) {}
+
+    private PlanRender(RenderizadorTarjeta renderizador, List<Paso> pasos, List<String> columnas) {
+        this.renderizador = renderizador;
+        this.pasos = pasos;
+        this.columnas = columnas;
+    }
+
+    /**
+     * Compila los elementos indicados. Las coordenadas de los pasos ya incluyen el
+     * origen de la tarjeta en el lienzo y la escala de salida.
+     */
+    static PlanRender compilar(RenderizadorTarjeta renderizador, List<Elemento> elementos,
+                               double origen, double escala) {
+        Map<String, Integer> huecos = new LinkedHashMap<>();
+        List<Paso> pasos = new ArrayList<>(elementos.size());
+
+        for (Elemento elem : elementos) {
+            double ex = origen + elem.getX() * escala;
+            double ey = origen + elem.getY() * escala;
+            double ew = elem.getWidth() * escala;
+            double eh = elem.getHeight() * escala;
+
+            if (elem instanceof TextoElemento texto) {
+                int hueco = hueco(huecos, texto.getColumnaVinculada());
+                Font fuente = renderizador.fuente(texto.getFontFamily(), texto.isNegrita(), texto.isCursiva(),
+                        texto.getFontSize() * escala);
+                pasos.add(new PasoTexto(hueco, texto.getContenido() != null ? texto.getContenido() : "",
+                        fuente, RenderizadorTarjeta.color(texto.getColor()), alineacion(texto.getAlineacion()),
+                        ex, ey, ew, escala, texto.getFontFamily(), texto.isNegrita(), texto.isCursiva(),
+                        texto.getFontSize(), texto.isSaltoLinea()));
+
+            } else if (elem instanceof ImagenElemento imgElem) {
+                int hueco = hueco(huecos, imgElem.getColumnaVinculada());
+                pasos.add(new PasoImagen(hueco, renderizador.imagen(imgElem),
+                        AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) imgElem.getOpacity()),
+                        ex, ey, ew, eh));
+
+            } else if (elem instanceof FormaElemento forma) {
+                float grosor = (float) Math.max(1.0, forma.getGrosorBorde() * escala);
+                BasicStroke trazo = new BasicStroke(grosor, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER);
+                Color borde = RenderizadorTarjeta.color(forma.getColorBorde());
+                switch (forma.getTipoForma()) {
+                    case RECTANGULO -> pasos.add(new PasoForma(new Rectangle2D.Double(ex, ey, ew, eh),
+                            forma.isConRelleno() ? RenderizadorTarjeta.color(forma.getColorRelleno()) : null,
+                            borde, trazo));
+                    case ELIPSE -> pasos.add(new PasoForma(new Ellipse2D.Double(ex, ey, ew, eh),
+                            forma.isConRelleno() ? RenderizadorTarjeta.color(forma.getColorRelleno()) : null,
+                            borde, trazo));
+                    // Centrada verticalmente en el área ocupada por el elemento
+                    case LINEA -> pasos.add(new PasoForma(new Line2D.Double(ex, ey + eh / 2, ex + ew, ey + eh / 2),
+                            null, borde, trazo));
+                }
+            }
+        }
+        return new PlanRender(renderizador, List.copyOf(pasos), List.copyOf(huecos.keySet()));
+    }
+
+    /** Columnas de datos que usa el plan, en el orden de sus huecos. */
+    List<String> columnas() {
+        return columnas;
+    }
+
+    boolean vacio() {
+        return pasos.isEmpty();
+    }
+
+    /** Valores de los huecos tomados de un registro (columna → valor); null sin registro. */
+    String[] valores(Map<String, String> registro) {
+        if (registro == null || columnas.isEmpty()) return null;
+        String[] valores = new String[columnas.size()];
+        for (int i = 0; i < valores.length; i++) valores[i] = registro.get(columnas.get(i));
+        return valores;
+    }
+
+    /**
+     * Valores de los huecos leídos por índice de la fila indicada de una fuente de
+     * datos. Los índices de columna se resuelven una vez por fuente, no por registro.
+     */
+    String[] valores(FuenteDatos datos, int fila) {
+        if (datos == null || columnas.isEmpty()) return null;
+        Enlace e = enlace;
+        if (e == null || e.columnasFuente() != datos.getColumnas()) {
+            int[] indices = new int[columnas.size()];
+            for (int i = 0; i < indices.length; i++) indices[i] = datos.indiceColumna(columnas.get(i));
+            e = new Enlace(datos.getColumnas(), indices);
+            enlace = e;
+        }
+        String[] valores = new String[columnas.size()];
+        for (int i = 0; i < valores.length; i++) valores[i] = datos.getValor(fila, e.indices()[i]);
+        return valores;
+    }
+
+    /** Ejecuta todos los pasos sobre el lienzo; {@code valores} puede ser null (diseño estático). */
+    void dibujar(Graphics2D g, String[] valores) {
+        dibujar(g, valores, renderizador::resolverImagenVariable);
+    }
+
+    /**
+     * Igual que {@link #dibujar(Graphics2D, String[])}, con un resolutor propio para
+     * las fotos variables, p. ej. el de la precarga.
+     */
+    void dibujar(Graphics2D g, String[] valores, ResolutorFotos fotos) {
+        for (Paso paso : pasos) {
+            switch (paso) {
+                case PasoTexto t -> dibujarTexto(g, t, valor(valores, t.hueco()));
+                case PasoImagen i -> dibujarImagen(g, i, valor(valores, i.hueco()), fotos);
+                case PasoForma f -> dibujarForma(g, f);
+            }
+        }
+    }
+
+    // ──────────────────────────── pasos ────────────────────────────
+
+    /** Texto multi-línea con auto-wrap y alineación, igual que en el editor. */
+    private static void dibujarTexto(Graphics2D g, PasoTexto t, String valor) {
+        String contenido = (valor != null && !valor.isEmpty()) ? valor : t.contenidoFijo();
+        g.setFont(t.fuente());
+        g.setColor(t.color());
+
+        // Saltos de línea calculados en unidades de diseño: idénticos a los del editor
+        List<String> lines = MotorTexto.lineas(contenido, t.saltoLinea(), t.familia(),
+                t.negrita(), t.cursiva(), t.tamaño(), t.ew() / t.escala());
+
+        double lineH = t.tamaño() * t.escala() * 1.2;
+        double curY  = t.ey() + (t.tamaño() * t.escala());
+
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                double textX = t.ex();
+                if (t.alineacion() != IZQUIERDA) {
+                    double tw = MotorTexto.ancho(line, t.familia(), t.negrita(), t.cursiva(), t.tamaño()) * t.escala();
+                    textX = t.alineacion() == CENTRO ? t.ex() + (t.ew() - tw) / 2 : t.ex() + t.ew() - tw;
+                }
+                g.drawString(line, (float) textX, (float) curY);
+            }
+            curY += lineH;
+        }
+    }
+
+    private static void dibujarImagen(Graphics2D g, PasoImagen i, String valor,
+                                      ResolutorFotos fotos) {
+        BufferedImage img = i.fija();
+        if (i.hueco() >= 0 && valor != null) {
+            // Decodificada ya al tamaño del hueco: el dibujo apenas tiene que escalar
+            BufferedImage variable = fotos.foto(valor, tamañoPx(i.ew()), tamañoPx(i.eh()));
+            if (variable != null) img = variable;
+        }
+
+        if (img != null) {
+            Composite anterior = g.getComposite();
+            g.setComposite(i.opacidad());
+            RenderizadorTarjeta.dibujarImagen(g, img, i.ex(), i.ey(), i.ew(), i.eh());
+            g.setComposite(anterior);
+        } else if (RenderizadorTarjeta.silueta() != null) {
+            // Sin imagen real: mostrar silueta de placeholder con opacidad completa
+            RenderizadorTarjeta.dibujarImagen(g, RenderizadorTarjeta.silueta(), i.ex(), i.ey(), i.ew(), i.eh());
+        } else {
+            // Fallback gris si tampoco hay silueta en recursos
+            g.setColor(GRIS_SIN_IMAGEN);
+            g.fill(new Rectangle2D.Double(i.ex(), i.ey(), i.ew(), i.eh()));
+        }
+    }
+
+    private static void dibujarForma(Graphics2D g, PasoForma f) {
+        g.setStroke(f.trazo());
+        if (f.relleno() != null) {
+            g.setColor(f.relleno());
+            g.fill(f.forma());
+        }
+        g.setColor(f.borde());
+        g.draw(f.forma());
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    private static int hueco(Map<String, Integer> huecos, String columna) {
+        if (columna == null) return -1;
+        return huecos.computeIfAbsent(columna, c -> huecos.size());
+    }
+
+    /** Píxeles enteros que cubren una medida del lienzo. */
+    static int tamañoPx(double medida) {
+        return Math.max(1, (int) Math.ceil(medida));
+    }
+
+    private static int alineacion(String alineacion) {
+        if ("CENTER".equals(alineacion)) return CENTRO;
+        if ("RIGHT".equals(alineacion)) return DERECHA;
+        return IZQUIERDA;
+    }
+
+    private static String valor(String[] valores, int hueco) {
+        return (valores == null || hueco < 0) ? null : valores[hueco];
+    }
+}
@@ -0,0 +1,201 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.project.FuenteDatos;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Precarga en segundo plano de las fotos variables de una exportación.
+ *
+ * <p>Un hilo despachador recorre las filas en el orden de exportación y, por delante
+ * de los hilos de render, lanza la lectura y decodificación de sus fotos (carpeta
+ * {@code Fotos/}) en hilos virtuales. Así el disco y el decodificador JPEG trabajan
+ * en paralelo con el render en lugar de bloquearlo registro a registro. Cada foto
+ * se decodifica ya al tamaño en píxeles de su hueco en la salida; si la misma foto
+ * va en marcos de distinto tamaño, se decodifica una vez por tamaño.</p>
+ *
+ * <p>El búfer está acotado a {@code capacidad} filas: el despachador se detiene
+ * cuando va tantas filas por delante y continúa a medida que el render libera filas
+ * con {@link #liberar(int)}. Si el render llega a una fila que aún no se ha
+ * precargado, la decodifica él mismo (fallo) y el despachador la salta.</p>
+ *
+ * <p>Las estadísticas (aciertos, esperas, fallos y tiempo de espera del render) se
+ * acumulan en el {@link TrabajoExportacion}.</p>
+ */
+class PrecargaFotos implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(PrecargaFotos.class.getName());
+
+    /** Fotos decodificadas de una fila y cuántas páginas de esa fila faltan por renderizar. */
+    private record Entrada(CompletableFuture<Map<String, Optional<BufferedImage>>> fotos,
+                           AtomicInteger usosPendientes, boolean conPermiso) {}
+
+    private final RenderizadorTarjeta renderizador;
+    private final FuenteDatos datos;
+    private final int[] indicesColumna;
+    private final Dimension[] tamaños;
+    private final TrabajoExportacion trabajo;
+
+    // Páginas que usa cada fila, en orden de exportación
+    private final Map<Integer, Integer> usosPorFila = new LinkedHashMap<>();
+    private final Map<Integer, Entrada> entradas = new ConcurrentHashMap<>();
+    private final Set<Integer> terminadas = ConcurrentHashMap.newKeySet();
+    private final Semaphore huecos;
+
+    private final ExecutorService decodificadores = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread despachador;
+
+    /**
+     * Crea la precarga y arranca el despachador.
+     *
+     * @param filasPorPagina fila de cada página a renderizar, en orden de exportación
+     *                       (una fila aparece dos veces si se exportan ambas caras).
+     * @param tamañosFoto    columnas de datos vinculadas a imágenes → tamaños en píxeles
+     *                       de sus huecos a la escala de salida.
+     * @param capacidad      máximo de filas precargadas a la vez.
+     */
+    PrecargaFotos(RenderizadorTarjeta renderizador, FuenteDatos datos, List<Integer> filasPorPagina,
+                  Map<String, Set<Dimension>> tamañosFoto, int capacidad, TrabajoExportacion trabajo) {
+        this.renderizador = renderizador;
+        this.datos = datos;
+        this.trabajo = trabajo;
+        // Un par columna → tamaño por hueco distinto
+        List<Map.Entry<String, Dimension>> enlazadas = tamañosFoto.entrySet().stream()
+                .filter(e -> datos.indiceColumna(e.getKey()) >= 0)
+                .flatMap(e -> e.getValue().stream().map(d -> Map.entry(e.getKey(), d))).toList();
+        this.indicesColumna = enlazadas.stream().mapToInt(e -> datos.indiceColumna(e.getKey())).toArray();
+        this.tamaños = enlazadas.stream().map(Map.Entry::getValue).toArray(Dimension[]::new);
+        this.huecos = new Semaphore(Math.max(1, capacidad));
+        for (int fila : filasPorPagina) usosPorFila.merge(fila, 1, Integer::sum);
+
+        this.despachador = Thread.ofVirtual().name("tps-precarga-fotos").start(this::despachar);
+    }
+
+    /**
+     * Devuelve el resolutor de fotos de una fila para el render. Si la fila ya está
+     * precargada no toca el disco; si se está decodificando, espera a que termine.
+     */
+    PlanRender.ResolutorFotos fotos(int fila) {
+        Entrada entrada = entradas.get(fila);
+        if (entrada == null) {
+            // El despachador aún no ha llegado: decodificar aquí y que él la salte
+            Entrada propia = new Entrada(new CompletableFuture<>(), new AtomicInteger(usos(fila)), false);
+            entrada = entradas.putIfAbsent(fila, propia);
+            if (entrada == null) {
+                long t0 = System.nanoTime();
+                propia.fotos().complete(decodificar(fila));
+                trabajo.registrarFotoFallo(System.nanoTime() - t0);
+                entrada = propia;
+                return resolutor(entrada);
+            }
+        }
+
+        if (entrada.fotos().isDone()) {
+            trabajo.registrarFotoAcierto();
+        } else {
+            long t0 = System.nanoTime();
+            entrada.fotos().join();
+            trabajo.registrarFotoEspera(System.nanoTime() - t0);
+        }
+        return resolutor(entrada);
+    }
+
+    /**
+     * Indica que una página de la fila ya no necesita sus fotos (renderizada o sacada
+     * de la caché). Con la última página de la fila se libera su hueco del búfer.
+     */
+    void liberar(int fila) {
+        // Una página que no llegó a pedir fotos (p. ej. reutilizada de la caché) deja
+        // una entrada vacía: las demás caras de la fila decodificarán sus fotos al vuelo
+        Entrada entrada = entradas.computeIfAbsent(fila, f ->
+                new Entrada(CompletableFuture.completedFuture(Map.of()), new AtomicInteger(usos(f)), false));
+        if (entrada.usosPendientes().decrementAndGet() <= 0) {
+            terminadas.add(fila);
+            if (entradas.remove(fila, entrada) && entrada.conPermiso()) huecos.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        despachador.interrupt();
+        decodificadores.shutdownNow();
+        // Nadie debe quedarse esperando una decodificación interrumpida
+        for (Entrada entrada : entradas.values()) entrada.fotos().complete(Map.of());
+        entradas.clear();
+    }
+
+    // ──────────────────────────── despachador ────────────────────────────
+
+    private void despachar() {
+        try {
+            for (int fila : usosPorFila.keySet()) {
+                if (terminadas.contains(fila) || entradas.containsKey(fila)) continue;
+                huecos.acquire();
+
+                Entrada entrada = new Entrada(new CompletableFuture<>(), new AtomicInteger(usos(fila)), true);
+                // El render pudo adelantarse mientras se esperaba hueco
+                if (terminadas.contains(fila) || entradas.putIfAbsent(fila, entrada) != null) {
+                    huecos.release();
+                    continue;
+                }
+                decodificadores.execute(() -> {
+                    try {
+                        entrada.fotos().complete(decodificar(fila));
+                    } catch (RuntimeException e) {
+                        // El render resolverá las fotos de esta fila por su cuenta
+                        entrada.fotos().complete(Map.of());
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // Exportación terminada o cancelada
+        } catch (RuntimeException e) {
+            // Sin precarga el render sigue funcionando: decodifica él mismo
+            log.warning("Precarga de fotos detenida: " + e.getMessage());
+        }
+    }
+
+    /** Fotos de la fila por {@link #clave(String, int, int)}: la misma foto puede ir a varios tamaños. */
+    private Map<String, Optional<BufferedImage>> decodificar(int fila) {
+        Map<String, Optional<BufferedImage>> fotos = new HashMap<>();
+        for (int i = 0; i < indicesColumna.length; i++) {
+            String nombre = datos.getValor(fila, indicesColumna[i]);
+            if (nombre == null || nombre.isBlank()) continue;
+            String clave = clave(nombre, tamaños[i].width, tamaños[i].height);
+            if (fotos.containsKey(clave)) continue;
+            fotos.put(clave, Optional.ofNullable(renderizador.resolverImagenVariable(nombre,
+                    tamaños[i].width, tamaños[i].height)));
+        }
+        return fotos;
+    }
+
+    private PlanRender.ResolutorFotos resolutor(Entrada entrada) {
+        Map<String, Optional<BufferedImage>> fotos = entrada.fotos().join();
+        return (nombre, ancho, alto) -> {
+            Optional<BufferedImage> foto = fotos.get(clave(nombre, ancho, alto));
+            return foto != null ? foto.orElse(null) : renderizador.resolverImagenVariable(nombre, ancho, alto);
+        };
+    }
+
+    private static String clave(String nombre, int ancho, int alto) {
+        return nombre + '|' + ancho + 'x' + alto;
+    }
+
+    private int usos(int fila) {
+        return usosPorFila.getOrDefault(fila, 1);
+    }
+}
@@ -73,6 +73,23 @@ public class ProyectoFileManager implements ProyectoDAO {
     private static final DateTimeFormatter CLIENTE_FORMATTER =
             DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
 
+    // false en modo sin interfaz (exportación por línea de comandos): no se crean
+    // imágenes JavaFX ni alertas, que necesitan el toolkit arrancado
+    private final boolean conInterfaz;
+
+    public ProyectoFileManager() {
+        this(true);
+    }
+
+    /**
+     * @param conInterfaz false para cargar proyectos sin el toolkit de JavaFX: las
+     *                    imágenes quedan solo como ruta (el renderizador las lee del
+     *                    disco) y las imágenes faltantes se avisan por consola.
+     */
+    public ProyectoFileManager(boolean conInterfaz) {
+        this.conInterfaz = conInterfaz;
+    }
+
     /* Crea la estructura de carpetas del proyecto
      *
      * @param metadata Metadatos del proyecto
@@ -197,25 +214,7 @@ public class ProyectoFileManager implements ProyectoDAO {
                 exportarDatosCliente(carpetaProyecto, metadata.getClienteInfo());
             }
 
-            // Crear DTO para serialización
-            ProyectoDTO dto = new ProyectoDTO();
-            dto.setNombre(proyecto.getNombre());
-            dto.setMetadata(metadata);
-            dto.setMostrandoFrente(proyecto.isMostrandoFrente());
-            dto.setFondoFitModePreferido(proyecto.getFondoFitModePreferido());
-            dto.setNoVolverAPreguntarFondo(proyecto.isNoVolverAPreguntarFondo());
-
-            dto.setElementosFrente(convertirElementosADTO(proyecto.getElementosFrente()));
-            dto.setElementosDorso(convertirElementosADTO(proyecto.getElementosDorso()));
-
-            if (proyecto.getFondoFrente() != null) {
-                dto.setFondoFrente(convertirFondoADTO(proyecto.getFondoFrente()));
-            }
-            if (proyecto.getFondoDorso() != null) {
-                dto.setFondoDorso(convertirFondoADTO(proyecto.getFondoDorso()));
-            }
-
-            String json = gson.toJson(dto);
+            String json = gson.toJson(crearDTO(proyecto, metadata));
             Path archivoTPS = Paths.get(metadata.getRutaTPS());
             Files.writeString(archivoTPS, json);
 
@@ -243,13 +242,8 @@ public class ProyectoFileManager implements ProyectoDAO {
             String json = Files.readString(archivoTPS.toPath());
             ProyectoDTO dto = gson.fromJson(json, ProyectoDTO.class);
 
-            Proyecto proyecto = new Proyecto(dto.getNombre());
-            proyecto.setMetadata(dto.getMetadata());
-            proyecto.setMostrandoFrente(true); // Siempre abrir mostrando el frente
-            proyecto.setFondoFitModePreferido(dto.getFondoFitModePreferido());
-            proyecto.setNoVolverAPreguntarFondo(dto.isNoVolverAPreguntarFondo());
-
             Path carpetaProyecto = archivoTPS.toPath().getParent();
+            Proyecto proyecto = construirProyecto(dto, carpetaProyecto);
 
             // --- REHIDRATAR METADATA (por si el proyecto se movió de sitio) ---
             ProyectoMetadata metadata = proyecto.getMetadata();
@@ -277,20 +271,6 @@ public class ProyectoFileManager implements ProyectoDAO {
                 }
             }
 
-            // Reconstruir elementos
-            proyecto.getElementosFrente().addAll(
-                    convertirDTOAElementos(dto.getElementosFrente(), carpetaProyecto));
-            proyecto.getElementosDorso().addAll(
-                    convertirDTOAElementos(dto.getElementosDorso(), carpetaProyecto));
-
-            // Reconstruir fondos
-            if (dto.getFondoFrente() != null) {
-                proyecto.setFondoFrente(convertirDTOAFondo(dto.getFondoFrente(), carpetaProyecto));
-            }
-            if (dto.getFondoDorso() != null) {
-                proyecto.setFondoDorso(convertirDTOAFondo(dto.getFondoDorso(), carpetaProyecto));
-            }
-
             validarIntegridad(proyecto, proyecto.getMetadata());
 
             return proyecto;
@@ -301,8 +281,78 @@ public class ProyectoFileManager implements ProyectoDAO {
         }
     }
 
+    /* Guarda una copia del diseño tal como está ahora (p. ej. para un trabajo de la cola
+     * de impresión), sin tocar el .tps ni los metadatos. La copia sigue apuntando a las
+     * imágenes y a la carpeta Fotos del proyecto original.
+     *
+     * @param proyecto Proyecto a copiar (leerlo desde el hilo que lo edita)
+     * @param destino  Archivo de la copia */
+
+    public void guardarInstantanea(Proyecto proyecto, Path destino) throws IOException {
+        Files.createDirectories(destino.getParent());
+        Files.writeString(destino, gson.toJson(crearDTO(proyecto, proyecto.getMetadata())));
+    }
+
+    /* Carga una copia guardada con guardarInstantanea. Las rutas relativas se resuelven
+     * contra la carpeta del proyecto original, no contra la de la copia.
+     *
+     * @param archivo Archivo de la copia
+     * @return Proyecto con el diseño del momento de la copia */
+
+    public Proyecto cargarInstantanea(Path archivo) throws IOException {
+        ProyectoDTO dto = gson.fromJson(Files.readString(archivo), ProyectoDTO.class);
+        if (dto == null) throw new IOException("Copia del diseño vacía: " + archivo);
+        String carpeta = dto.getMetadata() != null ? dto.getMetadata().getCarpetaProyecto() : null;
+        return construirProyecto(dto, carpeta != null ? Paths.get(carpeta) : archivo.getParent());
+    }
+
     // ===== MÉTODOS PRIVADOS DE CONVERSIÓN =====
 
+    private ProyectoDTO crearDTO(Proyecto proyecto, ProyectoMetadata metadata) {
+        ProyectoDTO dto = new ProyectoDTO();
+        dto.setNombre(proyecto.getNombre());
+        dto.setMetadata(metadata);
+        dto.setMostrandoFrente(proyecto.isMostrandoFrente());
+        dto.setFondoFitModePreferido(proyecto.getFondoFitModePreferido());
+        dto.setNoVolverAPreguntarFondo(proyecto.isNoVolverAPreguntarFondo());
+
+        dto.setElementosFrente(convertirElementosADTO(proyecto.getElementosFrente()));
+        dto.setElementosDorso(convertirElementosADTO(proyecto.getElementosDorso()));
+
+        if (proyecto.getFondoFrente() != null) {
+            dto.setFondoFrente(convertirFondoADTO(proyecto.getFondoFrente()));
+        }
+        if (proyecto.getFondoDorso() != null) {
+            dto.setFondoDorso(convertirFondoADTO(proyecto.getFondoDorso()));
+        }
+        return dto;
+    }
+
+    /* Reconstruye el proyecto del DTO; las rutas relativas se resuelven contra carpetaProyecto */
+
+    private Proyecto construirProyecto(ProyectoDTO dto, Path carpetaProyecto) {
+        Proyecto proyecto = new Proyecto(dto.getNombre());
+        proyecto.setMetadata(dto.getMetadata());
+        proyecto.setMostrandoFrente(true); // Siempre abrir mostrando el frente
+        proyecto.setFondoFitModePreferido(dto.getFondoFitModePreferido());
+        proyecto.setNoVolverAPreguntarFondo(dto.isNoVolverAPreguntarFondo());
+
+        // Reconstruir elementos
+        proyecto.getElementosFrente().addAll(
+                convertirDTOAElementos(dto.getElementosFrente(), carpetaProyecto));
+        proyecto.getElementosDorso().addAll(
+                convertirDTOAElementos(dto.getElementosDorso(), carpetaProyecto));
+
+        // Reconstruir fondos
+        if (dto.getFondoFrente() != null) {
+            proyecto.setFondoFrente(convertirDTOAFondo(dto.getFondoFrente(), carpetaProyecto));
+        }
+        if (dto.getFondoDorso() != null) {
+            proyecto.setFondoDorso(convertirDTOAFondo(dto.getFondoDorso(), carpetaProyecto));
+        }
+        return proyecto;
+    }
+
     private List<ElementoDTO> convertirElementosADTO(List<Elemento> elementos) {
         List<ElementoDTO> dtos = new ArrayList<>();
         for (Elemento elem : elementos) {
@@ -381,7 +431,7 @@ public class ProyectoFileManager implements ProyectoDAO {
                     imagen = new ImagenElemento(dto.getNombre(), dto.getX(), dto.getY(), null, null);
                 } else {
                     Path rutaAbsoluta = carpetaProyecto.resolve(dto.getRutaImagen());
-                    javafx.scene.image.Image img = Files.exists(rutaAbsoluta)
+                    javafx.scene.image.Image img = conInterfaz && Files.exists(rutaAbsoluta)
                             ? ImageUtils.cargarImagenSinBloqueo(rutaAbsoluta.toAbsolutePath().toString())
                             : null;
                     imagen = new ImagenElemento(dto.getNombre(), dto.getX(), dto.getY(), dto.getRutaImagen(), img);
@@ -422,8 +472,9 @@ public class ProyectoFileManager implements ProyectoDAO {
             return null;
         }
 
-        javafx.scene.image.Image img = ImageUtils
-                .cargarImagenSinBloqueo(rutaAbsoluta.toAbsolutePath().toString());
+        javafx.scene.image.Image img = conInterfaz
+                ? ImageUtils.cargarImagenSinBloqueo(rutaAbsoluta.toAbsolutePath().toString())
+                : null;
 
         FondoFitMode fitMode = FondoFitMode.valueOf(dto.getFitMode());
         ImagenFondoElemento fondo = new ImagenFondoElemento(
@@ -462,7 +513,9 @@ public class ProyectoFileManager implements ProyectoDAO {
             verificarImagen(proyecto.getFondoDorso().getRutaArchivo(), carpetaProyecto, imagenesFaltantes);
         }
 
-        if (!imagenesFaltantes.isEmpty()) {
+        if (!imagenesFaltantes.isEmpty() && !conInterfaz) {
+            System.err.println("[AVISO] Imágenes faltantes: " + String.join(", ", imagenesFaltantes));
+        } else if (!imagenesFaltantes.isEmpty()) {
             Platform.runLater(() -> {
                 Alert alert = new Alert(Alert.AlertType.WARNING);
                 alert.setTitle("Imágenes faltantes");
@@ -0,0 +1,525 @@
+package com.tpsstudio.service;
+
+import com.tpsstudio.model.elements.*;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.util.ImageUtils;
+import com.tpsstudio.view.managers.EditorCanvasManager;
+import javafx.embed.swing.SwingFXUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Renderizador de tarjetas CR80 basado en Java2D.
+ *
+ * <p>Dibuja el fondo y los elementos del diseño ({@link TextoElemento},
+ * {@link ImagenElemento}, {@link FormaElemento} e {@link ImagenFondoElemento})
+ * directamente sobre un {@link BufferedImage}. No usa {@code Canvas},
+ * {@code snapshot()} ni {@code Platform.runLater}, así que puede llamarse desde
+ * cualquier hilo y también en una JVM headless ({@code -Djava.awt.headless=true}).</p>
+ *
+ * <p><b>Concurrencia:</b> una misma instancia puede compartirse entre varios
+ * hilos. Cada llamada crea su propio lienzo y las cachés internas (imágenes,
+ * fuentes y capas estáticas) son concurrentes.</p>
+ *
+ * <p>El resultado replica el renderizado JavaFX que usaba
+ * {@link PDFExportService}: mismas coordenadas, mismo word-wrap y mismas
+ * alineaciones. Las guías y handles de selección nunca aparecen.</p>
+ */
+public class RenderizadorTarjeta {
+
+    // Silueta de placeholder para imágenes sin archivo (cargada una sola vez desde recursos)
+    private static final BufferedImage SILUETA_IMG;
+    static {
+        BufferedImage tmp = null;
+        try (var stream = RenderizadorTarjeta.class.getResourceAsStream("/img/silueta.png")) {
+            if (stream != null) tmp = ImageIO.read(stream);
+        } catch (Exception ignored) {}
+        SILUETA_IMG = tmp;
+    }
+
+    private final Proyecto proyecto;
+
+    // Imágenes fijas (fondos, logos) decodificadas una única vez por ruta
+    private final Map<String, Optional<BufferedImage>> cacheImagenes = new ConcurrentHashMap<>();
+    // Fuentes AWT ya resueltas por familia/estilo/tamaño
+    private final Map<String, Font> cacheFuentes = new ConcurrentHashMap<>();
+    // Capas estáticas por cara / recorte de sangre / escala
+    private final Map<String, CapaEstatica> cacheCapas = new ConcurrentHashMap<>();
+    // Planes completos (sin bitmap) para el render por franjas, con la misma clave
+    private final Map<String, PlanCara> cachePlanes = new ConcurrentHashMap<>();
+    // Fotos variables ya reducidas, persistentes entre exportaciones (se abre al primer uso)
+    private volatile Optional<CacheFotos> cacheFotos;
+
+    /**
+     * Bitmap con el fondo y los elementos fijos de una cara, más el plan compilado
+     * de los elementos que hay que dibujar encima en cada registro.
+     */
+    record CapaEstatica(BufferedImage imagen, double origen, PlanRender dinamicos) {}
+
+    /**
+     * Cara compilada sin bitmap estático, para el render por franjas: tamaño del
+     * lienzo, fondo y planes de los elementos fijos y variables.
+     */
+    record PlanCara(int ancho, int alto, double origen, ImagenFondoElemento fondo,
+                    PlanRender fijos, PlanRender dinamicos) {}
+
+    /** Recibe, de arriba abajo, las franjas de una página renderizada por franjas. */
+    @FunctionalInterface
+    interface ReceptorFranjas {
+        /** La franja solo es válida durante la llamada: su lienzo se reutiliza para la siguiente. */
+        void franja(BufferedImage franja) throws IOException;
+    }
+
+    public RenderizadorTarjeta(Proyecto proyecto) {
+        this.proyecto = proyecto;
+    }
+
+    /**
+     * Renderiza una cara del proyecto con los datos del registro indicado.
+     *
+     * <p>Parte de la capa estática de la cara (fondo + elementos fijos, ver
+     * {@link #capaEstatica}) y solo dibuja encima los elementos que dependen del
+     * registro, a partir de su plan compilado ({@link PlanRender}). La capa y el
+     * plan se construyen la primera vez y se reutilizan en el resto.</p>
+     *
+     * @param esFrente       true para el anverso, false para el reverso.
+     * @param recortarSangre true para devolver solo el área CR80 final (sin sangrado).
+     * @param registro       valores del registro (columna → valor); null para el diseño estático.
+     * @param escala         píxeles de salida por unidad de canvas del editor.
+     * @return imagen RGB opaca con fondo blanco.
+     */
+    public BufferedImage renderizar(boolean esFrente, boolean recortarSangre,
+                                    Map<String, String> registro, double escala) {
+        CapaEstatica capa = capaEstatica(esFrente, recortarSangre, escala);
+        return componer(capa, capa.dinamicos().valores(registro));
+    }
+
+    /**
+     * Igual que {@link #renderizar(boolean, boolean, Map, double)}, pero leyendo los
+     * valores por índice de columna directamente de la fila {@code fila} de la
+     * fuente de datos, sin construir el mapa del registro.
+     */
+    public BufferedImage renderizar(boolean esFrente, boolean recortarSangre,
+                                    FuenteDatos datos, int fila, double escala) {
+        return renderizar(esFrente, recortarSangre, datos, fila, escala, this::resolverImagenVariable);
+    }
+
+    /**
+     * Igual que {@link #renderizar(boolean, boolean, FuenteDatos, int, double)}, con
+     * las fotos variables resueltas por {@code fotos} en lugar de leerlas del disco
+     * en este hilo.
+     */
+    BufferedImage renderizar(boolean esFrente, boolean recortarSangre, FuenteDatos datos, int fila,
+                             double escala, PlanRender.ResolutorFotos fotos) {
+        CapaEstatica capa = capaEstatica(esFrente, recortarSangre, escala);
+        return componer(capa, capa.dinamicos().valores(datos, fila), fotos);
+    }
+
+    private BufferedImage componer(CapaEstatica capa, String[] valores) {
+        return componer(capa, valores, this::resolverImagenVariable);
+    }
+
+    private BufferedImage componer(CapaEstatica capa, String[] valores, PlanRender.ResolutorFotos fotos) {
+        BufferedImage img = copiar(capa.imagen());
+
+        if (!capa.dinamicos().vacio()) {
+            Graphics2D g = img.createGraphics();
+            try {
+                aplicarCalidad(g);
+                capa.dinamicos().dibujar(g, valores, fotos);
+            } finally {
+                g.dispose();
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Renderiza una cara por franjas horizontales de {@code altoFranja} píxeles y las
+     * entrega a {@code receptor} en orden, sin llegar a crear nunca el lienzo de la
+     * página completa. Pensado para salidas de 600–1200 DPI, donde una página entera
+     * ocupa decenas de MB: la memoria queda acotada por el tamaño de la franja.
+     *
+     * <p>Cada franja se dibuja con el plan completo de la cara trasladado y recortado
+     * a su zona, así que el resultado es el mismo píxel a píxel que el de
+     * {@link #renderizar}. Las fotos variables se resuelven una sola vez por página
+     * aunque su hueco cruce varias franjas.</p>
+     */
+    void renderizarPorFranjas(boolean esFrente, boolean recortarSangre, FuenteDatos datos, int fila,
+                              double escala, int altoFranja, PlanRender.ResolutorFotos fotos,
+                              ReceptorFranjas receptor) throws IOException {
+        PlanCara plan = planCara(esFrente, recortarSangre, escala);
+        String[] valores = plan.dinamicos().valores(datos, fila);
+        Map<String, Optional<BufferedImage>> resueltas = new HashMap<>();
+        PlanRender.ResolutorFotos fotosPagina = (nombre, ancho, alto) -> resueltas.computeIfAbsent(
+                nombre + '|' + ancho + 'x' + alto,
+                k -> Optional.ofNullable(fotos.foto(nombre, ancho, alto))).orElse(null);
+
+        int altoLienzo = Math.max(1, Math.min(altoFranja, plan.alto()));
+        BufferedImage lienzo = new BufferedImage(plan.ancho(), altoLienzo, BufferedImage.TYPE_INT_RGB);
+        for (int y0 = 0; y0 < plan.alto(); y0 += altoLienzo) {
+            int h = Math.min(altoLienzo, plan.alto() - y0);
+            Graphics2D g = lienzo.createGraphics();
+            try {
+                aplicarCalidad(g);
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, plan.ancho(), altoLienzo);
+                g.translate(0, -y0);
+                g.clipRect(0, y0, plan.ancho(), h);
+
+                dibujarFondo(g, plan.fondo(), plan.origen(), plan.origen(), escala);
+                plan.fijos().dibujar(g, null);
+                plan.dinamicos().dibujar(g, valores, fotosPagina);
+            } finally {
+                g.dispose();
+            }
+            receptor.franja(h == altoLienzo ? lienzo : lienzo.getSubimage(0, 0, plan.ancho(), h));
+        }
+    }
+
+    /** Devuelve (y compila si hace falta) el plan completo de una cara para el render por franjas. */
+    PlanCara planCara(boolean esFrente, boolean recortarSangre, double escala) {
+        String clave = (esFrente ? "F" : "D") + '|' + recortarSangre + '|' + escala;
+        return cachePlanes.computeIfAbsent(clave, k -> {
+            Lienzo lienzo = lienzo(recortarSangre, escala);
+            List<Elemento> fijos = new ArrayList<>();
+            List<Elemento> dinamicos = new ArrayList<>();
+            separar(esFrente ? proyecto.getElementosFrente() : proyecto.getElementosDorso(), fijos, dinamicos);
+            return new PlanCara(lienzo.ancho(), lienzo.alto(), lienzo.origen(),
+                    esFrente ? proyecto.getFondoFrente() : proyecto.getFondoDorso(),
+                    PlanRender.compilar(this, fijos, lienzo.origen(), escala),
+                    PlanRender.compilar(this, dinamicos, lienzo.origen(), escala));
+        });
+    }
+
+    /**
+     * Devuelve (y construye si hace falta) la capa estática de una cara: el fondo
+     * y todos los elementos fijos ya dibujados en un bitmap a la escala pedida.
+     *
+     * <p>Para respetar el orden Z, la capa solo incluye los elementos que están
+     * <i>por debajo</i> del primer elemento variable. Un elemento fijo colocado
+     * encima de uno variable (por ejemplo, un marco sobre la foto) se dibuja por
+     * registro junto con los variables.</p>
+     */
+    CapaEstatica capaEstatica(boolean esFrente, boolean recortarSangre, double escala) {
+        String clave = (esFrente ? "F" : "D") + '|' + recortarSangre + '|' + escala;
+        return cacheCapas.computeIfAbsent(clave, k -> construirCapa(esFrente, recortarSangre, escala));
+    }
+
+    /**
+     * Descarta las capas estáticas y las imágenes fijas cacheadas. Se llama al
+     * empezar cada exportación para que los cambios del diseño se reflejen.
+     */
+    public void invalidarCaches() {
+        cacheCapas.clear();
+        cachePlanes.clear();
+        cacheImagenes.clear();
+    }
+
+    private CapaEstatica construirCapa(boolean esFrente, boolean recortarSangre, double escala) {
+        Lienzo lienzo = lienzo(recortarSangre, escala);
+        double origen = lienzo.origen();
+        int ancho = lienzo.ancho();
+        int alto = lienzo.alto();
+
+        List<Elemento> fijos = new ArrayList<>();
+        List<Elemento> dinamicos = new ArrayList<>();
+        separar(esFrente ? proyecto.getElementosFrente() : proyecto.getElementosDorso(), fijos, dinamicos);
+
+        BufferedImage img = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            aplicarCalidad(g);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, ancho, alto);
+
+            ImagenFondoElemento fondo = esFrente ? proyecto.getFondoFrente() : proyecto.getFondoDorso();
+            dibujarFondo(g, fondo, origen, origen, escala);
+            PlanRender.compilar(this, fijos, origen, escala).dibujar(g, null);
+        } finally {
+            g.dispose();
+        }
+        return new CapaEstatica(img, origen, PlanRender.compilar(this, dinamicos, origen, escala));
+    }
+
+    /** Tamaño en píxeles del lienzo de una cara y origen de la tarjeta dentro de él. */
+    private record Lienzo(int ancho, int alto, double origen) {}
+
+    private static Lienzo lienzo(boolean recortarSangre, double escala) {
+        double cardW = EditorCanvasManager.CARD_WIDTH  * escala;
+        double cardH = EditorCanvasManager.CARD_HEIGHT * escala;
+        double bleed = EditorCanvasManager.BLEED_MARGIN * escala;
+
+        // Con recorte de sangre el lienzo ya nace al tamaño final: no hace falta getSubimage()
+        return new Lienzo((int) Math.round(recortarSangre ? cardW : cardW + bleed * 2),
+                (int) Math.round(recortarSangre ? cardH : cardH + bleed * 2),
+                recortarSangre ? 0 : bleed);
+    }
+
+    /**
+     * Reparte los elementos visibles entre fijos y dinámicos. A partir del primer
+     * variable, todo se dibuja por registro para respetar el orden Z.
+     */
+    private static void separar(List<Elemento> elementos, List<Elemento> fijos, List<Elemento> dinamicos) {
+        if (elementos == null) return;
+        for (Elemento elem : elementos) {
+            if (!elem.isVisible()) continue;
+            if (!dinamicos.isEmpty() || esVariable(elem)) {
+                dinamicos.add(elem);
+            } else {
+                fijos.add(elem);
+            }
+        }
+    }
+
+    /** true si el elemento cambia con cada registro (texto o imagen vinculados a una columna). */
+    static boolean esVariable(Elemento elem) {
+        if (elem instanceof TextoElemento t) return t.getColumnaVinculada() != null;
+        if (elem instanceof ImagenElemento i) return i.getColumnaVinculada() != null;
+        return false;
+    }
+
+    /** Copia el bitmap de la capa estática en un lienzo nuevo (copia directa de píxeles). */
+    private static BufferedImage copiar(BufferedImage base) {
+        BufferedImage copia = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] origen = ((DataBufferInt) base.getRaster().getDataBuffer()).getData();
+        int[] destino = ((DataBufferInt) copia.getRaster().getDataBuffer()).getData();
+        System.arraycopy(origen, 0, destino, 0, origen.length);
+        return copia;
+    }
+
+    /**
+     * Renderiza únicamente el fondo de una cara (sin ningún elemento de diseño),
+     * siempre con el área de sangrado incluida. Si la cara no tiene fondo, el
+     * resultado es blanco puro.
+     */
+    public BufferedImage renderizarSoloFondo(boolean esFrente, double escala) {
+        double cardW = EditorCanvasManager.CARD_WIDTH  * escala;
+        double cardH = EditorCanvasManager.CARD_HEIGHT * escala;
+        double bleed = EditorCanvasManager.BLEED_MARGIN * escala;
+        int ancho = (int) Math.round(cardW + bleed * 2);
+        int alto  = (int) Math.round(cardH + bleed * 2);
+
+        BufferedImage img = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        try {
+            aplicarCalidad(g);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, ancho, alto);
+
+            ImagenFondoElemento fondo = esFrente ? proyecto.getFondoFrente() : proyecto.getFondoDorso();
+            BufferedImage imgFondo = imagenFondo(fondo);
+            if (imgFondo != null) {
+                dibujarImagen(g, imgFondo,
+                        bleed + fondo.getX() * escala, bleed + fondo.getY() * escala,
+                        fondo.getWidth() * escala, fondo.getHeight() * escala);
+            }
+        } finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    // ──────────────────────────── dibujo ────────────────────────────
+
+    /** Activa antialiasing, métricas fraccionales e interpolación bilineal. */
+    public static void aplicarCalidad(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+    }
+
+    /** Dibuja el fondo de la cara o, si no hay, el área CR80 en blanco. */
+    private void dibujarFondo(Graphics2D g, ImagenFondoElemento fondo, double cardX, double cardY, double escala) {
+        BufferedImage imgFondo = imagenFondo(fondo);
+        if (imgFondo != null) {
+            dibujarImagen(g, imgFondo,
+                    cardX + fondo.getX() * escala, cardY + fondo.getY() * escala,
+                    fondo.getWidth() * escala, fondo.getHeight() * escala);
+        } else {
+            g.setColor(Color.WHITE);
+            g.fill(new Rectangle2D.Double(cardX, cardY,
+                    EditorCanvasManager.CARD_WIDTH * escala, EditorCanvasManager.CARD_HEIGHT * escala));
+        }
+    }
+
+    /** Dibuja una imagen escalada a un rectángulo con coordenadas subpíxel. */
+    public static void dibujarImagen(Graphics2D g, BufferedImage img, double x, double y, double w, double h) {
+        if (img.getWidth() <= 0 || img.getHeight() <= 0) return;
+        AffineTransform at = new AffineTransform();
+        at.translate(x, y);
+        at.scale(w / img.getWidth(), h / img.getHeight());
+        g.drawImage(img, at, null);
+    }
+
+    /** Ancho de avance de una cadena con la fuente indicada. */
+    static double ancho(Font font, FontRenderContext frc, String s) {
+        if (s.isEmpty()) return 0;
+        return font.getStringBounds(s, frc).getWidth();
+    }
+
+    // ──────────────────────────── recursos ────────────────────────────
+
+    /**
+     * Convierte un color CSS/hex del modelo ("#1a1a2e", "red"…) a color AWT.
+     * Usa el parser de JavaFX, que es una clase de valor y no necesita el toolkit.
+     * Si el texto no es válido se devuelve negro, igual que un color por defecto.
+     */
+    public static Color color(String web) {
+        if (web == null || web.isBlank()) return Color.BLACK;
+        try {
+            javafx.scene.paint.Color c = javafx.scene.paint.Color.web(web);
+            return new Color((float) c.getRed(), (float) c.getGreen(), (float) c.getBlue(), (float) c.getOpacity());
+        } catch (IllegalArgumentException e) {
+            return Color.BLACK;
+        }
+    }
+
+    /** Devuelve la fuente AWT equivalente a la familia/estilo/tamaño (px) del modelo. */
+    public Font fuente(String familia, boolean negrita, boolean cursiva, double tamaño) {
+        String fam = (familia == null || familia.isBlank()) ? Font.SANS_SERIF : familia;
+        int estilo = (negrita ? Font.BOLD : Font.PLAIN) | (cursiva ? Font.ITALIC : Font.PLAIN);
+        String clave = fam + '|' + estilo + '|' + tamaño;
+        return cacheFuentes.computeIfAbsent(clave,
+                k -> new Font(fam, estilo, 1).deriveFont((float) tamaño));
+    }
+
+    /** Imagen fija de un elemento (decodificada una sola vez), o null si no hay. */
+    public BufferedImage imagen(ImagenElemento elem) {
+        return cargarFija(elem.getRutaArchivo(), elem.getImagen());
+    }
+
+    /** Imagen del fondo (decodificada una sola vez), o null si no hay fondo. */
+    public BufferedImage imagenFondo(ImagenFondoElemento fondo) {
+        if (fondo == null) return null;
+        return cargarFija(fondo.getRutaArchivo(), fondo.getImagen());
+    }
+
+    /** Silueta de placeholder de recursos; puede ser null. */
+    public static BufferedImage silueta() {
+        return SILUETA_IMG;
+    }
+
+    /**
+     * Carga una imagen fija priorizando el archivo en disco (ImageIO, sin toolkit).
+     * Si el archivo no está disponible pero el elemento ya tiene una imagen JavaFX
+     * cargada (por ejemplo, recién pegada en el editor), se convierte a AWT.
+     */
+    private BufferedImage cargarFija(String ruta, javafx.scene.image.Image imagenFx) {
+        String clave = ruta != null ? ruta : "fx@" + System.identityHashCode(imagenFx);
+        if (ruta == null && imagenFx == null) return null;
+
+        return cacheImagenes.computeIfAbsent(clave, k -> {
+            File archivo = resolverArchivo(ruta);
+            if (archivo != null) {
+                BufferedImage leida = leer(archivo);
+                if (leida != null) return Optional.of(leida);
+            }
+            if (imagenFx != null) {
+                try {
+                    return Optional.ofNullable(SwingFXUtils.fromFXImage(imagenFx, null));
+                } catch (Exception ignored) {}
+            }
+            return Optional.empty();
+        }).orElse(null);
+    }
+
+    /** Resuelve una ruta del modelo: absoluta, o relativa a la carpeta del proyecto. */
+    File resolverArchivo(String ruta) {
+        if (ruta == null || ruta.isBlank()) return null;
+        File f = new File(ruta);
+        if (f.isAbsolute()) return f.isFile() ? f : null;
+
+        if (proyecto.getMetadata() == null) return null;
+        String carpeta = proyecto.getMetadata().getCarpetaProyecto();
+        if (carpeta == null) return null;
+
+        File relativo = new File(carpeta, ruta);
+        return relativo.isFile() ? relativo : null;
+    }
+
+    /**
+     * Intenta cargar una imagen desde la columna de datos (nombre de archivo),
+     * decodificada y reducida directamente al tamaño en píxeles del hueco. Primero
+     * se busca en la caché de fotos del proyecto; lo decodificado se guarda en ella.
+     */
+    BufferedImage resolverImagenVariable(String nombreArchivo, int ancho, int alto) {
+        File imgFile = archivoFotoVariable(nombreArchivo);
+        if (imgFile == null) return null;
+
+        CacheFotos cache = cacheFotos();
+        if (cache != null) {
+            BufferedImage cacheada = cache.leer(imgFile, ancho, alto);
+            if (cacheada != null) return cacheada;
+        }
+        BufferedImage img = ImageUtils.leerAjustada(imgFile, ancho, alto);
+        if (img != null && cache != null) cache.guardar(imgFile, ancho, alto, img);
+        return img;
+    }
+
+    private CacheFotos cacheFotos() {
+        Optional<CacheFotos> cache = cacheFotos;
+        if (cache == null) {
+            synchronized (this) {
+                if (cacheFotos == null) cacheFotos = Optional.ofNullable(CacheFotos.abrir(proyecto));
+                cache = cacheFotos;
+            }
+        }
+        return cache.orElse(null);
+    }
+
+    /**
+     * Archivo de la carpeta Fotos/ indicado por la columna de datos, o null si no existe
+     * o si el nombre apunta fuera de Fotos/ ({@code ../}, rutas absolutas): el valor
+     * viene de los datos o de una petición HTTP y no debe dar acceso a otros archivos.
+     */
+    File archivoFotoVariable(String nombreArchivo) {
+        if (nombreArchivo == null || nombreArchivo.isBlank()) return null;
+        if (proyecto.getMetadata() == null) return null;
+
+        String fotosDir = proyecto.getMetadata().getRutaFotos();
+        if (fotosDir == null) return null;
+
+        Path carpeta;
+        Path ruta;
+        try {
+            carpeta = Paths.get(fotosDir).toAbsolutePath().normalize();
+            ruta = carpeta.resolve(nombreArchivo).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!ruta.startsWith(carpeta)) return null;
+
+        File imgFile = ruta.toFile();
+        return imgFile.isFile() ? imgFile : null;
+    }
+
+    private static BufferedImage leer(File archivo) {
+        try {
+            return ImageIO.read(archivo);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package com.tpsstudio.service;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.printing.PDFPageable;
+
+import javax.print.PrintService;
+import javax.print.attribute.standard.QueuedJobCount;
+import java.awt.print.PageFormat;
+import java.awt.print.Pageable;
+import java.awt.print.Printable;
+import java.awt.print.PrinterAbortException;
+import java.awt.print.PrinterException;
+import java.awt.print.PrinterIOException;
+import java.awt.print.PrinterJob;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Estrategia de impresión que reparte los registros de un trabajo entre varias
+ * impresoras de tarjetas que trabajan a la vez.
+ *
+ * <p>Cada impresora tiene su hilo, que va tomando lotes de registros de una cola común.
+ * El tamaño de cada lote sale del ritmo medido de esa impresora (tarjetas por minuto,
+ * media de los lotes anteriores de la sesión): una impresora el doble de rápida recibe
+ * lotes el doble de grandes, y hacia el final cada una toma solo su parte proporcional
+ * de lo que queda, para que terminen a la vez. Un lote cuenta como terminado cuando la
+ * cola de la impresora vuelve a estar vacía, si el driver informa de
+ * {@link QueuedJobCount}. Si no informa, cuenta solo la entrega al spooler.</p>
+ *
+ * <p>Si una impresora falla o desaparece, sale del grupo y los registros que no llegó
+ * a recibir vuelven al principio de la cola para las demás. Cada registro va a una sola
+ * impresora: los que ya estaban en el spooler antes del fallo no se reenvían. La
+ * auditoría los marca como {@code ENTREGADO_ANTES_DEL_FALLO} y el trabajo termina con
+ * error aunque el resto se imprima: un trabajo abortado en el spooler suele descartar
+ * las páginas que ya tenía, así que hay que revisarlos a mano.</p>
+ *
+ * <p>Cada trabajo deja un CSV en la carpeta de auditoría (por defecto
+ * {@link #carpetaAuditoriaPorDefecto()}). El CSV registra qué impresora y qué lote
+ * recibió cada registro, y con qué resultado.</p>
+ */
+public class SalidaGrupoImpresoras implements SalidaImpresion {
+
+    private static final Logger log = Logger.getLogger(SalidaGrupoImpresoras.class.getName());
+
+    private static final String APP_DIR = ".tpsstudio";
+    private static final String DIR_AUDITORIA = "auditoria_impresion";
+
+    /** Registros por lote de una impresora que aún no tiene ritmo medido. */
+    public static final int LOTE_INICIAL = 10;
+    public static final int LOTE_MAXIMO = 250;
+    /** Minutos de trabajo que se da a cada impresora por lote. */
+    private static final double MINUTOS_POR_LOTE = 2.0;
+    private static final long ESPERA_COLA_MS = 500;
+    private static final long ESPERA_COLA_MAXIMA_MS = 15 * 60_000L;
+
+    /** Tarjetas por minuto medidas en esta sesión, por impresora. */
+    private static final Map<String, Double> RITMOS = new ConcurrentHashMap<>();
+
+    /** Genera las páginas de un lote de registros (en el hilo de la impresora). */
+    @FunctionalInterface
+    interface FuenteLotes {
+        Pageable paginas(List<Integer> registros) throws Exception;
+    }
+
+    /**
+     * Entrega un lote a una impresora y bloquea hasta que lo ha recibido. La
+     * implementación real usa {@code PrinterJob}; las pruebas la sustituyen.
+     */
+    @FunctionalInterface
+    interface Spooler {
+        void imprimir(String impresora, Pageable paginas, String nombreTrabajo, TrabajoExportacion control)
+                throws ImpresoraNoDisponibleException, PrinterException;
+    }
+
+    /** Spooler del sistema: busca la impresora, envía el lote y espera a que vacíe su cola. */
+    private static final Spooler SPOOLER_SISTEMA = (impresora, paginas, nombreTrabajo, control) -> {
+        PrintService servicio = buscarImpresora(impresora);
+        PrinterJob job = PrinterJob.getPrinterJob();
+        job.setPrintService(servicio);
+        job.setJobName(nombreTrabajo);
+        job.setPageable(paginas);
+        job.print();
+        esperarCola(servicio, control);
+    };
+
+    private final List<String> impresoras;
+    private final int paginasPorRegistro;
+    private final Path carpetaAuditoria;
+    private final Spooler spooler;
+
+    /** Grupo con una página por registro y la carpeta de auditoría por defecto. */
+    public SalidaGrupoImpresoras(List<String> impresoras) {
+        this(impresoras, 1, carpetaAuditoriaPorDefecto());
+    }
+
+    /**
+     * @param impresoras         nombres de las impresoras del grupo (al menos una).
+     * @param paginasPorRegistro páginas de cada registro en los PDFs que reciba
+     *                           {@link #enviar(File)} (2 con anverso y reverso).
+     * @param carpetaAuditoria   carpeta donde se escribe el CSV de cada trabajo.
+     */
+    public SalidaGrupoImpresoras(List<String> impresoras, int paginasPorRegistro, Path carpetaAuditoria) {
+        this(impresoras, paginasPorRegistro, carpetaAuditoria, SPOOLER_SISTEMA);
+    }
+
+    SalidaGrupoImpresoras(List<String> impresoras, int paginasPorRegistro, Path carpetaAuditoria, Spooler spooler) {
+        if (impresoras == null || impresoras.isEmpty()) {
+            throw new IllegalArgumentException("El grupo necesita al menos una impresora");
+        }
+        if (paginasPorRegistro < 1) {
+            throw new IllegalArgumentException("paginasPorRegistro debe ser >= 1");
+        }
+        this.impresoras = List.copyOf(new LinkedHashSet<>(impresoras));
+        this.paginasPorRegistro = paginasPorRegistro;
+        this.carpetaAuditoria = carpetaAuditoria;
+        this.spooler = spooler;
+    }
+
+    /** {@code ~/.tpsstudio/auditoria_impresion}. */
+    public static Path carpetaAuditoriaPorDefecto() {
+        return Paths.get(System.getProperty("user.home"), APP_DIR, DIR_AUDITORIA);
+    }
+
+    public List<String> getImpresoras() {
+        return impresoras;
+    }
+
+    /** Ritmo medido de una impresora en tarjetas por minuto, o null si aún no hay medida. */
+    public static Double getRitmo(String impresora) {
+        return RITMOS.get(impresora);
+    }
+
+    /**
+     * Reparte un PDF ya generado. Cada {@code paginasPorRegistro} páginas forman un
+     * registro, que se numera en la auditoría por su posición dentro del PDF.
+     */
+    @Override
+    public void enviar(File archivoPdf) throws Exception {
+        int paginas;
+        try (PDDocument documento = PDDocument.load(archivoPdf, MemoryUsageSetting.setupTempFileOnly())) {
+            paginas = documento.getNumberOfPages();
+        }
+        List<Integer> registros = IntStream.range(0, paginas / paginasPorRegistro).boxed().toList();
+        // PDFBox no es seguro entre hilos: cada lote abre su propia copia del documento
+        imprimir(registros, lote -> new TramoPdf(archivoPdf, lote, paginasPorRegistro),
+                archivoPdf.getName(), new TrabajoExportacion());
+        archivoPdf.delete();
+    }
+
+    /**
+     * Reparte {@code registros} entre las impresoras del grupo y bloquea hasta que
+     * todos se han entregado o ya no queda ninguna impresora disponible.
+     *
+     * @param registros     registros del trabajo (índices 0-based; la auditoría los muestra 1-based).
+     * @param fuente        genera las páginas de cada lote.
+     * @param nombreTrabajo nombre del trabajo en el spooler y en el CSV de auditoría.
+     * @throws ImpresoraNoDisponibleException si ninguna impresora recibió nada (se puede
+     *         reintentar el trabajo completo).
+     * @throws CancellationException si se cancela {@code control}.
+     * @throws Exception si falla el render, si quedan registros sin imprimir después de
+     *         entregar otros, o si algún registro quedó en una impresora que falló
+     *         ({@code ENTREGADO_ANTES_DEL_FALLO}). El mensaje indica el CSV de auditoría.
+     *         En esos casos no se reintenta: duplicaría tarjetas.
+     */
+    void imprimir(List<Integer> registros, FuenteLotes fuente, String nombreTrabajo,
+                  TrabajoExportacion control) throws Exception {
+        try (Auditoria auditoria = new Auditoria(carpetaAuditoria, nombreTrabajo)) {
+            Reparto reparto = new Reparto(registros, control);
+            List<Thread> hilos = new ArrayList<>();
+            for (String impresora : impresoras) {
+                Thread t = new Thread(() -> trabajar(impresora, reparto, fuente, nombreTrabajo, control, auditoria),
+                        "tps-grupo-" + impresora);
+                t.setDaemon(true);
+                hilos.add(t);
+                t.start();
+            }
+            try {
+                for (Thread t : hilos) t.join();
+            } catch (InterruptedException e) {
+                // Cierre de la aplicación: los hilos de las impresoras paran al terminar su página
+                control.cancelar();
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Impresión en grupo interrumpida");
+            }
+
+            if (reparto.fatal != null) throw reparto.fatal;
+            control.comprobarCancelado();
+            if (!reparto.pendientes.isEmpty()) {
+                List<Integer> resto = new ArrayList<>(reparto.pendientes);
+                auditoria.registrar(resto, "", 0, "SIN_IMPRESORA");
+                if (reparto.entregados == 0) {
+                    throw new ImpresoraNoDisponibleException("Ninguna impresora del grupo está disponible: "
+                            + String.join(", ", impresoras));
+                }
+                throw new Exception("Quedan " + resto.size() + " de " + registros.size()
+                        + " registros sin imprimir: ninguna impresora del grupo sigue disponible."
+                        + dudosos(reparto) + " Detalle en " + auditoria.archivo);
+            }
+            if (reparto.dudosos > 0) {
+                // Todo entregado, pero no se sabe si se imprimieron los que tenía una impresora caída
+                throw new Exception("Trabajo repartido con incidencias:" + dudosos(reparto)
+                        + " Revíselos en " + auditoria.archivo
+                        + " (estado ENTREGADO_ANTES_DEL_FALLO) antes de reimprimir.");
+            }
+            log.info("Grupo de impresión: " + registros.size() + " registros en " + reparto.lotes
+                    + " lotes. Auditoría: " + auditoria.archivo);
+        }
+    }
+
+    /** Aviso de los registros que quedaron en una impresora que falló, o cadena vacía. */
+    private static String dudosos(Reparto reparto) {
+        return reparto.dudosos == 0 ? ""
+                : " " + reparto.dudosos + " registros llegaron a una impresora que falló y pueden no haberse impreso.";
+    }
+
+    // ──────────────────────────── reparto ────────────────────────────
+
+    private void trabajar(String impresora, Reparto reparto, FuenteLotes fuente, String nombreTrabajo,
+                          TrabajoExportacion control, Auditoria auditoria) {
+        try {
+            Lote lote;
+            while ((lote = reparto.tomar(impresora)) != null) {
+                boolean sigue;
+                try {
+                    sigue = imprimirLote(impresora, lote, reparto, fuente, nombreTrabajo, control, auditoria);
+                } catch (RuntimeException | Error e) {
+                    // Último recurso: el lote nunca queda en vuelo, o las demás impresoras
+                    // esperarían para siempre a que volviera. No se sabe qué llegó a la
+                    // impresora, así que no se reasigna: el trabajo falla
+                    log.warning("Error inesperado en la impresora '" + impresora + "': " + e);
+                    auditoria.registrar(lote.registros(), impresora, lote.numero(), "INTERRUMPIDO");
+                    reparto.abortar(new Exception("Error inesperado en la impresora '" + impresora + "': "
+                            + e.getMessage(), e), lote);
+                    return;
+                }
+                if (!sigue) return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reparto.abortar(new CancellationException("Impresión en grupo interrumpida"), null);
+        }
+    }
+
+    /** @return false si la impresora deja el grupo o el trabajo se aborta. */
+    private boolean imprimirLote(String impresora, Lote lote, Reparto reparto, FuenteLotes fuente,
+                                 String nombreTrabajo, TrabajoExportacion control, Auditoria auditoria) {
+        auditoria.registrar(lote.registros(), impresora, lote.numero(), "ENVIANDO");
+        long t0 = System.nanoTime();
+
+        Pageable base;
+        try {
+            base = fuente.paginas(lote.registros());
+        } catch (Exception e) {
+            auditoria.registrar(lote.registros(), impresora, lote.numero(), "NO_IMPRESO");
+            reparto.abortar(new Exception("No se pudo preparar el lote " + lote.numero() + ": " + e.getMessage(), e),
+                    lote);
+            return false;
+        }
+
+        int porRegistro = Math.max(1, base.getNumberOfPages() / lote.registros().size());
+        ContadorPaginas paginas = new ContadorPaginas(base);
+        try {
+            spooler.imprimir(impresora, paginas, nombreTrabajo + " (lote " + lote.numero() + ")", control);
+        } catch (ImpresoraNoDisponibleException e) {
+            return baja(impresora, lote, base, entregados(paginas, porRegistro, lote), porRegistro, e,
+                    reparto, control, auditoria);
+        } catch (PrinterException e) {
+            int entregados = entregados(paginas, porRegistro, lote);
+            Throwable errorContenido = errorContenido(base, e);
+            if (e instanceof PrinterAbortException || errorContenido != null) {
+                auditoria.registrar(lote.registros().subList(0, entregados), impresora, lote.numero(),
+                        "ENTREGADO_ANTES_DEL_FALLO");
+                auditoria.registrar(lote.registros().subList(entregados, lote.registros().size()), impresora,
+                        lote.numero(), "NO_IMPRESO");
+                reparto.abortar(errorContenido != null
+                        ? new Exception("No se pudo renderizar el lote " + lote.numero() + ": "
+                                + errorContenido.getMessage(), errorContenido)
+                        : new CancellationException(e.getMessage()), lote);
+                return false;
+            }
+            return baja(impresora, lote, base, entregados, porRegistro, e, reparto, control, auditoria);
+        } catch (RuntimeException e) {
+            // Fallo del driver o de un Printable: como una impresora caída, lo no recibido se reasigna
+            return baja(impresora, lote, base, entregados(paginas, porRegistro, lote), porRegistro, e,
+                    reparto, control, auditoria);
+        } finally {
+            cerrar(base);
+        }
+
+        medir(impresora, lote.registros().size(), System.nanoTime() - t0);
+        auditoria.registrar(lote.registros(), impresora, lote.numero(), "IMPRESO");
+        reparto.terminar(lote, lote.registros().size());
+        return true;
+    }
+
+    /** Registros con alguna página ya en el spooler: cuentan como entregados. */
+    private static int entregados(ContadorPaginas paginas, int porRegistro, Lote lote) {
+        return Math.min(lote.registros().size(), (paginas.getPaginasEmpezadas() + porRegistro - 1) / porRegistro);
+    }
+
+    /**
+     * La impresora sale del grupo; lo que no llegó a recibir vuelve a la cola común.
+     * Las páginas de esos registros que ya contaban en el progreso se descuentan: la
+     * impresora que los reciba las volverá a contar.
+     */
+    private boolean baja(String impresora, Lote lote, Pageable base, int entregados, int porRegistro,
+                         Exception causa, Reparto reparto, TrabajoExportacion control, Auditoria auditoria) {
+        List<Integer> recibidos = lote.registros().subList(0, entregados);
+        List<Integer> resto = lote.registros().subList(entregados, lote.registros().size());
+        auditoria.registrar(recibidos, impresora, lote.numero(), "ENTREGADO_ANTES_DEL_FALLO");
+        auditoria.registrar(resto, impresora, lote.numero(), "REASIGNADO");
+        log.warning("Impresora '" + impresora + "' fuera del grupo (" + resto.size()
+                + " registros reasignados): " + causa.getMessage());
+        if (base instanceof PaginasImpresion lotePaginas) {
+            control.descontarPaginas(Math.max(0, lotePaginas.getPaginasEnviadas() - entregados * porRegistro));
+        }
+        reparto.devolver(impresora, lote, resto, entregados);
+        return false;
+    }
+
+    /** Actualiza el ritmo de la impresora: media entre la medida anterior y la del lote. */
+    private static void medir(String impresora, int registros, long nanos) {
+        double minutos = Math.max(nanos, 1) / 60e9;
+        double ritmo = registros / minutos;
+        RITMOS.merge(impresora, ritmo, (anterior, nuevo) -> (anterior + nuevo) / 2);
+    }
+
+    /**
+     * Espera a que la impresora vacíe su cola, para que el ritmo medido sea el de
+     * impresión y no el del spooler. Sin {@link QueuedJobCount} vuelve enseguida.
+     */
+    private static void esperarCola(PrintService servicio, TrabajoExportacion control) {
+        long limite = System.currentTimeMillis() + ESPERA_COLA_MAXIMA_MS;
+        try {
+            while (!control.isCancelado() && System.currentTimeMillis() < limite) {
+                QueuedJobCount enCola = servicio.getAttribute(QueuedJobCount.class);
+                if (enCola == null || enCola.getValue() == 0) return;
+                Thread.sleep(ESPERA_COLA_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Fallo del contenido (render o PDF), no de la impresora: otra impresora fallaría igual. */
+    private static Throwable errorContenido(Pageable base, PrinterException e) {
+        if (base instanceof PaginasImpresion paginas) return paginas.getErrorRender();
+        if (e instanceof PrinterIOException io) return io.getIOException();
+        return null;
+    }
+
+    private static void cerrar(Pageable paginas) {
+        if (paginas instanceof AutoCloseable cerrable) {
+            try {
+                cerrable.close();
+            } catch (Exception e) {
+                log.warning("No se pudo cerrar el lote: " + e.getMessage());
+            }
+        }
+    }
+
+    private static PrintService buscarImpresora(String nombre) throws ImpresoraNoDisponibleException {
+        for (PrintService service : PrinterJob.lookupPrintServices()) {
+            if (service.getName().equalsIgnoreCase(nombre)) {
+                return service;
+            }
+        }
+        throw new ImpresoraNoDisponibleException(
+                "La impresora '" + nombre + "' ya no está disponible o no se encuentra instalada.");
+    }
+
+    private record Lote(int numero, List<Integer> registros) {
+    }
+
+    /** Cola común de registros pendientes, compartida por los hilos de las impresoras. */
+    private static final class Reparto {
+
+        private final Deque<Integer> pendientes;
+        private final Set<String> activas = new HashSet<>();
+        private final TrabajoExportacion control;
+        // Lotes tomados que aún no han terminado, devuelto ni abortado
+        private final Set<Integer> enVuelo = new HashSet<>();
+        private int lotes;
+        private int entregados;
+        // Registros entregados a una impresora que después falló (ENTREGADO_ANTES_DEL_FALLO)
+        private int dudosos;
+        private Exception fatal;
+
+        Reparto(List<Integer> registros, TrabajoExportacion control) {
+            this.pendientes = new ArrayDeque<>(registros);
+            this.control = control;
+        }
+
+        /**
+         * Siguiente lote para {@code impresora}, o null si ya no queda nada. Si la cola
+         * está vacía pero hay lotes en otras impresoras, espera: alguno puede volver.
+         */
+        synchronized Lote tomar(String impresora) throws InterruptedException {
+            activas.add(impresora);
+            while (pendientes.isEmpty() && !enVuelo.isEmpty() && fatal == null && !control.isCancelado()) {
+                wait(ESPERA_COLA_MS);
+            }
+            if (pendientes.isEmpty() || fatal != null || control.isCancelado()) {
+                activas.remove(impresora);
+                return null;
+            }
+            int n = tamanoLote(impresora);
+            List<Integer> registros = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) registros.add(pendientes.pollFirst());
+            Lote lote = new Lote(++lotes, registros);
+            enVuelo.add(lote.numero());
+            return lote;
+        }
+
+        synchronized void terminar(Lote lote, int registros) {
+            if (enVuelo.remove(lote.numero())) entregados += registros;
+            notifyAll();
+        }
+
+        /** La impresora sale del grupo: {@code resto} vuelve al principio, en su orden. */
+        synchronized void devolver(String impresora, Lote lote, List<Integer> resto, int recibidos) {
+            activas.remove(impresora);
+            if (enVuelo.remove(lote.numero())) {
+                for (int i = resto.size() - 1; i >= 0; i--) pendientes.addFirst(resto.get(i));
+                entregados += recibidos;
+                dudosos += recibidos;
+            }
+            notifyAll();
+        }
+
+        /** Detiene el reparto; {@code lote} es el que tenía tomado quien aborta, o null. */
+        synchronized void abortar(Exception causa, Lote lote) {
+            if (fatal == null) fatal = causa;
+            if (lote != null) enVuelo.remove(lote.numero());
+            notifyAll();
+        }
+
+        /**
+         * Registros para unos {@link #MINUTOS_POR_LOTE} minutos al ritmo de la impresora,
+         * sin pasar de su parte proporcional de lo pendiente entre las impresoras activas.
+         */
+        private int tamanoLote(String impresora) {
+            double propio = ritmo(impresora);
+            double suma = activas.stream().mapToDouble(this::ritmo).sum();
+            Double medido = RITMOS.get(impresora);
+            int porRitmo = medido != null ? (int) Math.round(medido * MINUTOS_POR_LOTE) : LOTE_INICIAL;
+            int parte = (int) Math.ceil(pendientes.size() * propio / suma);
+            return Math.max(1, Math.min(Math.min(porRitmo, parte), Math.min(LOTE_MAXIMO, pendientes.size())));
+        }
+
+        /** Ritmo medido, o la media de las demás impresoras activas si aún no lo hay. */
+        private double ritmo(String impresora) {
+            Double medido = RITMOS.get(impresora);
+            if (medido != null) return medido;
+            return activas.stream().map(RITMOS::get).filter(r -> r != null)
+                    .mapToDouble(Double::doubleValue).average().orElse(1.0);
+        }
+    }
+
+    // ──────────────────────────── páginas ────────────────────────────
+
+    /** Cuenta las páginas que el {@code PrinterJob} ha empezado a recibir. */
+    private static final class ContadorPaginas implements Pageable {
+
+        private final Pageable base;
+        private volatile int empezadas;
+
+        ContadorPaginas(Pageable base) {
+            this.base = base;
+        }
+
+        int getPaginasEmpezadas() {
+            return empezadas;
+        }
+
+        @Override
+        public int getNumberOfPages() {
+            return base.getNumberOfPages();
+        }
+
+        @Override
+        public PageFormat getPageFormat(int indice) {
+            return base.getPageFormat(indice);
+        }
+
+        @Override
+        public Printable getPrintable(int indice) {
+            Printable printable = base.getPrintable(indice);
+            return (g, pf, i) -> {
+                int resultado = printable.print(g, pf, i);
+                if (resultado == Printable.PAGE_EXISTS) empezadas = Math.max(empezadas, i + 1);
+                return resultado;
+            };
+        }
+    }
+
+    /** Páginas de unos registros de un PDF ya generado, con su propia copia del documento. */
+    private static final class TramoPdf implements Pageable, AutoCloseable {
+
+        private final PDDocument documento;
+        private final PDFPageable pdf;
+        private final int[] paginas;
+
+        TramoPdf(File archivo, List<Integer> registros, int paginasPorRegistro) throws IOException {
+            this.documento = PDDocument.load(archivo, MemoryUsageSetting.setupTempFileOnly());
+            this.pdf = new PDFPageable(documento);
+            this.paginas = registros.stream()
+                    .flatMapToInt(r -> IntStream.range(r * paginasPorRegistro, (r + 1) * paginasPorRegistro))
+                    .toArray();
+        }
+
+        @Override
+        public int getNumberOfPages() {
+            return paginas.length;
+        }
+
+        @Override
+        public PageFormat getPageFormat(int indice) {
+            return pdf.getPageFormat(paginas[indice]);
+        }
+
+        @Override
+        public Printable getPrintable(int indice) {
+            return (g, pf, i) -> i < paginas.length
+                    ? pdf.getPrintable(paginas[i]).print(g, pf, paginas[i])
+                    : Printable.NO_SUCH_PAGE;
+        }
+
+        @Override
+        public void close() throws IOException {
+            documento.close();
+        }
+    }
+
+    // ──────────────────────────── auditoría ────────────────────────────
+
+    /** CSV de auditoría de un trabajo: una línea por registro y cambio de estado. */
+    private static final class Auditoria implements AutoCloseable {
+
+        private static final DateTimeFormatter NOMBRE = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+        private final Path archivo;
+        private final PrintWriter out;
+
+        Auditoria(Path carpeta, String nombreTrabajo) throws IOException {
+            Files.createDirectories(carpeta);
+            String base = LocalDateTime.now().format(NOMBRE) + "_"
+                    + nombreTrabajo.replaceAll("[^a-zA-Z0-9._-]", "_");
+            Path candidato = carpeta.resolve(base + ".csv");
+            for (int i = 2; Files.exists(candidato); i++) {
+                candidato = carpeta.resolve(base + "_" + i + ".csv");
+            }
+            this.archivo = candidato;
+            this.out = new PrintWriter(Files.newBufferedWriter(archivo, StandardCharsets.UTF_8));
+            out.println("fecha;registro;impresora;lote;estado");
+            out.flush();
+        }
+
+        /** Los registros se escriben 1-based, como los muestra la interfaz. */
+        synchronized void registrar(List<Integer> registros, String impresora, int lote, String estado) {
+            String fecha = LocalDateTime.now().toString();
+            String campoImpresora = "\"" + impresora.replace("\"", "\"\"") + "\"";
+            for (int registro : registros) {
+                out.println(fecha + ";" + (registro + 1) + ";" + campoImpresora + ";" + lote + ";" + estado);
+            }
+            // Cada cambio queda en disco: la auditoría sobrevive a un cierre inesperado
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() {
+            out.close();
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.tpsstudio.service;
 
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.printing.PDFPageable;
 
 import javax.print.PrintService;
+import java.awt.print.PrinterAbortException;
+import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
 import java.io.File;
+import java.util.concurrent.CancellationException;
 
 /**
  * Estrategia de impresión que envía el documento directamente a una impresora física.
@@ -13,6 +17,10 @@ import java.io.File;
  * <p>Utiliza Java Print Service (JPS) y Apache PDFBox para mandar el documento PDF
  * directamente al spooler de la impresora seleccionada, sin intervención de visores
  * externos (ideal para colas de producción en impresoras Evolis, Matica, etc.).</p>
+ *
+ * <p>{@link ImpresionService} no usa el PDF con esta salida: le pasa las páginas con
+ * {@link #enviar(PaginasImpresion, String)} y la impresora recibe cada tarjeta en
+ * cuanto se renderiza. {@link #enviar(File)} queda para PDFs ya generados.</p>
  */
 public class SalidaImpresoraDirecta implements SalidaImpresion {
 
@@ -27,35 +35,66 @@ public class SalidaImpresoraDirecta implements SalidaImpresion {
 
     @Override
     public void enviar(File archivoPdf) throws Exception {
-        PrintService targetService = null;
-        
-        // Buscar el PrintService que coincida con el nombre
-        PrintService[] services = PrinterJob.lookupPrintServices();
-        for (PrintService service : services) {
-            if (service.getName().equalsIgnoreCase(nombreImpresora)) {
-                targetService = service;
-                break;
-            }
-        }
+        PrintService targetService = buscarImpresora();
 
-        if (targetService == null) {
-            throw new Exception("La impresora '" + nombreImpresora + "' ya no está disponible o no se encuentra instalada.");
-        }
-
-        // Enviar trabajo sincrónicamente usando PDFBox
-        try (PDDocument documento = PDDocument.load(archivoPdf)) {
+        // Enviar trabajo sincrónicamente usando PDFBox.
+        // Los flujos se leen a un archivo temporal: un lote grande no se carga entero en RAM
+        try (PDDocument documento = PDDocument.load(archivoPdf, MemoryUsageSetting.setupTempFileOnly())) {
             PrinterJob job = PrinterJob.getPrinterJob();
             job.setPrintService(targetService);
             job.setPageable(new PDFPageable(documento));
             
             // Enviamos a la cola de Windows sin mostrar diálogo (impresión silenciosa)
             job.print();
-        } finally {
-            // Como el trabajo ya se ha enviado sincrónicamente a la cola (spooler),
-            // el PDF temporal ya no es necesario y se puede borrar inmediatamente.
-            if (archivoPdf.exists()) {
-                archivoPdf.delete();
+        } catch (PrinterException e) {
+            // Spooler caído o impresora desconectada: el PDF se conserva para reintentar
+            throw new ImpresoraNoDisponibleException("No se pudo enviar a '" + nombreImpresora + "': "
+                    + e.getMessage(), e);
+        }
+        // Como el trabajo ya se ha enviado sincrónicamente a la cola (spooler),
+        // el PDF temporal ya no es necesario y se puede borrar inmediatamente.
+        archivoPdf.delete();
+    }
+
+    /**
+     * Envía las páginas a la impresora a medida que se renderizan, sin PDF temporal
+     * (ver {@link PaginasImpresion}). Bloquea hasta que el spooler ha recibido la última.
+     *
+     * @throws ImpresoraNoDisponibleException si la impresora no está o falla antes de
+     *         recibir ninguna página (se puede reintentar el trabajo completo).
+     */
+    void enviar(PaginasImpresion paginas, String nombreTrabajo) throws Exception {
+        try (paginas) {
+            PrintService targetService = buscarImpresora();
+            PrinterJob job = PrinterJob.getPrinterJob();
+            job.setPrintService(targetService);
+            job.setJobName(nombreTrabajo);
+            job.setPageable(paginas);
+            job.print();
+        } catch (PrinterException e) {
+            if (paginas.getErrorRender() != null) {
+                throw new Exception("No se pudo renderizar el trabajo: " + paginas.getErrorRender().getMessage(),
+                        paginas.getErrorRender());
+            }
+            if (e instanceof PrinterAbortException) throw new CancellationException(e.getMessage());
+            if (paginas.getPaginasEnviadas() == 0) {
+                throw new ImpresoraNoDisponibleException("No se pudo enviar a '" + nombreImpresora + "': "
+                        + e.getMessage(), e);
+            }
+            // Parte del trabajo ya está en la impresora: reenviarlo entero duplicaría tarjetas
+            throw new Exception("Impresión interrumpida tras " + paginas.getPaginasEnviadas() + " de "
+                    + paginas.getNumberOfPages() + " páginas: " + e.getMessage(), e);
+        }
+    }
+
+    /** Busca el PrintService que coincida con el nombre de la impresora. */
+    private PrintService buscarImpresora() throws ImpresoraNoDisponibleException {
+        for (PrintService service : PrinterJob.lookupPrintServices()) {
+            if (service.getName().equalsIgnoreCase(nombreImpresora)) {
+                return service;
             }
         }
+        throw new ImpresoraNoDisponibleException(
+                "La impresora '" + nombreImpresora + "' ya no está disponible o no se encuentra instalada.");
     }
 }
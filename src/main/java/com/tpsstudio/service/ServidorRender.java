@@ -0,0 +1,596 @@
+package com.tpsstudio.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tpsstudio.model.enums.CodecImagen;
+import com.tpsstudio.model.enums.FormatoSecuencia;
+import com.tpsstudio.model.project.FuenteDatos;
+import com.tpsstudio.model.project.Proyecto;
+import com.tpsstudio.service.CodificadorPagina.PaginaCodificada;
+import com.tpsstudio.view.dialogs.ExportDialog;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Servicio HTTP local de render para kioscos y aplicaciones web.
+ *
+ * <p>Usa el servidor HTTP del JDK ({@code com.sun.net.httpserver}) y mantiene en memoria
+ * los proyectos ya cargados con su {@link RenderizadorTarjeta}: la capa estática de cada
+ * cara y el plan compilado se construyen una vez y las peticiones siguientes solo pintan
+ * los campos variables. Si el {@code .tps} cambia en disco se vuelve a cargar.</p>
+ *
+ * <p>Los proyectos se buscan en la carpeta de proyectos (hasta dos niveles, la estructura
+ * {@code TPS_<nombre>/<nombre>.tps}); su id es el nombre del {@code .tps} sin extensión.</p>
+ *
+ * <ul>
+ *   <li>{@code GET /proyectos} — ids de los proyectos disponibles.</li>
+ *   <li>{@code POST /proyectos/<id>/tarjeta?formato=png|pdf&cara=frente|dorso&dpi=&sangre=si|no}
+ *       — cuerpo: registro JSON ({@code {"NOMBRE": "Ana", ...}}). Devuelve la imagen de una
+ *       cara (PNG) o el PDF de la tarjeta (las dos caras si no se indica {@code cara}).
+ *       {@code dpi} admite solo 300, 400, 600 o 1200.</li>
+ *   <li>{@code POST /proyectos/<id>/trabajos} — lote asíncrono; cuerpo:
+ *       {@code {"registros": [...], "dorso": true, "sangre": true, "dpi": 400, "codec": "SIN_PERDIDA",
+ *       "vectorial": false, "registrosPorArchivo": 0}}. Responde 202 con el id del trabajo.</li>
+ *   <li>{@code GET /trabajos/<id>} — estado y progreso; {@code GET /trabajos/<id>/archivos/<nombre>}
+ *       descarga un archivo generado; {@code DELETE /trabajos/<id>} cancela.</li>
+ * </ul>
+ *
+ * <p>Los lotes se exportan con {@link PDFExportService#exportarSalidas} en un pool propio
+ * de {@code simultaneos} hilos; si hay más de {@code colaMaxima} esperando, se responde
+ * 503 en lugar de acumularlos. Los trabajos terminados se borran tras {@link #RETENCION_MS}.</p>
+ */
+public class ServidorRender implements AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(ServidorRender.class.getName());
+
+    // Tamaño máximo del cuerpo de una petición (un lote de decenas de miles de registros)
+    private static final int CUERPO_MAXIMO = 64 * 1024 * 1024;
+
+    // Tiempo que se conservan los resultados de un lote terminado
+    static final long RETENCION_MS = 60 * 60 * 1000L;
+
+    private static final String JSON = "application/json; charset=utf-8";
+
+    /** Estado de un lote. */
+    public enum EstadoLote { EN_COLA, EN_CURSO, TERMINADO, ERROR, CANCELADO }
+
+    /** Proyecto cargado y su renderizador con las cachés ya calientes. */
+    private record ProyectoCargado(Proyecto proyecto, RenderizadorTarjeta renderizador, long modificado) {}
+
+    /** Cuerpo de {@code POST /proyectos/<id>/trabajos}; los campos ausentes toman el valor por defecto. */
+    private record PeticionLote(List<Map<String, String>> registros, Boolean dorso, Boolean sangre, Integer dpi,
+                                String codec, Boolean vectorial, Integer registrosPorArchivo) {}
+
+    /** Lote asíncrono: su exportación y lo que ha generado. */
+    private static final class Lote {
+        final String id;
+        final String proyecto;
+        final Path carpeta;
+        final TrabajoExportacion trabajo = new TrabajoExportacion();
+        volatile EstadoLote estado = EstadoLote.EN_COLA;
+        volatile List<File> archivos = List.of();
+        volatile String error;
+        volatile long terminado;
+
+        Lote(String id, String proyecto, Path carpeta) {
+            this.id = id;
+            this.proyecto = proyecto;
+            this.carpeta = carpeta;
+        }
+    }
+
+    private final Path carpetaProyectos;
+    private final Path carpetaLotes;
+    private final HttpServer servidor;
+    private final ExecutorService peticiones;
+    private final ExecutorService exportadores;
+    private final Semaphore plazas;
+    private final Gson gson = new Gson();
+
+    private final Map<String, File> indice = new ConcurrentHashMap<>();
+    private final Map<String, ProyectoCargado> proyectos = new ConcurrentHashMap<>();
+    private final Map<String, Lote> lotes = new ConcurrentHashMap<>();
+
+    /**
+     * @param puerto           puerto local (solo escucha en localhost).
+     * @param carpetaProyectos carpeta con los proyectos {@code .tps}.
+     * @param carpetaLotes     carpeta donde se generan los resultados de los lotes.
+     * @param simultaneos      lotes exportándose a la vez.
+     * @param colaMaxima       lotes que pueden esperar turno además de los que se exportan.
+     */
+    public ServidorRender(int puerto, Path carpetaProyectos, Path carpetaLotes, int simultaneos, int colaMaxima)
+            throws IOException {
+        this.carpetaProyectos = carpetaProyectos;
+        this.carpetaLotes = Files.createDirectories(carpetaLotes);
+        int hilosLotes = Math.max(1, simultaneos);
+        this.exportadores = Executors.newFixedThreadPool(hilosLotes, hilos("tps-lote-"));
+        this.plazas = new Semaphore(hilosLotes + Math.max(0, colaMaxima));
+        // Las tarjetas sueltas se renderizan en el hilo de la petición: uno por núcleo
+        this.peticiones = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                hilos("tps-http-"));
+
+        this.servidor = HttpServer.create(new InetSocketAddress("127.0.0.1", puerto), 0);
+        servidor.createContext("/proyectos", this::atenderProyectos);
+        servidor.createContext("/trabajos", this::atenderTrabajos);
+        servidor.setExecutor(peticiones);
+    }
+
+    /** Carga los proyectos y construye sus capas estáticas a los DPI por defecto, y empieza a escuchar. */
+    public void iniciar() {
+        indexar();
+        for (String id : indice.keySet()) {
+            try {
+                ProyectoCargado cargado = proyecto(id);
+                double escala = PDFExportService.escala(ExportDialog.ExportConfig.DPI_DEFECTO);
+                cargado.renderizador().capaEstatica(true, false, escala);
+                if (tieneDorso(cargado.proyecto())) cargado.renderizador().capaEstatica(false, false, escala);
+            } catch (Exception e) {
+                log.warning("No se pudo precargar el proyecto " + id + ": " + e.getMessage());
+            }
+        }
+        servidor.start();
+        log.info("Servidor de render en http://127.0.0.1:" + getPuerto() + " (" + indice.size() + " proyectos)");
+    }
+
+    public int getPuerto() {
+        return servidor.getAddress().getPort();
+    }
+
+    /** Deja de escuchar y cancela los lotes en curso. */
+    @Override
+    public void close() {
+        servidor.stop(0);
+        for (Lote lote : lotes.values()) lote.trabajo.cancelar();
+        exportadores.shutdownNow();
+        peticiones.shutdown();
+    }
+
+    // ──────────────────────────── /proyectos ────────────────────────────
+
+    private void atenderProyectos(HttpExchange ex) throws IOException {
+        try (ex) {
+            String[] partes = partes(ex, "/proyectos");
+            if (partes.length == 0 && "GET".equals(ex.getRequestMethod())) {
+                indexar();
+                responderJson(ex, 200, indice.keySet().stream().sorted().toList());
+            } else if (partes.length == 2 && "tarjeta".equals(partes[1])) {
+                if (!soloMetodo(ex, "POST")) return;
+                renderizarTarjeta(ex, partes[0]);
+            } else if (partes.length == 2 && "trabajos".equals(partes[1])) {
+                if (!soloMetodo(ex, "POST")) return;
+                crearLote(ex, partes[0]);
+            } else {
+                responderError(ex, 404, "Ruta desconocida");
+            }
+        } catch (PeticionIncorrecta e) {
+            responderError(ex, e.codigo, e.getMessage());
+        } catch (Exception e) {
+            log.warning("Error en " + ex.getRequestURI() + ": " + e);
+            responderError(ex, 500, e.getMessage());
+        }
+    }
+
+    /** Renderiza una tarjeta con el registro del cuerpo y la devuelve como PNG o PDF. */
+    private void renderizarTarjeta(HttpExchange ex, String id) throws Exception {
+        ProyectoCargado cargado = proyecto(id);
+        Map<String, String> consulta = consulta(ex);
+        Map<String, String> registro = registro(leerCuerpo(ex));
+
+        String formato = consulta.getOrDefault("formato", "png");
+        String cara = consulta.get("cara");
+        boolean recortar = "no".equals(consulta.get("sangre"));
+        int dpi = entero(consulta, "dpi", ExportDialog.ExportConfig.DPI_DEFECTO);
+        // Solo las resoluciones del diálogo: el renderizador del proyecto guarda una capa
+        // estática por DPI durante toda la vida del servidor (unos 45 MB a 1200 DPI)
+        if (!ExportDialog.ExportConfig.DPI_DISPONIBLES.contains(dpi)) {
+            throw new PeticionIncorrecta(400, "dpi debe ser uno de " + ExportDialog.ExportConfig.DPI_DISPONIBLES);
+        }
+        double escala = PDFExportService.escala(dpi);
+
+        List<Boolean> caras = new ArrayList<>();
+        if (cara == null) {
+            caras.add(true);
+            if ("pdf".equals(formato) && tieneDorso(cargado.proyecto())) caras.add(false);
+        } else if ("frente".equals(cara) || "dorso".equals(cara)) {
+            caras.add("frente".equals(cara));
+        } else {
+            throw new PeticionIncorrecta(400, "cara debe ser frente o dorso");
+        }
+
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(256 * 1024);
+        switch (formato) {
+            case "png" -> {
+                BufferedImage imagen = cargado.renderizador().renderizar(caras.get(0), recortar, registro, escala);
+                CodificadorSecuencia.escribir(imagen, FormatoSecuencia.PNG, dpi, salida);
+                responder(ex, 200, "image/png", salida.toByteArray());
+            }
+            case "pdf" -> {
+                try (PDDocument pdf = new PDDocument()) {
+                    for (boolean esFrente : caras) {
+                        BufferedImage imagen = cargado.renderizador().renderizar(esFrente, recortar, registro, escala);
+                        PaginaCodificada codificada = CodificadorPagina.codificar(imagen, CodecImagen.FLATE, 1f);
+                        float anchoPoints = (float) codificada.ancho() * 72f / dpi;
+                        float altoPoints = (float) codificada.alto() * 72f / dpi;
+                        PDPage page = new PDPage(new PDRectangle(anchoPoints, altoPoints));
+                        pdf.addPage(page);
+                        try (PDPageContentStream cs = new PDPageContentStream(pdf, page)) {
+                            cs.drawImage(CodificadorPagina.aXObject(pdf, codificada), 0, 0, anchoPoints, altoPoints);
+                        }
+                    }
+                    pdf.save(salida);
+                }
+                responder(ex, 200, "application/pdf", salida.toByteArray());
+            }
+            default -> throw new PeticionIncorrecta(400, "formato debe ser png o pdf");
+        }
+    }
+
+    /** Crea un lote asíncrono con los registros del cuerpo y lo encola. */
+    private void crearLote(HttpExchange ex, String idProyecto) throws Exception {
+        ProyectoCargado cargado = proyecto(idProyecto);
+        PeticionLote peticion;
+        try {
+            peticion = gson.fromJson(new String(leerCuerpo(ex), StandardCharsets.UTF_8), PeticionLote.class);
+        } catch (JsonParseException e) {
+            throw new PeticionIncorrecta(400, "JSON no válido: " + e.getMessage());
+        }
+        if (peticion == null || peticion.registros() == null || peticion.registros().isEmpty()) {
+            throw new PeticionIncorrecta(400, "El lote no tiene registros");
+        }
+        ExportDialog.ExportConfig config = configuracion(peticion);
+        FuenteDatos datos = fuente(peticion.registros());
+
+        purgarLotes();
+        // Sin plaza: el cliente reintenta más tarde en lugar de acumular lotes en memoria
+        if (!plazas.tryAcquire()) throw new PeticionIncorrecta(503, "Cola de trabajos llena");
+
+        String id = UUID.randomUUID().toString();
+        Lote lote = new Lote(id, idProyecto, carpetaLotes.resolve(id));
+        lotes.put(id, lote);
+        try {
+            exportadores.execute(() -> exportarLote(lote, cargado.proyecto(), datos, config));
+        } catch (RuntimeException e) {
+            lotes.remove(id);
+            plazas.release();
+            throw new PeticionIncorrecta(503, "Servidor detenido");
+        }
+        ex.getResponseHeaders().set("Location", "/trabajos/" + id);
+        responderJson(ex, 202, estado(lote));
+    }
+
+    private void exportarLote(Lote lote, Proyecto proyecto, FuenteDatos datos, ExportDialog.ExportConfig config) {
+        try {
+            lote.trabajo.comprobarCancelado();
+            lote.estado = EstadoLote.EN_CURSO;
+            Files.createDirectories(lote.carpeta);
+            List<Integer> filas = new ArrayList<>();
+            for (int i = 0; i < datos.getTotalRegistros(); i++) filas.add(i);
+
+            // Exportación propia: no invalida las capas que usan las tarjetas sueltas
+            lote.archivos = new PDFExportService(proyecto, datos)
+                    .exportarSalidas(config, filas, lote.carpeta.resolve(lote.proyecto + ".pdf").toFile(), lote.trabajo);
+            lote.estado = EstadoLote.TERMINADO;
+            log.info("Lote " + lote.id + ": " + lote.trabajo.getResumen());
+        } catch (CancellationException e) {
+            lote.estado = EstadoLote.CANCELADO;
+        } catch (Exception e) {
+            lote.error = e.getMessage();
+            lote.estado = EstadoLote.ERROR;
+            log.warning("Error en el lote " + lote.id + ": " + e);
+        } finally {
+            lote.terminado = System.currentTimeMillis();
+            plazas.release();
+        }
+    }
+
+    // ──────────────────────────── /trabajos ────────────────────────────
+
+    private void atenderTrabajos(HttpExchange ex) throws IOException {
+        try (ex) {
+            String[] partes = partes(ex, "/trabajos");
+            Lote lote = partes.length > 0 ? lotes.get(partes[0]) : null;
+            if (lote == null) {
+                responderError(ex, 404, "Trabajo desconocido");
+            } else if (partes.length == 1 && "GET".equals(ex.getRequestMethod())) {
+                responderJson(ex, 200, estado(lote));
+            } else if (partes.length == 1 && "DELETE".equals(ex.getRequestMethod())) {
+                lote.trabajo.cancelar();
+                if (lote.estado == EstadoLote.EN_COLA) lote.estado = EstadoLote.CANCELADO;
+                responderJson(ex, 200, estado(lote));
+            } else if (partes.length == 3 && "archivos".equals(partes[1])) {
+                if (!soloMetodo(ex, "GET")) return;
+                descargar(ex, lote, partes[2]);
+            } else {
+                responderError(ex, 404, "Ruta desconocida");
+            }
+        } catch (Exception e) {
+            log.warning("Error en " + ex.getRequestURI() + ": " + e);
+            responderError(ex, 500, e.getMessage());
+        }
+    }
+
+    private void descargar(HttpExchange ex, Lote lote, String nombre) throws IOException {
+        // Solo archivos de la lista del lote: el nombre no puede salir de su carpeta
+        File archivo = lote.archivos.stream()
+                .filter(f -> f.isFile() && f.getName().equals(nombre))
+                .findFirst().orElse(null);
+        if (archivo == null) {
+            responderError(ex, 404, "Archivo desconocido");
+            return;
+        }
+        String tipo = nombre.endsWith(".pdf") ? "application/pdf" : "application/octet-stream";
+        ex.getResponseHeaders().set("Content-Type", tipo);
+        ex.sendResponseHeaders(200, archivo.length());
+        try (OutputStream out = ex.getResponseBody()) {
+            Files.copy(archivo.toPath(), out);
+        }
+    }
+
+    private Map<String, Object> estado(Lote lote) {
+        TrabajoExportacion.Progreso p = lote.trabajo.getProgreso();
+        Map<String, Object> estado = new LinkedHashMap<>();
+        estado.put("id", lote.id);
+        estado.put("proyecto", lote.proyecto);
+        estado.put("estado", lote.estado);
+        estado.put("paginasHechas", p.paginasHechas());
+        estado.put("paginasTotales", p.paginasTotales());
+        if (lote.estado == EstadoLote.EN_CURSO) {
+            estado.put("paginasPorSegundo", Math.round(p.paginasPorSegundo() * 10) / 10.0);
+            estado.put("segundosRestantes", p.segundosRestantes());
+        }
+        estado.put("archivos", lote.archivos.stream()
+                .filter(File::isFile)
+                .map(f -> "/trabajos/" + lote.id + "/archivos/" + f.getName())
+                .toList());
+        if (lote.error != null) estado.put("error", lote.error);
+        return estado;
+    }
+
+    /** Borra los lotes terminados hace más de {@link #RETENCION_MS} y sus archivos. */
+    private void purgarLotes() {
+        long limite = System.currentTimeMillis() - RETENCION_MS;
+        lotes.values().removeIf(lote -> {
+            if (lote.terminado == 0 || lote.terminado > limite) return false;
+            borrar(lote.carpeta);
+            return true;
+        });
+    }
+
+    // ──────────────────────────── proyectos ────────────────────────────
+
+    /** Busca los .tps de la carpeta de proyectos (hasta dos niveles). */
+    private void indexar() {
+        try (Stream<Path> rutas = Files.walk(carpetaProyectos, 2)) {
+            rutas.filter(p -> p.getFileName().toString().endsWith(".tps") && Files.isRegularFile(p))
+                    .forEach(p -> {
+                        String nombre = p.getFileName().toString();
+                        indice.putIfAbsent(nombre.substring(0, nombre.length() - 4), p.toFile());
+                    });
+        } catch (IOException e) {
+            log.warning("No se pudo leer la carpeta de proyectos " + carpetaProyectos + ": " + e.getMessage());
+        }
+    }
+
+    /** Proyecto cargado; se vuelve a leer si el .tps ha cambiado desde la última carga. */
+    private ProyectoCargado proyecto(String id) throws PeticionIncorrecta {
+        File tps = indice.get(id);
+        if (tps == null) {
+            indexar();
+            tps = indice.get(id);
+        }
+        if (tps == null || !tps.isFile()) throw new PeticionIncorrecta(404, "Proyecto desconocido: " + id);
+
+        long modificado = tps.lastModified();
+        File archivo = tps;
+        ProyectoCargado cargado = proyectos.compute(id, (k, actual) -> {
+            if (actual != null && actual.modificado() == modificado) return actual;
+            Proyecto proyecto = new ProyectoFileManager(false).cargarProyecto(archivo);
+            if (proyecto == null) return null;
+            log.info("Proyecto cargado: " + id);
+            return new ProyectoCargado(proyecto, new RenderizadorTarjeta(proyecto), modificado);
+        });
+        if (cargado == null) throw new PeticionIncorrecta(500, "No se pudo leer el proyecto: " + id);
+        return cargado;
+    }
+
+    private static boolean tieneDorso(Proyecto proyecto) {
+        return !proyecto.getElementosDorso().isEmpty() || proyecto.getFondoDorso() != null;
+    }
+
+    // ──────────────────────────── peticiones ────────────────────────────
+
+    /** Error de la petición con su código HTTP. */
+    private static final class PeticionIncorrecta extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int codigo;
+
+        PeticionIncorrecta(int codigo, String mensaje) {
+            super(mensaje);
+            this.codigo = codigo;
+        }
+    }
+
+    private static ExportDialog.ExportConfig configuracion(PeticionLote p) throws PeticionIncorrecta {
+        CodecImagen codec;
+        try {
+            codec = p.codec() != null ? CodecImagen.valueOf(p.codec()) : CodecImagen.SIN_PERDIDA;
+        } catch (IllegalArgumentException e) {
+            throw new PeticionIncorrecta(400, "Códec desconocido: " + p.codec());
+        }
+        int dpi = p.dpi() != null ? p.dpi() : ExportDialog.ExportConfig.DPI_DEFECTO;
+        if (dpi < ExportDialog.ExportConfig.DPI_MINIMO || dpi > ExportDialog.ExportConfig.DPI_MAXIMO) {
+            throw new PeticionIncorrecta(400, "dpi fuera de rango (" + ExportDialog.ExportConfig.DPI_MINIMO
+                    + " – " + ExportDialog.ExportConfig.DPI_MAXIMO + ")");
+        }
+        return new ExportDialog.ExportConfig(
+                true, "", !Boolean.FALSE.equals(p.dorso()), Boolean.FALSE.equals(p.sangre()),
+                null, false, 0, Boolean.TRUE.equals(p.vectorial()),
+                ExportDialog.ExportConfig.MEMORIA_PDF_MB_DEFECTO, codec,
+                ExportDialog.ExportConfig.CALIDAD_JPEG_DEFECTO,
+                p.registrosPorArchivo() != null ? Math.max(0, p.registrosPorArchivo()) : 0,
+                false, false, null, null, dpi);
+    }
+
+    /** Fuente de datos con los registros del lote; columnas en orden de aparición. */
+    private static FuenteDatos fuente(List<Map<String, String>> registros) {
+        Set<String> columnas = new LinkedHashSet<>();
+        for (Map<String, String> r : registros) {
+            if (r != null) columnas.addAll(r.keySet());
+        }
+        List<Map<String, String>> filas = registros.stream()
+                .map(r -> r != null ? r : Map.<String, String>of())
+                .toList();
+        return new FuenteDatos("http", new ArrayList<>(columnas), filas);
+    }
+
+    /** Registro JSON plano; los valores que no son texto se convierten a su representación. */
+    private static Map<String, String> registro(byte[] cuerpo) throws PeticionIncorrecta {
+        JsonObject objeto;
+        try {
+            objeto = JsonParser.parseString(new String(cuerpo, StandardCharsets.UTF_8)).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new PeticionIncorrecta(400, "El cuerpo debe ser un objeto JSON con el registro");
+        }
+        Map<String, String> registro = new HashMap<>();
+        objeto.entrySet().forEach(e -> registro.put(e.getKey(),
+                e.getValue().isJsonPrimitive() ? e.getValue().getAsString()
+                        : e.getValue().isJsonNull() ? "" : e.getValue().toString()));
+        return registro;
+    }
+
+    private static byte[] leerCuerpo(HttpExchange ex) throws IOException, PeticionIncorrecta {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] cuerpo = in.readNBytes(CUERPO_MAXIMO + 1);
+            if (cuerpo.length > CUERPO_MAXIMO) throw new PeticionIncorrecta(413, "Petición demasiado grande");
+            return cuerpo;
+        }
+    }
+
+    /** Segmentos de la ruta tras el prefijo del contexto. */
+    private static String[] partes(HttpExchange ex, String prefijo) {
+        String resto = ex.getRequestURI().getPath().substring(prefijo.length());
+        return Stream.of(resto.split("/"))
+                .filter(s -> !s.isEmpty())
+                .map(s -> URLDecoder.decode(s, StandardCharsets.UTF_8))
+                .toArray(String[]::new);
+    }
+
+    private static Map<String, String> consulta(HttpExchange ex) {
+        Map<String, String> parametros = new HashMap<>();
+        String q = ex.getRequestURI().getRawQuery();
+        if (q == null) return parametros;
+        for (String par : q.split("&")) {
+            int igual = par.indexOf('=');
+            if (igual > 0) {
+                parametros.put(URLDecoder.decode(par.substring(0, igual), StandardCharsets.UTF_8),
+                        URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parametros;
+    }
+
+    private static int entero(Map<String, String> parametros, String clave, int porDefecto)
+            throws PeticionIncorrecta {
+        String valor = parametros.get(clave);
+        if (valor == null) return porDefecto;
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            throw new PeticionIncorrecta(400, clave + " debe ser un número: " + valor);
+        }
+    }
+
+    private static boolean soloMetodo(HttpExchange ex, String metodo) throws IOException {
+        if (metodo.equals(ex.getRequestMethod())) return true;
+        ex.getResponseHeaders().set("Allow", metodo);
+        responderError(ex, 405, "Método no permitido");
+        return false;
+    }
+
+    // ──────────────────────────── respuestas ────────────────────────────
+
+    private static void responder(HttpExchange ex, int codigo, String tipo, byte[] cuerpo) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", tipo);
+        ex.sendResponseHeaders(codigo, cuerpo.length == 0 ? -1 : cuerpo.length);
+        if (cuerpo.length > 0) {
+            try (OutputStream out = ex.getResponseBody()) {
+                out.write(cuerpo);
+            }
+        }
+    }
+
+    private void responderJson(HttpExchange ex, int codigo, Object cuerpo) throws IOException {
+        responder(ex, codigo, JSON, gson.toJson(cuerpo).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Responde con un error JSON. Si las cabeceras ya se enviaron (falló a mitad de una
+     * descarga), no se puede cambiar la respuesta: solo se cierra el intercambio y el
+     * cliente ve la conexión cortada.
+     */
+    private static void responderError(HttpExchange ex, int codigo, String mensaje) throws IOException {
+        // getResponseCode() es -1 mientras no se hayan enviado las cabeceras
+        if (ex.getResponseCode() != -1) {
+            ex.close();
+            return;
+        }
+        Map<String, String> error = Map.of("error", mensaje != null ? mensaje : "Error interno");
+        responder(ex, codigo, JSON, new Gson().toJson(error).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    private static ThreadFactory hilos(String prefijo) {
+        AtomicInteger contador = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefijo + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static void borrar(Path carpeta) {
+        try (Stream<Path> rutas = Files.walk(carpeta)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            log.warning("No se pudo borrar " + carpeta + ": " + e.getMessage());
+        }
+    }
+}
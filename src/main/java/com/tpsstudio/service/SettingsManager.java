@@ -14,6 +14,7 @@ import java.util.prefs.Preferences;
  * <p><b>Preferencias gestionadas:</b></p>
  * <ul>
  *   <li>Ruta al editor externo de imágenes (Photoshop, GIMP, etc.).</li>
+ *   <li>Trabajadores de la cola de impresión.</li>
  * </ul>
  *
  * @see SettingsDAO
@@ -21,6 +22,10 @@ import java.util.prefs.Preferences;
 public class SettingsManager implements SettingsDAO {
 
     private static final String PREF_EDITOR_PATH = "external_editor_path";
+    private static final String PREF_TRABAJADORES_IMPRESION = "print_queue_workers";
+
+    // Por defecto: un trabajo renderizando mientras otro se envía a la impresora
+    private static final int TRABAJADORES_IMPRESION_DEFECTO = 2;
 
     // Instancia única (Singleton simplificado) o gestionada por el controller
     // Por simplicidad usaremos métodos estáticos o una instancia nueva ya que
@@ -82,4 +87,18 @@ public class SettingsManager implements SettingsDAO {
     public void clearExternalEditor() {
         prefs.remove(PREF_EDITOR_PATH);
     }
+
+    /**
+     * Trabajos de la cola de impresión que se renderizan a la vez
+     */
+    public int getTrabajadoresImpresion() {
+        return Math.max(1, prefs.getInt(PREF_TRABAJADORES_IMPRESION, TRABAJADORES_IMPRESION_DEFECTO));
+    }
+
+    /**
+     * Establece los trabajadores de la cola de impresión (se aplica al reiniciar)
+     */
+    public void setTrabajadoresImpresion(int trabajadores) {
+        prefs.putInt(PREF_TRABAJADORES_IMPRESION, Math.max(1, trabajadores));
+    }
 }
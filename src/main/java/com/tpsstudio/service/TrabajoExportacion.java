@@ -0,0 +1,190 @@
+package com.tpsstudio.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Control de un trabajo de exportación en curso (PDF o impresión).
+ *
+ * <p>La interfaz crea una instancia, se suscribe al progreso y la pasa a
+ * {@link PDFExportService} o {@link ImpresionService}. El servicio informa de cada
+ * página escrita, comprueba la cancelación entre páginas y acumula los tiempos de
+ * cada etapa del pipeline.</p>
+ *
+ * <p>La cancelación es cooperativa: {@link #cancelar()} solo marca el trabajo; el
+ * servicio lo detecta en la siguiente página, lanza {@link CancellationException}
+ * y borra la salida parcial.</p>
+ */
+public class TrabajoExportacion {
+
+    /**
+     * Instantánea del progreso.
+     *
+     * @param paginasHechas     páginas ya escritas en el documento.
+     * @param paginasTotales    páginas previstas en todo el trabajo.
+     * @param paginasPorSegundo ritmo medio desde el inicio.
+     * @param segundosRestantes estimación del tiempo restante; -1 si aún no se puede estimar.
+     */
+    public record Progreso(int paginasHechas, int paginasTotales, double paginasPorSegundo,
+                           long segundosRestantes) {
+
+        public double fraccion() {
+            return paginasTotales == 0 ? 0 : (double) paginasHechas / paginasTotales;
+        }
+    }
+
+    // Intervalo mínimo entre notificaciones: no saturar el hilo de la interfaz
+    private static final long NANOS_ENTRE_AVISOS = 100_000_000L;
+
+    private volatile boolean cancelado;
+    private volatile Consumer<Progreso> alProgresar;
+
+    private final AtomicInteger paginasTotales = new AtomicInteger();
+    private final AtomicInteger paginasHechas = new AtomicInteger();
+    private final AtomicLong ultimoAviso = new AtomicLong();
+    private volatile long inicio;
+
+    // Tiempos acumulados por etapa (suma entre todos los hilos de la etapa)
+    private final LongAdder nanosRender = new LongAdder();
+    private final LongAdder nanosCodificacion = new LongAdder();
+    private final LongAdder nanosEscritura = new LongAdder();
+    private volatile long nanosTotales;
+
+    // Precarga de fotos variables: listas al pedirlas, a medio decodificar o sin precargar
+    private final LongAdder fotosAciertos = new LongAdder();
+    private final LongAdder fotosEsperas = new LongAdder();
+    private final LongAdder fotosFallos = new LongAdder();
+    private final LongAdder nanosEsperaFotos = new LongAdder();
+
+    /** Registra el callback de progreso. Se invoca desde el hilo de exportación. */
+    public void setAlProgresar(Consumer<Progreso> alProgresar) {
+        this.alProgresar = alProgresar;
+    }
+
+    /** Solicita la cancelación del trabajo. Puede llamarse desde cualquier hilo. */
+    public void cancelar() {
+        cancelado = true;
+    }
+
+    public boolean isCancelado() {
+        return cancelado;
+    }
+
+    /** Lanza {@link CancellationException} si se ha solicitado la cancelación. */
+    public void comprobarCancelado() {
+        if (cancelado) throw new CancellationException("Exportación cancelada por el usuario");
+    }
+
+    // ──────────────────────────── uso desde los servicios ────────────────────────────
+
+    /** Marca el inicio del trabajo con el número total de páginas previsto. */
+    void iniciar(int totalPaginas) {
+        paginasTotales.set(totalPaginas);
+        paginasHechas.set(0);
+        inicio = System.nanoTime();
+        notificar(true);
+    }
+
+    /** Añade páginas al total previsto (p. ej. al encadenar varios documentos). */
+    void sumarPaginasTotales(int paginas) {
+        paginasTotales.addAndGet(paginas);
+    }
+
+    /** Una página más escrita. Seguro desde varios hilos de ensamblado a la vez. */
+    void paginaCompletada() {
+        int hechas = paginasHechas.incrementAndGet();
+        notificar(hechas >= paginasTotales.get());
+    }
+
+    /**
+     * Resta páginas ya contadas como hechas que se van a repetir (p. ej. un lote que
+     * pasa a otra impresora): el progreso no supera nunca el total.
+     */
+    void descontarPaginas(int paginas) {
+        if (paginas <= 0) return;
+        paginasHechas.updateAndGet(hechas -> Math.max(0, hechas - paginas));
+        notificar(false);
+    }
+
+    void registrarRender(long nanos) {
+        nanosRender.add(nanos);
+    }
+
+    void registrarCodificacion(long nanos) {
+        nanosCodificacion.add(nanos);
+    }
+
+    void registrarEscritura(long nanos) {
+        nanosEscritura.add(nanos);
+    }
+
+    void registrarFotoAcierto() {
+        fotosAciertos.increment();
+    }
+
+    /** El render tuvo que esperar a que terminara la decodificación ya lanzada. */
+    void registrarFotoEspera(long nanos) {
+        fotosEsperas.increment();
+        nanosEsperaFotos.add(nanos);
+    }
+
+    /** La fila no estaba precargada: el render la leyó y decodificó él mismo. */
+    void registrarFotoFallo(long nanos) {
+        fotosFallos.increment();
+        nanosEsperaFotos.add(nanos);
+    }
+
+    /** Marca el fin del trabajo (para el resumen de tiempos). */
+    void finalizar() {
+        nanosTotales = System.nanoTime() - inicio;
+        notificar(true);
+    }
+
+    // ──────────────────────────── consulta ────────────────────────────
+
+    public Progreso getProgreso() {
+        int hechas = paginasHechas.get();
+        int total = paginasTotales.get();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        double ritmo = segundos > 0 ? hechas / segundos : 0;
+        long restantes = (ritmo > 0) ? Math.round((total - hechas) / ritmo) : -1;
+        return new Progreso(hechas, total, ritmo, restantes);
+    }
+
+    /**
+     * Resumen de tiempos por etapa. Render y codificación suman el tiempo de todos
+     * sus hilos, por lo que pueden superar el tiempo total transcurrido. Si hubo
+     * precarga de fotos se añade su tasa de acierto y el tiempo que el render esperó.
+     */
+    public String getResumen() {
+        double total = nanosTotales / 1e9;
+        int hechas = paginasHechas.get();
+        String resumen = String.format(
+                "%d páginas en %.1f s (%.1f pág/s) · render %.1f s · codificación %.1f s · escritura %.1f s",
+                hechas, total, total > 0 ? hechas / total : 0,
+                nanosRender.sum() / 1e9, nanosCodificacion.sum() / 1e9, nanosEscritura.sum() / 1e9);
+
+        long peticiones = fotosAciertos.sum() + fotosEsperas.sum() + fotosFallos.sum();
+        if (peticiones > 0) {
+            resumen += String.format(" · fotos precargadas %.0f%% (%d esperas, %d fallos) · espera fotos %.1f s",
+                    100.0 * fotosAciertos.sum() / peticiones, fotosEsperas.sum(), fotosFallos.sum(),
+                    nanosEsperaFotos.sum() / 1e9);
+        }
+        return resumen;
+    }
+
+    private void notificar(boolean forzar) {
+        Consumer<Progreso> callback = alProgresar;
+        if (callback == null) return;
+
+        long ahora = System.nanoTime();
+        long anterior = ultimoAviso.get();
+        if (!forzar && ahora - anterior < NANOS_ENTRE_AVISOS) return;
+        if (!forzar && !ultimoAviso.compareAndSet(anterior, ahora)) return;
+        ultimoAviso.set(ahora);
+        callback.accept(getProgreso());
+    }
+}
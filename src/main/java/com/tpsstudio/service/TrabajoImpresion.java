@@ -1,5 +1,9 @@
 package com.tpsstudio.service;
 
+import com.tpsstudio.model.enums.PrioridadImpresion;
+
+import java.util.List;
+
 /**
  * DTO inmutable que describe un trabajo de impresión.
  *
@@ -22,6 +26,9 @@ package com.tpsstudio.service;
  * @param registroActualIdx   índice 0-based del registro activo; usado cuando
  *                            {@code soloRegistroActual} es true.
  * @param nombreImpresora     nombre de la impresora elegida, o nulo si se usa el visor de PDF por defecto.
+ * @param prioridad           prioridad en la cola de impresión ({@link ColaImpresion}).
+ * @param grupoImpresoras     impresoras entre las que se reparten los registros
+ *                            ({@link SalidaGrupoImpresoras}); vacío si se usa una sola.
  */
 public record TrabajoImpresion(
         boolean imprimirFrente,
@@ -30,5 +37,34 @@ public record TrabajoImpresion(
         String  rangoFilas,
         boolean recortarSangre,
         int     registroActualIdx,
-        String  nombreImpresora
-) {}
+        String  nombreImpresora,
+        PrioridadImpresion prioridad,
+        List<String> grupoImpresoras
+) {
+
+    public TrabajoImpresion {
+        // Trabajos guardados en la cola antes de existir los grupos llegan sin la lista
+        grupoImpresoras = grupoImpresoras == null ? List.of() : List.copyOf(grupoImpresoras);
+    }
+
+    /** Trabajo para una sola impresora (o el visor del sistema). */
+    public TrabajoImpresion(boolean imprimirFrente, boolean imprimirDorso, boolean soloRegistroActual,
+                            String rangoFilas, boolean recortarSangre, int registroActualIdx,
+                            String nombreImpresora, PrioridadImpresion prioridad) {
+        this(imprimirFrente, imprimirDorso, soloRegistroActual, rangoFilas, recortarSangre,
+                registroActualIdx, nombreImpresora, prioridad, List.of());
+    }
+
+    /** Trabajo con prioridad normal. */
+    public TrabajoImpresion(boolean imprimirFrente, boolean imprimirDorso, boolean soloRegistroActual,
+                            String rangoFilas, boolean recortarSangre, int registroActualIdx,
+                            String nombreImpresora) {
+        this(imprimirFrente, imprimirDorso, soloRegistroActual, rangoFilas, recortarSangre,
+                registroActualIdx, nombreImpresora, PrioridadImpresion.NORMAL);
+    }
+
+    /** true si los registros se reparten entre varias impresoras. */
+    public boolean esGrupo() {
+        return grupoImpresoras.size() > 1;
+    }
+}
@@ -1,8 +1,17 @@
 package com.tpsstudio.util;
 
 import javafx.scene.image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * Utilidades para manejo de imágenes
@@ -12,6 +21,9 @@ public class ImageUtils {
     private static final java.io.File CACHE_DIR = new java.io.File(System.getProperty("java.io.tmpdir"),
             "tps_studio_cache");
 
+    // Submuestreo máximo al decodificar (descarta píxeles sin filtro paso bajo)
+    private static final int SUBMUESTREO_MAXIMO = 2;
+
     static {
         // Asegurar que existe el directorio de caché
         if (!CACHE_DIR.exists()) {
@@ -82,4 +94,84 @@ public class ImageUtils {
             return null;
         }
     }
+
+    /**
+     * Lee una imagen directamente al tamaño en píxeles en que se va a dibujar.
+     *
+     * <p>Pensado para las fotos de carnet (JPEG de 12 MP colocados en un hueco de
+     * 20×25 mm): en lugar de decodificar la imagen completa y dejar que el dibujo
+     * la reduzca, el lector ya descarta píxeles al decodificar (submuestreo de como
+     * mucho 2 y sin bajar de 4× el tamaño pedido) y el resto se reduce a mitades
+     * sucesivas con interpolación bilineal, que equivale a un filtro de caja de alta
+     * calidad. El submuestreo no filtra: con pasos mayores aparecerían aliasing y
+     * moiré en texturas finas (pelo, tejidos).</p>
+     *
+     * <p>Si la imagen es más pequeña que lo pedido se devuelve a su tamaño original.
+     * La imagen se lee y el archivo se cierra dentro del método (no queda bloqueado).</p>
+     *
+     * @return la imagen ({@code TYPE_INT_RGB} o {@code TYPE_INT_ARGB} si tiene
+     *         transparencia), o null si el archivo no se puede leer.
+     */
+    public static BufferedImage leerAjustada(File archivo, int ancho, int alto) {
+        if (archivo == null || ancho <= 0 || alto <= 0) return null;
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(archivo)) {
+            if (in == null) return null;
+            Iterator<ImageReader> lectores = ImageIO.getImageReaders(in);
+            if (!lectores.hasNext()) return null;
+
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(in, true, true);
+                int anchoOrigen = lector.getWidth(0);
+                int altoOrigen = lector.getHeight(0);
+
+                // Submuestreo al decodificar: como mucho 1 de cada 2 píxeles y dejando al
+                // menos 4× de margen, para que el filtrado posterior evite el aliasing
+                int paso = Math.max(1, Math.min(SUBMUESTREO_MAXIMO,
+                        Math.min(anchoOrigen / (ancho * 4), altoOrigen / (alto * 4))));
+                ImageReadParam param = lector.getDefaultReadParam();
+                if (paso > 1) param.setSourceSubsampling(paso, paso, 0, 0);
+
+                BufferedImage leida = lector.read(0, param);
+                return reducir(leida, ancho, alto);
+            } finally {
+                lector.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /** Reduce a mitades sucesivas (bilineal) y termina con un paso bicúbico al tamaño exacto. */
+    private static BufferedImage reducir(BufferedImage img, int ancho, int alto) {
+        int tipo = img.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        if (img.getWidth() <= ancho || img.getHeight() <= alto) {
+            return img.getType() == tipo ? img : redimensionar(img, img.getWidth(), img.getHeight(), tipo,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+
+        BufferedImage actual = img;
+        int w = img.getWidth();
+        int h = img.getHeight();
+        while (w / 2 >= ancho && h / 2 >= alto) {
+            w /= 2;
+            h /= 2;
+            actual = redimensionar(actual, w, h, tipo, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+        return redimensionar(actual, ancho, alto, tipo, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+    }
+
+    private static BufferedImage redimensionar(BufferedImage img, int ancho, int alto, int tipo, Object interpolacion) {
+        BufferedImage destino = new BufferedImage(ancho, alto, tipo);
+        Graphics2D g = destino.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolacion);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(img, 0, 0, ancho, alto, null);
+        } finally {
+            g.dispose();
+        }
+        return destino;
+    }
 }
@@ -0,0 +1,217 @@
+package com.tpsstudio.util;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Motor de medida y word-wrap de texto compartido por el editor y la exportación.
+ *
+ * <p>Sustituye la medición con un nodo {@code Text} por cada prefijo candidato
+ * (cuadrática en palabras largas y repetida en cada redibujado/registro) por:</p>
+ * <ul>
+ *   <li><b>Tablas de avance por fuente</b>: el ancho de cada carácter se mide una
+ *       sola vez a un tamaño de referencia; el ancho de una cadena es la suma de sus
+ *       avances escalada al tamaño pedido.</li>
+ *   <li><b>Caché LRU de líneas</b>: el resultado del wrap se guarda por contenido,
+ *       fuente, tamaño y ancho disponible.</li>
+ * </ul>
+ *
+ * <p>Todas las medidas están en unidades de diseño (las del modelo, sin zoom ni
+ * escala de exportación). Como el resultado no depende del zoom del editor ni de
+ * los DPI de salida, el editor y todos los modos de exportación parten las líneas
+ * exactamente en los mismos puntos.</p>
+ *
+ * <p>Seguro desde varios hilos.</p>
+ */
+public final class MotorTexto {
+
+    // Tamaño al que se miden los avances; con métricas fraccionales escalan linealmente
+    private static final float TAMAÑO_REFERENCIA = 100f;
+    private static final FontRenderContext FRC = new FontRenderContext(null, true, true);
+
+    private static final int MAX_LINEAS_CACHEADAS = 4096;
+
+    private static final Map<String, TablaAvances> tablas = new ConcurrentHashMap<>();
+
+    private static final Map<ClaveLineas, List<String>> cacheLineas =
+            Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ClaveLineas, List<String>> eldest) {
+                    return size() > MAX_LINEAS_CACHEADAS;
+                }
+            });
+
+    private record ClaveLineas(String contenido, String fuente, double tamaño, double anchoMax, boolean saltoLinea) {}
+
+    private MotorTexto() {}
+
+    /**
+     * Divide el contenido en líneas: respeta los saltos {@code \n} y, si
+     * {@code saltoLinea} está activo, parte por palabras (y por caracteres si una
+     * palabra sola no cabe) para no superar {@code anchoMax}.
+     *
+     * @return lista inmutable de líneas (puede estar cacheada).
+     */
+    public static List<String> lineas(String contenido, boolean saltoLinea, String familia,
+                                      boolean negrita, boolean cursiva, double tamaño, double anchoMax) {
+        String texto = contenido != null ? contenido.replace("\r", "") : "";
+        String fuente = claveFuente(familia, negrita, cursiva);
+        ClaveLineas clave = new ClaveLineas(texto, fuente, tamaño, saltoLinea ? anchoMax : 0, saltoLinea);
+
+        List<String> cacheadas = cacheLineas.get(clave);
+        if (cacheadas != null) return cacheadas;
+
+        List<String> resultado = List.copyOf(partir(texto, saltoLinea, tabla(fuente, familia, negrita, cursiva),
+                tamaño / TAMAÑO_REFERENCIA, anchoMax));
+        cacheLineas.put(clave, resultado);
+        return resultado;
+    }
+
+    /** Ancho de avance de una cadena, en unidades de diseño. */
+    public static double ancho(String s, String familia, boolean negrita, boolean cursiva, double tamaño) {
+        if (s == null || s.isEmpty()) return 0;
+        String fuente = claveFuente(familia, negrita, cursiva);
+        return tabla(fuente, familia, negrita, cursiva).ancho(s) * (tamaño / TAMAÑO_REFERENCIA);
+    }
+
+    /** Ancho de la línea más larga, en unidades de diseño. */
+    public static double anchoMaximo(List<String> lineas, String familia, boolean negrita, boolean cursiva,
+                                     double tamaño) {
+        double max = 0;
+        for (String l : lineas) max = Math.max(max, ancho(l, familia, negrita, cursiva, tamaño));
+        return max;
+    }
+
+    /** Vacía la caché de líneas (las tablas de avance no cambian y se conservan). */
+    public static void limpiarCache() {
+        cacheLineas.clear();
+    }
+
+    // ──────────────────────────── word-wrap ────────────────────────────
+
+    /**
+     * Mismo algoritmo que usaban el editor y la exportación, pero acumulando anchos
+     * en lugar de volver a medir cada prefijo: lineal en la longitud del texto.
+     */
+    private static List<String> partir(String contenido, boolean saltoLinea, TablaAvances tabla,
+                                       double factor, double anchoMax) {
+        String[] rawLines = contenido.split("\n", -1);
+        List<String> finalLines = new ArrayList<>();
+
+        if (!saltoLinea) {
+            Collections.addAll(finalLines, rawLines);
+            return finalLines;
+        }
+
+        double anchoEspacio = tabla.avance(' ') * factor;
+        for (String raw : rawLines) {
+            if (raw.isEmpty()) { finalLines.add(""); continue; }
+
+            StringBuilder current = new StringBuilder();
+            double anchoActual = 0;
+            for (String word : raw.split(" ", -1)) {
+                double anchoPalabra = tabla.ancho(word) * factor;
+                double anchoTest = current.length() == 0 ? anchoPalabra : anchoActual + anchoEspacio + anchoPalabra;
+
+                if (anchoTest <= anchoMax) {
+                    if (current.length() > 0) current.append(' ');
+                    current.append(word);
+                    anchoActual = anchoTest;
+                    continue;
+                }
+
+                // No cabe: cerrar la línea actual
+                if (current.length() > 0) {
+                    finalLines.add(current.toString());
+                    current.setLength(0);
+                    anchoActual = 0;
+                }
+
+                if (anchoPalabra > anchoMax) {
+                    // Palabra más larga que la caja: partirla carácter a carácter
+                    for (int i = 0; i < word.length(); i++) {
+                        char c = word.charAt(i);
+                        double a = tabla.avance(c) * factor;
+                        if (anchoActual + a > anchoMax && current.length() > 0) {
+                            finalLines.add(current.toString());
+                            current.setLength(0);
+                            anchoActual = 0;
+                        }
+                        current.append(c);
+                        anchoActual += a;
+                    }
+                } else {
+                    current.append(word);
+                    anchoActual = anchoPalabra;
+                }
+            }
+            if (current.length() > 0) finalLines.add(current.toString());
+        }
+        return finalLines;
+    }
+
+    // ──────────────────────────── tablas de avance ────────────────────────────
+
+    private static String claveFuente(String familia, boolean negrita, boolean cursiva) {
+        String fam = (familia == null || familia.isBlank()) ? Font.SANS_SERIF : familia;
+        return fam + '|' + negrita + '|' + cursiva;
+    }
+
+    private static TablaAvances tabla(String clave, String familia, boolean negrita, boolean cursiva) {
+        return tablas.computeIfAbsent(clave, k -> {
+            String fam = (familia == null || familia.isBlank()) ? Font.SANS_SERIF : familia;
+            int estilo = (negrita ? Font.BOLD : Font.PLAIN) | (cursiva ? Font.ITALIC : Font.PLAIN);
+            return new TablaAvances(new Font(fam, estilo, 1).deriveFont(TAMAÑO_REFERENCIA));
+        });
+    }
+
+    /**
+     * Avances de los caracteres de una fuente al tamaño de referencia. Se rellena
+     * por páginas de 256 caracteres a medida que aparecen.
+     */
+    private static final class TablaAvances {
+        private final Font font;
+        private final AtomicReferenceArray<float[]> paginas = new AtomicReferenceArray<>(256);
+
+        TablaAvances(Font font) {
+            this.font = font;
+        }
+
+        float avance(char c) {
+            int p = c >>> 8;
+            float[] pagina = paginas.get(p);
+            if (pagina == null) {
+                pagina = medirPagina(p);
+                // Si otro hilo la midió a la vez, cualquiera de las dos vale (son iguales)
+                paginas.compareAndSet(p, null, pagina);
+            }
+            return pagina[c & 0xFF];
+        }
+
+        double ancho(String s) {
+            double total = 0;
+            for (int i = 0; i < s.length(); i++) total += avance(s.charAt(i));
+            return total;
+        }
+
+        private float[] medirPagina(int p) {
+            float[] pagina = new float[256];
+            char[] buf = new char[1];
+            for (int i = 0; i < 256; i++) {
+                char c = (char) ((p << 8) | i);
+                // Las mitades de un par sustituto no tienen avance propio
+                if (Character.isSurrogate(c)) continue;
+                buf[0] = c;
+                pagina[i] = (float) font.getStringBounds(buf, 0, 1, FRC).getWidth();
+            }
+            return pagina;
+        }
+    }
+}
@@ -12,13 +12,12 @@ import com.tpsstudio.view.dialogs.NuevoProyectoDialog;
 import com.tpsstudio.service.SettingsManager;
 import com.tpsstudio.util.AnimationHelper;
 import com.tpsstudio.util.ImageUtils;
+import com.tpsstudio.service.ColaImpresion;
 import com.tpsstudio.service.DesignValidatorService;
-import com.tpsstudio.service.ImpresionService;
-import com.tpsstudio.service.SalidaImpresion;
-import com.tpsstudio.service.SalidaImpresoraDirecta;
 import com.tpsstudio.service.SalidaPDFSistema;
 import com.tpsstudio.service.TrabajoImpresion;
 import com.tpsstudio.util.TPSToast;
+import com.tpsstudio.view.dialogs.ColaImpresionDialog;
 import com.tpsstudio.view.dialogs.ImpresionDialog;
 import com.tpsstudio.viewmodel.MainViewModel;
 import javafx.application.Platform;
@@ -103,6 +102,10 @@ public class MainViewController {
     // ViewModel: estado observable de la aplicación
     private final MainViewModel viewModel = new MainViewModel();
 
+    // Cola de impresión de la aplicación (la misma tras cerrar y abrir sesión)
+    private ColaImpresion colaImpresion;
+    private ColaImpresionDialog colaImpresionDialog;
+
     // =====================================================
     // Inicialización
     // =====================================================
@@ -113,6 +116,11 @@ public class MainViewController {
 
         projectManager.cargarProyectosRecientes(8);
 
+        // Los trabajos pendientes de la sesión anterior continúan al arrancar
+        colaImpresion = ColaImpresion.getInstance();
+        colaImpresion.setAlCambiar(e -> Platform.runLater(() -> avisarImpresion(e)));
+        colaImpresion.iniciar();
+
         // Mostrar el usuario actual en el perfil
         lblCurrentUser.setText("Sesión: " + com.tpsstudio.service.AuthService.getInstance().getCurrentUser());
 
@@ -998,7 +1006,8 @@ public class MainViewController {
 
         // 1. Diálogo de configuración de exportación
         com.tpsstudio.view.dialogs.ExportDialog exportDialog = new com.tpsstudio.view.dialogs.ExportDialog(
-                canvas.getScene().getWindow(), totalRegistros, viewModel.getProyectoActual().getNombre());
+                canvas.getScene().getWindow(), totalRegistros, viewModel.getProyectoActual().getNombre(),
+                fd != null ? fd.getColumnas() : java.util.List.of());
         java.util.Optional<com.tpsstudio.view.dialogs.ExportDialog.ExportConfig> cfg = exportDialog.showAndWait();
         if (cfg.isEmpty() || cfg.get() == null)
             return;
@@ -1040,47 +1049,46 @@ public class MainViewController {
         final File basePath = destino;
         final Window ownerWindow = canvas.getScene().getWindow();
 
+        // Progreso en vivo + cancelación
+        com.tpsstudio.service.TrabajoExportacion trabajo = new com.tpsstudio.service.TrabajoExportacion();
+        com.tpsstudio.view.dialogs.ProgresoExportacionDialog progresoDialog =
+                new com.tpsstudio.view.dialogs.ProgresoExportacionDialog(ownerWindow, "Exportando…", trabajo);
+        progresoDialog.show();
+
         new Thread(() -> {
             try {
-                String baseUri = basePath.getAbsolutePath().replaceAll("(?i)\\.pdf$", "");
-                int archivosGenerados = 0;
-
-                // A) PDF Mail-Merge
-                if (config.exportarRegistros()) {
-                    File fMerge = new File(baseUri + "_registros.pdf");
-                    pdfService.exportar(config, filasFinal, fMerge);
-                    archivosGenerados++;
-                }
-
-                // B) Prueba A4
-                if (config.configPrueba() != null) {
-                    File fPrueba = new File(baseUri + "_prueba.pdf");
-                    pdfService.generarPruebaA4(config.configPrueba(), fPrueba);
-                    archivosGenerados++;
-                }
-
-                // C) PDF Imprenta
-                if (config.exportarImprenta()) {
-                    File fImprenta = new File(baseUri + "_imprenta.pdf");
-                    pdfService.exportarImprenta(fImprenta);
-                    archivosGenerados++;
-                }
+                // Registros (PDF, lotes o imagen por tarjeta), prueba A4 e imprenta
+                int totalGenerados = pdfService.exportarSalidas(config, filasFinal, basePath, trabajo).size();
 
                 // Notificar éxito al usuario usando la alerta base Toast
-                int totalGenerados = archivosGenerados;
-                Platform.runLater(() -> TPSToast.mostrar(
-                        ownerWindow,
-                        "Exportación completada (" + totalGenerados + " archivos generados)",
-                        null,
-                        TPSToast.Tipo.EXITO));
+                String resumen = config.exportarRegistros() ? trabajo.getResumen() : null;
+                Platform.runLater(() -> {
+                    progresoDialog.cerrar();
+                    TPSToast.mostrar(
+                            ownerWindow,
+                            "Exportación completada (" + totalGenerados + " archivos generados)",
+                            resumen,
+                            TPSToast.Tipo.EXITO);
+                });
 
+            } catch (java.util.concurrent.CancellationException ex) {
+                Platform.runLater(() -> {
+                    progresoDialog.cerrar();
+                    TPSToast.mostrar(ownerWindow, "Exportación cancelada",
+                            config.reanudable() ? "Puede reanudarse exportando de nuevo al mismo destino" : null,
+                            TPSToast.Tipo.INFO);
+                });
             } catch (Throwable ex) {
                 ex.printStackTrace();
                 Platform.runLater(() -> {
+                    progresoDialog.cerrar();
                     Alert err = new Alert(Alert.AlertType.ERROR);
                     err.setTitle("Error al exportar");
                     err.setHeaderText("No se pudo completar la exportación");
-                    err.setContentText(ex.getMessage());
+                    err.setContentText(config.reanudable()
+                            ? ex.getMessage() + "\n\nLos registros ya generados se conservan: repite la"
+                                    + " exportación con el mismo destino para continuar."
+                            : ex.getMessage());
                     err.showAndWait();
                 });
             }
@@ -1088,10 +1096,10 @@ public class MainViewController {
     }
 
     /**
-     * Abre el diálogo de impresión y, si el usuario confirma, genera un PDF temporal
-     * con el mismo motor que la exportación y lo envía al sistema operativo.
-     *
-     * El hilo de fondo sigue el mismo patrón que onExportarProyecto().
+     * Abre el diálogo de impresión y, si el usuario confirma, añade el trabajo a la
+     * cola de impresión. La cola genera el PDF con el mismo motor que la exportación
+     * y lo envía en segundo plano; la ventana de la cola muestra el progreso y permite
+     * cancelar, y el resultado se avisa con un toast (ver avisarImpresion()).
      */
     @FXML
     private void onImprimirProyecto() {
@@ -1117,36 +1125,78 @@ public class MainViewController {
         java.util.Optional<TrabajoImpresion> resultado = dialog.showAndWait();
         if (resultado.isEmpty() || resultado.get() == null) return;
 
-        TrabajoImpresion trabajo = resultado.get();
-        com.tpsstudio.model.project.Proyecto proyecto = viewModel.getProyectoActual();
-        javafx.stage.Window owner = canvas.getScene().getWindow();
+        ColaImpresion.Entrada entrada;
+        try {
+            entrada = colaImpresion.encolar(resultado.get(), viewModel.getProyectoActual(), fd);
+        } catch (java.io.IOException ex) {
+            Alert err = new Alert(Alert.AlertType.ERROR);
+            err.setTitle("Error al imprimir");
+            err.setHeaderText("No se pudo añadir el trabajo a la cola de impresión");
+            err.setContentText(ex.getMessage());
+            err.showAndWait();
+            return;
+        }
+        int pendientes = colaImpresion.getPendientes();
+        TPSToast.mostrar(canvas.getScene().getWindow(),
+                "Trabajo añadido a la cola de impresión",
+                pendientes > 1 ? pendientes + " trabajos pendientes" : null,
+                TPSToast.Tipo.INFO);
+        mostrarColaImpresion(entrada.getId());
+    }
 
-        new Thread(() -> {
-            try {
-                SalidaImpresion salida;
-                if (trabajo.nombreImpresora() != null) {
-                    salida = new SalidaImpresoraDirecta(trabajo.nombreImpresora());
-                } else {
-                    salida = new SalidaPDFSistema();
-                }
-                new ImpresionService().ejecutar(trabajo, proyecto, fd, salida);
+    /** Abre la ventana de la cola de impresión (progreso, cancelar, reintentar). */
+    @FXML
+    private void onVerColaImpresion() {
+        mostrarColaImpresion(null);
+    }
 
-                Platform.runLater(() -> TPSToast.mostrar(
-                        owner,
-                        "Trabajo enviado a la cola de impresión",
-                        null, TPSToast.Tipo.EXITO));
+    private void mostrarColaImpresion(String idSeleccionado) {
+        if (colaImpresionDialog == null) {
+            colaImpresionDialog = new ColaImpresionDialog(canvas.getScene().getWindow(), colaImpresion);
+        }
+        colaImpresionDialog.mostrar(idSeleccionado);
+    }
 
-            } catch (Throwable ex) {
-                ex.printStackTrace();
-                Platform.runLater(() -> {
-                    Alert err = new Alert(Alert.AlertType.ERROR);
-                    err.setTitle("Error al imprimir");
-                    err.setHeaderText("No se pudo completar la impresión");
-                    err.setContentText(ex.getMessage());
-                    err.showAndWait();
+    /**
+     * Aviso de los cambios de estado de la cola de impresión (hilo JavaFX).
+     * Solo se avisan los finales y los reintentos por impresora desconectada.
+     */
+    private void avisarImpresion(ColaImpresion.Entrada entrada) {
+        if (canvas.getScene() == null) return;
+        javafx.stage.Window owner = canvas.getScene().getWindow();
+        String proyecto = entrada.getNombreProyecto();
+
+        switch (entrada.getEstado()) {
+            case HECHO -> TPSToast.mostrar(owner, "Trabajo enviado a la cola de impresión", proyecto,
+                    TPSToast.Tipo.EXITO);
+            case CANCELADO -> TPSToast.mostrar(owner, "Impresión cancelada", proyecto, TPSToast.Tipo.INFO);
+            case EN_COLA -> {
+                if (entrada.getIntentos() > 0) {
+                    TPSToast.mostrar(owner, "Impresora no disponible: se reintentará",
+                            "Intento " + entrada.getIntentos() + " de " + ColaImpresion.MAX_INTENTOS,
+                            TPSToast.Tipo.INFO);
+                }
+            }
+            case FALLIDO -> {
+                Alert err = new Alert(Alert.AlertType.ERROR);
+                err.initOwner(owner);
+                err.setTitle("Error al imprimir");
+                err.setHeaderText("No se pudo completar la impresión de " + proyecto);
+                err.setContentText(entrada.getError());
+                ButtonType reintentar = new ButtonType("Reintentar");
+                ButtonType verCola = new ButtonType("Ver cola");
+                err.getButtonTypes().setAll(reintentar, verCola, ButtonType.CLOSE);
+                err.setOnHidden(ev -> {
+                    if (err.getResult() == reintentar) {
+                        colaImpresion.reintentar(entrada.getId());
+                    } else if (err.getResult() == verCola) {
+                        mostrarColaImpresion(entrada.getId());
+                    }
                 });
+                err.show();
             }
-        }, "imprimir-thread").start();
+            default -> {}
+        }
     }
 
     @FXML
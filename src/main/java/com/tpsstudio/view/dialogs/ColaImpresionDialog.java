@@ -0,0 +1,168 @@
+package com.tpsstudio.view.dialogs;
+
+import com.tpsstudio.model.enums.EstadoImpresion;
+import com.tpsstudio.service.ColaImpresion;
+import com.tpsstudio.service.TrabajoExportacion;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.*;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Ventana no modal con los trabajos de la {@link ColaImpresion}: estado, progreso
+ * del trabajo en curso e intentos. Permite cancelar un trabajo pendiente o en curso
+ * y volver a poner en cola uno fallido.
+ *
+ * <p>La tabla se refresca cada medio segundo mientras la ventana está abierta; la
+ * cola no se bloquea por tenerla abierta ni por cerrarla.</p>
+ */
+public class ColaImpresionDialog extends Dialog<Void> {
+
+    private static final String CSS = ColaImpresionDialog.class
+            .getResource("/css/dialogs.css").toExternalForm();
+
+    private final ColaImpresion cola;
+    private final TableView<ColaImpresion.Entrada> tabla = new TableView<>();
+    private final Timeline refresco;
+
+    public ColaImpresionDialog(Window owner, ColaImpresion cola) {
+        this.cola = cola;
+        initOwner(owner);
+        initModality(Modality.NONE);
+        setTitle("Cola de impresión");
+        setHeaderText("Trabajos de impresión");
+        setResizable(true);
+
+        getDialogPane().getStylesheets().add(CSS);
+        getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        // ── TABLA ──────────────────────────────────────────────────────────────
+        TableColumn<ColaImpresion.Entrada, String> colProyecto = new TableColumn<>("Proyecto");
+        colProyecto.setCellValueFactory(c -> new ReadOnlyStringWrapper(c.getValue().getNombreProyecto()));
+        colProyecto.setPrefWidth(170);
+
+        TableColumn<ColaImpresion.Entrada, String> colPrioridad = new TableColumn<>("Prioridad");
+        colPrioridad.setCellValueFactory(c -> new ReadOnlyStringWrapper(c.getValue().getPrioridad().toString()));
+
+        TableColumn<ColaImpresion.Entrada, String> colEstado = new TableColumn<>("Estado");
+        colEstado.setCellValueFactory(c -> new ReadOnlyStringWrapper(c.getValue().getEstado().getDescripcion()));
+
+        TableColumn<ColaImpresion.Entrada, Double> colProgreso = new TableColumn<>("Progreso");
+        colProgreso.setCellValueFactory(c -> new ReadOnlyObjectWrapper<>(progreso(c.getValue())));
+        colProgreso.setCellFactory(c -> new TableCell<>() {
+            private final ProgressBar barra = new ProgressBar();
+
+            @Override
+            protected void updateItem(Double valor, boolean vacio) {
+                super.updateItem(valor, vacio);
+                if (vacio || valor == null) {
+                    setGraphic(null);
+                } else {
+                    barra.setProgress(valor);
+                    barra.setMaxWidth(Double.MAX_VALUE);
+                    setGraphic(barra);
+                }
+            }
+        });
+        colProgreso.setPrefWidth(130);
+
+        TableColumn<ColaImpresion.Entrada, String> colIntentos = new TableColumn<>("Intentos");
+        colIntentos.setCellValueFactory(c -> new ReadOnlyStringWrapper(
+                c.getValue().getIntentos() > 0 ? String.valueOf(c.getValue().getIntentos()) : ""));
+
+        TableColumn<ColaImpresion.Entrada, String> colError = new TableColumn<>("Error");
+        colError.setCellValueFactory(c -> new ReadOnlyStringWrapper(
+                Objects.requireNonNullElse(c.getValue().getError(), "")));
+        colError.setPrefWidth(220);
+
+        tabla.getColumns().setAll(List.of(colProyecto, colPrioridad, colEstado, colProgreso, colIntentos, colError));
+        tabla.setPlaceholder(new Label("No hay trabajos de impresión."));
+        tabla.setPrefSize(760, 320);
+
+        // ── ACCIONES ───────────────────────────────────────────────────────────
+        Button btnCancelar = new Button("Cancelar trabajo");
+        Button btnReintentar = new Button("Reintentar");
+        btnCancelar.setOnAction(e -> {
+            ColaImpresion.Entrada sel = tabla.getSelectionModel().getSelectedItem();
+            if (sel != null) cola.cancelar(sel.getId());
+            refrescar();
+        });
+        btnReintentar.setOnAction(e -> {
+            ColaImpresion.Entrada sel = tabla.getSelectionModel().getSelectedItem();
+            if (sel != null) cola.reintentar(sel.getId());
+            refrescar();
+        });
+        Runnable actualizarBotones = () -> {
+            ColaImpresion.Entrada sel = tabla.getSelectionModel().getSelectedItem();
+            btnCancelar.setDisable(sel == null || sel.getEstado().isTerminado());
+            btnReintentar.setDisable(sel == null || sel.getEstado() != EstadoImpresion.FALLIDO);
+        };
+        tabla.getSelectionModel().selectedItemProperty().addListener((o, old, val) -> actualizarBotones.run());
+        actualizarBotones.run();
+
+        HBox hbAcciones = new HBox(8, btnCancelar, btnReintentar);
+        hbAcciones.setAlignment(Pos.CENTER_LEFT);
+
+        VBox root = new VBox(10, tabla, hbAcciones);
+        root.setPadding(new Insets(10));
+        getDialogPane().setContent(root);
+
+        // Refresco periódico: estados y progreso cambian desde los hilos de la cola
+        refresco = new Timeline(new KeyFrame(Duration.millis(500), e -> {
+            refrescar();
+            actualizarBotones.run();
+        }));
+        refresco.setCycleCount(Timeline.INDEFINITE);
+        setOnShown(e -> {
+            refrescar();
+            refresco.play();
+        });
+        setOnHidden(e -> refresco.stop());
+    }
+
+    /** Abre la ventana (o la trae al frente) con el trabajo {@code id} seleccionado. */
+    public void mostrar(String id) {
+        refrescar();
+        if (id != null) {
+            tabla.getItems().stream().filter(e -> e.getId().equals(id)).findFirst()
+                    .ifPresent(e -> tabla.getSelectionModel().select(e));
+        }
+        if (isShowing()) {
+            ((Stage) getDialogPane().getScene().getWindow()).toFront();
+        } else {
+            show();
+        }
+    }
+
+    private void refrescar() {
+        ColaImpresion.Entrada seleccionada = tabla.getSelectionModel().getSelectedItem();
+        tabla.getItems().setAll(cola.getEntradas());
+        // Las entradas son los mismos objetos con el estado cambiado: forzar las celdas
+        tabla.refresh();
+        if (seleccionada != null) {
+            tabla.getItems().stream().filter(e -> e.getId().equals(seleccionada.getId())).findFirst()
+                    .ifPresent(e -> tabla.getSelectionModel().select(e));
+        }
+    }
+
+    /** Fracción hecha del trabajo en curso; indeterminado mientras prepara, vacío si no aplica. */
+    private static Double progreso(ColaImpresion.Entrada entrada) {
+        EstadoImpresion estado = entrada.getEstado();
+        if (estado == EstadoImpresion.HECHO) return 1.0;
+        if (estado != EstadoImpresion.RENDERIZANDO && estado != EstadoImpresion.ENVIANDO) return null;
+        TrabajoExportacion.Progreso p = entrada.getControl().getProgreso();
+        return p.paginasTotales() > 0 ? p.fraccion() : ProgressBar.INDETERMINATE_PROGRESS;
+    }
+}
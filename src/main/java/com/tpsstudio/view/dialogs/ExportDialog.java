@@ -1,5 +1,7 @@
 package com.tpsstudio.view.dialogs;
 
+import com.tpsstudio.model.enums.CodecImagen;
+import com.tpsstudio.model.enums.FormatoSecuencia;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.VBox;
@@ -25,7 +27,53 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
             // Muestra de diseño A4
             PruebaConfigDialog.PruebaConfig configPrueba, // null = no generar
             // PDF para imprenta
-            boolean exportarImprenta) {
+            boolean exportarImprenta,
+            // Rendimiento: hilos de render del pipeline (0 = uno por núcleo)
+            int hilosRender,
+            // Formato: texto y formas vectoriales en lugar de una imagen por página
+            boolean pdfVectorial,
+            // Memoria: MB de RAM para los flujos del PDF; el resto va a un archivo
+            // temporal (0 = todo el documento en memoria)
+            int memoriaPdfMB,
+            // Códec de la imagen de cada página (modo imagen) y calidad JPEG 0.0 – 1.0
+            CodecImagen codec,
+            float calidadJpeg,
+            // Lotes: registros por archivo PDF (0 = un único _registros.pdf)
+            int registrosPorArchivo,
+            // Reanudable: genera por partes con diario para continuar tras una interrupción
+            boolean reanudable,
+            // Incremental: reutiliza de la caché del proyecto las páginas sin cambios
+            boolean reutilizarPaginas,
+            // Salida por tarjeta: una imagen por registro y cara en lugar de PDF (null = PDF)
+            FormatoSecuencia formatoSecuencia,
+            String columnaNombreArchivo,       // null = número de registro
+            // Resolución de salida en modo imagen; por encima de 400 se renderiza por franjas
+            int dpi) {
+
+        /** Memoria del PDF que se usa si no se indica otra (puestos de 8 GB con varias exportaciones). */
+        public static final int MEMORIA_PDF_MB_DEFECTO = 96;
+
+        /** Calidad JPEG por defecto: sin artefactos visibles en impresión de tarjetas. */
+        public static final float CALIDAD_JPEG_DEFECTO = 0.92f;
+
+        /** Resolución por defecto: 400 DPI, suficiente para impresión de tarjetas. */
+        public static final int DPI_DEFECTO = 400;
+
+        /** Rango de DPI admitido en todas las entradas (diálogo, línea de comandos, servicio HTTP). */
+        public static final int DPI_MINIMO = 72;
+        public static final int DPI_MAXIMO = 1200;
+
+        /** Resoluciones que ofrece el diálogo (600 y 1200 para microtexto de seguridad). */
+        public static final List<Integer> DPI_DISPONIBLES = List.of(300, 400, 600, 1200);
+
+        /** Configuración con las opciones de rendimiento por defecto. */
+        public ExportConfig(boolean exportarRegistros, String rangoFilas, boolean imprimirDorso,
+                            boolean recortarSangre, PruebaConfigDialog.PruebaConfig configPrueba,
+                            boolean exportarImprenta) {
+            this(exportarRegistros, rangoFilas, imprimirDorso, recortarSangre, configPrueba,
+                    exportarImprenta, 0, false, MEMORIA_PDF_MB_DEFECTO,
+                    CodecImagen.SIN_PERDIDA, CALIDAD_JPEG_DEFECTO, 0, false, false, null, null, DPI_DEFECTO);
+        }
     }
 
     private static final String CSS = ExportDialog.class
@@ -36,6 +84,14 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
     private PruebaConfigDialog.PruebaConfig configPrueba = null;
 
     public ExportDialog(Window owner, int totalRegistrosBD, String nombreProyecto) {
+        this(owner, totalRegistrosBD, nombreProyecto, List.of());
+    }
+
+    /**
+     * @param columnas columnas de la fuente de datos, para nombrar los archivos de
+     *                 la salida por tarjeta (PNG/TIFF).
+     */
+    public ExportDialog(Window owner, int totalRegistrosBD, String nombreProyecto, List<String> columnas) {
         initOwner(owner);
         setTitle("Exportar");
         setHeaderText("¿Qué deseas generar?");
@@ -61,6 +117,17 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
         final String[] rangoFilasVal = { "TODOS" };
         final boolean[] imprimirDorsoVal = { true };
         final boolean[] sinSangreVal = { false };
+        final int[] hilosRenderVal = { 0 };
+        final boolean[] vectorialVal = { false };
+        final int[] memoriaPdfVal = { ExportConfig.MEMORIA_PDF_MB_DEFECTO };
+        final CodecImagen[] codecVal = { CodecImagen.SIN_PERDIDA };
+        final int[] calidadJpegVal = { Math.round(ExportConfig.CALIDAD_JPEG_DEFECTO * 100) };
+        final int[] registrosPorArchivoVal = { 0 };
+        final boolean[] reanudableVal = { false };
+        final boolean[] reutilizarVal = { false };
+        final FormatoSecuencia[] secuenciaVal = { null };
+        final String[] columnaNombreVal = { null };
+        final int[] dpiVal = { ExportConfig.DPI_DEFECTO };
 
         btnConfigurarMailMerge.setOnAction(e -> {
             Dialog<ButtonType> dlg = new Dialog<>();
@@ -100,13 +167,119 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
             else
                 rbMMConSangre.setSelected(true);
 
+            ToggleGroup tgFormato = new ToggleGroup();
+            RadioButton rbMMImagen = new RadioButton("Imagen (PDF)");
+            RadioButton rbMMVectorial = new RadioButton("Vectorial (texto real)");
+            rbMMImagen.setToggleGroup(tgFormato);
+            rbMMVectorial.setToggleGroup(tgFormato);
+            if (vectorialVal[0])
+                rbMMVectorial.setSelected(true);
+            else
+                rbMMImagen.setSelected(true);
+
             HBox hbComp = new HBox(20, rbMMAnverso, rbMMAnversoReverso);
             HBox hbSang = new HBox(20, rbMMConSangre, rbMMSinSangre);
+            RadioButton rbMMPng = new RadioButton(FormatoSecuencia.PNG.getDescripcion());
+            RadioButton rbMMTiff = new RadioButton(FormatoSecuencia.TIFF.getDescripcion());
+            rbMMPng.setToggleGroup(tgFormato);
+            rbMMTiff.setToggleGroup(tgFormato);
+            if (secuenciaVal[0] == FormatoSecuencia.PNG)
+                rbMMPng.setSelected(true);
+            else if (secuenciaVal[0] == FormatoSecuencia.TIFF)
+                rbMMTiff.setSelected(true);
+
+            HBox hbFormato = new HBox(20, rbMMImagen, rbMMVectorial);
+            HBox hbSecuencia = new HBox(20, rbMMPng, rbMMTiff);
+
+            // Nombre de archivo de la salida por tarjeta: valor de una columna o nº de registro
+            final String SIN_COLUMNA = "(nº de registro)";
+            ComboBox<String> cbColumnaNombre = new ComboBox<>();
+            cbColumnaNombre.getItems().add(SIN_COLUMNA);
+            cbColumnaNombre.getItems().addAll(columnas);
+            cbColumnaNombre.setValue(columnaNombreVal[0] != null ? columnaNombreVal[0] : SIN_COLUMNA);
+            cbColumnaNombre.disableProperty().bind(rbMMPng.selectedProperty().not()
+                    .and(rbMMTiff.selectedProperty().not()));
+            Label lblColumnaNombre = new Label("Nombre de archivo:");
+            lblColumnaNombre.disableProperty().bind(cbColumnaNombre.disableProperty());
+            HBox hbColumnaNombre = new HBox(10, lblColumnaNombre, cbColumnaNombre);
+            hbColumnaNombre.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+
+            ComboBox<CodecImagen> cbCodec = new ComboBox<>();
+            cbCodec.getItems().addAll(CodecImagen.values());
+            cbCodec.setValue(codecVal[0]);
+            Spinner<Integer> spCalidad = new Spinner<>(50, 100, calidadJpegVal[0], 1);
+            spCalidad.setPrefWidth(80);
+            Label lblCalidad = new Label("Calidad JPEG (%):");
+            // El códec solo aplica al modo imagen; la calidad solo a JPEG
+            cbCodec.disableProperty().bind(rbMMImagen.selectedProperty().not());
+            spCalidad.disableProperty().bind(rbMMImagen.selectedProperty().not()
+                    .or(cbCodec.valueProperty().isNotEqualTo(CodecImagen.JPEG)));
+            lblCalidad.disableProperty().bind(spCalidad.disableProperty());
+            HBox hbCodec = new HBox(10, cbCodec, lblCalidad, spCalidad);
+            hbCodec.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+
+            ComboBox<Integer> cbDpi = new ComboBox<>();
+            cbDpi.getItems().addAll(ExportConfig.DPI_DISPONIBLES);
+            cbDpi.setValue(dpiVal[0]);
+            Label lblDpiHint = new Label("Más de 400 DPI se renderiza por franjas; JPEG pasa a sin pérdida");
+            lblDpiHint.setStyle("-fx-font-size: 11px; -fx-text-fill: #666; -fx-font-style: italic;");
+            // La resolución no aplica al modo vectorial
+            cbDpi.disableProperty().bind(rbMMVectorial.selectedProperty());
+            HBox hbDpi = new HBox(10, cbDpi, lblDpiHint);
+            hbDpi.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+
+            int nucleos = Runtime.getRuntime().availableProcessors();
+            Spinner<Integer> spHilos = new Spinner<>(0, nucleos * 2, hilosRenderVal[0]);
+            spHilos.setPrefWidth(90);
+            Label lblHilosHint = new Label("0 = automático (" + nucleos + " núcleos detectados)");
+            lblHilosHint.setStyle("-fx-font-size: 11px; -fx-text-fill: #666; -fx-font-style: italic;");
+            HBox hbHilos = new HBox(10, spHilos, lblHilosHint);
+            hbHilos.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+
+            Spinner<Integer> spMemoria = new Spinner<>(0, 4096, memoriaPdfVal[0], 16);
+            spMemoria.setEditable(true);
+            spMemoria.setPrefWidth(110);
+            Label lblMemoriaHint = new Label("MB. El resto se vuelca a disco. 0 = todo en memoria");
+            lblMemoriaHint.setStyle("-fx-font-size: 11px; -fx-text-fill: #666; -fx-font-style: italic;");
+            HBox hbMemoria = new HBox(10, spMemoria, lblMemoriaHint);
+            hbMemoria.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+
+            Spinner<Integer> spLote = new Spinner<>(0, 100_000, registrosPorArchivoVal[0], 50);
+            spLote.setEditable(true);
+            spLote.setPrefWidth(110);
+            Label lblLoteHint = new Label("Ej: 500 → _registros_0001.pdf, _0002.pdf... 0 = un único PDF");
+            lblLoteHint.setStyle("-fx-font-size: 11px; -fx-text-fill: #666; -fx-font-style: italic;");
+            HBox hbLote = new HBox(10, spLote, lblLoteHint);
+            hbLote.setAlignment(javafx.geometry.Pos.CENTER_LEFT);
+
+            CheckBox chkReanudable = new CheckBox("Exportación reanudable");
+            chkReanudable.setSelected(reanudableVal[0]);
+            Label lblReanudableHint = new Label("Si se interrumpe, al repetirla solo se generan los registros que faltan");
+            lblReanudableHint.setStyle("-fx-font-size: 11px; -fx-text-fill: #666; -fx-font-style: italic;");
+            // Solo aplica al PDF único: con lotes cada archivo ya es independiente
+            chkReanudable.disableProperty().bind(spLote.valueProperty().isNotEqualTo(0));
+
+            CheckBox chkReutilizar = new CheckBox("Reutilizar páginas sin cambios");
+            chkReutilizar.setSelected(reutilizarVal[0]);
+            Label lblReutilizarHint = new Label("Guarda las páginas en la carpeta del proyecto (.tps_cache) y, al"
+                    + " re-exportar, solo renderiza los registros modificados");
+            lblReutilizarHint.setWrapText(true);
+            lblReutilizarHint.setStyle("-fx-font-size: 11px; -fx-text-fill: #666; -fx-font-style: italic;");
+            // Solo el modo imagen genera páginas codificadas que puedan guardarse
+            chkReutilizar.disableProperty().bind(rbMMImagen.selectedProperty().not());
 
             VBox dlgBox = new VBox(20,
                     boxRango,
                     new VBox(8, new Label("Composición:"), hbComp),
-                    new VBox(8, new Label("Tolerancia (sangre):"), hbSang));
+                    new VBox(8, new Label("Tolerancia (sangre):"), hbSang),
+                    new VBox(8, new Label("Formato de salida:"), hbFormato, hbSecuencia, hbColumnaNombre),
+                    new VBox(8, new Label("Resolución (DPI):"), hbDpi),
+                    new VBox(8, new Label("Compresión de imagen:"), hbCodec),
+                    new VBox(8, new Label("Hilos de renderizado:"), hbHilos),
+                    new VBox(8, new Label("Memoria del PDF:"), hbMemoria),
+                    new VBox(8, new Label("Registros por archivo:"), hbLote),
+                    new VBox(4, chkReanudable, lblReanudableHint),
+                    new VBox(4, chkReutilizar, lblReutilizarHint));
             dlgBox.setPadding(new Insets(20));
             dlg.getDialogPane().setContent(dlgBox);
 
@@ -115,6 +288,19 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
                     rangoFilasVal[0] = txtMMRango.getText().trim().isEmpty() ? "TODOS" : txtMMRango.getText().trim();
                     imprimirDorsoVal[0] = rbMMAnversoReverso.isSelected();
                     sinSangreVal[0] = rbMMSinSangre.isSelected();
+                    hilosRenderVal[0] = spHilos.getValue();
+                    vectorialVal[0] = rbMMVectorial.isSelected();
+                    memoriaPdfVal[0] = spMemoria.getValue();
+                    codecVal[0] = cbCodec.getValue();
+                    calidadJpegVal[0] = spCalidad.getValue();
+                    registrosPorArchivoVal[0] = spLote.getValue();
+                    reanudableVal[0] = chkReanudable.isSelected() && !chkReanudable.isDisabled();
+                    reutilizarVal[0] = chkReutilizar.isSelected() && !chkReutilizar.isDisabled();
+                    secuenciaVal[0] = rbMMPng.isSelected() ? FormatoSecuencia.PNG
+                            : rbMMTiff.isSelected() ? FormatoSecuencia.TIFF : null;
+                    columnaNombreVal[0] = SIN_COLUMNA.equals(cbColumnaNombre.getValue())
+                            ? null : cbColumnaNombre.getValue();
+                    dpiVal[0] = cbDpi.getValue();
                     btnConfigurarMailMerge.setText("⚙ Configurado ✔");
                 }
             });
@@ -202,7 +388,18 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
                     imprimirDorsoVal[0],
                     sinSangreVal[0],
                     cfgPrueba,
-                    chkImprenta.isSelected());
+                    chkImprenta.isSelected(),
+                    hilosRenderVal[0],
+                    vectorialVal[0],
+                    memoriaPdfVal[0],
+                    codecVal[0],
+                    calidadJpegVal[0] / 100f,
+                    registrosPorArchivoVal[0],
+                    reanudableVal[0],
+                    reutilizarVal[0],
+                    secuenciaVal[0],
+                    columnaNombreVal[0],
+                    dpiVal[0]);
         });
     }
 
@@ -211,6 +408,8 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
 
     public static List<Integer> parseRangoFilas(String rangoStr, int totalRegistros) {
         List<Integer> filas = new ArrayList<>();
+        // Evita duplicados sin recorrer la lista (rangos de decenas de miles de registros)
+        java.util.Set<Integer> vistas = new java.util.HashSet<>();
         rangoStr = rangoStr.toUpperCase().replaceAll("\\s+", "");
 
         if (rangoStr.isEmpty() || rangoStr.equals("TODOS") || rangoStr.equals("ALL")) {
@@ -233,13 +432,13 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
                 }
                 for (int i = start; i <= end; i++) {
                     int z = i - 1;
-                    if (z >= 0 && z < totalRegistros && !filas.contains(z))
+                    if (z >= 0 && z < totalRegistros && vistas.add(z))
                         filas.add(z);
                 }
             } else {
                 try {
                     int z = Integer.parseInt(part) - 1;
-                    if (z >= 0 && z < totalRegistros && !filas.contains(z))
+                    if (z >= 0 && z < totalRegistros && vistas.add(z))
                         filas.add(z);
                 } catch (NumberFormatException e) {
                     throw new IllegalArgumentException("Número inválido: " + part);
@@ -248,4 +447,27 @@ public class ExportDialog extends Dialog<ExportDialog.ExportConfig> {
         }
         return filas;
     }
+
+    /**
+     * Operación inversa de {@link #parseRangoFilas}: convierte índices 0-based en
+     * el texto de rango 1-based que acepta el diálogo (p. ej. "1-500, 502").
+     */
+    public static String formatearRangoFilas(List<Integer> filas) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < filas.size()) {
+            int inicio = filas.get(i);
+            int fin = inicio;
+            while (i + 1 < filas.size() && filas.get(i + 1) == fin + 1) {
+                fin = filas.get(++i);
+            }
+            if (sb.length() > 0)
+                sb.append(", ");
+            sb.append(inicio + 1);
+            if (fin > inicio)
+                sb.append('-').append(fin + 1);
+            i++;
+        }
+        return sb.toString();
+    }
 }
@@ -1,8 +1,10 @@
 package com.tpsstudio.view.dialogs;
 
+import com.tpsstudio.model.enums.PrioridadImpresion;
 import com.tpsstudio.model.project.FuenteDatos;
 import com.tpsstudio.model.project.Proyecto;
 import com.tpsstudio.service.TrabajoImpresion;
+import javafx.beans.binding.Bindings;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
@@ -11,6 +13,8 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Window;
 import javax.print.PrintService;
 import java.awt.print.PrinterJob;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Diálogo de configuración de impresión — Fase 1.
@@ -19,7 +23,7 @@ import java.awt.print.PrinterJob;
  * para imprimir físicamente tarjetas, sin las secciones de prueba A4 ni PDF
  * de imprenta que no aplican aquí.</p>
  *
- * <p>Devuelve un {@link TrabajoImpresion} listo para pasar a {@code ImpresionService}.
+ * <p>Devuelve un {@link TrabajoImpresion} listo para encolar en {@code ColaImpresion}.
  * Los índices de registro son siempre 0-based internamente; la interfaz muestra
  * posiciones 1-based al usuario.</p>
  */
@@ -28,6 +32,9 @@ public class ImpresionDialog extends Dialog<TrabajoImpresion> {
     private static final String CSS = ImpresionDialog.class
             .getResource("/css/dialogs.css").toExternalForm();
 
+    private static final String VISOR_PDF = "[ Visor del sistema (PDF) ]";
+    private static final String GRUPO = "[ Repartir entre varias impresoras ]";
+
     public ImpresionDialog(Window owner, Proyecto proyecto, FuenteDatos fuenteDatos) {
         initOwner(owner);
         setTitle("Imprimir tarjeta");
@@ -49,14 +56,36 @@ public class ImpresionDialog extends Dialog<TrabajoImpresion> {
 
         ComboBox<String> cmbImpresoras = new ComboBox<>();
         cmbImpresoras.setPrefWidth(350);
-        cmbImpresoras.getItems().add("[ Visor del sistema (PDF) ]");
+        cmbImpresoras.getItems().add(VISOR_PDF);
         
         PrintService[] printServices = PrinterJob.lookupPrintServices();
+        List<String> nombresImpresoras = new ArrayList<>();
         for (PrintService ps : printServices) {
-            cmbImpresoras.getItems().add(ps.getName());
+            nombresImpresoras.add(ps.getName());
+        }
+        cmbImpresoras.getItems().addAll(nombresImpresoras);
+        if (nombresImpresoras.size() > 1) {
+            cmbImpresoras.getItems().add(GRUPO);
         }
 
-        VBox boxDestino = new VBox(6, cmbImpresoras);
+        // Grupo de impresoras: los registros se reparten según el ritmo de cada una
+        ListView<String> lstGrupo = new ListView<>();
+        lstGrupo.getItems().addAll(nombresImpresoras);
+        lstGrupo.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        lstGrupo.setPrefHeight(110);
+        lstGrupo.setVisible(false);
+        lstGrupo.setManaged(false);
+        Tooltip.install(lstGrupo, new Tooltip("Ctrl+clic para elegir varias impresoras."));
+
+        // Prioridad en la cola de impresión: una reimpresión urgente adelanta a lo que espera
+        ComboBox<PrioridadImpresion> cmbPrioridad = new ComboBox<>();
+        cmbPrioridad.getItems().addAll(PrioridadImpresion.values());
+        cmbPrioridad.setValue(PrioridadImpresion.NORMAL);
+        Label lblPrioridad = new Label("Prioridad:");
+        HBox hbPrioridad = new HBox(8, lblPrioridad, cmbPrioridad);
+        hbPrioridad.setAlignment(Pos.CENTER_LEFT);
+
+        VBox boxDestino = new VBox(6, cmbImpresoras, lstGrupo, hbPrioridad);
         boxDestino.setPadding(new Insets(0, 0, 0, 12));
 
         // ── CARA ───────────────────────────────────────────────────────────────
@@ -137,8 +166,17 @@ public class ImpresionDialog extends Dialog<TrabajoImpresion> {
 
         // Actualizar el texto descriptivo dinámicamente según el destino elegido
         cmbImpresoras.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal == null || newVal.equals("[ Visor del sistema (PDF) ]")) {
+            boolean grupo = GRUPO.equals(newVal);
+            lstGrupo.setVisible(grupo);
+            lstGrupo.setManaged(grupo);
+            if (getDialogPane().getScene() != null && getDialogPane().getScene().getWindow() != null) {
+                getDialogPane().getScene().getWindow().sizeToScene();
+            }
+            if (newVal == null || newVal.equals(VISOR_PDF)) {
                 lblModo.setText("Modo: Vista previa PDF — se generará un PDF temporal para revisar antes de imprimir.");
+            } else if (grupo) {
+                lblModo.setText("Modo: Grupo de impresoras — los registros se reparten entre las impresoras elegidas"
+                        + " según su ritmo; el reparto queda registrado en un CSV de auditoría.");
             } else {
                 lblModo.setText("Modo: Impresión directa — el trabajo se enviará a la cola de la impresora seleccionada.");
             }
@@ -163,6 +201,13 @@ public class ImpresionDialog extends Dialog<TrabajoImpresion> {
         root.setPrefWidth(480);
         getDialogPane().setContent(root);
 
+        // Un grupo necesita al menos dos impresoras
+        Button btnImprimir = (Button) getDialogPane().lookupButton(ButtonType.OK);
+        btnImprimir.disableProperty().bind(
+                cmbImpresoras.getSelectionModel().selectedItemProperty().isEqualTo(GRUPO)
+                        .and(Bindings.size(lstGrupo.getSelectionModel().getSelectedItems())
+                                .lessThan(2)));
+
         // ── CONVERSIÓN ─────────────────────────────────────────────────────────
         setResultConverter(btn -> {
             if (btn != ButtonType.OK) return null;
@@ -174,9 +219,14 @@ public class ImpresionDialog extends Dialog<TrabajoImpresion> {
             boolean sinSangre = rbSinSangre.isSelected();
 
             String seleccion = cmbImpresoras.getSelectionModel().getSelectedItem();
-            String nombreImpresora = (seleccion == null || seleccion.equals("[ Visor del sistema (PDF) ]")) ? null : seleccion;
+            if (GRUPO.equals(seleccion)) {
+                return new TrabajoImpresion(frente, dorso, soloActual, rango, sinSangre, registroActual, null,
+                        cmbPrioridad.getValue(), List.copyOf(lstGrupo.getSelectionModel().getSelectedItems()));
+            }
+            String nombreImpresora = (seleccion == null || seleccion.equals(VISOR_PDF)) ? null : seleccion;
 
-            return new TrabajoImpresion(frente, dorso, soloActual, rango, sinSangre, registroActual, nombreImpresora);
+            return new TrabajoImpresion(frente, dorso, soloActual, rango, sinSangre, registroActual, nombreImpresora,
+                    cmbPrioridad.getValue());
         });
     }
 }
@@ -0,0 +1,87 @@
+package com.tpsstudio.view.dialogs;
+
+import com.tpsstudio.service.TrabajoExportacion;
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.VBox;
+import javafx.stage.Modality;
+import javafx.stage.Window;
+
+/**
+ * Diálogo no bloqueante con el progreso de una exportación o impresión.
+ * Muestra páginas hechas, ritmo y tiempo restante, y un botón Cancelar que
+ * solicita la cancelación cooperativa del {@link TrabajoExportacion}.
+ *
+ * <p>Se abre con {@link #show()} antes de lanzar el hilo de trabajo y se cierra con
+ * {@link #cerrar()} cuando este termina (con éxito, error o cancelación).</p>
+ */
+public class ProgresoExportacionDialog extends Dialog<Void> {
+
+    private static final String CSS = ProgresoExportacionDialog.class
+            .getResource("/css/dialogs.css").toExternalForm();
+
+    private final ProgressBar barra = new ProgressBar(ProgressBar.INDETERMINATE_PROGRESS);
+    private final Label lblPaginas = new Label("Preparando…");
+    private final Label lblRitmo = new Label(" ");
+    private boolean terminado = false;
+
+    public ProgresoExportacionDialog(Window owner, String titulo, TrabajoExportacion trabajo) {
+        initOwner(owner);
+        initModality(Modality.WINDOW_MODAL);
+        setTitle(titulo);
+        setHeaderText(titulo);
+
+        getDialogPane().getStylesheets().add(CSS);
+        getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+        Button btnCancelar = (Button) getDialogPane().lookupButton(ButtonType.CANCEL);
+        btnCancelar.setText("Cancelar");
+
+        // El botón no cierra el diálogo: pide la cancelación y espera a que el hilo termine
+        btnCancelar.addEventFilter(ActionEvent.ACTION, e -> {
+            e.consume();
+            trabajo.cancelar();
+            btnCancelar.setDisable(true);
+            lblPaginas.setText("Cancelando…");
+        });
+        // Cerrar con la X equivale a cancelar
+        setOnCloseRequest(e -> {
+            if (!terminado && !trabajo.isCancelado()) {
+                e.consume();
+                btnCancelar.fire();
+            }
+        });
+
+        barra.setPrefWidth(380);
+        lblRitmo.setStyle("-fx-font-size: 11px; -fx-text-fill: #666;");
+
+        VBox box = new VBox(10, barra, lblPaginas, lblRitmo);
+        box.setPadding(new Insets(20));
+        getDialogPane().setContent(box);
+
+        trabajo.setAlProgresar(p -> Platform.runLater(() -> actualizar(p, trabajo)));
+    }
+
+    private void actualizar(TrabajoExportacion.Progreso p, TrabajoExportacion trabajo) {
+        if (trabajo.isCancelado()) return;
+        if (p.paginasTotales() > 0) barra.setProgress(p.fraccion());
+        lblPaginas.setText("Página " + p.paginasHechas() + " de " + p.paginasTotales());
+        lblRitmo.setText(String.format("%.1f pág/s · quedan %s", p.paginasPorSegundo(),
+                formatearTiempo(p.segundosRestantes())));
+    }
+
+    /** Cierra el diálogo desde el hilo JavaFX. */
+    public void cerrar() {
+        terminado = true;
+        barra.setProgress(1);
+        setResult(null);
+        close();
+    }
+
+    private static String formatearTiempo(long segundos) {
+        if (segundos < 0) return "calculando…";
+        if (segundos < 60) return segundos + " s";
+        return (segundos / 60) + " min " + (segundos % 60) + " s";
+    }
+}
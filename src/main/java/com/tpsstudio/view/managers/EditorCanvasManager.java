@@ -10,6 +10,7 @@ import com.tpsstudio.model.enums.TipoTroquel;
 import com.tpsstudio.model.project.FuenteDatos;
 import com.tpsstudio.model.project.Proyecto;
 import com.tpsstudio.util.ImageUtils;
+import com.tpsstudio.util.MotorTexto;
 import javafx.scene.Cursor;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
@@ -104,6 +105,17 @@ public class EditorCanvasManager {
     private AppMode currentMode;
     private FuenteDatos fuenteDatos;
 
+    // Fotos variables ya reducidas al tamaño en pantalla (ruta|fecha|ancho|alto → imagen).
+    // Se redibuja en cada movimiento del ratón: sin caché se decodificaría la foto entera cada vez
+    private static final int MAX_FOTOS_CACHEADAS = 48;
+    private final java.util.Map<String, Image> cacheFotosVariables =
+            new java.util.LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(java.util.Map.Entry<String, Image> eldest) {
+                    return size() > MAX_FOTOS_CACHEADAS;
+                }
+            };
+
     // Estado interno de drag
     private DragMode currentDragMode = DragMode.NONE;
     private double dragStartX, dragStartY;
@@ -325,76 +337,18 @@ public class EditorCanvasManager {
                     if (valorVariable != null) contenidoFinal = valorVariable;
                 }
 
-                // Procesamiento multi-linea y auto-wrap
-                java.util.List<String> rawLines = java.util.Arrays.asList(contenidoFinal.split("\n"));
-                java.util.List<String> finalLines = new java.util.ArrayList<>();
-
-                if (texto.isSaltoLinea()) {
-                    javafx.scene.text.Text helper = new javafx.scene.text.Text();
-                    helper.setFont(gc.getFont());
-                    for (String raw : rawLines) {
-                        if (raw.isEmpty()) {
-                            finalLines.add("");
-                            continue;
-                        }
-                        String[] words = raw.split(" ", -1);
-                        StringBuilder currentLine = new StringBuilder();
-                        
-                        for (String word : words) {
-                            String testLine = currentLine.length() == 0 ? word : currentLine + " " + word;
-                            helper.setText(testLine);
-                            
-                            if (helper.getLayoutBounds().getWidth() > ew) {
-                                // Si ya había algo en la línea, lo guardamos y bajamos
-                                if (currentLine.length() > 0) {
-                                    finalLines.add(currentLine.toString());
-                                    currentLine = new StringBuilder();
-                                }
-                                
-                                // Evaluamos si la palabra por sí sola supera el ancho
-                                helper.setText(word);
-                                if (helper.getLayoutBounds().getWidth() > ew) {
-                                    // Palabra mega-larga (ej: textooooooooooooo)
-                                    // La partimos letra a letra forzosamente
-                                    StringBuilder partialWord = new StringBuilder();
-                                    for (int i = 0; i < word.length(); i++) {
-                                        char c = word.charAt(i);
-                                        helper.setText(partialWord.toString() + c);
-                                        if (helper.getLayoutBounds().getWidth() > ew && partialWord.length() > 0) {
-                                            finalLines.add(partialWord.toString());
-                                            partialWord = new StringBuilder().append(c);
-                                        } else {
-                                            partialWord.append(c);
-                                        }
-                                    }
-                                    currentLine = partialWord;
-                                } else {
-                                    currentLine = new StringBuilder(word);
-                                }
-                            } else {
-                                currentLine = new StringBuilder(testLine);
-                            }
-                        }
-                        if (currentLine.length() > 0) {
-                            finalLines.add(currentLine.toString());
-                        }
-                    }
-                } else {
-                    finalLines.addAll(rawLines);
-                }
+                // Procesamiento multi-linea y auto-wrap (mismo motor que la exportación,
+                // en unidades de diseño para que el zoom no cambie los saltos)
+                java.util.List<String> finalLines = MotorTexto.lineas(contenidoFinal, texto.isSaltoLinea(),
+                        texto.getFontFamily(), texto.isNegrita(), texto.isCursiva(),
+                        texto.getFontSize(), texto.getWidth());
 
                 // =======================================================
                 // Auto-ajuste Inteligente de Dimensiones de Caja
                 // =======================================================
                 double lineHeight = texto.getFontSize() * zoomLevel * 1.2;
-                double maxLineWidth = 0;
-
-                for (String line : finalLines) {
-                    javafx.scene.text.Text tempText = new javafx.scene.text.Text(line);
-                    tempText.setFont(gc.getFont());
-                    double lw = tempText.getLayoutBounds().getWidth();
-                    if (lw > maxLineWidth) maxLineWidth = lw;
-                }
+                double maxLineWidth = MotorTexto.anchoMaximo(finalLines, texto.getFontFamily(),
+                        texto.isNegrita(), texto.isCursiva(), texto.getFontSize()) * zoomLevel;
 
                 // Cómputo de la dimensión exacta en espacio "puro/real" sin zoom
                 double requiredWidth = (maxLineWidth / zoomLevel) + 2.0; // Ligero margen
@@ -426,9 +380,8 @@ public class EditorCanvasManager {
                 
                 for (String line : finalLines) {
                     double textX = ex;
-                    javafx.scene.text.Text tempText = new javafx.scene.text.Text(line);
-                    tempText.setFont(gc.getFont());
-                    double textWidth = tempText.getLayoutBounds().getWidth();
+                    double textWidth = MotorTexto.ancho(line, texto.getFontFamily(), texto.isNegrita(),
+                            texto.isCursiva(), texto.getFontSize()) * zoomLevel;
 
                     if ("CENTER".equals(texto.getAlineacion())) {
                         textX = ex + (ew - textWidth) / 2;
@@ -446,7 +399,7 @@ public class EditorCanvasManager {
                 // Si hay columna vinculada, intentar cargar la imagen del registro actual
                 if (imgElem.getColumnaVinculada() != null && fuenteDatos != null) {
                     String nombreArchivo = fuenteDatos.getValor(imgElem.getColumnaVinculada());
-                    img = resolverImagenVariable(nombreArchivo);
+                    img = resolverImagenVariable(nombreArchivo, ew, eh);
                     if (img == null) img = imgElem.getImagen(); // fallback sin romper
                 }
 
@@ -977,9 +930,10 @@ public class EditorCanvasManager {
     }
 
     /* Intenta cargar la imagen cuyo nombre de archivo viene del Excel.
-     * Busca en la carpeta Fotos/ del proyecto.
+     * Busca en la carpeta Fotos/ del proyecto y la decodifica ya reducida al tamaño
+     * en pantalla (redondeado a múltiplos de 32 px para no recargar con cada paso de zoom).
      * Devuelve null si el archivo no existe o si no hay metadata de proyecto. */
-    private Image resolverImagenVariable(String nombreArchivo) {
+    private Image resolverImagenVariable(String nombreArchivo, double ancho, double alto) {
         if (nombreArchivo == null || nombreArchivo.isBlank()) return null;
         if (proyectoActual == null || proyectoActual.getMetadata() == null) return null;
 
@@ -990,7 +944,20 @@ public class EditorCanvasManager {
         if (!Files.exists(rutaAbsoluta)) return null;
 
         try {
-            return ImageUtils.cargarImagenSinBloqueo(rutaAbsoluta.toAbsolutePath().toString());
+            java.io.File archivo = rutaAbsoluta.toFile();
+            int w = (int) Math.ceil(Math.max(1, ancho) / 32.0) * 32;
+            int h = (int) Math.ceil(Math.max(1, alto) / 32.0) * 32;
+            String clave = archivo.getAbsolutePath() + '|' + archivo.lastModified() + '|' + w + '|' + h;
+
+            Image cacheada = cacheFotosVariables.get(clave);
+            if (cacheada != null) return cacheada;
+
+            // Mismo decodificador que la exportación; lee y cierra el archivo (no lo bloquea)
+            java.awt.image.BufferedImage ajustada = ImageUtils.leerAjustada(archivo, w, h);
+            if (ajustada == null) return null;
+            Image img = javafx.embed.swing.SwingFXUtils.toFXImage(ajustada, null);
+            cacheFotosVariables.put(clave, img);
+            return img;
         } catch (Exception e) {
             return null;
         }
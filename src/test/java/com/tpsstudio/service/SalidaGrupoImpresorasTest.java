@@ -0,0 +1,171 @@
+package com.tpsstudio.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Pageable;
+import java.awt.print.Printable;
+import java.awt.print.PrinterException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reparto entre impresoras con un spooler falso: una impresora que lanza una
+ * excepción inesperada no debe dejar colgadas a las demás ni duplicar registros.
+ */
+class SalidaGrupoImpresorasTest {
+
+    private static final Duration LIMITE = Duration.ofSeconds(20);
+
+    @TempDir
+    Path auditoria;
+
+    @Test
+    void impresoraQueLanzaRuntimeExceptionSaleDelGrupoYSusRegistrosSeReasignan() throws IOException {
+        String rota = unica("rota");
+        String buena = unica("buena");
+        List<Integer> registros = IntStream.range(0, 40).boxed().toList();
+        TrabajoExportacion control = new TrabajoExportacion();
+        control.iniciar(registros.size());
+
+        SalidaGrupoImpresoras grupo = new SalidaGrupoImpresoras(List.of(rota, buena), 1, auditoria,
+                (impresora, paginas, nombre, c) -> {
+                    if (impresora.equals(rota)) throw new IllegalStateException("driver caído");
+                    imprimir(paginas, paginas.getNumberOfPages());
+                });
+
+        assertTimeoutPreemptively(LIMITE, () -> grupo.imprimir(registros, lote -> paginas(lote, control),
+                "prueba", control));
+
+        Map<Integer, String> finales = estadosFinales();
+        assertEquals(registros.size(), finales.size());
+        finales.forEach((registro, impresora) -> assertEquals(buena, impresora, "registro " + registro));
+        assertTrue(control.getProgreso().paginasHechas() <= registros.size());
+    }
+
+    @Test
+    void fallaTrasEntregarParteDelLoteMarcaElTrabajoYCadaRegistroVaAUnaSolaImpresora() throws IOException {
+        String rota = unica("rota");
+        String buena = unica("buena");
+        List<Integer> registros = IntStream.range(0, 30).boxed().toList();
+        TrabajoExportacion control = new TrabajoExportacion();
+        control.iniciar(registros.size());
+
+        SalidaGrupoImpresoras grupo = new SalidaGrupoImpresoras(List.of(rota, buena), 1, auditoria,
+                (impresora, paginas, nombre, c) -> {
+                    if (impresora.equals(rota)) {
+                        imprimir(paginas, 3);
+                        throw new IllegalStateException("atasco");
+                    }
+                    imprimir(paginas, paginas.getNumberOfPages());
+                });
+
+        // Lo que quedó en la impresora rota puede no haberse impreso: el trabajo no termina bien
+        Exception error = assertTimeoutPreemptively(LIMITE, () -> assertThrows(Exception.class,
+                () -> grupo.imprimir(registros, lote -> paginas(lote, control), "prueba", control)));
+        assertTrue(error.getMessage().contains("ENTREGADO_ANTES_DEL_FALLO"), error.getMessage());
+        assertTrue(error.getMessage().contains(auditoria.toString()), "el error indica el CSV de auditoría");
+
+        // Cada registro termina una sola vez, en IMPRESO o ENTREGADO_ANTES_DEL_FALLO
+        Map<Integer, String> finales = estadosFinales();
+        assertEquals(registros.size(), finales.size());
+        assertTrue(control.getProgreso().paginasHechas() <= registros.size(),
+                "el progreso no puede superar el total");
+    }
+
+    @Test
+    void excepcionFueraDelSpoolerAbortaSinColgarALasDemasImpresoras() {
+        String a = unica("a");
+        String b = unica("b");
+        List<Integer> registros = IntStream.range(0, 5).boxed().toList();
+        TrabajoExportacion control = new TrabajoExportacion();
+
+        // Un Pageable defectuoso falla antes de llegar al spooler, con el lote en vuelo
+        SalidaGrupoImpresoras grupo = new SalidaGrupoImpresoras(List.of(a, b), 1, auditoria,
+                (impresora, paginas, nombre, c) -> imprimir(paginas, paginas.getNumberOfPages()));
+
+        Exception error = assertTimeoutPreemptively(LIMITE, () -> assertThrows(Exception.class,
+                () -> grupo.imprimir(registros, lote -> new PaginasRotas(), "prueba", control)));
+        assertTrue(error.getMessage().contains("Error inesperado"), error.getMessage());
+    }
+
+    // ──────────────────────────── helpers ────────────────────────────
+
+    private static String unica(String prefijo) {
+        // Los ritmos medidos son estáticos: nombres distintos en cada prueba
+        return prefijo + "-" + UUID.randomUUID();
+    }
+
+    private static Pageable paginas(List<Integer> lote, TrabajoExportacion control) {
+        return new PaginasImpresion(lote.size(), 8, 5, 72, 1,
+                i -> new BufferedImage(8, 5, BufferedImage.TYPE_INT_RGB), control);
+    }
+
+    /** Simula el {@code PrinterJob}: pide las páginas {@code 0..hasta-1} en orden. */
+    private static void imprimir(Pageable paginas, int hasta) throws PrinterException {
+        BufferedImage lienzo = new BufferedImage(8, 5, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = lienzo.createGraphics();
+        try {
+            for (int i = 0; i < Math.min(hasta, paginas.getNumberOfPages()); i++) {
+                paginas.getPrintable(i).print(g, paginas.getPageFormat(i), i);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Registro → impresora según las líneas finales (IMPRESO o ENTREGADO_ANTES_DEL_FALLO)
+     * del CSV de auditoría. Falla si un registro termina dos veces.
+     */
+    private Map<Integer, String> estadosFinales() throws IOException {
+        Map<Integer, String> finales = new HashMap<>();
+        List<Path> csvs;
+        try (var archivos = Files.list(auditoria)) {
+            csvs = archivos.toList();
+        }
+        assertEquals(1, csvs.size());
+        List<String> lineas = Files.readAllLines(csvs.get(0), StandardCharsets.UTF_8);
+        // fecha;registro;impresora;lote;estado
+        for (String linea : lineas.subList(1, lineas.size())) {
+            String[] campos = linea.split(";");
+            String estado = campos[4];
+            if (!estado.equals("IMPRESO") && !estado.equals("ENTREGADO_ANTES_DEL_FALLO")) continue;
+            int registro = Integer.parseInt(campos[1]);
+            String impresora = campos[2].substring(1, campos[2].length() - 1);
+            assertNull(finales.put(registro, impresora), "registro " + registro + " impreso dos veces");
+        }
+        return finales;
+    }
+
+    /** Pageable cuyo número de páginas lanza una excepción inesperada. */
+    private static final class PaginasRotas implements Pageable {
+        @Override
+        public int getNumberOfPages() {
+            throw new IllegalStateException("Pageable defectuoso");
+        }
+
+        @Override
+        public PageFormat getPageFormat(int indice) {
+            return new PageFormat();
+        }
+
+        @Override
+        public Printable getPrintable(int indice) {
+            return (g, pf, i) -> Printable.NO_SUCH_PAGE;
+        }
+    }
+}